@@ -29,13 +29,30 @@ import android.view.View;
 import android.view.ViewGroup;
 
 import org.gateshipone.odyssey.artworkdatabase.ArtworkManager;
+import org.gateshipone.odyssey.models.GenericModel;
 import org.gateshipone.odyssey.models.TrackModel;
 import org.gateshipone.odyssey.playbackservice.NowPlayingInformation;
 import org.gateshipone.odyssey.playbackservice.PlaybackServiceConnection;
 import org.gateshipone.odyssey.viewitems.ListViewItem;
 
+import java.util.List;
+
 public class CurrentPlaylistAdapter extends ScrollSpeedAdapter {
-    private static final int CACHE_SIZE = 250;
+    /**
+     * Number of tracks that are requested from the PBS with one IPC call.
+     */
+    private static final int PAGE_SIZE = 64;
+
+    /**
+     * Number of pages that are kept in the cache.
+     */
+    private static final int CACHE_SIZE = 8;
+
+    /**
+     * Distance to the border of a page at which the neighbouring page is requested in advance.
+     */
+    private static final int PREFETCH_DISTANCE = 16;
+
     private static final String TAG = CurrentPlaylistAdapter.class.getSimpleName();
 
     public enum VIEW_TYPES {
@@ -57,9 +74,9 @@ public class CurrentPlaylistAdapter extends ScrollSpeedAdapter {
     private boolean mHideArtwork;
 
     /**
-     * {@link LruCache} to reduce load on the IPC between GUI and PBS.
+     * {@link LruCache} of playlist pages to reduce load on the IPC between GUI and PBS.
      */
-    private LruCache<Integer, TrackModel> mTrackCache;
+    private LruCache<Integer, List<TrackModel>> mTrackCache;
 
     public CurrentPlaylistAdapter(Context context, PlaybackServiceConnection playbackServiceConnection) {
         super();
@@ -89,28 +106,56 @@ public class CurrentPlaylistAdapter extends ScrollSpeedAdapter {
 
     /**
      * Simple getter for the model data.
-     * This method will call the PBS to get the trackmodel from the current playlist.
+     * This method will request the page containing the position from the PBS if it is not cached already.
+     * If the position is close to the border of its page the neighbouring page will be requested as well.
      *
      * @param position Index of the track to get. No check for boundaries here.
      * @return The trackmodel at index position.
      */
     @Override
     public Object getItem(int position) {
-        try {
-            if (mPlaybackServiceConnection != null) {
-                // Check cache first for a hit
-                TrackModel track = mTrackCache.get(position);
-                if (track == null) {
-                    track = mPlaybackServiceConnection.getPBS().getPlaylistSong(position);
-                    mTrackCache.put(position, track);
-                }
-                return track;
-            } else {
+        if (mPlaybackServiceConnection == null) {
+            return null;
+        }
+
+        final int page = position / PAGE_SIZE;
+        final int offset = position % PAGE_SIZE;
+
+        final List<TrackModel> tracks = getPage(page);
+
+        // prefetch the neighbouring page in the direction of the nearest page border
+        if (offset >= PAGE_SIZE - PREFETCH_DISTANCE && (page + 1) * PAGE_SIZE < mPlaylistSize) {
+            getPage(page + 1);
+        } else if (offset < PREFETCH_DISTANCE && page > 0) {
+            getPage(page - 1);
+        }
+
+        if (tracks != null && offset < tracks.size()) {
+            return tracks.get(offset);
+        }
+        return null;
+    }
+
+    /**
+     * Returns the tracks of the given page either from the cache or from the PBS.
+     *
+     * @param page Index of the page.
+     * @return The list of tracks of the page or null if the PBS is not reachable.
+     */
+    private List<TrackModel> getPage(int page) {
+        List<TrackModel> tracks = mTrackCache.get(page);
+        if (tracks == null) {
+            try {
+                tracks = mPlaybackServiceConnection.getPBS().getPlaylistSongs(page * PAGE_SIZE, PAGE_SIZE);
+            } catch (RemoteException e) {
                 return null;
             }
-        } catch (RemoteException e) {
-            return null;
+
+            if (tracks != null) {
+                mTrackCache.put(page, tracks);
+            }
         }
+        return tracks;
     }
 
     /**
@@ -230,4 +275,15 @@ public class CurrentPlaylistAdapter extends ScrollSpeedAdapter {
         mHideArtwork = enable;
         notifyDataSetChanged();
     }
+
+    /**
+     * Only the section items show the artwork of their album.
+     */
+    @Override
+    public GenericModel getArtworkModel(int position) {
+        if (mHideArtwork || getItemViewType(position) != VIEW_TYPES.TYPE_SECTION_TRACK_ITEM.ordinal()) {
+            return null;
+        }
+        return (TrackModel) getItem(position);
+    }
 }
@@ -24,6 +24,8 @@ package org.gateshipone.odyssey.adapter;
 
 import android.widget.BaseAdapter;
 
+import org.gateshipone.odyssey.models.GenericModel;
+
 /**
  * Abstract adapter used for speed optimizations on asynchronous cover loading.
  * This is necessary to load covers only at certain scroll speed to not put
@@ -42,9 +44,9 @@ public abstract class ScrollSpeedAdapter extends BaseAdapter {
     private static final float mSmoothingFactor = 0.3f;
 
     /**
-     * Smoothed average(exponential smoothing) value
+     * Smoothed average(exponential smoothing) value, written by the image loader threads
      */
-    private long mAvgImageTime;
+    private volatile long mAvgImageTime;
 
     /**
      * Sets the scrollspeed in items per second.
@@ -68,7 +70,7 @@ public abstract class ScrollSpeedAdapter extends BaseAdapter {
 
     /**
      * This method adds new loading times to the smoothed average.
-     * Should only be called from the async cover loader.
+     * Should only be called from the cover loader.
      *
      * @param time Time in ms to load a image
      */
@@ -81,4 +83,15 @@ public abstract class ScrollSpeedAdapter extends BaseAdapter {
         }
     }
 
+    /**
+     * Returns the model whose artwork is shown by the item at the given position.
+     * Used to prefetch the artwork of items before they become visible.
+     *
+     * @param position Position of the item
+     * @return The model or null if the item shows no artwork
+     */
+    public GenericModel getArtworkModel(int position) {
+        final Object item = getItem(position);
+        return item instanceof GenericModel ? (GenericModel) item : null;
+    }
 }
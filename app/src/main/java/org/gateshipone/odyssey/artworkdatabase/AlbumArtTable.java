@@ -38,6 +38,21 @@ public class AlbumArtTable {
 
     public static final String COLUMN_IMAGE_NOT_FOUND = "image_not_found";
 
+    /**
+     * Provider that did not find the image, the time of the last search and the number of searches in a row
+     * without result
+     */
+    public static final String COLUMN_NOT_FOUND_PROVIDER = "not_found_provider";
+
+    public static final String COLUMN_NOT_FOUND_TIME = "not_found_time";
+
+    public static final String COLUMN_NOT_FOUND_COUNT = "not_found_count";
+
+    /**
+     * Time in ms after which an image that was not found is searched again
+     */
+    public static final String COLUMN_RETRY_TIME = "retry_time";
+
     private static final String DATABASE_CREATE = "CREATE TABLE if not exists " +
             TABLE_NAME +
             " (" +
@@ -46,14 +61,34 @@ public class AlbumArtTable {
             COLUMN_ALBUM_MBID + " text," +
             COLUMN_ALBUM_ID + " text primary key," +
             COLUMN_IMAGE_NOT_FOUND + " integer," +
+            COLUMN_NOT_FOUND_PROVIDER + " text," +
+            COLUMN_NOT_FOUND_TIME + " integer," +
+            COLUMN_NOT_FOUND_COUNT + " integer," +
+            COLUMN_RETRY_TIME + " integer," +
             COLUMN_IMAGE_FILE_PATH + " text" +
             ");";
 
+    private static final String RETRY_INDEX_CREATE = "CREATE INDEX if not exists " +
+            TABLE_NAME + "_retry ON " + TABLE_NAME +
+            " (" + COLUMN_IMAGE_NOT_FOUND + "," + COLUMN_RETRY_TIME + ");";
+
     private static final String DATABASE_DROP = "DROP TABLE if exists " + TABLE_NAME;
 
     public static void createTable(final SQLiteDatabase database) {
         // Create table if not already existing
         database.execSQL(DATABASE_CREATE);
+        database.execSQL(RETRY_INDEX_CREATE);
+    }
+
+    /**
+     * Adds the columns of the retry scheduling to a table of a previous version.
+     */
+    public static void addRetryColumns(final SQLiteDatabase database) {
+        database.execSQL("ALTER TABLE " + TABLE_NAME + " ADD COLUMN " + COLUMN_NOT_FOUND_PROVIDER + " text");
+        database.execSQL("ALTER TABLE " + TABLE_NAME + " ADD COLUMN " + COLUMN_NOT_FOUND_TIME + " integer");
+        database.execSQL("ALTER TABLE " + TABLE_NAME + " ADD COLUMN " + COLUMN_NOT_FOUND_COUNT + " integer");
+        database.execSQL("ALTER TABLE " + TABLE_NAME + " ADD COLUMN " + COLUMN_RETRY_TIME + " integer");
+        database.execSQL(RETRY_INDEX_CREATE);
     }
 
     public static void dropTable(final SQLiteDatabase database) {
@@ -22,19 +22,31 @@
 
 package org.gateshipone.odyssey.artworkdatabase;
 
+import android.content.BroadcastReceiver;
 import android.content.ContentValues;
 import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.graphics.Bitmap;
+import android.os.Process;
+import android.text.TextUtils;
+import android.util.LongSparseArray;
 
 import org.gateshipone.odyssey.models.AlbumModel;
 import org.gateshipone.odyssey.models.ArtistModel;
 import org.gateshipone.odyssey.utils.FileUtils;
 import org.gateshipone.odyssey.utils.MusicLibraryHelper;
 
-import java.io.IOException;
+import java.io.File;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class ArtworkDatabaseManager extends SQLiteOpenHelper {
 
@@ -46,7 +58,7 @@ public class ArtworkDatabaseManager extends SQLiteOpenHelper {
     /**
      * The version of the database
      */
-    private static final int DATABASE_VERSION = 22;
+    private static final int DATABASE_VERSION = 26;
 
     private static ArtworkDatabaseManager mInstance;
 
@@ -54,8 +66,85 @@ public class ArtworkDatabaseManager extends SQLiteOpenHelper {
 
     private static final String DIRECTORY_ARTIST_IMAGES = "artistArt";
 
+    /**
+     * Time in ms a resolved MBID is used before it is resolved again
+     */
+    private static final long MBID_EXPIRY = 180L * 24 * 60 * 60 * 1000;
+
+    /**
+     * Time in ms a failed MBID resolution is remembered
+     */
+    private static final long MBID_NOT_FOUND_EXPIRY = 14L * 24 * 60 * 60 * 1000;
+
+    /**
+     * Time in ms after which an image that was not found is searched again for the first time. The time doubles
+     * with each search of the same provider without result, up to {@link #RETRY_MAX_INTERVAL}.
+     */
+    private static final long RETRY_INTERVAL = 14L * 24 * 60 * 60 * 1000;
+
+    private static final long RETRY_MAX_INTERVAL = 180L * 24 * 60 * 60 * 1000;
+
+    /**
+     * Broadcast sent to the other processes of the app after a change of the artwork tables
+     */
+    private static final String ACTION_ARTWORK_INDEX_CHANGED = "org.gateshipone.odyssey.action_artwork_index_changed";
+
+    private static final String INTENT_EXTRA_KEY_PROCESS_ID = "org.gateshipone.odyssey.extra.process_id";
+    private static final String INTENT_EXTRA_KEY_TABLE = "org.gateshipone.odyssey.extra.table";
+    private static final String INTENT_EXTRA_KEY_OPERATION = "org.gateshipone.odyssey.extra.operation";
+    private static final String INTENT_EXTRA_KEY_IDS = "org.gateshipone.odyssey.extra.ids";
+    private static final String INTENT_EXTRA_KEY_NAMES = "org.gateshipone.odyssey.extra.names";
+    private static final String INTENT_EXTRA_KEY_FILE_NAMES = "org.gateshipone.odyssey.extra.file_names";
+
+    /**
+     * Signature permission of the index broadcasts (prefixed with the package name), so other apps can neither
+     * send nor receive them
+     */
+    private static final String PERMISSION_ARTWORK_INDEX = ".permission.ARTWORK_INDEX";
+
+    private enum INDEX_OPERATION {
+        INSERT, REMOVE_ID, REMOVE_ID_OR_NAME, CLEAR, CLEAR_NOT_FOUND
+    }
+
+    private final Context mContext;
+
+    /**
+     * In-memory copies of the artwork tables, all presence checks are answered by them.
+     */
+    private final ArtworkIndex mAlbumIndex;
+
+    private final ArtworkIndex mArtistIndex;
+
+    private volatile boolean mIndexesLoaded;
+
+    /**
+     * Stores of the image files, the tables contain the names of the images
+     */
+    private final ArtworkStore mAlbumStore;
+
+    private final ArtworkStore mArtistStore;
+
     private ArtworkDatabaseManager(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
+
+        mContext = context.getApplicationContext();
+
+        mAlbumIndex = new ArtworkIndex();
+        mArtistIndex = new ArtworkIndex();
+
+        final ExecutorService storeMaintenance = Executors.newSingleThreadExecutor(runnable -> new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            runnable.run();
+        }, "ArtworkStore"));
+        mAlbumStore = new ArtworkStore(mContext, this, DIRECTORY_ALBUM_IMAGES, AlbumArtTable.TABLE_NAME,
+                AlbumArtTable.COLUMN_IMAGE_FILE_PATH, storeMaintenance);
+        mArtistStore = new ArtworkStore(mContext, this, DIRECTORY_ARTIST_IMAGES, ArtistArtTable.TABLE_NAME,
+                ArtistArtTable.COLUMN_IMAGE_FILE_PATH, storeMaintenance);
+
+        // Keep the indexes in sync with the changes of the other processes (e.g. the bulk download)
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(ACTION_ARTWORK_INDEX_CHANGED);
+        mContext.registerReceiver(new IndexChangedReceiver(), filter, mContext.getPackageName() + PERMISSION_ARTWORK_INDEX, null);
     }
 
     public static synchronized ArtworkDatabaseManager getInstance(Context context) {
@@ -75,14 +164,45 @@ public class ArtworkDatabaseManager extends SQLiteOpenHelper {
     public void onCreate(SQLiteDatabase db) {
         AlbumArtTable.createTable(db);
         ArtistArtTable.createTable(db);
+        MBIDTable.createTable(db);
+        LocalArtTable.createTable(db);
+        ArtworkStoreTable.createTable(db);
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        if (newVersion == 22) {
+        if (oldVersion < 22) {
             AlbumArtTable.dropTable(db);
             ArtistArtTable.dropTable(db);
             onCreate(db);
+        } else {
+            if (oldVersion < 23) {
+                MBIDTable.createTable(db);
+            }
+            if (oldVersion < 24) {
+                LocalArtTable.createTable(db);
+            }
+            if (oldVersion < 25) {
+                ArtworkStoreTable.createTable(db);
+            }
+            if (oldVersion < 26) {
+                AlbumArtTable.addRetryColumns(db);
+                ArtistArtTable.addRetryColumns(db);
+
+                // Images that were not found by a previous version are searched again after the first interval
+                final long now = System.currentTimeMillis();
+                final ContentValues values = new ContentValues();
+                values.put(AlbumArtTable.COLUMN_NOT_FOUND_TIME, now);
+                values.put(AlbumArtTable.COLUMN_NOT_FOUND_COUNT, 1);
+                values.put(AlbumArtTable.COLUMN_RETRY_TIME, now + RETRY_INTERVAL);
+                db.update(AlbumArtTable.TABLE_NAME, values, AlbumArtTable.COLUMN_IMAGE_NOT_FOUND + "=1", null);
+
+                values.clear();
+                values.put(ArtistArtTable.COLUMN_NOT_FOUND_TIME, now);
+                values.put(ArtistArtTable.COLUMN_NOT_FOUND_COUNT, 1);
+                values.put(ArtistArtTable.COLUMN_RETRY_TIME, now + RETRY_INTERVAL);
+                db.update(ArtistArtTable.TABLE_NAME, values, ArtistArtTable.COLUMN_IMAGE_NOT_FOUND + "=1", null);
+            }
         }
     }
 
@@ -90,170 +210,230 @@ public class ArtworkDatabaseManager extends SQLiteOpenHelper {
      * Tries to fetch an image for the album with the given id (android album id).
      *
      * @param id Android MediaColumns album_id.
-     * @return The byte[] containing the raw image file. This can be decoded with BitmapFactory.
+     * @return The name of the image (s. {@link #getAlbumImageData(String)}) or null if it was not found.
      * @throws ImageNotFoundException If the image is not found and it was not searched for before.
      */
-    public synchronized String getAlbumImage(final Context context, long id) throws ImageNotFoundException {
-        final SQLiteDatabase database = getReadableDatabase();
+    public String getAlbumImage(final Context context, long id) throws ImageNotFoundException {
+        loadIndexes();
 
-        final String selection = AlbumArtTable.COLUMN_ALBUM_ID + "=?";
-
-
-        final Cursor requestCursor = database.query(AlbumArtTable.TABLE_NAME, new String[]{AlbumArtTable.COLUMN_ALBUM_ID, AlbumArtTable.COLUMN_IMAGE_FILE_PATH, AlbumArtTable.COLUMN_IMAGE_NOT_FOUND},
-                selection, new String[]{String.valueOf(id)}, null, null, null);
-
-        // Check if an image was found
-        if (requestCursor.moveToFirst()) {
-            // If the not_found flag is set then return null here, to indicate that the image is not here but was searched for before.
-            if (requestCursor.getInt(requestCursor.getColumnIndex(AlbumArtTable.COLUMN_IMAGE_NOT_FOUND)) == 1) {
-                requestCursor.close();
-                database.close();
-                return null;
-            }
+        final ArtworkIndex.Entry entry;
+        synchronized (mAlbumIndex) {
+            entry = mAlbumIndex.get(id);
+        }
 
-            // get the filename for the image
-            final String artworkFilename = requestCursor.getString(requestCursor.getColumnIndex(AlbumArtTable.COLUMN_IMAGE_FILE_PATH));
+        return getImageName(entry);
+    }
 
-            requestCursor.close();
-            database.close();
+    /**
+     * Tries to fetch an image for the artist with the given id (android artist id).
+     *
+     * @param id Android MediaColumns artist_id.
+     * @return The name of the image (s. {@link #getArtistImageData(String)}) or null if it was not found.
+     * @throws ImageNotFoundException If the image is not found and it was not searched for before.
+     */
+    public String getArtistImage(final Context context, long id) throws ImageNotFoundException {
+        loadIndexes();
 
-            return FileUtils.getFullArtworkFilePath(context, artworkFilename, DIRECTORY_ALBUM_IMAGES);
+        final ArtworkIndex.Entry entry;
+        synchronized (mArtistIndex) {
+            entry = mArtistIndex.get(id);
         }
 
-        // If we reach this, no entry was found for the given request. Throw an exception
-        requestCursor.close();
-        database.close();
-        throw new ImageNotFoundException();
+        return getImageName(entry);
     }
 
     /**
-     * Tries to fetch an image for the artist with the given id (android artist id).
+     * Tries to fetch an image for the album with the given name. This is useful if artist_id is not set
      *
-     * @param id Android MediaColumns artist_id.
-     * @return The byte[] containing the raw image file. This can be decoded with BitmapFactory.
+     * @param artistName The name of the artist to search for.
+     * @return The name of the image (s. {@link #getArtistImageData(String)}) or null if it was not found.
      * @throws ImageNotFoundException If the image is not found and it was not searched for before.
      */
-    public synchronized String getArtistImage(final Context context, long id) throws ImageNotFoundException {
-        final SQLiteDatabase database = getReadableDatabase();
+    public String getArtistImage(final Context context, String artistName) throws ImageNotFoundException {
+        loadIndexes();
 
-        final String selection = ArtistArtTable.COLUMN_ARTIST_ID + "=?";
+        final ArtworkIndex.Entry entry;
+        synchronized (mArtistIndex) {
+            entry = mArtistIndex.get(artistName);
+        }
 
+        return getImageName(entry);
+    }
 
-        final Cursor requestCursor = database.query(ArtistArtTable.TABLE_NAME, new String[]{ArtistArtTable.COLUMN_ARTIST_ID, ArtistArtTable.COLUMN_IMAGE_FILE_PATH, ArtistArtTable.COLUMN_IMAGE_NOT_FOUND},
-                selection, new String[]{String.valueOf(id)}, null, null, null);
+    /**
+     * Looks up the images of several artists at once, e.g. for the visible items of a list.
+     *
+     * @param ids Android MediaColumns artist_ids.
+     * @return The image names by artist id. Artists that were searched for without result map to null,
+     * artists that were never searched for are missing.
+     */
+    public LongSparseArray<String> getArtistImagesFor(final Context context, final long... ids) {
+        return getImagesFor(mArtistIndex, ids);
+    }
 
-        // Check if an image was found
-        if (requestCursor.moveToFirst()) {
-            // If the not_found flag is set then return null here, to indicate that the image is not here but was searched for before.
-            if (requestCursor.getInt(requestCursor.getColumnIndex(ArtistArtTable.COLUMN_IMAGE_NOT_FOUND)) == 1) {
-                requestCursor.close();
-                database.close();
-                return null;
+    /**
+     * @param imageName The name of the image (s. {@link #getArtistImage(Context, long)}).
+     * @return The stored image or null if it does not exist anymore.
+     */
+    ArtworkStore.Image getArtistImageData(final String imageName) {
+        return mArtistStore.get(imageName);
+    }
+
+    /**
+     * Saves the given artist byte[] image.
+     *
+     * @param artist Artist for the associated image byte[].
+     * @param image  byte[] containing the raw image that was downloaded. This can be null in which case
+     *               the database entry will have the not_found flag set.
+     */
+    public void insertArtistImage(final Context context, final ArtistModel artist, final byte[] image) {
+        String artworkFilename = null;
+        if (image != null) {
+            artworkFilename = saveArtistImageFile(context, artist, image);
+            if (artworkFilename == null) {
+                return;
             }
+        }
 
-            // get the filename for the image
-            final String artworkFilename = requestCursor.getString(requestCursor.getColumnIndex(ArtistArtTable.COLUMN_IMAGE_FILE_PATH));
+        insertArtistImages(context, Collections.singletonList(artist), Collections.singletonList(artworkFilename), null);
+    }
 
-            requestCursor.close();
-            database.close();
+    /**
+     * Saves the image for the given artist in the artwork store without adding it to the database (s. {@link #insertArtistImages}).
+     *
+     * @param artist Artist for the associated image byte[].
+     * @param image  byte[] containing the raw image that was downloaded.
+     * @return The name of the image or null if it could not be saved.
+     */
+    public String saveArtistImageFile(final Context context, final ArtistModel artist, final byte[] image) {
+        final String artworkFilename = getArtistImageFileName(context, artist);
+        if (artworkFilename == null) {
+            return null;
+        }
 
-            return FileUtils.getFullArtworkFilePath(context, artworkFilename, DIRECTORY_ARTIST_IMAGES);
+        if (!mArtistStore.put(artworkFilename, image)) {
+            return null;
         }
+        return artworkFilename;
+    }
 
-        // If we reach this, no entry was found for the given request. Throw an exception
-        requestCursor.close();
-        database.close();
-        throw new ImageNotFoundException();
+    /**
+     * Encodes the image as JPEG directly into the artwork store for the given artist without adding it to the database
+     * (s. {@link #insertArtistImages}).
+     *
+     * @param artist  Artist for the associated image.
+     * @param image   The decoded image.
+     * @param quality JPEG quality of the file.
+     * @return The name of the image or null if it could not be saved.
+     */
+    public String saveArtistImageFile(final Context context, final ArtistModel artist, final Bitmap image, final int quality) {
+        final String artworkFilename = getArtistImageFileName(context, artist);
+        if (artworkFilename == null) {
+            return null;
+        }
+
+        if (!mArtistStore.put(artworkFilename, image, quality)) {
+            return null;
+        }
+        return artworkFilename;
     }
 
     /**
-     * Tries to fetch an image for the album with the given name. This is useful if artist_id is not set
+     * Adds the saved image files of several artists within one transaction.
      *
-     * @param artistName The name of the artist to search for.
-     * @return The byte[] containing the raw image file. This can be decoded with BitmapFactory.
-     * @throws ImageNotFoundException If the image is not found and it was not searched for before.
+     * @param artists   Artists for the associated image files.
+     * @param fileNames Name of the saved artwork file for each artist (s. {@link #saveArtistImageFile}). A name can be null
+     *                  in which case the database entry will have the not_found flag set.
+     * @param provider  Provider that searched for the images, the entries without image are searched again later
+     *                  (s. {@link #getArtistRetries(int)}).
      */
-    public synchronized String getArtistImage(final Context context, String artistName) throws ImageNotFoundException {
-        final SQLiteDatabase database = getReadableDatabase();
+    public synchronized void insertArtistImages(final Context context, final List<ArtistModel> artists, final List<String> fileNames,
+                                                final String provider) {
+        final long[] artistIDs = new long[artists.size()];
+        final long now = System.currentTimeMillis();
 
-        final String selection = ArtistArtTable.COLUMN_ARTIST_NAME + "=?";
+        // Images that are replaced by an image with another name (e.g. after the MBID changed)
+        final List<String> replacedFiles = new ArrayList<>();
 
-        final Cursor requestCursor = database.query(ArtistArtTable.TABLE_NAME, new String[]{ArtistArtTable.COLUMN_ARTIST_NAME, ArtistArtTable.COLUMN_IMAGE_FILE_PATH, ArtistArtTable.COLUMN_IMAGE_NOT_FOUND},
-                selection, new String[]{artistName}, null, null, null);
+        final SQLiteDatabase database = getWritableDatabase();
 
-        // Check if an image was found
-        if (requestCursor.moveToFirst()) {
-            // If the not_found flag is set then return null here, to indicate that the image is not here but was searched for before.
-            if (requestCursor.getInt(requestCursor.getColumnIndex(ArtistArtTable.COLUMN_IMAGE_NOT_FOUND)) == 1) {
-                requestCursor.close();
-                database.close();
-                return null;
+        database.beginTransaction();
+        try {
+            for (int i = 0; i < artists.size(); i++) {
+                final ArtistModel artist = artists.get(i);
+                final String artworkFilename = fileNames.get(i);
+
+                artistIDs[i] = getArtistID(context, artist);
+
+                final String previousFilename = getImageFileName(database, ArtistArtTable.TABLE_NAME, ArtistArtTable.COLUMN_ARTIST_ID,
+                        ArtistArtTable.COLUMN_IMAGE_FILE_PATH, String.valueOf(artistIDs[i]));
+                if (previousFilename != null && !previousFilename.equals(artworkFilename)) {
+                    replacedFiles.add(previousFilename);
+                }
+
+                final ContentValues values = new ContentValues();
+                values.put(ArtistArtTable.COLUMN_ARTIST_ID, String.valueOf(artistIDs[i]));
+                values.put(ArtistArtTable.COLUMN_ARTIST_MBID, artist.getMBID());
+                values.put(ArtistArtTable.COLUMN_ARTIST_NAME, artist.getArtistName());
+                values.put(ArtistArtTable.COLUMN_IMAGE_FILE_PATH, artworkFilename);
+
+                // If no file was given set the not_found flag for this entry.
+                values.put(ArtistArtTable.COLUMN_IMAGE_NOT_FOUND, artworkFilename == null ? 1 : 0);
+                if (artworkFilename == null) {
+                    putNotFound(values, getNotFoundCount(database, ArtistArtTable.TABLE_NAME, ArtistArtTable.COLUMN_ARTIST_ID,
+                            String.valueOf(artistIDs[i]), provider) + 1, provider, now);
+                }
+
+                database.replace(ArtistArtTable.TABLE_NAME, "", values);
             }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
 
-            // get the filename for the image
-            final String artworkFilename = requestCursor.getString(requestCursor.getColumnIndex(ArtistArtTable.COLUMN_IMAGE_FILE_PATH));
+        database.close();
 
-            requestCursor.close();
-            database.close();
+        for (String fileName : replacedFiles) {
+            mArtistStore.remove(fileName);
+        }
 
-            return FileUtils.getFullArtworkFilePath(context, artworkFilename, DIRECTORY_ARTIST_IMAGES);
+        // The other processes are told about all images of the transaction at once
+        final long[] ids = new long[artists.size()];
+        final String[] names = new String[artists.size()];
+
+        for (int i = 0; i < artists.size(); i++) {
+            final ArtistModel artist = artists.get(i);
+
+            ids[i] = artistIDs[i];
+            names[i] = artist.getArtistName();
+            updateIndex(mArtistIndex, INDEX_OPERATION.INSERT, ids[i], names[i], fileNames.get(i), false);
+
+            // Thumbnails of a previous image are outdated
+            removeArtistThumbnails(context, artist);
         }
 
-        // If we reach this, no entry was found for the given request. Throw an exception
-        requestCursor.close();
-        database.close();
-        throw new ImageNotFoundException();
+        broadcastIndexChange(mArtistIndex, INDEX_OPERATION.INSERT, ids, names, fileNames.toArray(new String[fileNames.size()]));
     }
 
     /**
-     * Saves the given artist byte[] image.
-     *
-     * @param artist Artist for the associated image byte[].
-     * @param image  byte[] containing the raw image that was downloaded. This can be null in which case
-     *               the database entry will have the not_found flag set.
+     * @return The artist id of the model or, if it is missing, the id of the artist with the same name.
      */
-    public synchronized void insertArtistImage(final Context context, final ArtistModel artist, final byte[] image) {
-        final SQLiteDatabase database = getWritableDatabase();
-
+    private static long getArtistID(final Context context, final ArtistModel artist) {
         long artistID = artist.getArtistID();
         if (artistID == -1) {
             // Try to get the artistID manually because it seems to be missing
             artistID = MusicLibraryHelper.getArtistIDFromName(artist.getArtistName(), context);
         }
+        return artistID;
+    }
 
-        final String artistIDString = String.valueOf(artistID);
-        final String artistMBID = artist.getMBID();
-        final String artistName = artist.getArtistName();
-
-        String artworkFilename = null;
-        if (image != null) {
-            try {
-                artworkFilename = FileUtils.createSHA256HashForString(artistIDString, artistMBID, artistName) + ".jpg";
-            } catch (NoSuchAlgorithmException e) {
-                e.printStackTrace();
-                return;
-            }
-
-            try {
-                FileUtils.saveArtworkFile(context, artworkFilename, DIRECTORY_ARTIST_IMAGES, image);
-            } catch (IOException e) {
-                e.printStackTrace();
-                return;
-            }
+    private static String getArtistImageFileName(final Context context, final ArtistModel artist) {
+        try {
+            return FileUtils.createSHA256HashForString(String.valueOf(getArtistID(context, artist)), artist.getMBID(), artist.getArtistName()) + ".jpg";
+        } catch (NoSuchAlgorithmException e) {
+            e.printStackTrace();
+            return null;
         }
-
-        final ContentValues values = new ContentValues();
-        values.put(ArtistArtTable.COLUMN_ARTIST_ID, artistIDString);
-        values.put(ArtistArtTable.COLUMN_ARTIST_MBID, artistMBID);
-        values.put(ArtistArtTable.COLUMN_ARTIST_NAME, artistName);
-        values.put(ArtistArtTable.COLUMN_IMAGE_FILE_PATH, artworkFilename);
-
-        // If null was given as byte[] set the not_found flag for this entry.
-        values.put(ArtistArtTable.COLUMN_IMAGE_NOT_FOUND, image == null ? 1 : 0);
-
-        database.replace(ArtistArtTable.TABLE_NAME, "", values);
-
-        database.close();
     }
 
 
@@ -261,37 +441,37 @@ public class ArtworkDatabaseManager extends SQLiteOpenHelper {
      * Tries to fetch an image for the album with the given name. This can result in wrong results for e.g. "Greatest Hits"
      *
      * @param albumName The name of the album to search for.
-     * @return The byte[] containing the raw image file. This can be decoded with BitmapFactory.
+     * @return The name of the image (s. {@link #getAlbumImageData(String)}) or null if it was not found.
      * @throws ImageNotFoundException If the image is not in the database and it was not searched for before.
      */
-    public synchronized String getAlbumImage(final Context context, final String albumName) throws ImageNotFoundException {
-        final SQLiteDatabase database = getReadableDatabase();
-
-        final String selection = AlbumArtTable.COLUMN_ALBUM_NAME + "=?";
+    public String getAlbumImage(final Context context, final String albumName) throws ImageNotFoundException {
+        loadIndexes();
 
-        final Cursor requestCursor = database.query(AlbumArtTable.TABLE_NAME, new String[]{AlbumArtTable.COLUMN_ALBUM_NAME, AlbumArtTable.COLUMN_IMAGE_FILE_PATH, AlbumArtTable.COLUMN_IMAGE_NOT_FOUND},
-                selection, new String[]{albumName}, null, null, null);
-
-        // Check if an image was found
-        if (requestCursor.moveToFirst()) {
-            // If the not_found flag is set then return null here, to indicate that the image is not here but was searched for before.
-            if (requestCursor.getInt(requestCursor.getColumnIndex(AlbumArtTable.COLUMN_IMAGE_NOT_FOUND)) == 1) {
-                requestCursor.close();
-                database.close();
-                return null;
-            }
-            final String artworkFilename = requestCursor.getString(requestCursor.getColumnIndex(AlbumArtTable.COLUMN_IMAGE_FILE_PATH));
+        final ArtworkIndex.Entry entry;
+        synchronized (mAlbumIndex) {
+            entry = mAlbumIndex.get(albumName);
+        }
 
-            requestCursor.close();
-            database.close();
+        return getImageName(entry);
+    }
 
-            return FileUtils.getFullArtworkFilePath(context, artworkFilename, DIRECTORY_ALBUM_IMAGES);
-        }
+    /**
+     * Looks up the images of several albums at once, e.g. for the visible items of a list.
+     *
+     * @param ids Android MediaColumns album_ids.
+     * @return The image names by album id. Albums that were searched for without result map to null,
+     * albums that were never searched for are missing.
+     */
+    public LongSparseArray<String> getAlbumImagesFor(final Context context, final long... ids) {
+        return getImagesFor(mAlbumIndex, ids);
+    }
 
-        // If we reach this, no entry was found for the given request. Throw an exception
-        requestCursor.close();
-        database.close();
-        throw new ImageNotFoundException();
+    /**
+     * @param imageName The name of the image (s. {@link #getAlbumImage(Context, long)}).
+     * @return The stored image or null if it does not exist anymore.
+     */
+    ArtworkStore.Image getAlbumImageData(final String imageName) {
+        return mAlbumStore.get(imageName);
     }
 
     /**
@@ -301,44 +481,140 @@ public class ArtworkDatabaseManager extends SQLiteOpenHelper {
      * @param image byte[] containing the raw image that was downloaded. This can be null in which case
      *              the database entry will have the not_found flag set.
      */
-    public synchronized void insertAlbumImage(final Context context, final AlbumModel album, final byte[] image) {
-        final SQLiteDatabase database = getWritableDatabase();
-
-        final String albumID = String.valueOf(album.getAlbumID());
-        final String albumMBID = album.getMBID();
-        final String albumName = album.getAlbumName();
-        final String albumArtistName = album.getArtistName();
-
+    public void insertAlbumImage(final Context context, final AlbumModel album, final byte[] image) {
         String artworkFilename = null;
         if (image != null) {
-            try {
-                artworkFilename = FileUtils.createSHA256HashForString(albumID, albumMBID, albumName, albumArtistName) + ".jpg";
-            } catch (NoSuchAlgorithmException e) {
-                e.printStackTrace();
+            artworkFilename = saveAlbumImageFile(context, album, image);
+            if (artworkFilename == null) {
                 return;
             }
+        }
 
-            try {
-                FileUtils.saveArtworkFile(context, artworkFilename, DIRECTORY_ALBUM_IMAGES, image);
-            } catch (IOException e) {
-                e.printStackTrace();
-                return;
-            }
+        insertAlbumImages(context, Collections.singletonList(album), Collections.singletonList(artworkFilename), null);
+    }
+
+    /**
+     * Saves the image for the given album in the artwork store without adding it to the database (s. {@link #insertAlbumImages}).
+     *
+     * @param album Album for the associated image byte[].
+     * @param image byte[] containing the raw image that was downloaded.
+     * @return The name of the image or null if it could not be saved.
+     */
+    public String saveAlbumImageFile(final Context context, final AlbumModel album, final byte[] image) {
+        final String artworkFilename = getAlbumImageFileName(album);
+        if (artworkFilename == null) {
+            return null;
         }
 
-        final ContentValues values = new ContentValues();
-        values.put(AlbumArtTable.COLUMN_ALBUM_ID, albumID);
-        values.put(AlbumArtTable.COLUMN_ALBUM_MBID, albumMBID);
-        values.put(AlbumArtTable.COLUMN_ALBUM_NAME, albumName);
-        values.put(AlbumArtTable.COLUMN_ARTIST_NAME, albumArtistName);
-        values.put(AlbumArtTable.COLUMN_IMAGE_FILE_PATH, artworkFilename);
+        if (!mAlbumStore.put(artworkFilename, image)) {
+            return null;
+        }
+        return artworkFilename;
+    }
 
-        // If null was given as byte[] set the not_found flag for this entry.
-        values.put(AlbumArtTable.COLUMN_IMAGE_NOT_FOUND, image == null ? 1 : 0);
+    /**
+     * Encodes the image as JPEG directly into the artwork store for the given album without adding it to the database
+     * (s. {@link #insertAlbumImages}).
+     *
+     * @param album   Album for the associated image.
+     * @param image   The decoded image.
+     * @param quality JPEG quality of the file.
+     * @return The name of the image or null if it could not be saved.
+     */
+    public String saveAlbumImageFile(final Context context, final AlbumModel album, final Bitmap image, final int quality) {
+        final String artworkFilename = getAlbumImageFileName(album);
+        if (artworkFilename == null) {
+            return null;
+        }
 
-        database.replace(AlbumArtTable.TABLE_NAME, "", values);
+        if (!mAlbumStore.put(artworkFilename, image, quality)) {
+            return null;
+        }
+        return artworkFilename;
+    }
+
+    /**
+     * Adds the saved image files of several albums within one transaction.
+     *
+     * @param albums    Albums for the associated image files.
+     * @param fileNames Name of the saved artwork file for each album (s. {@link #saveAlbumImageFile}). A name can be null
+     *                  in which case the database entry will have the not_found flag set.
+     * @param provider  Provider that searched for the images, the entries without image are searched again later
+     *                  (s. {@link #getAlbumRetries(int)}).
+     */
+    public synchronized void insertAlbumImages(final Context context, final List<AlbumModel> albums, final List<String> fileNames,
+                                               final String provider) {
+        final long now = System.currentTimeMillis();
+
+        // Images that are replaced by an image with another name (e.g. after the MBID changed)
+        final List<String> replacedFiles = new ArrayList<>();
+
+        final SQLiteDatabase database = getWritableDatabase();
+
+        database.beginTransaction();
+        try {
+            for (int i = 0; i < albums.size(); i++) {
+                final AlbumModel album = albums.get(i);
+                final String artworkFilename = fileNames.get(i);
+
+                final String previousFilename = getImageFileName(database, AlbumArtTable.TABLE_NAME, AlbumArtTable.COLUMN_ALBUM_ID,
+                        AlbumArtTable.COLUMN_IMAGE_FILE_PATH, String.valueOf(album.getAlbumID()));
+                if (previousFilename != null && !previousFilename.equals(artworkFilename)) {
+                    replacedFiles.add(previousFilename);
+                }
+
+                final ContentValues values = new ContentValues();
+                values.put(AlbumArtTable.COLUMN_ALBUM_ID, String.valueOf(album.getAlbumID()));
+                values.put(AlbumArtTable.COLUMN_ALBUM_MBID, album.getMBID());
+                values.put(AlbumArtTable.COLUMN_ALBUM_NAME, album.getAlbumName());
+                values.put(AlbumArtTable.COLUMN_ARTIST_NAME, album.getArtistName());
+                values.put(AlbumArtTable.COLUMN_IMAGE_FILE_PATH, artworkFilename);
+
+                // If no file was given set the not_found flag for this entry.
+                values.put(AlbumArtTable.COLUMN_IMAGE_NOT_FOUND, artworkFilename == null ? 1 : 0);
+                if (artworkFilename == null) {
+                    putNotFound(values, getNotFoundCount(database, AlbumArtTable.TABLE_NAME, AlbumArtTable.COLUMN_ALBUM_ID,
+                            String.valueOf(album.getAlbumID()), provider) + 1, provider, now);
+                }
+
+                database.replace(AlbumArtTable.TABLE_NAME, "", values);
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
 
         database.close();
+
+        for (String fileName : replacedFiles) {
+            mAlbumStore.remove(fileName);
+        }
+
+        // The other processes are told about all images of the transaction at once
+        final long[] ids = new long[albums.size()];
+        final String[] names = new String[albums.size()];
+
+        for (int i = 0; i < albums.size(); i++) {
+            final AlbumModel album = albums.get(i);
+
+            ids[i] = album.getAlbumID();
+            names[i] = album.getAlbumName();
+            updateIndex(mAlbumIndex, INDEX_OPERATION.INSERT, ids[i], names[i], fileNames.get(i), false);
+
+            // Thumbnails of a previous image are outdated
+            removeAlbumThumbnails(context, album);
+        }
+
+        broadcastIndexChange(mAlbumIndex, INDEX_OPERATION.INSERT, ids, names, fileNames.toArray(new String[fileNames.size()]));
+    }
+
+    private static String getAlbumImageFileName(final AlbumModel album) {
+        try {
+            return FileUtils.createSHA256HashForString(String.valueOf(album.getAlbumID()), album.getMBID(), album.getAlbumName(), album.getArtistName()) + ".jpg";
+        } catch (NoSuchAlgorithmException e) {
+            e.printStackTrace();
+            return null;
+        }
     }
 
     /**
@@ -351,7 +627,14 @@ public class ArtworkDatabaseManager extends SQLiteOpenHelper {
 
         database.close();
 
+        updateIndex(mArtistIndex, INDEX_OPERATION.CLEAR, -1, null, null, true);
+
+        mArtistStore.clear();
+
+        // Image files of previous versions that were not imported
         FileUtils.removeArtworkDirectory(context, DIRECTORY_ARTIST_IMAGES);
+
+        ThumbnailCache.getInstance(context).clearArtistThumbnails();
     }
 
     /**
@@ -361,10 +644,18 @@ public class ArtworkDatabaseManager extends SQLiteOpenHelper {
         final SQLiteDatabase database = getWritableDatabase();
 
         database.delete(AlbumArtTable.TABLE_NAME, null, null);
+        database.delete(LocalArtTable.TABLE_NAME, null, null);
 
         database.close();
 
+        updateIndex(mAlbumIndex, INDEX_OPERATION.CLEAR, -1, null, null, true);
+
+        mAlbumStore.clear();
+
+        // Image files of previous versions that were not imported
         FileUtils.removeArtworkDirectory(context, DIRECTORY_ALBUM_IMAGES);
+
+        ThumbnailCache.getInstance(context).clearAlbumThumbnails();
     }
 
     /**
@@ -378,7 +669,12 @@ public class ArtworkDatabaseManager extends SQLiteOpenHelper {
 
         database.delete(ArtistArtTable.TABLE_NAME, where, whereArgs);
 
+        // Artists without MBID are searched again as well
+        deleteNotFoundMBIDs(database, MBIDTable.TYPE_ARTIST);
+
         database.close();
+
+        updateIndex(mArtistIndex, INDEX_OPERATION.CLEAR_NOT_FOUND, -1, null, null, true);
     }
 
     /**
@@ -392,7 +688,142 @@ public class ArtworkDatabaseManager extends SQLiteOpenHelper {
 
         database.delete(AlbumArtTable.TABLE_NAME, where, whereArgs);
 
+        // Albums without MBID are searched again as well
+        deleteNotFoundMBIDs(database, MBIDTable.TYPE_ALBUM);
+
+        database.close();
+
+        updateIndex(mAlbumIndex, INDEX_OPERATION.CLEAR_NOT_FOUND, -1, null, null, true);
+    }
+
+    /**
+     * Makes the artist images that were not found by another provider due to be searched again, e.g. after the
+     * provider was changed. The images that were not found by the given provider keep their schedule.
+     *
+     * @param provider The provider that searches for the images from now on.
+     */
+    public synchronized void expireBlockedArtistImages(final String provider) {
+        final SQLiteDatabase database = getWritableDatabase();
+
+        final ContentValues values = new ContentValues();
+        values.put(ArtistArtTable.COLUMN_RETRY_TIME, 0);
+
+        final String where = ArtistArtTable.COLUMN_IMAGE_NOT_FOUND + "=1 AND (" + ArtistArtTable.COLUMN_NOT_FOUND_PROVIDER + " IS NULL OR "
+                + ArtistArtTable.COLUMN_NOT_FOUND_PROVIDER + "!=?)";
+        final String whereArgs[] = {provider};
+
+        database.update(ArtistArtTable.TABLE_NAME, values, where, whereArgs);
+
+        // Artists without MBID are searched again as well
+        deleteNotFoundMBIDs(database, MBIDTable.TYPE_ARTIST);
+
+        database.close();
+    }
+
+    /**
+     * Makes the album images that were not found by another provider due to be searched again, e.g. after the
+     * provider was changed. The images that were not found by the given provider keep their schedule.
+     *
+     * @param provider The provider that searches for the images from now on.
+     */
+    public synchronized void expireBlockedAlbumImages(final String provider) {
+        final SQLiteDatabase database = getWritableDatabase();
+
+        final ContentValues values = new ContentValues();
+        values.put(AlbumArtTable.COLUMN_RETRY_TIME, 0);
+
+        final String where = AlbumArtTable.COLUMN_IMAGE_NOT_FOUND + "=1 AND (" + AlbumArtTable.COLUMN_NOT_FOUND_PROVIDER + " IS NULL OR "
+                + AlbumArtTable.COLUMN_NOT_FOUND_PROVIDER + "!=?)";
+        final String whereArgs[] = {provider};
+
+        database.update(AlbumArtTable.TABLE_NAME, values, where, whereArgs);
+
+        // Albums without MBID are searched again as well
+        deleteNotFoundMBIDs(database, MBIDTable.TYPE_ALBUM);
+
+        database.close();
+    }
+
+    /**
+     * Returns the artists whose image was not found before and is due to be searched again, the longest due first.
+     * A failed MBID resolution of the artists is forgotten, so the retry does not end in the same cached result.
+     *
+     * @param limit Maximum number of artists.
+     */
+    public synchronized List<ArtistModel> getArtistRetries(final int limit) {
+        final SQLiteDatabase database = getWritableDatabase();
+
+        final String where = ArtistArtTable.COLUMN_IMAGE_NOT_FOUND + "=1 AND " + ArtistArtTable.COLUMN_RETRY_TIME + "<=?";
+        final String whereArgs[] = {String.valueOf(System.currentTimeMillis())};
+
+        final Cursor cursor = database.query(ArtistArtTable.TABLE_NAME,
+                new String[]{ArtistArtTable.COLUMN_ARTIST_ID, ArtistArtTable.COLUMN_ARTIST_NAME, ArtistArtTable.COLUMN_ARTIST_MBID},
+                where, whereArgs, null, null, ArtistArtTable.COLUMN_RETRY_TIME, String.valueOf(limit));
+
+        final List<ArtistModel> artists = new ArrayList<>();
+        while (cursor.moveToNext()) {
+            final ArtistModel artist = new ArtistModel(cursor.getString(1), cursor.getLong(0));
+            artist.setMBID(cursor.getString(2));
+            artists.add(artist);
+
+            deleteNotFoundMBID(database, MBIDTable.TYPE_ARTIST, artist.getArtistName(), null);
+        }
+
+        cursor.close();
+        database.close();
+
+        return artists;
+    }
+
+    /**
+     * Returns the albums whose image was not found before and is due to be searched again, the longest due first.
+     * A failed MBID resolution of the albums is forgotten, so the retry does not end in the same cached result.
+     *
+     * @param limit Maximum number of albums.
+     */
+    public synchronized List<AlbumModel> getAlbumRetries(final int limit) {
+        final SQLiteDatabase database = getWritableDatabase();
+
+        final String where = AlbumArtTable.COLUMN_IMAGE_NOT_FOUND + "=1 AND " + AlbumArtTable.COLUMN_RETRY_TIME + "<=?";
+        final String whereArgs[] = {String.valueOf(System.currentTimeMillis())};
+
+        final Cursor cursor = database.query(AlbumArtTable.TABLE_NAME,
+                new String[]{AlbumArtTable.COLUMN_ALBUM_ID, AlbumArtTable.COLUMN_ALBUM_NAME, AlbumArtTable.COLUMN_ARTIST_NAME,
+                        AlbumArtTable.COLUMN_ALBUM_MBID},
+                where, whereArgs, null, null, AlbumArtTable.COLUMN_RETRY_TIME, String.valueOf(limit));
+
+        final List<AlbumModel> albums = new ArrayList<>();
+        while (cursor.moveToNext()) {
+            final AlbumModel album = new AlbumModel(cursor.getString(1), null, cursor.getString(2), null, cursor.getLong(0));
+            album.setMBID(cursor.getString(3));
+            albums.add(album);
+
+            deleteNotFoundMBID(database, MBIDTable.TYPE_ALBUM, album.getAlbumName(), album.getArtistName());
+        }
+
+        cursor.close();
+        database.close();
+
+        return albums;
+    }
+
+    /**
+     * @param albums  True if album images are searched, false if no album provider is selected.
+     * @param artists True if artist images are searched, false if no artist provider is selected.
+     * @return The time in ms when the next image that was not found is searched again or -1 if no image waits for it.
+     */
+    public synchronized long getNextRetryTime(final boolean albums, final boolean artists) {
+        final SQLiteDatabase database = getReadableDatabase();
+
+        final long albumRetryTime = albums ? getNextRetryTime(database, AlbumArtTable.TABLE_NAME) : -1;
+        final long artistRetryTime = artists ? getNextRetryTime(database, ArtistArtTable.TABLE_NAME) : -1;
+
         database.close();
+
+        if (albumRetryTime == -1 || artistRetryTime == -1) {
+            return Math.max(albumRetryTime, artistRetryTime);
+        }
+        return Math.min(albumRetryTime, artistRetryTime);
     }
 
     /**
@@ -410,18 +841,24 @@ public class ArtworkDatabaseManager extends SQLiteOpenHelper {
         final Cursor requestCursor = database.query(ArtistArtTable.TABLE_NAME, new String[]{ArtistArtTable.COLUMN_IMAGE_FILE_PATH},
                 where, whereArgs, null, null, null);
 
+        String artworkFilename = null;
         if (requestCursor.moveToFirst()) {
+            artworkFilename = requestCursor.getString(requestCursor.getColumnIndex(ArtistArtTable.COLUMN_IMAGE_FILE_PATH));
+        }
 
-            final String artworkFilename = requestCursor.getString(requestCursor.getColumnIndex(ArtistArtTable.COLUMN_IMAGE_FILE_PATH));
+        requestCursor.close();
 
-            requestCursor.close();
+        database.delete(ArtistArtTable.TABLE_NAME, where, whereArgs);
 
-            FileUtils.removeArtworkFile(context, artworkFilename, DIRECTORY_ARTIST_IMAGES);
+        database.close();
+
+        if (artworkFilename != null) {
+            mArtistStore.remove(artworkFilename);
         }
 
-        database.delete(ArtistArtTable.TABLE_NAME, where, whereArgs);
+        updateIndex(mArtistIndex, INDEX_OPERATION.REMOVE_ID_OR_NAME, artist.getArtistID(), artist.getArtistName(), null, true);
 
-        database.close();
+        removeArtistThumbnails(context, artist);
     }
 
     /**
@@ -439,17 +876,458 @@ public class ArtworkDatabaseManager extends SQLiteOpenHelper {
         final Cursor requestCursor = database.query(AlbumArtTable.TABLE_NAME, new String[]{AlbumArtTable.COLUMN_IMAGE_FILE_PATH},
                 where, whereArgs, null, null, null);
 
+        String artworkFilename = null;
         if (requestCursor.moveToFirst()) {
+            artworkFilename = requestCursor.getString(requestCursor.getColumnIndex(AlbumArtTable.COLUMN_IMAGE_FILE_PATH));
+        }
+
+        requestCursor.close();
+
+        database.delete(AlbumArtTable.TABLE_NAME, where, whereArgs);
 
-            final String artworkFilename = requestCursor.getString(requestCursor.getColumnIndex(AlbumArtTable.COLUMN_IMAGE_FILE_PATH));
+        database.close();
+
+        if (artworkFilename != null) {
+            mAlbumStore.remove(artworkFilename);
+        }
+
+        updateIndex(mAlbumIndex, INDEX_OPERATION.REMOVE_ID, album.getAlbumID(), album.getAlbumName(), null, true);
+
+        removeAlbumThumbnails(context, album);
+    }
+
+    /**
+     * Tries to get the MBID of the release that was resolved for the album before.
+     *
+     * @param album The album to look for.
+     * @return The release MBID that has a cover or null if no such release was found before.
+     * @throws MBIDNotFoundException If the album was not resolved before or the result expired.
+     */
+    public synchronized String getAlbumMBID(final AlbumModel album) throws MBIDNotFoundException {
+        return getMBID(MBIDTable.TYPE_ALBUM, album.getAlbumName(), album.getArtistName());
+    }
+
+    /**
+     * Tries to get the MBID that was resolved for the artist before.
+     *
+     * @param artist The artist to look for.
+     * @return The artist MBID or null if the artist was not found before.
+     * @throws MBIDNotFoundException If the artist was not resolved before or the result expired.
+     */
+    public synchronized String getArtistMBID(final ArtistModel artist) throws MBIDNotFoundException {
+        return getMBID(MBIDTable.TYPE_ARTIST, artist.getArtistName(), null);
+    }
+
+    /**
+     * Saves the MBID of the release of the album that has a cover.
+     *
+     * @param album The album that was resolved.
+     * @param mbid  The release MBID or null if no release with a cover was found.
+     */
+    public synchronized void insertAlbumMBID(final AlbumModel album, final String mbid) {
+        insertMBID(MBIDTable.TYPE_ALBUM, album.getAlbumName(), album.getArtistName(), mbid);
+    }
+
+    /**
+     * Saves the MBID of the artist.
+     *
+     * @param artist The artist that was resolved.
+     * @param mbid   The artist MBID or null if the artist was not found.
+     */
+    public synchronized void insertArtistMBID(final ArtistModel artist, final String mbid) {
+        insertMBID(MBIDTable.TYPE_ARTIST, artist.getArtistName(), null, mbid);
+    }
+
+    /**
+     * Tries to get the cover image that was found in the directory before.
+     *
+     * @param directory The directory of the music files.
+     * @return The path of the cover image or null if the directory contains no cover image.
+     * @throws ImageNotFoundException If the directory was not searched before or it was changed since then.
+     */
+    public synchronized String getDirectoryImage(final File directory) throws ImageNotFoundException {
+        final SQLiteDatabase database = getReadableDatabase();
+
+        final String selection = LocalArtTable.COLUMN_DIRECTORY + "=? AND " + LocalArtTable.COLUMN_MODIFIED + "=?";
+        final String selectionArgs[] = {directory.getPath(), String.valueOf(directory.lastModified())};
+
+        final Cursor requestCursor = database.query(LocalArtTable.TABLE_NAME, new String[]{LocalArtTable.COLUMN_IMAGE_PATH},
+                selection, selectionArgs, null, null, null);
+
+        if (requestCursor.moveToFirst()) {
+            final String imagePath = requestCursor.getString(requestCursor.getColumnIndex(LocalArtTable.COLUMN_IMAGE_PATH));
 
             requestCursor.close();
+            database.close();
 
-            FileUtils.removeArtworkFile(context, artworkFilename, DIRECTORY_ALBUM_IMAGES);
+            return imagePath;
         }
 
-        database.delete(AlbumArtTable.TABLE_NAME, where, whereArgs);
+        // If we reach this, no valid entry was found for the given request. Throw an exception
+        requestCursor.close();
+        database.close();
+        throw new ImageNotFoundException();
+    }
+
+    /**
+     * Saves the result of the search for a cover image in the directory.
+     *
+     * @param directory The directory of the music files.
+     * @param imagePath The path of the cover image or null if the directory contains no cover image.
+     */
+    public synchronized void insertDirectoryImage(final File directory, final String imagePath) {
+        final SQLiteDatabase database = getWritableDatabase();
+
+        final ContentValues values = new ContentValues();
+        values.put(LocalArtTable.COLUMN_DIRECTORY, directory.getPath());
+        values.put(LocalArtTable.COLUMN_IMAGE_PATH, imagePath);
+        values.put(LocalArtTable.COLUMN_MODIFIED, directory.lastModified());
+
+        database.replace(LocalArtTable.TABLE_NAME, "", values);
+
+        database.close();
+    }
+
+    private String getMBID(final int type, final String name, final String artistName) throws MBIDNotFoundException {
+        final SQLiteDatabase database = getReadableDatabase();
+
+        final String selection = MBIDTable.COLUMN_TYPE + "=? AND " + MBIDTable.COLUMN_NAME + "=? AND " + MBIDTable.COLUMN_ARTIST_NAME + "=? AND "
+                + MBIDTable.COLUMN_EXPIRES + ">?";
+        final String selectionArgs[] = {String.valueOf(type), nonNull(name), nonNull(artistName), String.valueOf(System.currentTimeMillis())};
+
+        final Cursor requestCursor = database.query(MBIDTable.TABLE_NAME, new String[]{MBIDTable.COLUMN_MBID},
+                selection, selectionArgs, null, null, null);
+
+        if (requestCursor.moveToFirst()) {
+            final String mbid = requestCursor.getString(requestCursor.getColumnIndex(MBIDTable.COLUMN_MBID));
+
+            requestCursor.close();
+            database.close();
+
+            return mbid;
+        }
+
+        // If we reach this, no valid entry was found for the given request. Throw an exception
+        requestCursor.close();
+        database.close();
+        throw new MBIDNotFoundException();
+    }
+
+    private void insertMBID(final int type, final String name, final String artistName, final String mbid) {
+        final SQLiteDatabase database = getWritableDatabase();
+
+        final ContentValues values = new ContentValues();
+        values.put(MBIDTable.COLUMN_TYPE, type);
+        values.put(MBIDTable.COLUMN_NAME, nonNull(name));
+        values.put(MBIDTable.COLUMN_ARTIST_NAME, nonNull(artistName));
+        values.put(MBIDTable.COLUMN_MBID, mbid);
+        values.put(MBIDTable.COLUMN_EXPIRES, System.currentTimeMillis() + (mbid == null ? MBID_NOT_FOUND_EXPIRY : MBID_EXPIRY));
+
+        database.replace(MBIDTable.TABLE_NAME, "", values);
+
+        // Drop expired entries, they are never used again
+        final String where = MBIDTable.COLUMN_EXPIRES + "<?";
+        final String whereArgs[] = {String.valueOf(System.currentTimeMillis())};
+        database.delete(MBIDTable.TABLE_NAME, where, whereArgs);
 
         database.close();
     }
+
+    private void deleteNotFoundMBIDs(final SQLiteDatabase database, final int type) {
+        final String where = MBIDTable.COLUMN_TYPE + "=? AND " + MBIDTable.COLUMN_MBID + " IS NULL";
+        final String whereArgs[] = {String.valueOf(type)};
+
+        database.delete(MBIDTable.TABLE_NAME, where, whereArgs);
+    }
+
+    private void deleteNotFoundMBID(final SQLiteDatabase database, final int type, final String name, final String artistName) {
+        final String where = MBIDTable.COLUMN_TYPE + "=? AND " + MBIDTable.COLUMN_NAME + "=? AND " + MBIDTable.COLUMN_ARTIST_NAME + "=? AND "
+                + MBIDTable.COLUMN_MBID + " IS NULL";
+        final String whereArgs[] = {String.valueOf(type), nonNull(name), nonNull(artistName)};
+
+        database.delete(MBIDTable.TABLE_NAME, where, whereArgs);
+    }
+
+    /**
+     * Sets the columns of the retry scheduling for an image that was not found.
+     * The columns of the retry scheduling have the same names in both artwork tables.
+     *
+     * @param notFoundCount Number of searches in a row of the provider without result, including this one
+     */
+    private static void putNotFound(final ContentValues values, final int notFoundCount, final String provider, final long now) {
+        // Limit the shift, the maximum interval is reached long before
+        final long interval = Math.min(RETRY_MAX_INTERVAL, RETRY_INTERVAL << Math.min(notFoundCount - 1, 8));
+
+        values.put(AlbumArtTable.COLUMN_NOT_FOUND_PROVIDER, provider);
+        values.put(AlbumArtTable.COLUMN_NOT_FOUND_TIME, now);
+        values.put(AlbumArtTable.COLUMN_NOT_FOUND_COUNT, notFoundCount);
+        values.put(AlbumArtTable.COLUMN_RETRY_TIME, now + interval);
+    }
+
+    /**
+     * @return The number of searches in a row of the provider that did not find the image of the row,
+     * 0 if the image was found or another provider searched for it.
+     */
+    private static int getNotFoundCount(final SQLiteDatabase database, final String table, final String idColumn, final String id,
+                                        final String provider) {
+        final Cursor cursor = database.query(table,
+                new String[]{AlbumArtTable.COLUMN_IMAGE_NOT_FOUND, AlbumArtTable.COLUMN_NOT_FOUND_PROVIDER, AlbumArtTable.COLUMN_NOT_FOUND_COUNT},
+                idColumn + "=?", new String[]{id}, null, null, null);
+
+        int notFoundCount = 0;
+        if (cursor.moveToFirst() && cursor.getInt(0) == 1 && TextUtils.equals(cursor.getString(1), provider)) {
+            notFoundCount = cursor.getInt(2);
+        }
+
+        cursor.close();
+        return notFoundCount;
+    }
+
+    /**
+     * @return The name of the image file of the entry with the given id or null if the entry has no image.
+     */
+    private static String getImageFileName(final SQLiteDatabase database, final String table, final String idColumn,
+                                           final String fileColumn, final String id) {
+        final Cursor cursor = database.query(table, new String[]{fileColumn}, idColumn + "=?", new String[]{id}, null, null, null);
+
+        String fileName = null;
+        if (cursor.moveToFirst()) {
+            fileName = cursor.getString(0);
+        }
+
+        cursor.close();
+        return fileName;
+    }
+
+    /**
+     * @return The earliest retry time of the images that were not found in the table or -1 if there is none.
+     */
+    private static long getNextRetryTime(final SQLiteDatabase database, final String table) {
+        final Cursor cursor = database.query(table, new String[]{"MIN(" + AlbumArtTable.COLUMN_RETRY_TIME + ")"},
+                AlbumArtTable.COLUMN_IMAGE_NOT_FOUND + "=1", null, null, null, null);
+
+        long retryTime = -1;
+        if (cursor.moveToFirst() && !cursor.isNull(0)) {
+            retryTime = cursor.getLong(0);
+        }
+
+        cursor.close();
+        return retryTime;
+    }
+
+    /**
+     * Names are part of the primary key, null would make every entry unique.
+     */
+    private static String nonNull(final String name) {
+        return name == null ? "" : name;
+    }
+
+    /**
+     * Loads the indexes from the database once. Afterwards they are updated on each change.
+     */
+    private void loadIndexes() {
+        if (mIndexesLoaded) {
+            return;
+        }
+
+        synchronized (this) {
+            if (mIndexesLoaded) {
+                return;
+            }
+
+            final SQLiteDatabase database = getReadableDatabase();
+
+            loadIndex(database, mAlbumIndex, AlbumArtTable.TABLE_NAME, AlbumArtTable.COLUMN_ALBUM_ID, AlbumArtTable.COLUMN_ALBUM_NAME,
+                    AlbumArtTable.COLUMN_IMAGE_FILE_PATH, AlbumArtTable.COLUMN_IMAGE_NOT_FOUND);
+            loadIndex(database, mArtistIndex, ArtistArtTable.TABLE_NAME, ArtistArtTable.COLUMN_ARTIST_ID, ArtistArtTable.COLUMN_ARTIST_NAME,
+                    ArtistArtTable.COLUMN_IMAGE_FILE_PATH, ArtistArtTable.COLUMN_IMAGE_NOT_FOUND);
+
+            database.close();
+
+            mIndexesLoaded = true;
+        }
+    }
+
+    /**
+     * Reads all rows of one artwork table into its index. The lock of the index is held until the index
+     * is complete, so changes of other processes that arrive meanwhile are applied afterwards.
+     */
+    private void loadIndex(final SQLiteDatabase database, final ArtworkIndex index, final String table, final String idColumn,
+                           final String nameColumn, final String fileColumn, final String notFoundColumn) {
+        synchronized (index) {
+            final Cursor cursor = database.query(table, new String[]{idColumn, nameColumn, fileColumn, notFoundColumn},
+                    null, null, null, null, null);
+
+            if (cursor.moveToFirst()) {
+                final int idIndex = cursor.getColumnIndex(idColumn);
+                final int nameIndex = cursor.getColumnIndex(nameColumn);
+                final int fileIndex = cursor.getColumnIndex(fileColumn);
+                final int notFoundIndex = cursor.getColumnIndex(notFoundColumn);
+
+                do {
+                    final String fileName = cursor.getInt(notFoundIndex) == 1 ? null : cursor.getString(fileIndex);
+                    index.put(new ArtworkIndex.Entry(cursor.getLong(idIndex), cursor.getString(nameIndex), fileName));
+                } while (cursor.moveToNext());
+            }
+
+            cursor.close();
+
+            index.setLoaded();
+        }
+    }
+
+    /**
+     * Applies a change of a table to its index and tells the other processes about it.
+     *
+     * @param index     The index of the changed table
+     * @param operation The change of the table
+     * @param id        Id of the changed row
+     * @param name      Name of the changed row
+     * @param fileName  Artwork file name of an inserted row, null if the image was not found
+     * @param broadcast True if the change was made by this process
+     */
+    private void updateIndex(final ArtworkIndex index, final INDEX_OPERATION operation, final long id, final String name,
+                             final String fileName, final boolean broadcast) {
+        synchronized (index) {
+            // An index that is not loaded yet reads the change from the database
+            if (index.isLoaded()) {
+                switch (operation) {
+                    case INSERT:
+                        index.put(new ArtworkIndex.Entry(id, name, fileName));
+                        break;
+                    case REMOVE_ID:
+                        index.remove(id);
+                        break;
+                    case REMOVE_ID_OR_NAME:
+                        index.remove(id);
+                        if (name != null) {
+                            index.remove(name);
+                        }
+                        break;
+                    case CLEAR:
+                        index.clear();
+                        break;
+                    case CLEAR_NOT_FOUND:
+                        index.removeNotFound();
+                        break;
+                }
+            }
+        }
+
+        if (broadcast) {
+            broadcastIndexChange(index, operation, new long[]{id}, new String[]{name}, new String[]{fileName});
+        }
+    }
+
+    /**
+     * Tells the other processes about changes of a table, the rows are given by their ids, names and file names.
+     */
+    private void broadcastIndexChange(final ArtworkIndex index, final INDEX_OPERATION operation, final long[] ids, final String[] names,
+                                      final String[] fileNames) {
+        Intent intent = new Intent(ACTION_ARTWORK_INDEX_CHANGED);
+        intent.setPackage(mContext.getPackageName());
+
+        intent.putExtra(INTENT_EXTRA_KEY_PROCESS_ID, Process.myPid());
+        intent.putExtra(INTENT_EXTRA_KEY_TABLE, index == mAlbumIndex ? AlbumArtTable.TABLE_NAME : ArtistArtTable.TABLE_NAME);
+        intent.putExtra(INTENT_EXTRA_KEY_OPERATION, operation.ordinal());
+        intent.putExtra(INTENT_EXTRA_KEY_IDS, ids);
+        intent.putExtra(INTENT_EXTRA_KEY_NAMES, names);
+        intent.putExtra(INTENT_EXTRA_KEY_FILE_NAMES, fileNames);
+
+        mContext.sendBroadcast(intent, mContext.getPackageName() + PERMISSION_ARTWORK_INDEX);
+    }
+
+    /**
+     * @return The name of the image of the index entry
+     * @throws ImageNotFoundException If no entry exists, the image was never searched for.
+     */
+    private static String getImageName(final ArtworkIndex.Entry entry) throws ImageNotFoundException {
+        if (entry == null) {
+            throw new ImageNotFoundException();
+        }
+
+        // The image was searched for before but not found
+        if (entry.mFileName == null) {
+            return null;
+        }
+
+        return entry.mFileName;
+    }
+
+    private LongSparseArray<String> getImagesFor(final ArtworkIndex index, final long... ids) {
+        loadIndexes();
+
+        final LongSparseArray<String> images = new LongSparseArray<>(ids.length);
+
+        synchronized (index) {
+            for (long id : ids) {
+                final ArtworkIndex.Entry entry = index.get(id);
+                if (entry != null) {
+                    images.put(id, entry.mFileName);
+                }
+            }
+        }
+
+        return images;
+    }
+
+    /**
+     * Removes the thumbnails of the album. The album can be requested by id or by name so both are removed.
+     */
+    private void removeAlbumThumbnails(final Context context, final AlbumModel album) {
+        final ThumbnailCache thumbnailCache = ThumbnailCache.getInstance(context);
+
+        thumbnailCache.removeThumbnails(ThumbnailCache.getAlbumKey(album.getAlbumID(), album.getAlbumName()));
+        thumbnailCache.removeThumbnails(ThumbnailCache.getAlbumKey(-1, album.getAlbumName()));
+    }
+
+    /**
+     * Removes the thumbnails of the artist. The artist can be requested by id or by name so both are removed.
+     */
+    private void removeArtistThumbnails(final Context context, final ArtistModel artist) {
+        final ThumbnailCache thumbnailCache = ThumbnailCache.getInstance(context);
+
+        thumbnailCache.removeThumbnails(ThumbnailCache.getArtistKey(artist.getArtistID(), artist.getArtistName()));
+        thumbnailCache.removeThumbnails(ThumbnailCache.getArtistKey(-1, artist.getArtistName()));
+    }
+
+    /**
+     * Receives the changes of the artwork tables made by the other processes.
+     */
+    private class IndexChangedReceiver extends BroadcastReceiver {
+
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            if (intent.getIntExtra(INTENT_EXTRA_KEY_PROCESS_ID, -1) == Process.myPid()) {
+                // Already applied
+                return;
+            }
+
+            final ArtworkIndex index = AlbumArtTable.TABLE_NAME.equals(intent.getStringExtra(INTENT_EXTRA_KEY_TABLE)) ? mAlbumIndex : mArtistIndex;
+            final INDEX_OPERATION operation = INDEX_OPERATION.values()[intent.getIntExtra(INTENT_EXTRA_KEY_OPERATION, 0)];
+
+            final long[] ids = intent.getLongArrayExtra(INTENT_EXTRA_KEY_IDS);
+            final String[] names = intent.getStringArrayExtra(INTENT_EXTRA_KEY_NAMES);
+            final String[] fileNames = intent.getStringArrayExtra(INTENT_EXTRA_KEY_FILE_NAMES);
+            if (ids == null || names == null || fileNames == null || ids.length != names.length || ids.length != fileNames.length) {
+                return;
+            }
+
+            final ArtworkStore store = index == mAlbumIndex ? mAlbumStore : mArtistStore;
+
+            for (int i = 0; i < ids.length; i++) {
+                updateIndex(index, operation, ids[i], names[i], fileNames[i], false);
+
+                // Images that were replaced by the other process have new locations in the store
+                if (operation == INDEX_OPERATION.INSERT && fileNames[i] != null) {
+                    store.invalidate(fileNames[i]);
+                }
+            }
+
+            // Images that were removed by the other process have new locations in the store
+            if (operation != INDEX_OPERATION.INSERT && operation != INDEX_OPERATION.CLEAR_NOT_FOUND) {
+                store.invalidate();
+            }
+        }
+    }
 }
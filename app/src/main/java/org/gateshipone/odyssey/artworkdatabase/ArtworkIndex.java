@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2018 Team Gateship-One
+ * (Hendrik Borghorst & Frederik Luetkes)
+ *
+ * The AUTHORS.md file contains a detailed contributors list:
+ * <https://github.com/gateship-one/odyssey/blob/master/AUTHORS.md>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.gateshipone.odyssey.artworkdatabase;
+
+import android.util.LongSparseArray;
+
+import java.util.HashMap;
+
+/**
+ * In-memory copy of one artwork table: the id and name of each row together with its artwork file name
+ * or the not found flag.
+ * <p>
+ * The index is loaded once by the {@link ArtworkDatabaseManager} and afterwards kept in sync with every
+ * change of the table, so a missing entry means that the image was never searched for.
+ * All methods must be called while holding the lock of the index.
+ */
+class ArtworkIndex {
+
+    static class Entry {
+        final long mId;
+
+        final String mName;
+
+        /**
+         * Name of the artwork file, null if the image was not found
+         */
+        final String mFileName;
+
+        Entry(long id, String name, String fileName) {
+            mId = id;
+            mName = name;
+            mFileName = fileName;
+        }
+    }
+
+    /**
+     * Entries by their id (the primary key of the table)
+     */
+    private final LongSparseArray<Entry> mIds;
+
+    /**
+     * Entries by their name, for the requests without an id
+     */
+    private final HashMap<String, Entry> mNames;
+
+    private boolean mLoaded;
+
+    ArtworkIndex() {
+        mIds = new LongSparseArray<>();
+        mNames = new HashMap<>();
+    }
+
+    boolean isLoaded() {
+        return mLoaded;
+    }
+
+    void setLoaded() {
+        mLoaded = true;
+    }
+
+    Entry get(long id) {
+        return mIds.get(id);
+    }
+
+    Entry get(String name) {
+        return mNames.get(name);
+    }
+
+    /**
+     * Adds the entry, replacing an entry with the same id like the database does.
+     */
+    void put(Entry entry) {
+        remove(entry.mId);
+
+        mIds.put(entry.mId, entry);
+        if (entry.mName != null) {
+            mNames.put(entry.mName, entry);
+        }
+    }
+
+    void remove(long id) {
+        final Entry entry = mIds.get(id);
+        if (entry == null) {
+            return;
+        }
+
+        mIds.remove(id);
+        removeName(entry);
+    }
+
+    /**
+     * Removes all entries with the given name.
+     */
+    void remove(String name) {
+        for (int i = mIds.size() - 1; i >= 0; i--) {
+            if (name.equals(mIds.valueAt(i).mName)) {
+                mIds.removeAt(i);
+            }
+        }
+        mNames.remove(name);
+    }
+
+    /**
+     * Removes all entries of images that were not found.
+     */
+    void removeNotFound() {
+        for (int i = mIds.size() - 1; i >= 0; i--) {
+            final Entry entry = mIds.valueAt(i);
+            if (entry.mFileName == null) {
+                mIds.removeAt(i);
+                removeName(entry);
+            }
+        }
+    }
+
+    void clear() {
+        mIds.clear();
+        mNames.clear();
+    }
+
+    /**
+     * Removes the name of the removed entry. Another entry with the same name takes its place.
+     */
+    private void removeName(Entry entry) {
+        if (entry.mName == null || mNames.get(entry.mName) != entry) {
+            return;
+        }
+
+        mNames.remove(entry.mName);
+        for (int i = 0; i < mIds.size(); i++) {
+            final Entry other = mIds.valueAt(i);
+            if (entry.mName.equals(other.mName)) {
+                mNames.put(other.mName, other);
+                break;
+            }
+        }
+    }
+}
@@ -32,10 +32,16 @@ import android.graphics.BitmapFactory;
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
 import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
 import android.preference.PreferenceManager;
 import android.util.Log;
+import android.util.LongSparseArray;
 
 import com.android.volley.NetworkResponse;
+import com.android.volley.Request;
 import com.android.volley.VolleyError;
 
 import org.gateshipone.odyssey.R;
@@ -54,11 +60,17 @@ import org.gateshipone.odyssey.utils.BitmapUtils;
 import org.gateshipone.odyssey.utils.MusicLibraryHelper;
 import org.json.JSONException;
 
-import java.io.ByteArrayOutputStream;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
-public class ArtworkManager implements ArtistFetchError, AlbumFetchError {
+public class ArtworkManager {
     private static final String TAG = ArtworkManager.class.getSimpleName();
     /**
      * Maximmum size for either x or y of an image
@@ -71,15 +83,40 @@ public class ArtworkManager implements ArtistFetchError, AlbumFetchError {
     private static final int IMAGE_COMPRESSION_SETTING = 80;
 
     /**
-     * Maximum size of an image blob to insert in SQLite database. (1MB)
+     * Maximum size of a downloaded image that is saved without encoding it again. (1MB)
      */
     private static final int MAXIMUM_IMAGE_SIZE = 1024 * 1024;
 
+    /**
+     * Time in ms after which a fetch without result is not considered running anymore
+     */
+    private static final long FETCH_TIMEOUT = 2 * 60 * 1000;
+
+    /**
+     * Number of albums and of artists the bulk download fetches at the same time
+     */
+    private static final int BULK_PARALLEL_FETCHES = 4;
+
+    /**
+     * Number of threads scaling and encoding the downloaded images
+     */
+    private static final int IMAGE_PROCESSING_THREADS = 2;
+
+    /**
+     * Maximum number of albums and of artists that are searched again in one retry run (s. {@link ArtworkRetryService})
+     */
+    private static final int RETRY_BATCH_SIZE = 100;
+
     /**
      * Manager for the SQLite database handling
      */
     private ArtworkDatabaseManager mDBManager;
 
+    /**
+     * Finds the artwork next to the music files before it is downloaded
+     */
+    private final LocalArtworkResolver mLocalArtworkResolver;
+
     /**
      * List of observers that needs updating if a new ArtistImage is downloaded.
      */
@@ -90,6 +127,17 @@ public class ArtworkManager implements ArtistFetchError, AlbumFetchError {
      */
     private final ArrayList<onNewAlbumImageListener> mAlbumListeners;
 
+    /**
+     * Running album fetches by the identity of the album (s. {@link #getFetchKey(AlbumModel)}) with their start time.
+     * Concurrent fetches of the same album share the first one, all listeners are notified once it finishes.
+     */
+    private final HashMap<String, Long> mRunningAlbumFetches = new HashMap<>();
+
+    /**
+     * Running artist fetches by the identity of the artist (s. {@link #getFetchKey(ArtistModel)}) with their start time.
+     */
+    private final HashMap<String, Long> mRunningArtistFetches = new HashMap<>();
+
     /**
      * Private static singleton instance that can be used by other classes via the
      * getInstance method.
@@ -97,30 +145,98 @@ public class ArtworkManager implements ArtistFetchError, AlbumFetchError {
     private static ArtworkManager mInstance;
 
     /**
-     * Lists of {@link AlbumModel} objects used for bulk downloading.
+     * Lock for the state of the bulk downloading
+     */
+    private final Object mBulkLock = new Object();
+
+    /**
+     * Queue of {@link AlbumModel} objects waiting for the bulk downloading.
      */
-    private final List<AlbumModel> mAlbumList = new ArrayList<>();
+    private final ArrayDeque<AlbumModel> mAlbumList = new ArrayDeque<>();
 
     /**
-     * Lists of {@link ArtistModel} objects used for bulk downloading.
+     * Queue of {@link ArtistModel} objects waiting for the bulk downloading.
      */
-    private final List<ArtistModel> mArtistList = new ArrayList<>();
+    private final ArrayDeque<ArtistModel> mArtistList = new ArrayDeque<>();
 
     /**
-     * Current {@link AlbumModel} handled by the bulk downloading
+     * Albums fetched by the bulk downloading at the moment, by their identity (s. {@link #getFetchKey(AlbumModel)})
+     * with their start time
      */
-    private AlbumModel mCurrentBulkAlbum = null;
+    private final HashMap<String, Long> mBulkAlbumFetches = new HashMap<>();
 
     /**
-     * Current {@link ArtistModel} handled by the bulk downloading
+     * Artists fetched by the bulk downloading at the moment, by their identity (s. {@link #getFetchKey(ArtistModel)})
+     * with their start time
      */
-    private ArtistModel mCurrentBulkArtist = null;
+    private final HashMap<String, Long> mBulkArtistFetches = new HashMap<>();
 
     /**
-     * Callback for the bulkdownload observer (s. {@link BulkDownloadService})
+     * Token of the delayed check for bulk fetches that never return a result (s. {@link #scheduleBulkWatchdog})
+     */
+    private final Object mBulkWatchdogToken = new Object();
+
+    /**
+     * Number of album and artist lists that are still filtered before the bulk downloading can start with them
+     */
+    private int mPendingBulkLists;
+
+    /**
+     * Callback for the bulkdownload observer (s. {@link BulkDownloadService}), null if no bulk download is running
      */
     private BulkLoadingProgressCallback mBulkProgressCallback;
 
+    /**
+     * True if the bulk downloading searches the images again that were not found before (s. {@link #retryImages})
+     */
+    private boolean mBulkRetry;
+
+    /**
+     * Scales and encodes the downloaded images, so the network responses of several images can be processed at once.
+     */
+    private final ExecutorService mImageProcessor;
+
+    /**
+     * Writes the processed images to the database. All images that are waiting when a write starts are
+     * inserted within one transaction.
+     */
+    private final ExecutorService mDatabaseWriter;
+
+    /**
+     * Lock for the images waiting for the database writer
+     */
+    private final Object mPendingImagesLock = new Object();
+
+    /**
+     * Albums waiting for the database writer together with the names of their saved image files
+     * and the providers that searched for them
+     */
+    private final List<AlbumModel> mPendingAlbums = new ArrayList<>();
+
+    private final List<String> mPendingAlbumFiles = new ArrayList<>();
+
+    private final List<String> mPendingAlbumProviders = new ArrayList<>();
+
+    /**
+     * Artists waiting for the database writer together with the names of their saved image files
+     * and the providers that searched for them
+     */
+    private final List<ArtistModel> mPendingArtists = new ArrayList<>();
+
+    private final List<String> mPendingArtistFiles = new ArrayList<>();
+
+    private final List<String> mPendingArtistProviders = new ArrayList<>();
+
+    /**
+     * True if the database writer will take the pending images
+     */
+    private boolean mWriteScheduled;
+
+    /**
+     * Handler to notify the listeners in the UI thread
+     */
+    private final Handler mMainHandler;
+
     /**
      * Settings string which artist download provider to use
      */
@@ -151,10 +267,20 @@ public class ArtworkManager implements ArtistFetchError, AlbumFetchError {
     private ArtworkManager(Context context) {
 
         mDBManager = ArtworkDatabaseManager.getInstance(context);
+        mLocalArtworkResolver = new LocalArtworkResolver(this, mDBManager);
 
         mArtistListeners = new ArrayList<>();
         mAlbumListeners = new ArrayList<>();
 
+        final ThreadFactory threadFactory = runnable -> new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            runnable.run();
+        }, "ArtworkInsert");
+        mImageProcessor = Executors.newFixedThreadPool(IMAGE_PROCESSING_THREADS, threadFactory);
+        mDatabaseWriter = Executors.newSingleThreadExecutor(threadFactory);
+
+        mMainHandler = new Handler(Looper.getMainLooper());
+
         ConnectionStateReceiver receiver = new ConnectionStateReceiver();
         IntentFilter filter = new IntentFilter();
         filter.addAction(ConnectivityManager.CONNECTIVITY_ACTION);
@@ -247,8 +373,8 @@ public class ArtworkManager implements ArtistFetchError, AlbumFetchError {
 
         if (!skipCache) {
             // Try cache first
-            Bitmap cacheImage = BitmapCache.getInstance().requestArtistImage(artist);
-            if (cacheImage != null && width <= cacheImage.getWidth() && height <= cacheImage.getWidth()) {
+            Bitmap cacheImage = BitmapCache.getInstance().requestArtistImage(artist, width, height);
+            if (cacheImage != null) {
                 return cacheImage;
             }
         }
@@ -269,23 +395,36 @@ public class ArtworkManager implements ArtistFetchError, AlbumFetchError {
 
         // Checks if the database has an image for the requested artist
         if (null != image) {
-            // Create a bitmap from the data blob in the database
-            Bitmap bm = BitmapUtils.decodeSampledBitmapFromFile(image, width, height);
-            BitmapCache.getInstance().putArtistImage(artist, bm);
+            // Create a bitmap from the stored image or its thumbnail
+            Bitmap bm = decodeImage(context, ThumbnailCache.getArtistKey(artistID, artist.getArtistName()), mDBManager.getArtistImageData(image), width, height);
+            BitmapCache.getInstance().putArtistImage(artist, bm, width, height);
             return bm;
         }
         return null;
     }
 
     public Bitmap getAlbumImage(final Context context, final AlbumModel album, int width, int height, boolean skipCache) throws ImageNotFoundException {
+        return getAlbumImage(context, album, null, width, height, skipCache);
+    }
+
+    /**
+     * Gets the image of the album. If the album was never searched for, the artwork next to its music files is
+     * used (s. {@link LocalArtworkResolver}).
+     *
+     * @param trackPath Path of a track of the album or null to look it up in the music library
+     * @param width     Requested width for the image (-1 if it does not matter)
+     * @param height    Requested height for the image (-1 if it does not matter)
+     * @throws ImageNotFoundException If the album has no image yet
+     */
+    public Bitmap getAlbumImage(final Context context, final AlbumModel album, final String trackPath, int width, int height, boolean skipCache) throws ImageNotFoundException {
         if (null == album) {
             return null;
         }
 
         if (!skipCache) {
             // Try cache first
-            Bitmap cacheBitmap = BitmapCache.getInstance().requestAlbumBitmap(album);
-            if (cacheBitmap != null && width <= cacheBitmap.getWidth() && height <= cacheBitmap.getWidth()) {
+            Bitmap cacheBitmap = BitmapCache.getInstance().requestAlbumBitmap(album, width, height);
+            if (cacheBitmap != null) {
                 return cacheBitmap;
             }
         }
@@ -294,8 +433,8 @@ public class ArtworkManager implements ArtistFetchError, AlbumFetchError {
         String albumURL = album.getAlbumArtURL();
         if (albumURL != null && !albumURL.isEmpty()) {
             // Local album art found (android database)
-            Bitmap bm = BitmapUtils.decodeSampledBitmapFromFile(albumURL, width, height);
-            BitmapCache.getInstance().putAlbumBitmap(album, bm);
+            Bitmap bm = decodeImage(context, ThumbnailCache.getAlbumKey(album.getAlbumID(), album.getAlbumName()), albumURL, width, height);
+            BitmapCache.getInstance().putAlbumBitmap(album, bm, width, height);
             return bm;
         }
 
@@ -304,21 +443,21 @@ public class ArtworkManager implements ArtistFetchError, AlbumFetchError {
 
         String image;
 
-        if (albumID == -1) {
-            // Check if ID is available (should be the case). If not use the album name for
-            // lookup.
-            // FIXME use artistname also
-            image = mDBManager.getAlbumImage(context, album.getAlbumName());
-        } else {
-            // If id is available use it.
-            image = mDBManager.getAlbumImage(context, album.getAlbumID());
+        try {
+            image = getDatabaseAlbumImage(context, album);
+        } catch (ImageNotFoundException e) {
+            // Never searched for, check the folder of the music files before the image is downloaded
+            if (!mLocalArtworkResolver.resolveAlbumImage(context, album, trackPath)) {
+                throw e;
+            }
+            image = getDatabaseAlbumImage(context, album);
         }
 
         // Checks if the database has an image for the requested album
         if (null != image) {
-            // Create a bitmap from the data blob in the database
-            Bitmap bm = BitmapUtils.decodeSampledBitmapFromFile(image, width, height);
-            BitmapCache.getInstance().putAlbumBitmap(album, bm);
+            // Create a bitmap from the stored image or its thumbnail
+            Bitmap bm = decodeImage(context, ThumbnailCache.getAlbumKey(albumID, album.getAlbumName()), mDBManager.getAlbumImageData(image), width, height);
+            BitmapCache.getInstance().putAlbumBitmap(album, bm, width, height);
             return bm;
         }
         return null;
@@ -330,12 +469,68 @@ public class ArtworkManager implements ArtistFetchError, AlbumFetchError {
         }
 
         // get album information for the current track
-        AlbumModel album = MusicLibraryHelper.createAlbumModelFromKey(track.getTrackAlbumKey(), context);
+        AlbumModel album = MusicLibraryHelper.createAlbumModelForTrack(track, context);
         if (album == null) {
             return null;
         }
 
-        return getAlbumImage(context, album, width, height, skipCache);
+        return getAlbumImage(context, album, track.getTrackURL(), width, height, skipCache);
+    }
+
+    /**
+     * Looks up the image of the album in the database, by its id if available (should be the case),
+     * otherwise by its name.
+     *
+     * @return The name of the stored image or null if the album has no image
+     * @throws ImageNotFoundException If the album was never searched for
+     */
+    private String getDatabaseAlbumImage(final Context context, final AlbumModel album) throws ImageNotFoundException {
+        if (album.getAlbumID() == -1) {
+            // FIXME use artistname also
+            return mDBManager.getAlbumImage(context, album.getAlbumName());
+        } else {
+            return mDBManager.getAlbumImage(context, album.getAlbumID());
+        }
+    }
+
+    /**
+     * Decodes an artwork image for the requested size. Small sizes are served by the {@link ThumbnailCache}.
+     *
+     * @param context      Context used for the thumbnail cache
+     * @param thumbnailKey Key of the artwork in the thumbnail cache
+     * @param imagePath    Path of the full artwork file
+     * @param width        Requested width for the image (-1 if it does not matter)
+     * @param height       Requested height for the image (-1 if it does not matter)
+     * @return The decoded bitmap or null if the file could not be decoded
+     */
+    private Bitmap decodeImage(final Context context, final String thumbnailKey, final String imagePath, int width, int height) {
+        Bitmap bm = ThumbnailCache.getInstance(context).getThumbnail(thumbnailKey, imagePath, width, height);
+        if (bm == null) {
+            bm = BitmapUtils.decodeSampledBitmapFromFile(imagePath, width, height);
+        }
+        return bm;
+    }
+
+    /**
+     * Decodes an image of the artwork store for the requested size. Small sizes are served by the {@link ThumbnailCache}.
+     *
+     * @param context      Context used for the thumbnail cache
+     * @param thumbnailKey Key of the artwork in the thumbnail cache
+     * @param image        The stored image, can be null
+     * @param width        Requested width for the image (-1 if it does not matter)
+     * @param height       Requested height for the image (-1 if it does not matter)
+     * @return The decoded bitmap or null if the image could not be decoded
+     */
+    private Bitmap decodeImage(final Context context, final String thumbnailKey, final ArtworkStore.Image image, int width, int height) {
+        if (image == null) {
+            return null;
+        }
+
+        Bitmap bm = ThumbnailCache.getInstance(context).getThumbnail(thumbnailKey, image.mData, image.mSourceId, width, height);
+        if (bm == null) {
+            bm = BitmapUtils.decodeSampledBitmapFromBuffer(image.mData, width, height);
+        }
+        return bm;
     }
 
     /**
@@ -344,15 +539,36 @@ public class ArtworkManager implements ArtistFetchError, AlbumFetchError {
      * @param artist Artist to fetch an image for.
      */
     public void fetchArtistImage(final ArtistModel artist, final Context context) {
+        fetchArtistImage(artist, context, Request.Priority.NORMAL);
+    }
+
+    /**
+     * Starts an asynchronous fetch for the image of the given artist.
+     *
+     * @param artist   Artist to fetch an image for.
+     * @param priority Priority of the requests, bulk downloads use a low priority.
+     * @return False if downloads are not allowed at the moment, true if the image is on its way
+     */
+    private boolean fetchArtistImage(final ArtistModel artist, final Context context, final Request.Priority priority) {
         if (!isDownloadAllowed(context)) {
-            return;
+            return false;
         }
 
-        if (mArtistProvider.equals(context.getString(R.string.pref_artwork_provider_lastfm_key))) {
-            LastFMManager.getInstance(context).fetchArtistImage(artist, context, response -> new InsertArtistImageTask(context).execute(response), this);
-        } else if (mArtistProvider.equals(context.getString(R.string.pref_artwork_provider_fanarttv_key))) {
-            FanartTVManager.getInstance(context).fetchArtistImage(artist, context, response -> new InsertArtistImageTask(context).execute(response), this);
+        if (!startFetch(mRunningArtistFetches, getFetchKey(artist))) {
+            // The image is already on its way
+            return true;
+        }
+
+        // The result is stored for the provider that searched, even if the setting changes in the meantime
+        final String provider = mArtistProvider;
+        final ArtistFetchError errorListener = new ArtistFetchErrorListener(provider);
+
+        if (provider.equals(context.getString(R.string.pref_artwork_provider_lastfm_key))) {
+            LastFMManager.getInstance(context).fetchArtistImage(artist, context, response -> insertArtistImage(context, response, provider), errorListener, priority);
+        } else if (provider.equals(context.getString(R.string.pref_artwork_provider_fanarttv_key))) {
+            FanartTVManager.getInstance(context).fetchArtistImage(artist, context, response -> insertArtistImage(context, response, provider), errorListener, priority);
         }
+        return true;
     }
 
     /**
@@ -361,15 +577,36 @@ public class ArtworkManager implements ArtistFetchError, AlbumFetchError {
      * @param album Album to fetch an image for.
      */
     public void fetchAlbumImage(final AlbumModel album, final Context context) {
+        fetchAlbumImage(album, context, Request.Priority.NORMAL);
+    }
+
+    /**
+     * Starts an asynchronous fetch for the image of the given album
+     *
+     * @param album    Album to fetch an image for.
+     * @param priority Priority of the requests, bulk downloads use a low priority.
+     * @return False if downloads are not allowed at the moment, true if the image is on its way
+     */
+    private boolean fetchAlbumImage(final AlbumModel album, final Context context, final Request.Priority priority) {
         if (!isDownloadAllowed(context)) {
-            return;
+            return false;
+        }
+
+        if (!startFetch(mRunningAlbumFetches, getFetchKey(album))) {
+            // The image is already on its way
+            return true;
         }
 
-        if (mAlbumProvider.equals(context.getString(R.string.pref_artwork_provider_musicbrainz_key))) {
-            MusicBrainzManager.getInstance(context).fetchAlbumImage(album, context, response -> new InsertAlbumImageTask(context).execute(response), this);
-        } else if (mAlbumProvider.equals(context.getString(R.string.pref_artwork_provider_lastfm_key))) {
-            LastFMManager.getInstance(context).fetchAlbumImage(album, context, response -> new InsertAlbumImageTask(context).execute(response), this);
+        // The result is stored for the provider that searched, even if the setting changes in the meantime
+        final String provider = mAlbumProvider;
+        final AlbumFetchError errorListener = new AlbumFetchErrorListener(provider);
+
+        if (provider.equals(context.getString(R.string.pref_artwork_provider_musicbrainz_key))) {
+            MusicBrainzManager.getInstance(context).fetchAlbumImage(album, context, response -> insertAlbumImage(context, response, provider), errorListener, priority);
+        } else if (provider.equals(context.getString(R.string.pref_artwork_provider_lastfm_key))) {
+            LastFMManager.getInstance(context).fetchAlbumImage(album, context, response -> insertAlbumImage(context, response, provider), errorListener, priority);
         }
+        return true;
     }
 
     /**
@@ -382,17 +619,56 @@ public class ArtworkManager implements ArtistFetchError, AlbumFetchError {
             return;
         }
 
-        // Create a dummy album
-        AlbumModel album = new AlbumModel(track.getTrackAlbumName(), null, track.getTrackArtistName(),
-                track.getTrackAlbumKey(), MusicLibraryHelper.getAlbumIDFromKey(track.getTrackAlbumKey(), context));
+        AlbumModel album = MusicLibraryHelper.createAlbumModelForTrack(track, context);
+        if (album == null || album.getAlbumName() == null) {
+            // Nothing to search for
+            return;
+        }
+
+        fetchAlbumImage(album, context, Request.Priority.NORMAL);
+    }
+
+    /**
+     * Registers a fetch unless the same image is fetched already.
+     *
+     * @param runningFetches The running fetches of albums or artists
+     * @param key            Identity of the album or artist
+     * @return True if the fetch should be started, false if it is running already
+     */
+    private static boolean startFetch(final HashMap<String, Long> runningFetches, final String key) {
+        final long now = SystemClock.elapsedRealtime();
+
+        synchronized (runningFetches) {
+            final Long startTime = runningFetches.get(key);
 
-        if (mAlbumProvider.equals(context.getString(R.string.pref_artwork_provider_musicbrainz_key))) {
-            MusicBrainzManager.getInstance(context).fetchAlbumImage(album, context, response -> new InsertAlbumImageTask(context).execute(response), this);
-        } else if (mAlbumProvider.equals(context.getString(R.string.pref_artwork_provider_lastfm_key))) {
-            LastFMManager.getInstance(context).fetchAlbumImage(album, context, response -> new InsertAlbumImageTask(context).execute(response), this);
+            // Fetches that never returned a result (e.g. because no image URL was found) do not block forever
+            if (startTime != null && now - startTime < FETCH_TIMEOUT) {
+                return false;
+            }
+
+            runningFetches.put(key, now);
+            return true;
+        }
+    }
+
+    private static void finishFetch(final HashMap<String, Long> runningFetches, final String key) {
+        synchronized (runningFetches) {
+            runningFetches.remove(key);
         }
     }
 
+    /**
+     * Different screens create different models for the same album, so the album is identified by its id
+     * or, if no id is available, by its name.
+     */
+    private static String getFetchKey(final AlbumModel album) {
+        return album.getAlbumID() != -1 ? String.valueOf(album.getAlbumID()) : "name:" + album.getAlbumName();
+    }
+
+    private static String getFetchKey(final ArtistModel artist) {
+        return artist.getArtistID() != -1 ? String.valueOf(artist.getArtistID()) : "name:" + artist.getArtistName();
+    }
+
     /**
      * Registers a listener that gets notified when a new artist image was added to the dataset.
      *
@@ -446,251 +722,456 @@ public class ArtworkManager implements ArtistFetchError, AlbumFetchError {
     }
 
     /**
-     * Interface implementation to handle errors during fetching of album images
+     * Checks the current network state if an artwork download is allowed.
      *
-     * @param album Album that resulted in a fetch error
+     * @param context The current context to resolve the networkinfo
+     * @return true if a download is allowed else false
      */
-    @Override
-    public void fetchJSONException(AlbumModel album, Context context, JSONException exception) {
-        Log.e(TAG, "JSONException for album: " + album.getAlbumName() + "-" + album.getArtistName());
-        AlbumImageResponse imageResponse = new AlbumImageResponse();
-        imageResponse.album = album;
-        imageResponse.image = null;
-        imageResponse.url = null;
-        new InsertAlbumImageTask(context).execute(imageResponse);
+    private boolean isDownloadAllowed(final Context context) {
+        ConnectivityManager cm = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+
+        NetworkInfo networkInfo = cm.getActiveNetworkInfo();
+
+        if (networkInfo == null) {
+            return false;
+        } else {
+            boolean isWifi = networkInfo.getType() == ConnectivityManager.TYPE_WIFI || networkInfo.getType() == ConnectivityManager.TYPE_ETHERNET;
+
+            return !(mWifiOnly && !isWifi);
+        }
+    }
+
+    /**
+     * Hands a downloaded artist image to the image processing threads. The Volley response is handled in the UI thread.
+     */
+    private void insertArtistImage(final Context context, final ArtistImageResponse response, final String provider) {
+        mImageProcessor.execute(new InsertArtistImageTask(context, response, provider));
     }
 
     /**
-     * Interface implementation to handle errors during fetching of album images
+     * Hands a downloaded album image to the image processing threads. The Volley response is handled in the UI thread.
+     */
+    private void insertAlbumImage(final Context context, final AlbumImageResponse response, final String provider) {
+        mImageProcessor.execute(new InsertAlbumImageTask(context, response, provider));
+    }
+
+    /**
+     * Saves a downloaded artist image as artwork file. Images within the maximum resolution and size are saved
+     * as they are, other images are scaled down and encoded directly into the artwork store.
      *
-     * @param album Album that resulted in a fetch error
+     * @param image The downloaded image
+     * @return The name of the artwork file or null if the image could not be saved
      */
-    @Override
-    public void fetchVolleyError(AlbumModel album, Context context, VolleyError error) {
-        Log.e(TAG, "VolleyError for album: " + album.getAlbumName() + "-" + album.getArtistName());
+    private String saveArtistImage(final Context context, final ArtistModel artist, final byte[] image) {
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(image, 0, image.length, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            // Not an image
+            return null;
+        }
 
-        if (error != null) {
-            NetworkResponse networkResponse = error.networkResponse;
-            if (networkResponse != null && networkResponse.statusCode == 503) {
-                mAlbumList.clear();
-                cancelAllRequests(context);
+        if (options.outWidth <= MAXIMUM_IMAGE_RESOLUTION && options.outHeight <= MAXIMUM_IMAGE_RESOLUTION && image.length <= MAXIMUM_IMAGE_SIZE) {
+            return mDBManager.saveArtistImageFile(context, artist, image);
+        }
 
-                synchronized (mArtistList) {
-                    mArtistList.clear();
-                }
-                if (mBulkProgressCallback != null) {
-                    mBulkProgressCallback.finishedLoading();
-                }
-                return;
-            }
+        final Bitmap bm = decodeScaledImage(image, options);
+        if (bm == null) {
+            return null;
         }
 
-        AlbumImageResponse imageResponse = new AlbumImageResponse();
-        imageResponse.album = album;
-        imageResponse.image = null;
-        imageResponse.url = null;
-        new InsertAlbumImageTask(context).execute(imageResponse);
+        final String fileName = mDBManager.saveArtistImageFile(context, artist, bm, IMAGE_COMPRESSION_SETTING);
+        bm.recycle();
+        return fileName;
     }
 
     /**
-     * Interface implementation to handle errors during fetching of artist images
+     * Saves a downloaded or local album image as artwork file. Images within the maximum resolution and size are saved
+     * as they are, other images are scaled down and encoded directly into the artwork store.
      *
-     * @param artist Artist that resulted in a fetch error
+     * @param image The downloaded image
+     * @return The name of the artwork file or null if the image could not be saved
      */
-    @Override
-    public void fetchJSONException(ArtistModel artist, Context context, JSONException exception) {
-        Log.e(TAG, "JSONException fetching: " + artist.getArtistName());
-        ArtistImageResponse imageResponse = new ArtistImageResponse();
-        imageResponse.artist = artist;
-        imageResponse.image = null;
-        imageResponse.url = null;
-        new InsertArtistImageTask(context).execute(imageResponse);
+    String saveAlbumImage(final Context context, final AlbumModel album, final byte[] image) {
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(image, 0, image.length, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            // Not an image
+            return null;
+        }
+
+        if (options.outWidth <= MAXIMUM_IMAGE_RESOLUTION && options.outHeight <= MAXIMUM_IMAGE_RESOLUTION && image.length <= MAXIMUM_IMAGE_SIZE) {
+            return mDBManager.saveAlbumImageFile(context, album, image);
+        }
+
+        final Bitmap bm = decodeScaledImage(image, options);
+        if (bm == null) {
+            return null;
+        }
+
+        final String fileName = mDBManager.saveAlbumImageFile(context, album, bm, IMAGE_COMPRESSION_SETTING);
+        bm.recycle();
+        return fileName;
     }
 
     /**
-     * Interface implementation to handle errors during fetching of artist images
+     * Decodes an image that has to be encoded again. Images that are too big are scaled down to the maximum
+     * resolution. They are decoded with the largest sample size that keeps them above the maximum resolution,
+     * so the memory needed does not grow with the size of the download.
      *
-     * @param artist Artist that resulted in a fetch error
+     * @param image   The downloaded image
+     * @param options Options containing the bounds of the image
+     * @return The decoded image or null if it could not be decoded
      */
-    @Override
-    public void fetchVolleyError(ArtistModel artist, Context context, VolleyError error) {
-        Log.e(TAG, "VolleyError fetching: " + artist.getArtistName());
+    private static Bitmap decodeScaledImage(final byte[] image, final BitmapFactory.Options options) {
+        final boolean tooBig = options.outWidth > MAXIMUM_IMAGE_RESOLUTION || options.outHeight > MAXIMUM_IMAGE_RESOLUTION;
+        final int width = tooBig ? MAXIMUM_IMAGE_RESOLUTION : options.outWidth;
+        final int height = tooBig ? MAXIMUM_IMAGE_RESOLUTION : options.outHeight;
+
+        options.inSampleSize = BitmapUtils.calculateInSampleSize(options, width, height);
+        options.inJustDecodeBounds = false;
+        final Bitmap sampled = BitmapFactory.decodeByteArray(image, 0, image.length, options);
+        if (sampled == null || (sampled.getWidth() == width && sampled.getHeight() == height)) {
+            return sampled;
+        }
 
-        if (error != null) {
-            NetworkResponse networkResponse = error.networkResponse;
-            if (networkResponse != null && networkResponse.statusCode == 503) {
-                mArtistList.clear();
-                cancelAllRequests(context);
+        final Bitmap scaled = Bitmap.createScaledBitmap(sampled, width, height, true);
+        if (scaled != sampled) {
+            sampled.recycle();
+        }
+        return scaled;
+    }
+
+    /**
+     * Queues the saved image for the database writer.
+     *
+     * @param fileName Name of the saved image file, null if no image was found
+     * @param provider Provider that searched for the image
+     */
+    private void queueArtistImage(final Context context, final ArtistModel artist, final String fileName, final String provider) {
+        synchronized (mPendingImagesLock) {
+            mPendingArtists.add(artist);
+            mPendingArtistFiles.add(fileName);
+            mPendingArtistProviders.add(provider);
+        }
+        scheduleWrite(context);
+    }
 
-                synchronized (mAlbumList) {
-                    mAlbumList.clear();
+    /**
+     * Queues the saved image for the database writer.
+     *
+     * @param fileName Name of the saved image file, null if no image was found
+     * @param provider Provider that searched for the image
+     */
+    private void queueAlbumImage(final Context context, final AlbumModel album, final String fileName, final String provider) {
+        synchronized (mPendingImagesLock) {
+            mPendingAlbums.add(album);
+            mPendingAlbumFiles.add(fileName);
+            mPendingAlbumProviders.add(provider);
+        }
+        scheduleWrite(context);
+    }
+
+    private void scheduleWrite(final Context context) {
+        synchronized (mPendingImagesLock) {
+            if (mWriteScheduled) {
+                // The images are taken by the next write
+                return;
+            }
+            mWriteScheduled = true;
+        }
+        mDatabaseWriter.execute(() -> writePendingImages(context));
+    }
+
+    /**
+     * Inserts all pending images to the database. Images that are processed while a write is running
+     * are collected for the next write.
+     */
+    private void writePendingImages(final Context context) {
+        final List<AlbumModel> albums;
+        final List<String> albumFiles;
+        final List<String> albumProviders;
+        final List<ArtistModel> artists;
+        final List<String> artistFiles;
+        final List<String> artistProviders;
+
+        synchronized (mPendingImagesLock) {
+            albums = new ArrayList<>(mPendingAlbums);
+            albumFiles = new ArrayList<>(mPendingAlbumFiles);
+            albumProviders = new ArrayList<>(mPendingAlbumProviders);
+            artists = new ArrayList<>(mPendingArtists);
+            artistFiles = new ArrayList<>(mPendingArtistFiles);
+            artistProviders = new ArrayList<>(mPendingArtistProviders);
+            mPendingAlbums.clear();
+            mPendingAlbumFiles.clear();
+            mPendingAlbumProviders.clear();
+            mPendingArtists.clear();
+            mPendingArtistFiles.clear();
+            mPendingArtistProviders.clear();
+            mWriteScheduled = false;
+        }
+
+        if (!albums.isEmpty()) {
+            // One transaction per provider, usually all images were searched by the same provider
+            for (String provider : new HashSet<>(albumProviders)) {
+                final List<AlbumModel> providerAlbums = new ArrayList<>();
+                final List<String> providerFiles = new ArrayList<>();
+                for (int i = 0; i < albums.size(); i++) {
+                    if (provider.equals(albumProviders.get(i))) {
+                        providerAlbums.add(albums.get(i));
+                        providerFiles.add(albumFiles.get(i));
+                    }
                 }
-                if (mBulkProgressCallback != null) {
-                    mBulkProgressCallback.finishedLoading();
+                mDBManager.insertAlbumImages(context, providerAlbums, providerFiles, provider);
+            }
+
+            // Requests for the images are answered by the index from now on
+            for (AlbumModel album : albums) {
+                finishFetch(mRunningAlbumFetches, getFetchKey(album));
+            }
+
+            for (int i = 0; i < albums.size(); i++) {
+                if (albumFiles.get(i) != null) {
+                    broadcastNewAlbumImageInfo(albums.get(i), context);
                 }
-                return;
+                notifyAlbumListeners(albums.get(i));
             }
         }
 
-        ArtistImageResponse imageResponse = new ArtistImageResponse();
-        imageResponse.artist = artist;
-        imageResponse.image = null;
-        imageResponse.url = null;
-        new InsertArtistImageTask(context).execute(imageResponse);
+        if (!artists.isEmpty()) {
+            for (String provider : new HashSet<>(artistProviders)) {
+                final List<ArtistModel> providerArtists = new ArrayList<>();
+                final List<String> providerFiles = new ArrayList<>();
+                for (int i = 0; i < artists.size(); i++) {
+                    if (provider.equals(artistProviders.get(i))) {
+                        providerArtists.add(artists.get(i));
+                        providerFiles.add(artistFiles.get(i));
+                    }
+                }
+                mDBManager.insertArtistImages(context, providerArtists, providerFiles, provider);
+            }
+
+            // Requests for the images are answered by the index from now on
+            for (ArtistModel artist : artists) {
+                finishFetch(mRunningArtistFetches, getFetchKey(artist));
+            }
+
+            for (int i = 0; i < artists.size(); i++) {
+                if (artistFiles.get(i) != null) {
+                    broadcastNewArtistImageInfo(artists.get(i), context);
+                }
+                notifyArtistListeners(artists.get(i));
+            }
+        }
+
+        if (albumFiles.contains(null) || artistFiles.contains(null)) {
+            // Searches without result are retried later
+            ArtworkRetryService.scheduleRetries(context, false);
+        }
     }
 
     /**
-     * Checks the current network state if an artwork download is allowed.
+     * Notifies the listeners about a change in the image dataset in the UI thread.
      *
-     * @param context The current context to resolve the networkinfo
-     * @return true if a download is allowed else false
+     * @param artist Artist that was inserted in the database
      */
-    private boolean isDownloadAllowed(final Context context) {
-        ConnectivityManager cm = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+    private void notifyArtistListeners(final ArtistModel artist) {
+        mMainHandler.post(() -> {
+            synchronized (mArtistListeners) {
+                for (onNewArtistImageListener artistListener : mArtistListeners) {
+                    artistListener.newArtistImage(artist);
+                }
+            }
+        });
+    }
 
-        NetworkInfo networkInfo = cm.getActiveNetworkInfo();
+    /**
+     * Notifies the listeners about a change in the image dataset in the UI thread.
+     *
+     * @param album Album that was inserted in the database
+     */
+    private void notifyAlbumListeners(final AlbumModel album) {
+        mMainHandler.post(() -> {
+            synchronized (mAlbumListeners) {
+                for (onNewAlbumImageListener albumListener : mAlbumListeners) {
+                    albumListener.newAlbumImage(album);
+                }
+            }
+        });
+    }
 
-        if (networkInfo == null) {
-            return false;
-        } else {
-            boolean isWifi = networkInfo.getType() == ConnectivityManager.TYPE_WIFI || networkInfo.getType() == ConnectivityManager.TYPE_ETHERNET;
+    /**
+     * Task to scale a downloaded artist image before it is inserted to the SQLdatabase.
+     */
+    private class InsertArtistImageTask implements Runnable {
 
-            return !(mWifiOnly && !isWifi);
+        private final Context mContext;
+
+        private final ArtistImageResponse mResponse;
+
+        private final String mProvider;
+
+        InsertArtistImageTask(Context context, ArtistImageResponse response, String provider) {
+            mContext = context;
+            mResponse = response;
+            mProvider = provider;
+        }
+
+        @Override
+        public void run() {
+            // The fetch is finished by the database writer once the image is in the index
+            if (mResponse.image == null) {
+                queueArtistImage(mContext, mResponse.artist, null, mProvider);
+            } else {
+                // Rescale them if to big
+                final String fileName = saveArtistImage(mContext, mResponse.artist, mResponse.image);
+                if (fileName != null) {
+                    queueArtistImage(mContext, mResponse.artist, fileName, mProvider);
+                } else {
+                    finishFetch(mRunningArtistFetches, getFetchKey(mResponse.artist));
+                    broadcastNewArtistImageInfo(mResponse.artist, mContext);
+                    notifyArtistListeners(mResponse.artist);
+                }
+            }
+
+            // The bulk download may wait for a fetch that was started by someone else
+            finishBulkArtist(mContext, mResponse.artist);
         }
     }
 
     /**
-     * AsyncTask to insert the images to the SQLdatabase. This is necessary as the Volley response
-     * is handled in the UI thread.
+     * Task to scale a downloaded album image before it is inserted to the SQLdatabase.
      */
-    private class InsertArtistImageTask extends AsyncTask<ArtistImageResponse, Object, ArtistModel> {
+    private class InsertAlbumImageTask implements Runnable {
 
         private final Context mContext;
 
-        public InsertArtistImageTask(Context context) {
+        private final AlbumImageResponse mResponse;
+
+        private final String mProvider;
+
+        InsertAlbumImageTask(Context context, AlbumImageResponse response, String provider) {
             mContext = context;
+            mResponse = response;
+            mProvider = provider;
         }
 
-        /**
-         * Inserts the image to the database.
-         *
-         * @param params Pair of byte[] (containing the image itself) and ArtistModel for which the image is for
-         * @return the artist model that was inserted to the database.
-         */
         @Override
-        protected ArtistModel doInBackground(ArtistImageResponse... params) {
-            ArtistImageResponse response = params[0];
-
-            if (mCurrentBulkArtist == response.artist) {
-                fetchNextBulkArtist(mContext);
-            }
-            if (response.image == null) {
-                mDBManager.insertArtistImage(mContext, response.artist, null);
-                return response.artist;
-            }
-
-            // Rescale them if to big
-            BitmapFactory.Options options = new BitmapFactory.Options();
-            options.inJustDecodeBounds = true;
-            BitmapFactory.decodeByteArray(response.image, 0, response.image.length, options);
-            if ((options.outHeight > MAXIMUM_IMAGE_RESOLUTION || options.outWidth > MAXIMUM_IMAGE_RESOLUTION)) {
-                options.inJustDecodeBounds = false;
-                Bitmap bm = BitmapFactory.decodeByteArray(response.image, 0, response.image.length, options);
-                ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
-                Bitmap.createScaledBitmap(bm, MAXIMUM_IMAGE_RESOLUTION, MAXIMUM_IMAGE_RESOLUTION, true).compress(Bitmap.CompressFormat.JPEG, IMAGE_COMPRESSION_SETTING, byteStream);
-                if (byteStream.size() <= MAXIMUM_IMAGE_SIZE) {
-                    mDBManager.insertArtistImage(mContext, response.artist, byteStream.toByteArray());
-                }
+        public void run() {
+            // The fetch is finished by the database writer once the image is in the index
+            if (mResponse.image == null) {
+                queueAlbumImage(mContext, mResponse.album, null, mProvider);
             } else {
-                if (response.image.length <= MAXIMUM_IMAGE_SIZE) {
-                    mDBManager.insertArtistImage(mContext, response.artist, response.image);
+                // Rescale them if to big
+                final String fileName = saveAlbumImage(mContext, mResponse.album, mResponse.image);
+                if (fileName != null) {
+                    queueAlbumImage(mContext, mResponse.album, fileName, mProvider);
+                } else {
+                    finishFetch(mRunningAlbumFetches, getFetchKey(mResponse.album));
+                    broadcastNewAlbumImageInfo(mResponse.album, mContext);
+                    notifyAlbumListeners(mResponse.album);
                 }
             }
 
-            broadcastNewArtistImageInfo(response, mContext);
+            // The bulk download may wait for a fetch that was started by someone else
+            finishBulkAlbum(mContext, mResponse.album);
+        }
+    }
+
+    /**
+     * Handles errors during fetching of artist images for the provider that started the fetch.
+     */
+    private class ArtistFetchErrorListener implements ArtistFetchError {
+
+        private final String mProvider;
 
-            return response.artist;
+        ArtistFetchErrorListener(String provider) {
+            mProvider = provider;
         }
 
         /**
-         * Notifies the listeners about a change in the image dataset. Called in the UI thread.
-         *
-         * @param result Artist that was inserted in the database
+         * @param artist Artist that resulted in a fetch error
          */
-        protected void onPostExecute(ArtistModel result) {
-            synchronized (mArtistListeners) {
-                for (onNewArtistImageListener artistListener : mArtistListeners) {
-                    artistListener.newArtistImage(result);
+        @Override
+        public void fetchJSONException(ArtistModel artist, Context context, JSONException exception) {
+            Log.e(TAG, "JSONException fetching: " + artist.getArtistName());
+            ArtistImageResponse imageResponse = new ArtistImageResponse();
+            imageResponse.artist = artist;
+            imageResponse.image = null;
+            imageResponse.url = null;
+            insertArtistImage(context, imageResponse, mProvider);
+        }
+
+        /**
+         * @param artist Artist that resulted in a fetch error
+         */
+        @Override
+        public void fetchVolleyError(ArtistModel artist, Context context, VolleyError error) {
+            Log.e(TAG, "VolleyError fetching: " + artist.getArtistName());
+
+            if (error != null) {
+                NetworkResponse networkResponse = error.networkResponse;
+                if (networkResponse != null && (networkResponse.statusCode == 503 || networkResponse.statusCode == 429)) {
+                    // Stops a running bulk download as well, its next run continues with the remaining images
+                    cancelAllRequests(context);
+                    return;
                 }
             }
-        }
 
+            ArtistImageResponse imageResponse = new ArtistImageResponse();
+            imageResponse.artist = artist;
+            imageResponse.image = null;
+            imageResponse.url = null;
+            insertArtistImage(context, imageResponse, mProvider);
+        }
     }
 
     /**
-     * AsyncTask to insert the images to the SQLdatabase. This is necessary as the Volley response
-     * is handled in the UI thread.
+     * Handles errors during fetching of album images for the provider that started the fetch.
      */
-    private class InsertAlbumImageTask extends AsyncTask<AlbumImageResponse, Object, AlbumModel> {
+    private class AlbumFetchErrorListener implements AlbumFetchError {
 
-        private final Context mContext;
+        private final String mProvider;
 
-        public InsertAlbumImageTask(Context context) {
-            mContext = context;
+        AlbumFetchErrorListener(String provider) {
+            mProvider = provider;
         }
 
         /**
-         * Inserts the image to the database.
-         *
-         * @param params Pair of byte[] (containing the image itself) and AlbumModel for which the image is for
-         * @return the album model that was inserted to the database.
+         * @param album Album that resulted in a fetch error
          */
         @Override
-        protected AlbumModel doInBackground(AlbumImageResponse... params) {
-            AlbumImageResponse response = params[0];
-
-            if (mCurrentBulkAlbum == response.album) {
-                fetchNextBulkAlbum(mContext);
-            }
-            if (response.image == null) {
-                mDBManager.insertAlbumImage(mContext, response.album, null);
-                return response.album;
-            }
-
-            // Rescale them if to big
-            BitmapFactory.Options options = new BitmapFactory.Options();
-            options.inJustDecodeBounds = true;
-            BitmapFactory.decodeByteArray(response.image, 0, response.image.length, options);
-            if ((options.outHeight > MAXIMUM_IMAGE_RESOLUTION || options.outWidth > MAXIMUM_IMAGE_RESOLUTION)) {
-                options.inJustDecodeBounds = false;
-                Bitmap bm = BitmapFactory.decodeByteArray(response.image, 0, response.image.length, options);
-                ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
-                Bitmap.createScaledBitmap(bm, MAXIMUM_IMAGE_RESOLUTION, MAXIMUM_IMAGE_RESOLUTION, true).compress(Bitmap.CompressFormat.JPEG, IMAGE_COMPRESSION_SETTING, byteStream);
-                if (byteStream.size() <= MAXIMUM_IMAGE_SIZE) {
-                    mDBManager.insertAlbumImage(mContext, response.album, byteStream.toByteArray());
-                }
-            } else {
-                if (response.image.length <= MAXIMUM_IMAGE_SIZE) {
-                    mDBManager.insertAlbumImage(mContext, response.album, response.image);
-                }
-            }
-
-            broadcastNewAlbumImageInfo(response, mContext);
-
-            return response.album;
+        public void fetchJSONException(AlbumModel album, Context context, JSONException exception) {
+            Log.e(TAG, "JSONException for album: " + album.getAlbumName() + "-" + album.getArtistName());
+            AlbumImageResponse imageResponse = new AlbumImageResponse();
+            imageResponse.album = album;
+            imageResponse.image = null;
+            imageResponse.url = null;
+            insertAlbumImage(context, imageResponse, mProvider);
         }
 
         /**
-         * Notifies the listeners about a change in the image dataset. Called in the UI thread.
-         *
-         * @param result Album that was inserted in the database
+         * @param album Album that resulted in a fetch error
          */
-        protected void onPostExecute(AlbumModel result) {
-            synchronized (mAlbumListeners) {
-                for (onNewAlbumImageListener albumListener : mAlbumListeners) {
-                    albumListener.newAlbumImage(result);
+        @Override
+        public void fetchVolleyError(AlbumModel album, Context context, VolleyError error) {
+            Log.e(TAG, "VolleyError for album: " + album.getAlbumName() + "-" + album.getArtistName());
+
+            if (error != null) {
+                NetworkResponse networkResponse = error.networkResponse;
+                if (networkResponse != null && (networkResponse.statusCode == 503 || networkResponse.statusCode == 429)) {
+                    // Stops a running bulk download as well, its next run continues with the remaining images
+                    cancelAllRequests(context);
+                    return;
                 }
             }
+
+            AlbumImageResponse imageResponse = new AlbumImageResponse();
+            imageResponse.album = album;
+            imageResponse.image = null;
+            imageResponse.url = null;
+            insertAlbumImage(context, imageResponse, mProvider);
         }
     }
 
@@ -698,14 +1179,14 @@ public class ArtworkManager implements ArtistFetchError, AlbumFetchError {
      * Used to broadcast information about new available artwork to {@link BroadcastReceiver} like
      * the {@link org.gateshipone.odyssey.widget.OdysseyWidgetProvider} to reload its artwork.
      *
-     * @param artistImage Image response containing the artist that an image was inserted for.
-     * @param context     Context used for broadcasting
+     * @param artist  Artist that an image was inserted for.
+     * @param context Context used for broadcasting
      */
-    private void broadcastNewArtistImageInfo(ArtistImageResponse artistImage, Context context) {
+    private void broadcastNewArtistImageInfo(ArtistModel artist, Context context) {
         Intent newImageIntent = new Intent(ACTION_NEW_ARTWORK_READY);
 
-        newImageIntent.putExtra(INTENT_EXTRA_KEY_ARTIST_ID, artistImage.artist.getArtistID());
-        newImageIntent.putExtra(INTENT_EXTRA_KEY_ARTIST_NAME, artistImage.artist.getArtistName());
+        newImageIntent.putExtra(INTENT_EXTRA_KEY_ARTIST_ID, artist.getArtistID());
+        newImageIntent.putExtra(INTENT_EXTRA_KEY_ARTIST_NAME, artist.getArtistName());
 
         context.sendBroadcast(newImageIntent);
     }
@@ -714,15 +1195,15 @@ public class ArtworkManager implements ArtistFetchError, AlbumFetchError {
      * Used to broadcast information about new available artwork to {@link BroadcastReceiver} like
      * the {@link org.gateshipone.odyssey.widget.OdysseyWidgetProvider} to reload its artwork.
      *
-     * @param albumImage Image response containing the albums that an image was inserted for.
-     * @param context    Context used for broadcasting
+     * @param album   Album that an image was inserted for.
+     * @param context Context used for broadcasting
      */
-    private void broadcastNewAlbumImageInfo(AlbumImageResponse albumImage, Context context) {
+    private void broadcastNewAlbumImageInfo(AlbumModel album, Context context) {
         Intent newImageIntent = new Intent(ACTION_NEW_ARTWORK_READY);
 
-        newImageIntent.putExtra(INTENT_EXTRA_KEY_ALBUM_ID, albumImage.album.getAlbumID());
-        newImageIntent.putExtra(INTENT_EXTRA_KEY_ALBUM_KEY, albumImage.album.getAlbumKey());
-        newImageIntent.putExtra(INTENT_EXTRA_KEY_ALBUM_NAME, albumImage.album.getAlbumName());
+        newImageIntent.putExtra(INTENT_EXTRA_KEY_ALBUM_ID, album.getAlbumID());
+        newImageIntent.putExtra(INTENT_EXTRA_KEY_ALBUM_KEY, album.getAlbumKey());
+        newImageIntent.putExtra(INTENT_EXTRA_KEY_ALBUM_NAME, album.getAlbumName());
 
         context.sendBroadcast(newImageIntent);
     }
@@ -759,25 +1240,131 @@ public class ArtworkManager implements ArtistFetchError, AlbumFetchError {
      */
     public void cancelAllRequests(Context context) {
         LimitingRequestQueue.getInstance(context).cancelAll(request -> true);
+
+        // The cancelled fetches will never finish
+        synchronized (mRunningAlbumFetches) {
+            mRunningAlbumFetches.clear();
+        }
+        synchronized (mRunningArtistFetches) {
+            mRunningArtistFetches.clear();
+        }
+
+        // A running bulk download waits for the cancelled fetches, it is stopped
+        final BulkLoadingProgressCallback bulkProgressCallback;
+        synchronized (mBulkLock) {
+            bulkProgressCallback = mBulkProgressCallback;
+            mBulkProgressCallback = null;
+            mAlbumList.clear();
+            mArtistList.clear();
+            mBulkAlbumFetches.clear();
+            mBulkArtistFetches.clear();
+            mPendingBulkLists = 0;
+        }
+        if (bulkProgressCallback != null) {
+            bulkProgressCallback.finishedLoading();
+        }
     }
 
+    /**
+     * Downloads the images of all albums and artists that were not searched for before.
+     * <p>
+     * The albums and artists are filtered at once, afterwards up to {@link #BULK_PARALLEL_FETCHES} albums and
+     * artists are fetched at the same time while the downloaded images are processed and written to the
+     * database in the background. The images that are in the database already are skipped, so an interrupted
+     * bulk download continues with the remaining images when it is started again.
+     */
     public void bulkLoadImages(BulkLoadingProgressCallback progressCallback, Context context) {
         if (progressCallback == null) {
             return;
         }
-        mBulkProgressCallback = progressCallback;
-        mArtistList.clear();
-        mAlbumList.clear();
+
+        final boolean loadAlbums = !mAlbumProvider.equals(context.getString((R.string.pref_artwork_provider_none_key)));
+        final boolean loadArtists = !mArtistProvider.equals(context.getString((R.string.pref_artwork_provider_none_key)));
+
+        final BulkLoadingProgressCallback previousCallback;
+        synchronized (mBulkLock) {
+            previousCallback = mBulkProgressCallback;
+            mBulkProgressCallback = progressCallback;
+            mBulkRetry = false;
+            mArtistList.clear();
+            mAlbumList.clear();
+            mBulkAlbumFetches.clear();
+            mBulkArtistFetches.clear();
+            mPendingBulkLists = (loadAlbums ? 1 : 0) + (loadArtists ? 1 : 0);
+        }
+
+        if (previousCallback != null && previousCallback != progressCallback) {
+            // A running retry run is replaced, the bulk download searches all images that are due anyway
+            previousCallback.finishedLoading();
+        }
+
         Log.v(TAG, "Start bulk loading");
-        if (!mAlbumProvider.equals(context.getString((R.string.pref_artwork_provider_none_key)))) {
+        scheduleBulkWatchdog(context);
+        if (loadAlbums) {
             List<AlbumModel> albums = MusicLibraryHelper.getAllAlbums(context);
             new ParseAlbumListTask(context).execute(albums);
         }
 
-        if (!mArtistProvider.equals(context.getString((R.string.pref_artwork_provider_none_key)))) {
+        if (loadArtists) {
             List<ArtistModel> artists = MusicLibraryHelper.getAllArtists(false, context);
             new ParseArtistListTask(context).execute(artists);
         }
+
+        checkBulkFinished();
+    }
+
+    /**
+     * Searches the images again that were not found before and are due for a retry (s. {@link ArtworkRetryService}).
+     * <p>
+     * Up to {@link #RETRY_BATCH_SIZE} albums and artists are fetched like a bulk download, the searches without
+     * result are scheduled again with a longer interval.
+     *
+     * @return False if a bulk download is running, the progress callback is not notified in this case.
+     */
+    public boolean retryImages(BulkLoadingProgressCallback progressCallback, Context context, String artistProvider,
+                               String albumProvider, boolean wifiOnly) {
+        synchronized (mBulkLock) {
+            if (mBulkProgressCallback != null) {
+                return false;
+            }
+            // The settings of a running bulk download are kept
+            initialize(artistProvider, albumProvider, wifiOnly);
+            mBulkProgressCallback = progressCallback;
+            mBulkRetry = true;
+            mArtistList.clear();
+            mAlbumList.clear();
+            mBulkAlbumFetches.clear();
+            mBulkArtistFetches.clear();
+            mPendingBulkLists = 1;
+        }
+
+        final boolean loadAlbums = !albumProvider.equals(context.getString((R.string.pref_artwork_provider_none_key)));
+        final boolean loadArtists = !artistProvider.equals(context.getString((R.string.pref_artwork_provider_none_key)));
+
+        Log.v(TAG, "Start retry run");
+        scheduleBulkWatchdog(context);
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(() -> {
+            final List<AlbumModel> albums = loadAlbums ? mDBManager.getAlbumRetries(RETRY_BATCH_SIZE) : new ArrayList<>();
+            final List<ArtistModel> artists = loadArtists ? mDBManager.getArtistRetries(RETRY_BATCH_SIZE) : new ArrayList<>();
+
+            Log.v(TAG, "Retrying " + albums.size() + " albums and " + artists.size() + " artists");
+            synchronized (mBulkLock) {
+                if (mBulkProgressCallback != progressCallback) {
+                    // Cancelled in the meantime
+                    return;
+                }
+                mBulkProgressCallback.startAlbumLoading(albums.size());
+                mBulkProgressCallback.startArtistLoading(artists.size());
+                mAlbumList.addAll(albums);
+                mArtistList.addAll(artists);
+                mPendingBulkLists--;
+            }
+
+            fetchNextBulkAlbum(context);
+            fetchNextBulkArtist(context);
+        });
+
+        return true;
     }
 
     private class ParseAlbumListTask extends AsyncTask<List<AlbumModel>, Object, Object> {
@@ -791,14 +1378,17 @@ public class ArtworkManager implements ArtistFetchError, AlbumFetchError {
         @SafeVarargs
         @Override
         protected final Object doInBackground(List<AlbumModel>... lists) {
-            List<AlbumModel> albumList = lists[0];
-
-            mBulkProgressCallback.startAlbumLoading(albumList.size());
+            List<AlbumModel> albumList = removeKnownAlbums(mContext, lists[0]);
 
             Log.v(TAG, "Received " + albumList.size() + " albums for bulk loading");
-            synchronized (mAlbumList) {
-                mAlbumList.clear();
+            synchronized (mBulkLock) {
+                if (mBulkProgressCallback == null) {
+                    // Cancelled in the meantime
+                    return null;
+                }
+                mBulkProgressCallback.startAlbumLoading(albumList.size());
                 mAlbumList.addAll(albumList);
+                mPendingBulkLists--;
             }
 
             fetchNextBulkAlbum(mContext);
@@ -818,13 +1408,17 @@ public class ArtworkManager implements ArtistFetchError, AlbumFetchError {
         @SafeVarargs
         @Override
         protected final Object doInBackground(List<ArtistModel>... lists) {
-            List<ArtistModel> artistList = lists[0];
+            List<ArtistModel> artistList = removeKnownArtists(mContext, lists[0]);
 
             Log.v(TAG, "Received " + artistList.size() + " artists for bulk loading");
-            mBulkProgressCallback.startArtistLoading(artistList.size());
-            synchronized (mArtistList) {
-                mArtistList.clear();
+            synchronized (mBulkLock) {
+                if (mBulkProgressCallback == null) {
+                    // Cancelled in the meantime
+                    return null;
+                }
+                mBulkProgressCallback.startArtistLoading(artistList.size());
                 mArtistList.addAll(artistList);
+                mPendingBulkLists--;
             }
 
             fetchNextBulkArtist(mContext);
@@ -833,84 +1427,247 @@ public class ArtworkManager implements ArtistFetchError, AlbumFetchError {
         }
     }
 
-    private void fetchNextBulkAlbum(Context context) {
-        boolean isEmpty;
-        synchronized (mAlbumList) {
-            isEmpty = mAlbumList.isEmpty();
+    /**
+     * Removes the albums from the list that have an image or were searched for before.
+     * The albums are checked at once instead of one database query for each album.
+     */
+    private List<AlbumModel> removeKnownAlbums(Context context, List<AlbumModel> albums) {
+        long[] ids = new long[albums.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = albums.get(i).getAlbumID();
+        }
+
+        LongSparseArray<String> knownImages = mDBManager.getAlbumImagesFor(context, ids);
+
+        List<AlbumModel> unknownAlbums = new ArrayList<>();
+        for (AlbumModel album : albums) {
+            if (album.getAlbumID() == -1 || knownImages.indexOfKey(album.getAlbumID()) < 0) {
+                unknownAlbums.add(album);
+            }
         }
+        return unknownAlbums;
+    }
 
-        while (!isEmpty) {
+    /**
+     * Removes the artists from the list that have an image or were searched for before.
+     * The artists are checked at once instead of one database query for each artist.
+     */
+    private List<ArtistModel> removeKnownArtists(Context context, List<ArtistModel> artists) {
+        long[] ids = new long[artists.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = artists.get(i).getArtistID();
+        }
+
+        LongSparseArray<String> knownImages = mDBManager.getArtistImagesFor(context, ids);
+
+        List<ArtistModel> unknownArtists = new ArrayList<>();
+        for (ArtistModel artist : artists) {
+            if (artist.getArtistID() == -1 || knownImages.indexOfKey(artist.getArtistID()) < 0) {
+                unknownArtists.add(artist);
+            }
+        }
+        return unknownArtists;
+    }
+
+    /**
+     * Starts the fetches of the next albums until {@link #BULK_PARALLEL_FETCHES} albums are fetched.
+     */
+    private void fetchNextBulkAlbum(Context context) {
+        while (true) {
             AlbumModel album;
-            synchronized (mAlbumList) {
-                album = mAlbumList.remove(0);
+            boolean retry;
+            synchronized (mBulkLock) {
+                expireBulkFetches(mBulkAlbumFetches);
+                if (mBulkProgressCallback == null || mAlbumList.isEmpty() || mBulkAlbumFetches.size() >= BULK_PARALLEL_FETCHES) {
+                    break;
+                }
+                album = mAlbumList.poll();
                 Log.v(TAG, "Bulk load next album: " + album.getAlbumName() + ":" + album.getArtistName() + " remaining: " + mAlbumList.size());
                 mBulkProgressCallback.albumsRemaining(mAlbumList.size());
+                mBulkAlbumFetches.put(getFetchKey(album), SystemClock.elapsedRealtime());
+                retry = mBulkRetry;
             }
-            mCurrentBulkAlbum = album;
 
-            if (album.getAlbumArtURL() == null || album.getAlbumArtURL().isEmpty()) {
-                // Check if image already there
-                try {
-                    if (album.getAlbumID() != -1) {
-                        mDBManager.getAlbumImage(context, album.getAlbumID());
-                    } else {
-                        mDBManager.getAlbumImage(context, album.getAlbumName());
+            if (isBulkAlbumMissing(context, album, retry)) {
+                if (mLocalArtworkResolver.resolveAlbumImage(context, album, null)) {
+                    // Found next to the music files, nothing to download
+                    broadcastNewAlbumImageInfo(album, context);
+                } else {
+                    if (!fetchAlbumImage(album, context, Request.Priority.LOW)) {
+                        // Downloads are not allowed anymore, the next bulk download continues here
+                        cancelAllRequests(context);
+                        return;
                     }
-                    // If this does not throw the exception it already has an image.
-                } catch (ImageNotFoundException e) {
-                    fetchAlbumImage(album, context);
-                    return;
+                    // The album is finished when its image is processed
+                    continue;
                 }
             }
 
-            synchronized (mAlbumList) {
-                isEmpty = mAlbumList.isEmpty();
+            synchronized (mBulkLock) {
+                mBulkAlbumFetches.remove(getFetchKey(album));
             }
         }
 
-        if (mArtistList.isEmpty()) {
-            mBulkProgressCallback.finishedLoading();
-        }
+        checkBulkFinished();
     }
 
+    /**
+     * Starts the fetches of the next artists until {@link #BULK_PARALLEL_FETCHES} artists are fetched.
+     */
     private void fetchNextBulkArtist(Context context) {
-        boolean isEmpty;
-        synchronized (mArtistList) {
-            isEmpty = mArtistList.isEmpty();
-        }
-
-        while (!isEmpty) {
+        while (true) {
             ArtistModel artist;
-            synchronized (mArtistList) {
-                artist = mArtistList.remove(0);
+            boolean retry;
+            synchronized (mBulkLock) {
+                expireBulkFetches(mBulkArtistFetches);
+                if (mBulkProgressCallback == null || mArtistList.isEmpty() || mBulkArtistFetches.size() >= BULK_PARALLEL_FETCHES) {
+                    break;
+                }
+                artist = mArtistList.poll();
                 Log.v(TAG, "Bulk load next artist: " + artist.getArtistName() + " remaining: " + mArtistList.size());
                 mBulkProgressCallback.artistsRemaining(mArtistList.size());
+                mBulkArtistFetches.put(getFetchKey(artist), SystemClock.elapsedRealtime());
+                retry = mBulkRetry;
             }
-            mCurrentBulkArtist = artist;
 
-            // Check if image already there
-            try {
-                if (artist.getArtistID() != -1) {
-                    mDBManager.getArtistImage(context, artist.getArtistID());
-                } else {
-                    mDBManager.getArtistImage(context, artist.getArtistName());
+            if (isBulkArtistMissing(context, artist, retry)) {
+                if (!fetchArtistImage(artist, context, Request.Priority.LOW)) {
+                    // Downloads are not allowed anymore, the next bulk download continues here
+                    cancelAllRequests(context);
+                    return;
                 }
-                // If this does not throw the exception it already has an image.
-            } catch (ImageNotFoundException e) {
-                fetchArtistImage(artist, context);
-                return;
+                // The artist is finished when its image is processed
+                continue;
             }
 
-            synchronized (mArtistList) {
-                isEmpty = mArtistList.isEmpty();
+            synchronized (mBulkLock) {
+                mBulkArtistFetches.remove(getFetchKey(artist));
             }
         }
 
-        if (mAlbumList.isEmpty()) {
-            mBulkProgressCallback.finishedLoading();
+        checkBulkFinished();
+    }
+
+    /**
+     * Checks if the bulk download has to search for the image of the album.
+     *
+     * @param retry True if the album is searched again although it was not found before
+     * @return True if the album has no image yet
+     */
+    private boolean isBulkAlbumMissing(Context context, AlbumModel album, boolean retry) {
+        if (album.getAlbumArtURL() != null && !album.getAlbumArtURL().isEmpty()) {
+            return false;
+        }
+
+        try {
+            final String image = getDatabaseAlbumImage(context, album);
+            // Searched for before, only a retry run searches again if no image was found
+            return retry && image == null;
+        } catch (ImageNotFoundException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Checks if the bulk download has to search for the image of the artist.
+     *
+     * @param retry True if the artist is searched again although it was not found before
+     * @return True if the artist has no image yet
+     */
+    private boolean isBulkArtistMissing(Context context, ArtistModel artist, boolean retry) {
+        try {
+            final String image;
+            if (artist.getArtistID() != -1) {
+                image = mDBManager.getArtistImage(context, artist.getArtistID());
+            } else {
+                image = mDBManager.getArtistImage(context, artist.getArtistName());
+            }
+            // Searched for before, only a retry run searches again if no image was found
+            return retry && image == null;
+        } catch (ImageNotFoundException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Frees the slots of the bulk fetches that did not return a result within {@link #FETCH_TIMEOUT}, e.g. because
+     * the provider found no image URL. Must be called while holding {@link #mBulkLock}.
+     */
+    private static void expireBulkFetches(final HashMap<String, Long> bulkFetches) {
+        final long now = SystemClock.elapsedRealtime();
+
+        final Iterator<Long> startTimes = bulkFetches.values().iterator();
+        while (startTimes.hasNext()) {
+            if (now - startTimes.next() >= FETCH_TIMEOUT) {
+                startTimes.remove();
+            }
+        }
+    }
+
+    /**
+     * Continues the bulk download periodically while it is running, so the slots of fetches that never return
+     * a result are freed even if no other fetch finishes.
+     */
+    private void scheduleBulkWatchdog(final Context context) {
+        mMainHandler.removeCallbacksAndMessages(mBulkWatchdogToken);
+        mMainHandler.postAtTime(() -> {
+            synchronized (mBulkLock) {
+                if (mBulkProgressCallback == null) {
+                    return;
+                }
+            }
+
+            mImageProcessor.execute(() -> {
+                fetchNextBulkAlbum(context);
+                fetchNextBulkArtist(context);
+            });
+            scheduleBulkWatchdog(context);
+        }, mBulkWatchdogToken, SystemClock.uptimeMillis() + FETCH_TIMEOUT);
+    }
+
+    /**
+     * Continues the bulk download if it fetched the given album.
+     */
+    private void finishBulkAlbum(Context context, AlbumModel album) {
+        final boolean isBulkAlbum;
+        synchronized (mBulkLock) {
+            isBulkAlbum = mBulkAlbumFetches.remove(getFetchKey(album)) != null;
+        }
+
+        if (isBulkAlbum) {
+            fetchNextBulkAlbum(context);
         }
     }
 
+    /**
+     * Continues the bulk download if it fetched the given artist.
+     */
+    private void finishBulkArtist(Context context, ArtistModel artist) {
+        final boolean isBulkArtist;
+        synchronized (mBulkLock) {
+            isBulkArtist = mBulkArtistFetches.remove(getFetchKey(artist)) != null;
+        }
+
+        if (isBulkArtist) {
+            fetchNextBulkArtist(context);
+        }
+    }
+
+    /**
+     * Notifies the observer once all albums and artists are fetched.
+     */
+    private void checkBulkFinished() {
+        final BulkLoadingProgressCallback bulkProgressCallback;
+        synchronized (mBulkLock) {
+            if (mBulkProgressCallback == null || mPendingBulkLists > 0 || !mAlbumList.isEmpty() || !mArtistList.isEmpty()
+                    || !mBulkAlbumFetches.isEmpty() || !mBulkArtistFetches.isEmpty()) {
+                return;
+            }
+            bulkProgressCallback = mBulkProgressCallback;
+            mBulkProgressCallback = null;
+        }
+        bulkProgressCallback.finishedLoading();
+    }
 
     public interface BulkLoadingProgressCallback {
         void startAlbumLoading(int albumCount);
@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2018 Team Gateship-One
+ * (Hendrik Borghorst & Frederik Luetkes)
+ *
+ * The AUTHORS.md file contains a detailed contributors list:
+ * <https://github.com/gateship-one/odyssey/blob/master/AUTHORS.md>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.gateshipone.odyssey.artworkdatabase;
+
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+import android.preference.PreferenceManager;
+import android.util.Log;
+
+import org.gateshipone.odyssey.R;
+
+/**
+ * Job that searches the images again that were not found before.
+ * <p>
+ * Each image that was not found is searched again after an interval that grows with each search of the same
+ * provider without result (s. {@link ArtworkDatabaseManager}). The job runs when the next image is due and the
+ * network allowed by the settings is available, each run searches a batch of the due images.
+ */
+public class ArtworkRetryService extends JobService implements ArtworkManager.BulkLoadingProgressCallback {
+    private static final String TAG = ArtworkRetryService.class.getSimpleName();
+
+    private static final int JOB_ID = 85;
+
+    /**
+     * Minimum time in ms between two retry runs, so the remaining due images are searched in batches
+     */
+    private static final long MINIMUM_RETRY_DELAY = 15 * 60 * 1000;
+
+    /**
+     * Parameters of the running job, null if no retry run is active
+     */
+    private JobParameters mParams;
+
+    /**
+     * Schedules the next retry run for the image that is due first.
+     *
+     * @param reschedule True if a scheduled run should be replaced, e.g. because the settings changed.
+     *                   Otherwise a scheduled run is kept.
+     */
+    public static void scheduleRetries(final Context context, final boolean reschedule) {
+        final JobScheduler jobScheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+
+        if (!reschedule) {
+            for (JobInfo job : jobScheduler.getAllPendingJobs()) {
+                if (job.getId() == JOB_ID) {
+                    return;
+                }
+            }
+        }
+
+        SharedPreferences sharedPref = PreferenceManager.getDefaultSharedPreferences(context);
+        String artistProvider = sharedPref.getString(context.getString(R.string.pref_artist_provider_key), context.getString(R.string.pref_artwork_provider_artist_default));
+        String albumProvider = sharedPref.getString(context.getString(R.string.pref_album_provider_key), context.getString(R.string.pref_artwork_provider_album_default));
+        String noProvider = context.getString(R.string.pref_artwork_provider_none_key);
+
+        // Images of a type without provider are not searched, so they do not wake up the job
+        final long retryTime = ArtworkDatabaseManager.getInstance(context).getNextRetryTime(!albumProvider.equals(noProvider),
+                !artistProvider.equals(noProvider));
+        if (retryTime == -1) {
+            // Nothing to search again
+            jobScheduler.cancel(JOB_ID);
+            return;
+        }
+
+        boolean wifiOnly = sharedPref.getBoolean(context.getString(R.string.pref_download_wifi_only_key), context.getResources().getBoolean(R.bool.pref_download_wifi_default));
+
+        final JobInfo job = new JobInfo.Builder(JOB_ID, new ComponentName(context, ArtworkRetryService.class))
+                .setMinimumLatency(Math.max(MINIMUM_RETRY_DELAY, retryTime - System.currentTimeMillis()))
+                .setRequiredNetworkType(wifiOnly ? JobInfo.NETWORK_TYPE_UNMETERED : JobInfo.NETWORK_TYPE_ANY)
+                .setPersisted(true)
+                .build();
+
+        jobScheduler.schedule(job);
+    }
+
+    @Override
+    public boolean onStartJob(final JobParameters params) {
+        SharedPreferences sharedPref = PreferenceManager.getDefaultSharedPreferences(this);
+        String artistProvider = sharedPref.getString(getString(R.string.pref_artist_provider_key), getString(R.string.pref_artwork_provider_artist_default));
+        String albumProvider = sharedPref.getString(getString(R.string.pref_album_provider_key), getString(R.string.pref_artwork_provider_album_default));
+        boolean wifiOnly = sharedPref.getBoolean(getString(R.string.pref_download_wifi_only_key), getResources().getBoolean(R.bool.pref_download_wifi_default));
+
+        synchronized (this) {
+            mParams = params;
+        }
+
+        Log.v(TAG, "Starting retry run");
+        if (!ArtworkManager.getInstance(getApplicationContext()).retryImages(this, getApplicationContext(), artistProvider, albumProvider, wifiOnly)) {
+            synchronized (this) {
+                mParams = null;
+            }
+
+            // A bulk download is running, the due images are searched again after it
+            new Handler(Looper.getMainLooper()).post(() -> {
+                jobFinished(params, false);
+                scheduleRetries(getApplicationContext(), true);
+            });
+        }
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        final boolean running;
+        synchronized (this) {
+            running = mParams != null;
+            mParams = null;
+        }
+
+        if (running) {
+            // The images that were not searched yet stay due for the next run
+            Log.v(TAG, "Stopping retry run");
+            ArtworkManager.getInstance(getApplicationContext()).cancelAllRequests(getApplicationContext());
+        }
+        return running;
+    }
+
+    @Override
+    public void startAlbumLoading(int albumCount) {
+        // Retry runs are not shown
+    }
+
+    @Override
+    public void startArtistLoading(int artistCount) {
+        // Retry runs are not shown
+    }
+
+    @Override
+    public void albumsRemaining(int remainingAlbums) {
+        // Retry runs are not shown
+    }
+
+    @Override
+    public void artistsRemaining(int remainingArtists) {
+        // Retry runs are not shown
+    }
+
+    @Override
+    public void finishedLoading() {
+        final JobParameters params;
+        synchronized (this) {
+            params = mParams;
+            mParams = null;
+        }
+
+        if (params == null) {
+            // Stopped before
+            return;
+        }
+
+        Log.v(TAG, "Finished retry run");
+        jobFinished(params, false);
+
+        // The next run starts when the next image is due
+        scheduleRetries(getApplicationContext(), true);
+    }
+}
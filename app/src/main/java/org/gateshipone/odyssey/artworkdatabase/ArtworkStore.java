@@ -0,0 +1,846 @@
+/*
+ * Copyright (C) 2018 Team Gateship-One
+ * (Hendrik Borghorst & Frederik Luetkes)
+ *
+ * The AUTHORS.md file contains a detailed contributors list:
+ * <https://github.com/gateship-one/odyssey/blob/master/AUTHORS.md>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.gateshipone.odyssey.artworkdatabase;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.graphics.Bitmap;
+import android.util.Log;
+import android.util.LongSparseArray;
+
+import org.gateshipone.odyssey.utils.FileUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Store of the artwork images of one kind (album or artist images) in a few large segment files instead of
+ * one file per image.
+ * <p>
+ * Images are appended to the newest segment, the location of each image is kept by its name in the
+ * {@link ArtworkStoreTable}. Segments are memory-mapped for reading, so images are decoded straight from the
+ * page cache. Images with the same content (e.g. the same cover of several albums) are stored once.
+ * Removed and replaced images leave unused space behind, segments that are mostly unused are compacted by moving
+ * their images to the newest segment.
+ * <p>
+ * The store is shared by all processes of the app. Writers hold a file lock on the store, readers do not lock:
+ * segments are only appended to and are deleted after their images were moved, so a reader with an outdated
+ * location either still reads the old copy or looks the image up again.
+ * Image files of previous versions are imported in the background and read from their files until then.
+ */
+class ArtworkStore {
+    private static final String TAG = ArtworkStore.class.getSimpleName();
+
+    /**
+     * Suffix of the directory of the segments, the image files of previous versions are in the directory without it
+     */
+    private static final String STORE_SUFFIX = ".pack";
+
+    private static final String SEGMENT_EXTENSION = ".seg";
+
+    /**
+     * File that is locked by the process that writes to the store
+     */
+    private static final String LOCK_FILE = "writer.lock";
+
+    /**
+     * Size after which a new segment is started (16MB)
+     */
+    private static final long MAXIMUM_SEGMENT_SIZE = 16 * 1024 * 1024;
+
+    /**
+     * Number of segments that stay mapped, the least recently used ones are released first
+     */
+    private static final int MAXIMUM_MAPPED_SEGMENTS = 8;
+
+    /**
+     * Segments with more unused space than this (in percent) are compacted
+     */
+    private static final int COMPACTION_THRESHOLD = 50;
+
+    /**
+     * Images that are not referenced by the artwork table are removed once their segment was closed this long
+     * ago (1 hour). Images are saved before they are added to the artwork table, newer ones could still be added.
+     */
+    private static final long UNREFERENCED_IMAGE_AGE = 60 * 60 * 1000;
+
+    /**
+     * Size of the buffer used to write images
+     */
+    private static final int WRITE_BUFFER_SIZE = 16 * 1024;
+
+    /**
+     * An image of the store.
+     */
+    static class Image {
+        /**
+         * The encoded image, a read-only part of the mapped segment
+         */
+        final ByteBuffer mData;
+
+        /**
+         * Identifies the stored image, it changes if the image is replaced or moved
+         */
+        final String mSourceId;
+
+        private Image(ByteBuffer data, String sourceId) {
+            mData = data;
+            mSourceId = sourceId;
+        }
+    }
+
+    /**
+     * Writes the encoded image to the store.
+     */
+    interface ImageWriter {
+        void write(OutputStream output) throws IOException;
+    }
+
+    private interface LockedOperation<T> {
+        T run() throws IOException;
+    }
+
+    private static class Location {
+        final long mSegment;
+
+        final long mOffset;
+
+        final int mLength;
+
+        Location(long segment, long offset, int length) {
+            mSegment = segment;
+            mOffset = offset;
+            mLength = length;
+        }
+    }
+
+    private final SQLiteOpenHelper mDatabaseHelper;
+
+    /**
+     * Name of the store, the segments are in a directory with this name
+     */
+    private final String mName;
+
+    /**
+     * Table and column of the artwork table that contains the names of the used images
+     */
+    private final String mReferenceTable;
+
+    private final String mReferenceColumn;
+
+    private final File mDirectory;
+
+    /**
+     * Directory of the image files of previous versions
+     */
+    private final File mLegacyDirectory;
+
+    /**
+     * Runs the import and the compaction in the background
+     */
+    private final ExecutorService mMaintenanceExecutor;
+
+    /**
+     * Known locations of the images by their name
+     */
+    private final HashMap<String, Location> mLocations = new HashMap<>();
+
+    /**
+     * Mapped segments by their id, the least recently used first
+     */
+    private final LinkedHashMap<Long, MappedByteBuffer> mSegments;
+
+    private final AtomicBoolean mCompactionScheduled = new AtomicBoolean();
+
+    /**
+     * @param databaseHelper      The helper of the database that contains the {@link ArtworkStoreTable}. Its lock
+     *                            is held while the database is used.
+     * @param name                Name of the store, the directory of the image files of previous versions.
+     * @param referenceTable      Artwork table that contains the names of the used images.
+     * @param referenceColumn     Column of the image names in the artwork table.
+     * @param maintenanceExecutor Runs the import of the image files and the compaction.
+     */
+    ArtworkStore(final Context context, final SQLiteOpenHelper databaseHelper, final String name, final String referenceTable,
+                 final String referenceColumn, final ExecutorService maintenanceExecutor) {
+        mDatabaseHelper = databaseHelper;
+        mName = name;
+        mReferenceTable = referenceTable;
+        mReferenceColumn = referenceColumn;
+        mDirectory = FileUtils.getArtworkDirectory(context, name + STORE_SUFFIX);
+        mLegacyDirectory = FileUtils.getArtworkDirectory(context, name);
+        mMaintenanceExecutor = maintenanceExecutor;
+
+        mSegments = new LinkedHashMap<Long, MappedByteBuffer>(MAXIMUM_MAPPED_SEGMENTS, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, MappedByteBuffer> eldest) {
+                return size() > MAXIMUM_MAPPED_SEGMENTS;
+            }
+        };
+
+        mMaintenanceExecutor.execute(() -> {
+            importLegacyFiles();
+            compact();
+        });
+    }
+
+    /**
+     * @param name Name of the image.
+     * @return The image or null if the store has no image with the given name.
+     */
+    Image get(final String name) {
+        Image image = read(name, getLocation(name, false));
+        if (image == null) {
+            // The image was moved or imported by another process in the meantime
+            image = read(name, getLocation(name, true));
+        }
+        return image;
+    }
+
+    /**
+     * Saves the image with the given name, a previous image with this name is replaced.
+     *
+     * @param image The encoded image.
+     * @return True if the image was saved.
+     */
+    boolean put(final String name, final byte[] image) {
+        return write(name, output -> output.write(image), true);
+    }
+
+    /**
+     * Encodes the image as JPEG directly into the store, a previous image with this name is replaced.
+     *
+     * @param quality JPEG quality of the image.
+     * @return True if the image was saved.
+     */
+    boolean put(final String name, final Bitmap image, final int quality) {
+        return write(name, output -> {
+            if (!image.compress(Bitmap.CompressFormat.JPEG, quality, output)) {
+                throw new IOException("Could not encode " + name);
+            }
+        }, true);
+    }
+
+    /**
+     * Removes the image with the given name. Its space is reused by the next compaction.
+     */
+    void remove(final String name) {
+        synchronized (mDatabaseHelper) {
+            final SQLiteDatabase database = mDatabaseHelper.getWritableDatabase();
+
+            final String where = ArtworkStoreTable.COLUMN_STORE + "=? AND " + ArtworkStoreTable.COLUMN_NAME + "=?";
+            final String whereArgs[] = {mName, name};
+
+            database.delete(ArtworkStoreTable.TABLE_NAME, where, whereArgs);
+
+            database.close();
+        }
+
+        synchronized (mLocations) {
+            mLocations.remove(name);
+        }
+
+        // The image could be from a previous version and not imported yet
+        new File(mLegacyDirectory, name).delete();
+
+        scheduleCompaction();
+    }
+
+    /**
+     * Removes all images of the store.
+     */
+    void clear() {
+        runLocked(() -> {
+            final SQLiteDatabase database = mDatabaseHelper.getWritableDatabase();
+
+            final String where = ArtworkStoreTable.COLUMN_STORE + "=?";
+            final String whereArgs[] = {mName};
+
+            database.delete(ArtworkStoreTable.TABLE_NAME, where, whereArgs);
+
+            database.close();
+
+            for (long segment : listSegments()) {
+                getSegmentFile(segment).delete();
+            }
+            return null;
+        });
+
+        invalidate();
+    }
+
+    /**
+     * Forgets the location of the image, e.g. because another process replaced it.
+     */
+    void invalidate(final String name) {
+        synchronized (mLocations) {
+            mLocations.remove(name);
+        }
+    }
+
+    /**
+     * Forgets the locations of all images and releases the mapped segments.
+     */
+    void invalidate() {
+        synchronized (mLocations) {
+            mLocations.clear();
+        }
+        synchronized (mSegments) {
+            mSegments.clear();
+        }
+    }
+
+    private Image read(final String name, final Location location) {
+        if (location == null) {
+            // Image file of a previous version that is not imported yet
+            final File legacyFile = new File(mLegacyDirectory, name);
+            final MappedByteBuffer data = map(legacyFile, 1);
+            return data == null ? null : new Image(data, legacyFile.getPath());
+        }
+
+        final MappedByteBuffer segment = getSegment(location.mSegment, location.mOffset + location.mLength);
+        if (segment == null) {
+            return null;
+        }
+
+        final ByteBuffer data = segment.duplicate();
+        data.position((int) location.mOffset);
+        data.limit((int) (location.mOffset + location.mLength));
+        return new Image(data.slice(), location.mSegment + ":" + location.mOffset);
+    }
+
+    /**
+     * @param reload True if the location should be read from the database even if it is known.
+     * @return The location of the image or null if the store has no image with the given name.
+     */
+    private Location getLocation(final String name, final boolean reload) {
+        if (!reload) {
+            synchronized (mLocations) {
+                final Location location = mLocations.get(name);
+                if (location != null) {
+                    return location;
+                }
+            }
+        }
+
+        final Location location;
+        synchronized (mDatabaseHelper) {
+            final SQLiteDatabase database = mDatabaseHelper.getReadableDatabase();
+            location = findLocation(database, ArtworkStoreTable.COLUMN_NAME, name);
+            database.close();
+        }
+
+        synchronized (mLocations) {
+            if (location != null) {
+                mLocations.put(name, location);
+            } else {
+                mLocations.remove(name);
+            }
+        }
+        return location;
+    }
+
+    /**
+     * @param column Column to search, the name or the hash of the image.
+     * @return The location of the first image with the given value or null if no image has it.
+     */
+    private Location findLocation(final SQLiteDatabase database, final String column, final String value) {
+        final String selection = ArtworkStoreTable.COLUMN_STORE + "=? AND " + column + "=?";
+        final String selectionArgs[] = {mName, value};
+
+        final Cursor cursor = database.query(ArtworkStoreTable.TABLE_NAME,
+                new String[]{ArtworkStoreTable.COLUMN_SEGMENT, ArtworkStoreTable.COLUMN_OFFSET, ArtworkStoreTable.COLUMN_LENGTH},
+                selection, selectionArgs, null, null, null, "1");
+
+        Location location = null;
+        if (cursor.moveToFirst()) {
+            location = new Location(cursor.getLong(cursor.getColumnIndex(ArtworkStoreTable.COLUMN_SEGMENT)),
+                    cursor.getLong(cursor.getColumnIndex(ArtworkStoreTable.COLUMN_OFFSET)),
+                    cursor.getInt(cursor.getColumnIndex(ArtworkStoreTable.COLUMN_LENGTH)));
+        }
+
+        cursor.close();
+        return location;
+    }
+
+    /**
+     * @param minimumSize Size the mapping must have at least, the segment could have grown since it was mapped.
+     * @return The mapped segment or null if it does not exist anymore.
+     */
+    private MappedByteBuffer getSegment(final long segment, final long minimumSize) {
+        synchronized (mSegments) {
+            final MappedByteBuffer mappedSegment = mSegments.get(segment);
+            if (mappedSegment != null && mappedSegment.capacity() >= minimumSize) {
+                return mappedSegment;
+            }
+        }
+
+        final MappedByteBuffer mappedSegment = map(getSegmentFile(segment), minimumSize);
+        if (mappedSegment != null) {
+            synchronized (mSegments) {
+                mSegments.put(segment, mappedSegment);
+            }
+        }
+        return mappedSegment;
+    }
+
+    /**
+     * Maps the whole file. The mapping stays valid after the file is deleted.
+     *
+     * @return The mapped file or null if it does not exist or is smaller than the minimum size.
+     */
+    private static MappedByteBuffer map(final File file, final long minimumSize) {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r"); FileChannel channel = randomAccessFile.getChannel()) {
+            final long size = channel.size();
+            if (size < minimumSize) {
+                return null;
+            }
+
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        } catch (FileNotFoundException e) {
+            return null;
+        } catch (IOException e) {
+            Log.e(TAG, "Could not map " + file.getName() + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Writes the image while holding the file lock of the store.
+     *
+     * @param replace False if an image with the same name should be kept.
+     * @return True if the image was saved or, if it should not be replaced, it exists already.
+     */
+    private boolean write(final String name, final ImageWriter writer, final boolean replace) {
+        final Location location = runLocked(() -> {
+            final SQLiteDatabase database = mDatabaseHelper.getWritableDatabase();
+            try {
+                final Location previous = findLocation(database, ArtworkStoreTable.COLUMN_NAME, name);
+                if (previous != null && !replace) {
+                    return previous;
+                }
+
+                final Location appended = append(database, name, writer);
+                if (previous != null) {
+                    // The previous image could be unused now
+                    scheduleCompaction();
+                }
+                return appended;
+            } finally {
+                database.close();
+            }
+        });
+
+        if (location == null) {
+            return false;
+        }
+
+        synchronized (mLocations) {
+            mLocations.put(name, location);
+        }
+        return true;
+    }
+
+    /**
+     * Appends the image to the newest segment and saves its location. If an image with the same content
+     * exists, the appended image is removed again and the existing one is used.
+     * Must be called with the file lock held.
+     */
+    private Location append(final SQLiteDatabase database, final String name, final ImageWriter writer) throws IOException {
+        final long segment = getWritableSegment();
+
+        try (RandomAccessFile file = new RandomAccessFile(getSegmentFile(segment), "rw"); FileChannel channel = file.getChannel()) {
+            final long offset = channel.size();
+            channel.position(offset);
+
+            final MessageDigest digest = createDigest();
+
+            // The encoder writes small chunks, they are collected before they are written to the segment
+            final OutputStream output = new DigestOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), WRITE_BUFFER_SIZE), digest);
+            try {
+                writer.write(output);
+                output.flush();
+            } catch (IOException e) {
+                channel.truncate(offset);
+                throw e;
+            }
+
+            final long length = channel.size() - offset;
+            if (length <= 0) {
+                throw new IOException("Empty image " + name);
+            }
+
+            final String hash = toHexString(digest.digest());
+
+            Location location = findLocation(database, ArtworkStoreTable.COLUMN_HASH, hash);
+            if (location != null) {
+                // The same image is stored already
+                channel.truncate(offset);
+            } else {
+                location = new Location(segment, offset, (int) length);
+            }
+
+            final ContentValues values = new ContentValues();
+            values.put(ArtworkStoreTable.COLUMN_STORE, mName);
+            values.put(ArtworkStoreTable.COLUMN_NAME, name);
+            values.put(ArtworkStoreTable.COLUMN_HASH, hash);
+            values.put(ArtworkStoreTable.COLUMN_SEGMENT, location.mSegment);
+            values.put(ArtworkStoreTable.COLUMN_OFFSET, location.mOffset);
+            values.put(ArtworkStoreTable.COLUMN_LENGTH, location.mLength);
+
+            database.replace(ArtworkStoreTable.TABLE_NAME, "", values);
+
+            return location;
+        }
+    }
+
+    /**
+     * Appends the data to the newest segment. Must be called with the file lock held.
+     *
+     * @return The location of the data.
+     */
+    private Location append(final ByteBuffer data) throws IOException {
+        final long segment = getWritableSegment();
+
+        try (RandomAccessFile file = new RandomAccessFile(getSegmentFile(segment), "rw"); FileChannel channel = file.getChannel()) {
+            final long offset = channel.size();
+            final int length = data.remaining();
+
+            while (data.hasRemaining()) {
+                channel.write(data, offset + length - data.remaining());
+            }
+
+            return new Location(segment, offset, length);
+        }
+    }
+
+    /**
+     * @return The id of the segment new images are appended to. Must be called with the file lock held.
+     */
+    private long getWritableSegment() {
+        final long[] segments = listSegments();
+        if (segments.length == 0) {
+            return System.currentTimeMillis();
+        }
+
+        final long newest = segments[segments.length - 1];
+        if (getSegmentFile(newest).length() < MAXIMUM_SEGMENT_SIZE) {
+            return newest;
+        }
+
+        // Ids of deleted segments are never used again, other processes could still know their images
+        return Math.max(newest + 1, System.currentTimeMillis());
+    }
+
+    /**
+     * @return The ids of all segments, the oldest first.
+     */
+    private long[] listSegments() {
+        final String[] files = mDirectory.list();
+        if (files == null) {
+            return new long[0];
+        }
+
+        final long[] segments = new long[files.length];
+        int count = 0;
+        for (String file : files) {
+            if (file.endsWith(SEGMENT_EXTENSION)) {
+                try {
+                    segments[count] = Long.parseLong(file.substring(0, file.length() - SEGMENT_EXTENSION.length()));
+                    count++;
+                } catch (NumberFormatException e) {
+                    // Not a segment
+                }
+            }
+        }
+
+        final long[] result = Arrays.copyOf(segments, count);
+        Arrays.sort(result);
+        return result;
+    }
+
+    private File getSegmentFile(final long segment) {
+        return new File(mDirectory, segment + SEGMENT_EXTENSION);
+    }
+
+    private void scheduleCompaction() {
+        if (mCompactionScheduled.compareAndSet(false, true)) {
+            mMaintenanceExecutor.execute(() -> {
+                mCompactionScheduled.set(false);
+                compact();
+            });
+        }
+    }
+
+    /**
+     * Removes the images that are no longer referenced by the artwork table (e.g. images of a previous MBID or images
+     * of a process that was killed before it added them), moves the images of mostly unused segments to the newest
+     * segment and deletes segments without images.
+     * The newest segment is not compacted, new images are appended to it.
+     */
+    private void compact() {
+        final Boolean changed = runLocked(() -> {
+            final long[] segments = listSegments();
+            if (segments.length < 2) {
+                return false;
+            }
+
+            final SQLiteDatabase database = mDatabaseHelper.getWritableDatabase();
+            try {
+                boolean changedLocations = removeUnreferencedImages(database, segments) > 0;
+
+                final LongSparseArray<Long> usedSizes = getUsedSizes(database);
+
+                for (int i = 0; i < segments.length - 1; i++) {
+                    final File segmentFile = getSegmentFile(segments[i]);
+                    final long size = segmentFile.length();
+                    final long usedSize = usedSizes.get(segments[i], 0L);
+
+                    if (usedSize == 0) {
+                        segmentFile.delete();
+                    } else if ((size - usedSize) * 100 > size * COMPACTION_THRESHOLD) {
+                        if (!moveImages(database, segments[i])) {
+                            continue;
+                        }
+                        segmentFile.delete();
+                        changedLocations = true;
+                    } else {
+                        continue;
+                    }
+
+                    synchronized (mSegments) {
+                        mSegments.remove(segments[i]);
+                    }
+                }
+                return changedLocations;
+            } finally {
+                database.close();
+            }
+        });
+
+        if (changed != null && changed) {
+            synchronized (mLocations) {
+                mLocations.clear();
+            }
+        }
+    }
+
+    /**
+     * Removes the images that are not referenced by the artwork table from the segments that were closed at least
+     * {@link #UNREFERENCED_IMAGE_AGE} ago. Segment ids are their creation time, an image of a segment was saved before
+     * the next segment was created. Must be called with the file lock held.
+     *
+     * @return The number of removed images.
+     */
+    private int removeUnreferencedImages(final SQLiteDatabase database, final long[] segments) {
+        final long maximumSegment = System.currentTimeMillis() - UNREFERENCED_IMAGE_AGE;
+
+        // Images of the segments before the newest segment that was created before the maximum are old enough
+        long closedBefore = -1;
+        for (long segment : segments) {
+            if (segment <= maximumSegment) {
+                closedBefore = segment;
+            }
+        }
+
+        if (closedBefore == -1) {
+            return 0;
+        }
+
+        final String where = ArtworkStoreTable.COLUMN_STORE + "=? AND " + ArtworkStoreTable.COLUMN_SEGMENT + "<? AND " +
+                ArtworkStoreTable.COLUMN_NAME + " NOT IN (SELECT " + mReferenceColumn + " FROM " + mReferenceTable +
+                " WHERE " + mReferenceColumn + " IS NOT NULL)";
+        final String whereArgs[] = {mName, String.valueOf(closedBefore)};
+
+        return database.delete(ArtworkStoreTable.TABLE_NAME, where, whereArgs);
+    }
+
+    /**
+     * @return The size of the used parts of each segment by its id. Images with the same content are counted once.
+     */
+    private LongSparseArray<Long> getUsedSizes(final SQLiteDatabase database) {
+        final LongSparseArray<Long> usedSizes = new LongSparseArray<>();
+
+        final Cursor cursor = database.rawQuery("SELECT " + ArtworkStoreTable.COLUMN_SEGMENT + ", SUM(" + ArtworkStoreTable.COLUMN_LENGTH + ")" +
+                " FROM (SELECT DISTINCT " + ArtworkStoreTable.COLUMN_SEGMENT + "," + ArtworkStoreTable.COLUMN_OFFSET + "," + ArtworkStoreTable.COLUMN_LENGTH +
+                " FROM " + ArtworkStoreTable.TABLE_NAME + " WHERE " + ArtworkStoreTable.COLUMN_STORE + "=?)" +
+                " GROUP BY " + ArtworkStoreTable.COLUMN_SEGMENT, new String[]{mName});
+
+        if (cursor.moveToFirst()) {
+            do {
+                usedSizes.put(cursor.getLong(0), cursor.getLong(1));
+            } while (cursor.moveToNext());
+        }
+
+        cursor.close();
+        return usedSizes;
+    }
+
+    /**
+     * Copies the images of the segment to the newest segment and updates their locations within one transaction.
+     * Must be called with the file lock held.
+     *
+     * @return True if all images were moved, the segment can be deleted then.
+     */
+    private boolean moveImages(final SQLiteDatabase database, final long segment) throws IOException {
+        final MappedByteBuffer source = map(getSegmentFile(segment), 1);
+        if (source == null) {
+            return false;
+        }
+
+        final String selection = ArtworkStoreTable.COLUMN_STORE + "=? AND " + ArtworkStoreTable.COLUMN_SEGMENT + "=?";
+        final String selectionArgs[] = {mName, String.valueOf(segment)};
+
+        final Cursor cursor = database.query(true, ArtworkStoreTable.TABLE_NAME,
+                new String[]{ArtworkStoreTable.COLUMN_OFFSET, ArtworkStoreTable.COLUMN_LENGTH},
+                selection, selectionArgs, null, null, null, null);
+
+        final String where = ArtworkStoreTable.COLUMN_STORE + "=? AND " + ArtworkStoreTable.COLUMN_SEGMENT + "=? AND " + ArtworkStoreTable.COLUMN_OFFSET + "=?";
+
+        database.beginTransaction();
+        try {
+            if (cursor.moveToFirst()) {
+                do {
+                    final long offset = cursor.getLong(0);
+                    final long length = cursor.getLong(1);
+                    if (offset + length > source.capacity()) {
+                        // The segment is damaged, its images stay where they are
+                        return false;
+                    }
+
+                    final ByteBuffer data = source.duplicate();
+                    data.position((int) offset);
+                    data.limit((int) (offset + length));
+
+                    final Location location = append(data);
+
+                    final ContentValues values = new ContentValues();
+                    values.put(ArtworkStoreTable.COLUMN_SEGMENT, location.mSegment);
+                    values.put(ArtworkStoreTable.COLUMN_OFFSET, location.mOffset);
+
+                    final String whereArgs[] = {mName, String.valueOf(segment), String.valueOf(offset)};
+                    database.update(ArtworkStoreTable.TABLE_NAME, values, where, whereArgs);
+                } while (cursor.moveToNext());
+            }
+            database.setTransactionSuccessful();
+            return true;
+        } finally {
+            database.endTransaction();
+            cursor.close();
+        }
+    }
+
+    /**
+     * Imports the image files of previous versions. Images that were saved in the meantime are kept.
+     */
+    private void importLegacyFiles() {
+        final File[] files = mLegacyDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        for (final File file : files) {
+            final boolean imported = write(file.getName(), output -> {
+                try (InputStream input = new FileInputStream(file)) {
+                    final byte[] buffer = new byte[WRITE_BUFFER_SIZE];
+                    int read;
+                    while ((read = input.read(buffer)) > 0) {
+                        output.write(buffer, 0, read);
+                    }
+                }
+            }, false);
+
+            if (imported) {
+                file.delete();
+            }
+        }
+
+        // Only removed if all files were imported
+        mLegacyDirectory.delete();
+    }
+
+    /**
+     * Runs the operation while holding the file lock of the store and the lock of the database helper.
+     *
+     * @return The result of the operation or null if it failed.
+     */
+    private <T> T runLocked(final LockedOperation<T> operation) {
+        synchronized (mDatabaseHelper) {
+            mDirectory.mkdirs();
+
+            try (RandomAccessFile lockFile = new RandomAccessFile(new File(mDirectory, LOCK_FILE), "rw")) {
+                final FileLock lock = lockFile.getChannel().lock();
+                try {
+                    return operation.run();
+                } finally {
+                    lock.release();
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "Could not access artwork store " + mName + ": " + e.getMessage());
+                return null;
+            }
+        }
+    }
+
+    private static MessageDigest createDigest() throws IOException {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static String toHexString(final byte[] bytes) {
+        final StringBuilder hexString = new StringBuilder();
+        for (byte oneByte : bytes) {
+            final String hex = Integer.toHexString(0xff & oneByte);
+            if (hex.length() == 1) {
+                hexString.append('0');
+            }
+            hexString.append(hex);
+        }
+        return hexString.toString();
+    }
+}
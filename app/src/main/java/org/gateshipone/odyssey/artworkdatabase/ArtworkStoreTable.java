@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2018 Team Gateship-One
+ * (Hendrik Borghorst & Frederik Luetkes)
+ *
+ * The AUTHORS.md file contains a detailed contributors list:
+ * <https://github.com/gateship-one/odyssey/blob/master/AUTHORS.md>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.gateshipone.odyssey.artworkdatabase;
+
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * Offset index of the {@link ArtworkStore}: the location of each stored image within the segment files.
+ */
+public class ArtworkStoreTable {
+    public static final String TABLE_NAME = "odyssey_artwork_store_items";
+
+    /**
+     * Name of the store (album or artist images)
+     */
+    public static final String COLUMN_STORE = "store";
+
+    /**
+     * Name of the image, the artwork file name of the album and artist tables
+     */
+    public static final String COLUMN_NAME = "name";
+
+    /**
+     * SHA-256 of the image content, images with the same content share their location
+     */
+    public static final String COLUMN_HASH = "hash";
+
+    public static final String COLUMN_SEGMENT = "segment";
+
+    public static final String COLUMN_OFFSET = "segment_offset";
+
+    public static final String COLUMN_LENGTH = "length";
+
+    private static final String DATABASE_CREATE = "CREATE TABLE if not exists " +
+            TABLE_NAME +
+            " (" +
+            COLUMN_STORE + " text," +
+            COLUMN_NAME + " text," +
+            COLUMN_HASH + " text," +
+            COLUMN_SEGMENT + " integer," +
+            COLUMN_OFFSET + " integer," +
+            COLUMN_LENGTH + " integer," +
+            "primary key (" + COLUMN_STORE + "," + COLUMN_NAME + ")" +
+            ");";
+
+    private static final String INDEX_HASH_CREATE = "CREATE INDEX if not exists " +
+            TABLE_NAME + "_" + COLUMN_HASH +
+            " ON " + TABLE_NAME + " (" + COLUMN_STORE + "," + COLUMN_HASH + ");";
+
+    private static final String INDEX_SEGMENT_CREATE = "CREATE INDEX if not exists " +
+            TABLE_NAME + "_" + COLUMN_SEGMENT +
+            " ON " + TABLE_NAME + " (" + COLUMN_STORE + "," + COLUMN_SEGMENT + "," + COLUMN_OFFSET + ");";
+
+    private static final String DATABASE_DROP = "DROP TABLE if exists " + TABLE_NAME;
+
+    public static void createTable(final SQLiteDatabase database) {
+        // Create table if not already existing
+        database.execSQL(DATABASE_CREATE);
+        database.execSQL(INDEX_HASH_CREATE);
+        database.execSQL(INDEX_SEGMENT_CREATE);
+    }
+
+    public static void dropTable(final SQLiteDatabase database) {
+        // drop table if already existing
+        database.execSQL(DATABASE_DROP);
+    }
+}
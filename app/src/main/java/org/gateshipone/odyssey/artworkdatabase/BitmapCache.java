@@ -23,17 +23,22 @@
 package org.gateshipone.odyssey.artworkdatabase;
 
 import android.graphics.Bitmap;
-import android.support.v4.util.LruCache;
 import android.util.Log;
 
 import org.gateshipone.odyssey.models.AlbumModel;
 import org.gateshipone.odyssey.models.ArtistModel;
+import org.gateshipone.odyssey.utils.BitmapPool;
 
-import java.util.Map;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Simple LRU-based caching for album & artist images. This could reduce CPU usage
- * for the cost of memory usage by caching decoded {@link Bitmap} objects in a {@link LruCache}.
+ * for the cost of memory usage by caching decoded {@link Bitmap} objects.
+ * <p>
+ * Each album or artist can be cached in several resolutions. The entries are identified by a primitive key
+ * that is built from the kind of the image, the id of the item and the size bucket of the resolution.
+ * The cache is split into segments with their own locks, all resolutions of an item are in the same segment.
  */
 public class BitmapCache {
     private static final String TAG = BitmapCache.class.getSimpleName();
@@ -46,97 +51,142 @@ public class BitmapCache {
     private static final int mCacheSize = mMaxMemory / 4;
 
     /**
-     * Hash prefix for album images
+     * Number of independently locked segments (power of two)
      */
-    private static final String ALBUM_PREFIX = "A_";
+    private static final int SEGMENT_COUNT = 8;
 
     /**
-     * Hash prefix for artist images
+     * Upper bounds of the size buckets in pixels. The last bucket contains all larger images.
      */
-    private static final String ARTIST_PREFIX = "B_";
+    private static final int[] SIZE_BUCKETS = {96, 160, 256, 384, 512, 768, 1024};
 
     /**
-     * Private cache instance
+     * Bucket for images that are decoded in the highest available resolution, they fit any request.
      */
-    private LruCache<String, Bitmap> mCache;
+    private static final int COMPLETE_BUCKET = SIZE_BUCKETS.length + 1;
+
+    /**
+     * Key flag for artist images
+     */
+    private static final long ARTIST_FLAG = 1L << 63;
+
+    /**
+     * Position of the size bucket in the key (4 bits)
+     */
+    private static final int BUCKET_SHIFT = 59;
+
+    /**
+     * Key flag for items without an id, the key contains a hash of the names instead
+     */
+    private static final long NAME_FLAG = 1L << 58;
+
+    private static final long ID_MASK = NAME_FLAG - 1;
 
     /**
      * Singleton instance
      */
-    private static BitmapCache mInstance;
+    private static final BitmapCache mInstance = new BitmapCache();
+
+    private final Segment[] mSegments;
+
+    /**
+     * Size of all segments in kilobytes
+     */
+    private final AtomicLong mSize;
+
+    /**
+     * Logical clock for the access order across the segments
+     */
+    private final AtomicLong mClock;
 
     private BitmapCache() {
-        mCache = new LruCache<String, Bitmap>(mCacheSize) {
-            @Override
-            protected int sizeOf(String key, Bitmap bitmap) {
-                // The cache size will be measured in kilobytes rather than
-                // number of items.
-                return bitmap.getByteCount() / 1024;
-            }
+        mSegments = new Segment[SEGMENT_COUNT];
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            mSegments[i] = new Segment();
+        }
 
-        };
+        mSize = new AtomicLong();
+        mClock = new AtomicLong();
     }
 
-    public static synchronized BitmapCache getInstance() {
-        if (mInstance == null) {
-            mInstance = new BitmapCache();
-        }
+    public static BitmapCache getInstance() {
         return mInstance;
     }
 
     /**
-     * Tries to get an album image from the cache
+     * Tries to get an album image in any resolution from the cache. The caller gets a reference to the bitmap
+     * which must be released with {@link BitmapPool#release(Bitmap)} when it is not shown anymore.
      *
      * @param album Album object to try
      * @return Bitmap if cache hit, null otherwise
      */
-    public synchronized Bitmap requestAlbumBitmap(AlbumModel album) {
-        return mCache.get(getAlbumHash(album));
+    public Bitmap requestAlbumBitmap(AlbumModel album) {
+        return request(getAlbumKey(album), -1, -1);
+    }
+
+    /**
+     * Tries to get an album image from the cache that is at least as large as the requested size.
+     * The caller gets a reference to the bitmap which must be released with {@link BitmapPool#release(Bitmap)}
+     * when it is not shown anymore.
+     *
+     * @param album  Album object to try
+     * @param width  Requested width of the image (-1 if it does not matter)
+     * @param height Requested height of the image (-1 if it does not matter)
+     * @return Bitmap if cache hit, null otherwise
+     */
+    public Bitmap requestAlbumBitmap(AlbumModel album, int width, int height) {
+        return request(getAlbumKey(album), width, height);
     }
 
     /**
-     * Puts an album image to the cache
+     * Puts an album image to the cache. The caller keeps a reference to the bitmap
+     * which must be released with {@link BitmapPool#release(Bitmap)} when it is not shown anymore.
      *
      * @param album Album object to use for cache key
      * @param bm    Bitmap to store in cache
      */
-    public synchronized void putAlbumBitmap(AlbumModel album, Bitmap bm) {
-        if (bm != null) {
-            mCache.put(getAlbumHash(album), bm);
-        }
+    public void putAlbumBitmap(AlbumModel album, Bitmap bm) {
+        put(getAlbumKey(album), bm, -1, -1);
+    }
+
+    /**
+     * Puts an album image that was decoded for the given size to the cache. The caller keeps a reference to the bitmap
+     * which must be released with {@link BitmapPool#release(Bitmap)} when it is not shown anymore.
+     *
+     * @param album  Album object to use for cache key
+     * @param bm     Bitmap to store in cache
+     * @param width  Requested width of the decode (-1 if the image was decoded in its full resolution)
+     * @param height Requested height of the decode (-1 if the image was decoded in its full resolution)
+     */
+    public void putAlbumBitmap(AlbumModel album, Bitmap bm, int width, int height) {
+        put(getAlbumKey(album), bm, width, height);
     }
 
     /**
-     * Removes an album image from the cache
+     * Removes all resolutions of an album image from the cache
      *
      * @param album Album object to use for cache key
      */
-    public synchronized void removeAlbumBitmap(AlbumModel album) {
-        mCache.remove(getAlbumHash(album));
+    public void removeAlbumBitmap(AlbumModel album) {
+        remove(getAlbumKey(album));
     }
 
     /**
-     * Private hash method for cache key
+     * Private key method for the cache, the size bucket is not included.
      *
      * @param album Album to calculate the key from
-     * @return Hash string for cache key
+     * @return Key of all resolutions of the album
      */
-    private String getAlbumHash(AlbumModel album) {
-        String hashString = ALBUM_PREFIX;
+    private static long getAlbumKey(AlbumModel album) {
         final long albumID = album.getAlbumID();
 
         // Use albumID as key if available
         if (albumID != -1) {
-            hashString += String.valueOf(albumID);
-            return hashString;
+            return albumID & ID_MASK;
         }
 
         // Else use artist and album name
-        final String albumArtist = album.getArtistName();
-        final String albumName = album.getAlbumName();
-
-        hashString += albumArtist + '_' + albumName;
-        return hashString;
+        return NAME_FLAG | (hashNames(album.getArtistName(), album.getAlbumName()) & ID_MASK);
     }
 
     /*
@@ -144,78 +194,497 @@ public class BitmapCache {
      */
 
     /**
-     * Tries to get an artist image from the cache
+     * Tries to get an artist image in any resolution from the cache. The caller gets a reference to the bitmap
+     * which must be released with {@link BitmapPool#release(Bitmap)} when it is not shown anymore.
      *
      * @param artist Artist object to check in cache
      * @return Bitmap if cache hit, null otherwise
      */
-    public synchronized Bitmap requestArtistImage(ArtistModel artist) {
-        return mCache.get(getArtistHash(artist));
+    public Bitmap requestArtistImage(ArtistModel artist) {
+        return request(getArtistKey(artist), -1, -1);
     }
 
     /**
-     * Puts an artist image to the cache
+     * Tries to get an artist image from the cache that is at least as large as the requested size.
+     * The caller gets a reference to the bitmap which must be released with {@link BitmapPool#release(Bitmap)}
+     * when it is not shown anymore.
+     *
+     * @param artist Artist object to check in cache
+     * @param width  Requested width of the image (-1 if it does not matter)
+     * @param height Requested height of the image (-1 if it does not matter)
+     * @return Bitmap if cache hit, null otherwise
+     */
+    public Bitmap requestArtistImage(ArtistModel artist, int width, int height) {
+        return request(getArtistKey(artist), width, height);
+    }
+
+    /**
+     * Puts an artist image to the cache. The caller keeps a reference to the bitmap
+     * which must be released with {@link BitmapPool#release(Bitmap)} when it is not shown anymore.
      *
      * @param artist Artist object used as cache key
      * @param bm     Bitmap to store in cache
      */
-    public synchronized void putArtistImage(ArtistModel artist, Bitmap bm) {
-        if (bm != null) {
-            mCache.put(getArtistHash(artist), bm);
-        }
+    public void putArtistImage(ArtistModel artist, Bitmap bm) {
+        put(getArtistKey(artist), bm, -1, -1);
     }
 
     /**
-     * Removes an artist image from the cache
+     * Puts an artist image that was decoded for the given size to the cache. The caller keeps a reference to the bitmap
+     * which must be released with {@link BitmapPool#release(Bitmap)} when it is not shown anymore.
      *
      * @param artist Artist object used as cache key
+     * @param bm     Bitmap to store in cache
+     * @param width  Requested width of the decode (-1 if the image was decoded in its full resolution)
+     * @param height Requested height of the decode (-1 if the image was decoded in its full resolution)
      */
-    public synchronized void removeArtistImage(ArtistModel artist) {
-        mCache.remove(getArtistHash(artist));
+    public void putArtistImage(ArtistModel artist, Bitmap bm, int width, int height) {
+        put(getArtistKey(artist), bm, width, height);
     }
 
     /**
-     * Private hash method for cache key
+     * Removes all resolutions of an artist image from the cache
      *
-     * @param artist Artist used as cache key
-     * @return Hash string for cache key
+     * @param artist Artist object used as cache key
      */
-    private String getArtistHash(ArtistModel artist) {
-        String hashString = ARTIST_PREFIX;
+    public void removeArtistImage(ArtistModel artist) {
+        remove(getArtistKey(artist));
+    }
 
+    /**
+     * Private key method for the cache, the size bucket is not included.
+     *
+     * @param artist Artist used as cache key
+     * @return Key of all resolutions of the artist
+     */
+    private static long getArtistKey(ArtistModel artist) {
         final long artistID = artist.getArtistID();
 
-        // Use albumID as key if available
+        // Use artistID as key if available
         if (artistID != -1) {
-            hashString += String.valueOf(artistID);
-            return hashString;
+            return ARTIST_FLAG | (artistID & ID_MASK);
+        }
+
+        return ARTIST_FLAG | NAME_FLAG | (hashNames(artist.getArtistName(), null) & ID_MASK);
+    }
+
+    /**
+     * Returns the smallest cached resolution of the item that fits the requested size.
+     * If the size does not matter the largest cached resolution is returned.
+     */
+    private Bitmap request(long key, int width, int height) {
+        final Segment segment = getSegment(key);
+        final int size = Math.max(width, height);
+        final long tick = mClock.incrementAndGet();
+
+        synchronized (segment) {
+            Bitmap bitmap = null;
+
+            if (size <= 0) {
+                for (int bucket = COMPLETE_BUCKET; bucket >= 0 && bitmap == null; bucket--) {
+                    bitmap = segment.get(key | ((long) bucket << BUCKET_SHIFT), tick);
+                }
+            } else {
+                final int firstBucket = getSizeBucket(size);
+                for (int bucket = firstBucket; bucket <= COMPLETE_BUCKET && bitmap == null; bucket++) {
+                    bitmap = segment.get(key | ((long) bucket << BUCKET_SHIFT), tick);
+
+                    // Only the first bucket can contain smaller images
+                    if (bitmap != null && bucket == firstBucket && Math.max(bitmap.getWidth(), bitmap.getHeight()) < size) {
+                        bitmap = null;
+                    }
+                }
+            }
+
+            if (bitmap == null) {
+                segment.mMissCount++;
+                return null;
+            }
+
+            segment.mHitCount++;
+
+            // Add the reference for the caller inside the lock, so the bitmap can not be evicted and reused in the meantime
+            BitmapPool.getInstance().acquire(bitmap);
+            return bitmap;
+        }
+    }
+
+    private void put(long key, Bitmap bm, int width, int height) {
+        if (bm == null) {
+            return;
+        }
+
+        final int requestedSize = Math.max(width, height);
+        final int bitmapSize = Math.max(bm.getWidth(), bm.getHeight());
+
+        // An image that is smaller than requested (or not requested in a specific size) can not be decoded larger
+        final int bucket = requestedSize <= 0 || bitmapSize < requestedSize ? COMPLETE_BUCKET : getSizeBucket(bitmapSize);
+
+        final Segment segment = getSegment(key);
+        final long tick = mClock.incrementAndGet();
+
+        synchronized (segment) {
+            // One reference for the cache and one for the caller
+            BitmapPool.getInstance().acquire(bm);
+            BitmapPool.getInstance().acquire(bm);
+
+            final int oldSize = segment.mSize;
+            final Bitmap oldBitmap = segment.put(key | ((long) bucket << BUCKET_SHIFT), bm, tick);
+            mSize.addAndGet(segment.mSize - oldSize);
+
+            // Drop the reference of the cache, the bitmap is reused if no view shows it anymore.
+            // If the same bitmap was cached already, the cache holds a reference already.
+            BitmapPool.getInstance().release(oldBitmap);
+        }
+
+        trimToSize();
+    }
+
+    private void remove(long key) {
+        final Segment segment = getSegment(key);
+
+        synchronized (segment) {
+            final int oldSize = segment.mSize;
+            for (int bucket = 0; bucket <= COMPLETE_BUCKET; bucket++) {
+                BitmapPool.getInstance().release(segment.remove(key | ((long) bucket << BUCKET_SHIFT)));
+            }
+            mSize.addAndGet(segment.mSize - oldSize);
+        }
+    }
+
+    /**
+     * Evicts the least recently used entries of all segments until the cache fits its maximum size.
+     * Only one segment is locked at a time.
+     */
+    private void trimToSize() {
+        while (mSize.get() > mCacheSize) {
+            // Find the segment with the oldest entry, the ticks are read without locks as a hint
+            Segment eldestSegment = null;
+            long eldestTick = Long.MAX_VALUE;
+            for (Segment segment : mSegments) {
+                final long tick = segment.getEldestTick();
+                if (tick < eldestTick) {
+                    eldestTick = tick;
+                    eldestSegment = segment;
+                }
+            }
+
+            if (eldestSegment == null) {
+                return;
+            }
+
+            synchronized (eldestSegment) {
+                final int oldSize = eldestSegment.mSize;
+                BitmapPool.getInstance().release(eldestSegment.removeEldest());
+                mSize.addAndGet(eldestSegment.mSize - oldSize);
+            }
+        }
+    }
+
+    private Segment getSegment(long key) {
+        return mSegments[(mix(key) >>> 16) & (SEGMENT_COUNT - 1)];
+    }
+
+    /**
+     * @return Index of the size bucket of the given image size
+     */
+    private static int getSizeBucket(int size) {
+        int bucket = 0;
+        while (bucket < SIZE_BUCKETS.length && size >= SIZE_BUCKETS[bucket]) {
+            bucket++;
+        }
+        return bucket;
+    }
+
+    /**
+     * 64 bit FNV-1a hash of the names, computed without building a combined string.
+     */
+    private static long hashNames(String first, String second) {
+        long hash = 0xcbf29ce484222325L;
+        hash = hashString(hash, first);
+        hash = (hash ^ '_') * 0x100000001b3L;
+        return hashString(hash, second);
+    }
+
+    private static long hashString(long hash, String value) {
+        if (value == null) {
+            return hash;
         }
 
-        hashString += artist.getArtistName();
+        for (int i = 0; i < value.length(); i++) {
+            hash = (hash ^ value.charAt(i)) * 0x100000001b3L;
+        }
+        return hash;
+    }
 
-        return hashString;
+    private static int mix(long key) {
+        final int hash = (int) (key ^ (key >>> 32));
+        return hash * 0x9E3779B9;
     }
 
     /**
      * Debug method to provide performance evaluation metrics
      */
     private void printUsage() {
-        Log.v(TAG, "Cache usage: " + ((mCache.size() * 100) / mCache.maxSize()) + '%');
-        int missCount = mCache.missCount();
-        int hitCount = mCache.hitCount();
+        Log.v(TAG, "Cache usage: " + ((mSize.get() * 100) / mCacheSize) + '%');
+        int missCount = 0;
+        int hitCount = 0;
+        for (Segment segment : mSegments) {
+            synchronized (segment) {
+                missCount += segment.mMissCount;
+                hitCount += segment.mHitCount;
+            }
+        }
         if (missCount > 0) {
             Log.v(TAG, "Cache hit count: " + hitCount + " miss count: " + missCount + " Miss rate: " + ((hitCount * 100) / missCount) + '%');
         }
-        Log.v(TAG, "Memory usage: " + (getMemoryUsage() / (1024 * 1024)) + " MB");
+        Log.v(TAG, "Memory usage: " + (mSize.get() / 1024) + " MB");
+        BitmapPool.getInstance().printUsage();
     }
 
-    private long getMemoryUsage() {
-        Map<String, Bitmap> snapShot = mCache.snapshot();
-        long bytes = 0;
-        for (Bitmap bitmap : snapShot.values()) {
-            bytes += bitmap.getAllocationByteCount();
+    /**
+     * LRU map from primitive keys to bitmaps. The entries are stored in parallel arrays and linked by their indices,
+     * so lookups and updates do not allocate. Not thread-safe, the cache locks the segment.
+     */
+    private static class Segment {
+        private static final int INITIAL_CAPACITY = 64;
+
+        private long[] mKeys;
+
+        private Bitmap[] mValues;
+
+        /**
+         * Access time of each entry
+         */
+        private long[] mTicks;
+
+        /**
+         * Access order, from {@link #mEldest} to {@link #mNewest}
+         */
+        private int[] mBefore;
+
+        private int[] mAfter;
+
+        /**
+         * Next entry in the same hash bucket or in the list of free entries
+         */
+        private int[] mChain;
+
+        /**
+         * First entry of each hash bucket
+         */
+        private int[] mTable;
+
+        private int mEldest = -1;
+
+        private int mNewest = -1;
+
+        private int mFree = -1;
+
+        /**
+         * Number of entries that were ever used, entries beyond are not initialized
+         */
+        private int mUsed;
+
+        private int mCount;
+
+        /**
+         * Size of all bitmaps in kilobytes
+         */
+        int mSize;
+
+        int mHitCount;
+
+        int mMissCount;
+
+        /**
+         * Access time of the eldest entry, written inside the lock and read without it
+         */
+        private volatile long mEldestTick = Long.MAX_VALUE;
+
+        Segment() {
+            mKeys = new long[INITIAL_CAPACITY];
+            mValues = new Bitmap[INITIAL_CAPACITY];
+            mTicks = new long[INITIAL_CAPACITY];
+            mBefore = new int[INITIAL_CAPACITY];
+            mAfter = new int[INITIAL_CAPACITY];
+            mChain = new int[INITIAL_CAPACITY];
+            mTable = new int[INITIAL_CAPACITY];
+            Arrays.fill(mTable, -1);
+        }
+
+        Bitmap get(long key, long tick) {
+            final int index = indexOf(key);
+            if (index == -1) {
+                return null;
+            }
+
+            mTicks[index] = tick;
+            unlink(index);
+            linkNewest(index);
+            return mValues[index];
+        }
+
+        /**
+         * @return The previous bitmap of the key or null
+         */
+        Bitmap put(long key, Bitmap bitmap, long tick) {
+            int index = indexOf(key);
+            Bitmap oldBitmap = null;
+
+            if (index != -1) {
+                oldBitmap = mValues[index];
+                mSize -= sizeOf(oldBitmap);
+                unlink(index);
+            } else {
+                index = allocate();
+                mKeys[index] = key;
+
+                final int bucket = mix(key) & (mTable.length - 1);
+                mChain[index] = mTable[bucket];
+                mTable[bucket] = index;
+
+                mCount++;
+            }
+
+            mValues[index] = bitmap;
+            mTicks[index] = tick;
+            mSize += sizeOf(bitmap);
+            linkNewest(index);
+
+            // The new entry has to be linked before, the rehash walks the access order
+            if (mCount > mTable.length * 3 / 4) {
+                rehash(mTable.length * 2);
+            }
+
+            return oldBitmap;
+        }
+
+        /**
+         * @return The removed bitmap or null
+         */
+        Bitmap remove(long key) {
+            final int bucket = mix(key) & (mTable.length - 1);
+
+            int previous = -1;
+            int index = mTable[bucket];
+            while (index != -1 && mKeys[index] != key) {
+                previous = index;
+                index = mChain[index];
+            }
+
+            if (index == -1) {
+                return null;
+            }
+
+            if (previous == -1) {
+                mTable[bucket] = mChain[index];
+            } else {
+                mChain[previous] = mChain[index];
+            }
+
+            unlink(index);
+
+            final Bitmap bitmap = mValues[index];
+            mValues[index] = null;
+            mSize -= sizeOf(bitmap);
+            mCount--;
+
+            mChain[index] = mFree;
+            mFree = index;
+
+            return bitmap;
+        }
+
+        /**
+         * @return The removed least recently used bitmap or null if the segment is empty
+         */
+        Bitmap removeEldest() {
+            if (mEldest == -1) {
+                return null;
+            }
+            return remove(mKeys[mEldest]);
+        }
+
+        long getEldestTick() {
+            return mEldestTick;
+        }
+
+        private int indexOf(long key) {
+            int index = mTable[mix(key) & (mTable.length - 1)];
+            while (index != -1 && mKeys[index] != key) {
+                index = mChain[index];
+            }
+            return index;
+        }
+
+        private int allocate() {
+            if (mFree != -1) {
+                final int index = mFree;
+                mFree = mChain[index];
+                return index;
+            }
+
+            if (mUsed == mKeys.length) {
+                final int capacity = mKeys.length * 2;
+                mKeys = Arrays.copyOf(mKeys, capacity);
+                mValues = Arrays.copyOf(mValues, capacity);
+                mTicks = Arrays.copyOf(mTicks, capacity);
+                mBefore = Arrays.copyOf(mBefore, capacity);
+                mAfter = Arrays.copyOf(mAfter, capacity);
+                mChain = Arrays.copyOf(mChain, capacity);
+            }
+
+            return mUsed++;
+        }
+
+        private void rehash(int tableSize) {
+            mTable = new int[tableSize];
+            Arrays.fill(mTable, -1);
+
+            // Walk the access order, it contains all used entries
+            for (int index = mEldest; index != -1; index = mAfter[index]) {
+                final int bucket = mix(mKeys[index]) & (tableSize - 1);
+                mChain[index] = mTable[bucket];
+                mTable[bucket] = index;
+            }
         }
 
-        return bytes;
+        private void linkNewest(int index) {
+            mBefore[index] = mNewest;
+            mAfter[index] = -1;
+
+            if (mNewest == -1) {
+                mEldest = index;
+                mEldestTick = mTicks[index];
+            } else {
+                mAfter[mNewest] = index;
+            }
+            mNewest = index;
+        }
+
+        private void unlink(int index) {
+            final int before = mBefore[index];
+            final int after = mAfter[index];
+
+            if (before == -1) {
+                mEldest = after;
+                mEldestTick = after == -1 ? Long.MAX_VALUE : mTicks[after];
+            } else {
+                mAfter[before] = after;
+            }
+
+            if (after == -1) {
+                mNewest = before;
+            } else {
+                mBefore[after] = before;
+            }
+        }
+
+        private static int sizeOf(Bitmap bitmap) {
+            // The cache size will be measured in kilobytes rather than
+            // number of items.
+            return bitmap.getAllocationByteCount() / 1024;
+        }
     }
 }
@@ -31,6 +31,7 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
+import android.content.SharedPreferences;
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
 import android.os.Build;
@@ -57,6 +58,17 @@ public class BulkDownloadService extends Service implements ArtworkManager.BulkL
     public static final String BUNDLE_KEY_ALBUM_PROVIDER = "org.gateshipone.odyssey.album_provider";
     public static final String BUNDLE_KEY_WIFI_ONLY = "org.gateshipone.odyssey.wifi_only";
 
+    /**
+     * Preferences holding the state of a running bulk download, so it can be resumed if the process gets killed.
+     */
+    private static final String CHECKPOINT_PREFERENCES = "BulkDownloadCheckpoint";
+
+    private static final String CHECKPOINT_KEY_RUNNING = "running";
+    private static final String CHECKPOINT_KEY_ARTIST_PROVIDER = "artist_provider";
+    private static final String CHECKPOINT_KEY_ALBUM_PROVIDER = "album_provider";
+    private static final String CHECKPOINT_KEY_WIFI_ONLY = "wifi_only";
+    private static final String CHECKPOINT_KEY_PROCESSED_IMAGES = "processed_images";
+
     private NotificationManager mNotificationManager;
     private NotificationCompat.Builder mBuilder;
 
@@ -89,7 +101,9 @@ public class BulkDownloadService extends Service implements ArtworkManager.BulkL
 
     @Override
     public void onDestroy() {
-        unregisterReceiver(mBroadcastReceiver);
+        if (mBroadcastReceiver != null) {
+            unregisterReceiver(mBroadcastReceiver);
+        }
         unregisterReceiver(mConnectionStateChangeReceiver);
         Log.v(TAG, "Calling super.onDestroy()");
         super.onDestroy();
@@ -104,45 +118,93 @@ public class BulkDownloadService extends Service implements ArtworkManager.BulkL
 
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
-        if (intent != null && intent.getAction().equals(ACTION_START_BULKDOWNLOAD)) {
-            Log.v(TAG, "Starting bulk download in service with thread id: " + Thread.currentThread().getId());
+        if (intent == null) {
+            // The service was restarted after its process was killed, an interrupted bulk download is resumed
+            SharedPreferences checkpoint = getSharedPreferences(CHECKPOINT_PREFERENCES, MODE_PRIVATE);
+            if (!checkpoint.getBoolean(CHECKPOINT_KEY_RUNNING, false)) {
+                stopSelf();
+                return START_NOT_STICKY;
+            }
+
+            Log.v(TAG, "Resuming bulk download in service with thread id: " + Thread.currentThread().getId());
 
-            // reset counter
-            mRemainingArtists = 0;
-            mRemainingAlbums = 0;
-            mSumImageDownloads = 0;
+            String artistProvider = checkpoint.getString(CHECKPOINT_KEY_ARTIST_PROVIDER, getString(R.string.pref_artwork_provider_artist_default));
+            String albumProvider = checkpoint.getString(CHECKPOINT_KEY_ALBUM_PROVIDER, getString(R.string.pref_artwork_provider_album_default));
+            boolean wifiOnly = checkpoint.getBoolean(CHECKPOINT_KEY_WIFI_ONLY, true);
+
+            if (!startBulkDownload(artistProvider, albumProvider, wifiOnly, checkpoint.getInt(CHECKPOINT_KEY_PROCESSED_IMAGES, 0))) {
+                stopSelf();
+                return START_NOT_STICKY;
+            }
+        } else if (intent.getAction().equals(ACTION_START_BULKDOWNLOAD)) {
+            Log.v(TAG, "Starting bulk download in service with thread id: " + Thread.currentThread().getId());
 
             String artistProvider = getString(R.string.pref_artwork_provider_artist_default);
             String albumProvider = getString(R.string.pref_artwork_provider_album_default);
-            mWifiOnly = true;
+            boolean wifiOnly = true;
 
             // read setting from extras
             Bundle extras = intent.getExtras();
             if (extras != null) {
                 artistProvider = extras.getString(BUNDLE_KEY_ARTIST_PROVIDER, getString(R.string.pref_artwork_provider_artist_default));
                 albumProvider = extras.getString(BUNDLE_KEY_ALBUM_PROVIDER, getString(R.string.pref_artwork_provider_album_default));
-                mWifiOnly = intent.getBooleanExtra(BUNDLE_KEY_WIFI_ONLY, true);
+                wifiOnly = intent.getBooleanExtra(BUNDLE_KEY_WIFI_ONLY, true);
             }
 
-            if (artistProvider.equals(getString(R.string.pref_artwork_provider_none_key)) && albumProvider.equals(getString(R.string.pref_artwork_provider_none_key))) {
+            if (!startBulkDownload(artistProvider, albumProvider, wifiOnly, 0)) {
                 return START_NOT_STICKY;
             }
+        }
+        return START_STICKY;
+    }
 
-            if (!isDownloadAllowed(this)) {
-                return START_NOT_STICKY;
-            }
+    /**
+     * Starts the bulk download and saves its settings as checkpoint.
+     * <p>
+     * The {@link ArtworkManager} skips all images that are already in the database, so a resumed bulk download
+     * continues with the images that were not processed before.
+     *
+     * @param processedImages Number of images processed by an interrupted bulk download, 0 for a new bulk download
+     * @return False if the bulk download could not be started
+     */
+    private boolean startBulkDownload(String artistProvider, String albumProvider, boolean wifiOnly, int processedImages) {
+        // reset counter, the images of an interrupted bulk download are counted as done
+        mRemainingArtists = 0;
+        mRemainingAlbums = 0;
+        mSumImageDownloads = processedImages;
+
+        mWifiOnly = wifiOnly;
 
+        if (artistProvider.equals(getString(R.string.pref_artwork_provider_none_key)) && albumProvider.equals(getString(R.string.pref_artwork_provider_none_key))) {
+            return false;
+        }
+
+        if (!isDownloadAllowed(this)) {
+            return false;
+        }
+
+        getSharedPreferences(CHECKPOINT_PREFERENCES, MODE_PRIVATE).edit()
+                .putBoolean(CHECKPOINT_KEY_RUNNING, true)
+                .putString(CHECKPOINT_KEY_ARTIST_PROVIDER, artistProvider)
+                .putString(CHECKPOINT_KEY_ALBUM_PROVIDER, albumProvider)
+                .putBoolean(CHECKPOINT_KEY_WIFI_ONLY, wifiOnly)
+                .putInt(CHECKPOINT_KEY_PROCESSED_IMAGES, processedImages)
+                .apply();
+
+        if (mWakelock == null) {
             PowerManager powerManager = (PowerManager) getSystemService(POWER_SERVICE);
             mWakelock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, "Odyssey_BulkDownloader");
+        }
 
-            // FIXME do some timeout checking. e.g. 5 minutes no new image then cancel the process
+        // FIXME do some timeout checking. e.g. 5 minutes no new image then cancel the process
+        if (!mWakelock.isHeld()) {
             mWakelock.acquire();
-
-            ArtworkManager artworkManager = ArtworkManager.getInstance(getApplicationContext());
-            artworkManager.initialize(artistProvider, albumProvider, mWifiOnly);
-            artworkManager.bulkLoadImages(this, getApplicationContext());
         }
-        return START_STICKY;
+
+        ArtworkManager artworkManager = ArtworkManager.getInstance(getApplicationContext());
+        artworkManager.initialize(artistProvider, albumProvider, mWifiOnly);
+        artworkManager.bulkLoadImages(this, getApplicationContext());
+        return true;
     }
 
     private void runAsForeground() {
@@ -213,16 +275,23 @@ public class BulkDownloadService extends Service implements ArtworkManager.BulkL
 
     @Override
     public void finishedLoading() {
+        // Nothing to resume anymore
+        getSharedPreferences(CHECKPOINT_PREFERENCES, MODE_PRIVATE).edit().clear().apply();
+
         mNotificationManager.cancel(NOTIFICATION_ID);
         stopForeground(true);
         stopSelf();
-        if (mWakelock.isHeld()) {
+        if (mWakelock != null && mWakelock.isHeld()) {
             mWakelock.release();
         }
     }
 
     private void updateNotification() {
         if ((mSumImageDownloads - (mRemainingArtists + mRemainingAlbums)) % 10 == 0) {
+            getSharedPreferences(CHECKPOINT_PREFERENCES, MODE_PRIVATE).edit()
+                    .putInt(CHECKPOINT_KEY_PROCESSED_IMAGES, mSumImageDownloads - (mRemainingArtists + mRemainingAlbums))
+                    .apply();
+
             mBuilder.setProgress(mSumImageDownloads, mSumImageDownloads - (mRemainingArtists + mRemainingAlbums), false);
             mBuilder.setStyle(new NotificationCompat.BigTextStyle()
                     .bigText(getString(R.string.downloader_notification_remaining_images) + ' ' + String.valueOf(mSumImageDownloads - (mRemainingArtists + mRemainingAlbums)) + '/' + String.valueOf(mSumImageDownloads)));
@@ -273,6 +342,9 @@ public class BulkDownloadService extends Service implements ArtworkManager.BulkL
             Log.e(TAG, "Broadcast requested");
             if (intent.getAction().equals(ACTION_CANCEL_BULKDOWNLOAD)) {
                 Log.e(TAG, "Cancel requested");
+                // A cancelled download must not be resumed by a pending restart of the service
+                getSharedPreferences(CHECKPOINT_PREFERENCES, MODE_PRIVATE).edit().clear().apply();
+
                 ArtworkManager.getInstance(getApplicationContext()).cancelAllRequests(getApplicationContext());
                 mNotificationManager.cancel(NOTIFICATION_ID);
                 stopForeground(true);
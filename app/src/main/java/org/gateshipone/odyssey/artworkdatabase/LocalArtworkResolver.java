@@ -0,0 +1,280 @@
+/*
+ * Copyright (C) 2018 Team Gateship-One
+ * (Hendrik Borghorst & Frederik Luetkes)
+ *
+ * The AUTHORS.md file contains a detailed contributors list:
+ * <https://github.com/gateship-one/odyssey/blob/master/AUTHORS.md>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.gateshipone.odyssey.artworkdatabase;
+
+import android.content.Context;
+import android.media.MediaMetadataRetriever;
+import android.util.Log;
+
+import org.gateshipone.odyssey.models.AlbumModel;
+import org.gateshipone.odyssey.utils.MusicLibraryHelper;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Finds the artwork of an album next to its music files: a cover image in the folder of the tracks
+ * (e.g. cover.jpg) or, if the folder has none, the picture embedded in a track.
+ * <p>
+ * Found images are saved as album images like downloaded images, so they are answered by the artwork index afterwards
+ * and the album is not fetched from the internet. The cover image of each folder is remembered together with the
+ * modification time of the folder (s. {@link LocalArtTable}), so a folder is only searched again if it was changed.
+ */
+class LocalArtworkResolver {
+    private static final String TAG = LocalArtworkResolver.class.getSimpleName();
+
+    /**
+     * Names of cover images in the folder of the music files, the first one found is used
+     */
+    private static final String[] COVER_FILE_NAMES = {"cover", "folder", "front", "albumart"};
+
+    private static final String[] COVER_FILE_EXTENSIONS = {"jpg", "jpeg", "png"};
+
+    /**
+     * Cover images that are larger than this are ignored (16MB)
+     */
+    private static final long MAXIMUM_COVER_FILE_SIZE = 16 * 1024 * 1024;
+
+    /**
+     * Maximum number of albums without local artwork that are remembered
+     */
+    private static final int MAXIMUM_MISSED_ALBUMS = 1024;
+
+    private final ArtworkManager mArtworkManager;
+
+    private final ArtworkDatabaseManager mDBManager;
+
+    /**
+     * Albums without local artwork by their identity, the least recently used are dropped first. An album is
+     * searched again once its folder was changed, e.g. because a cover image was added.
+     */
+    private final LinkedHashMap<String, MissedAlbum> mMissedAlbums = new LinkedHashMap<String, MissedAlbum>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, MissedAlbum> eldest) {
+            return size() > MAXIMUM_MISSED_ALBUMS;
+        }
+    };
+
+    LocalArtworkResolver(final ArtworkManager artworkManager, final ArtworkDatabaseManager dbManager) {
+        mArtworkManager = artworkManager;
+        mDBManager = dbManager;
+    }
+
+    /**
+     * Looks for the local artwork of the album and saves it as image of the album.
+     *
+     * @param album     The album to look for.
+     * @param trackPath Path of a track of the album or null to look it up in the music library.
+     * @return True if an image was found and saved.
+     */
+    boolean resolveAlbumImage(final Context context, final AlbumModel album, final String trackPath) {
+        final String albumKey = album.getAlbumID() != -1 ? String.valueOf(album.getAlbumID()) : "name:" + album.getAlbumName();
+
+        // Checked before the music library is queried for the track
+        final MissedAlbum missedAlbum;
+        synchronized (mMissedAlbums) {
+            missedAlbum = mMissedAlbums.get(albumKey);
+        }
+        if (missedAlbum != null && !missedAlbum.isChanged()) {
+            return false;
+        }
+
+        final String localTrackPath = trackPath != null || album.getAlbumKey() == null ? trackPath :
+                MusicLibraryHelper.getTrackPathForAlbum(album.getAlbumKey(), context);
+        if (localTrackPath == null) {
+            return false;
+        }
+
+        // Only local files have a folder, e.g. streams are skipped
+        final File directory = new File(localTrackPath).getParentFile();
+        if (directory == null || !directory.isDirectory()) {
+            addMissedAlbum(albumKey, new MissedAlbum(null, 0));
+            return false;
+        }
+
+        // Taken before the search, so a change during the search is not missed
+        final long lastModified = directory.lastModified();
+
+        byte[] image = null;
+
+        final String coverPath = getCoverPath(directory);
+        if (coverPath != null) {
+            image = readCoverFile(coverPath);
+        }
+
+        if (image == null) {
+            image = readEmbeddedPicture(localTrackPath);
+        }
+
+        if (image == null) {
+            addMissedAlbum(albumKey, new MissedAlbum(directory, lastModified));
+            return false;
+        }
+
+        synchronized (mMissedAlbums) {
+            mMissedAlbums.remove(albumKey);
+        }
+
+        final String fileName = mArtworkManager.saveAlbumImage(context, album, image);
+        if (fileName == null) {
+            return false;
+        }
+
+        mDBManager.insertAlbumImages(context, Collections.singletonList(album), Collections.singletonList(fileName), null);
+        return true;
+    }
+
+    private void addMissedAlbum(final String albumKey, final MissedAlbum missedAlbum) {
+        synchronized (mMissedAlbums) {
+            mMissedAlbums.put(albumKey, missedAlbum);
+        }
+    }
+
+    /**
+     * @return The path of the cover image in the directory or null if it contains none.
+     */
+    private String getCoverPath(final File directory) {
+        try {
+            return mDBManager.getDirectoryImage(directory);
+        } catch (ImageNotFoundException e) {
+            final String coverPath = findCoverFile(directory);
+            mDBManager.insertDirectoryImage(directory, coverPath);
+            return coverPath;
+        }
+    }
+
+    /**
+     * Searches the directory for a cover image, the file names are compared case insensitive.
+     */
+    private static String findCoverFile(final File directory) {
+        final String[] files = directory.list();
+        if (files == null) {
+            return null;
+        }
+
+        String coverFile = null;
+        int coverRank = COVER_FILE_NAMES.length;
+
+        for (String file : files) {
+            final String name = file.toLowerCase(Locale.ROOT);
+            final int extensionStart = name.lastIndexOf('.');
+            if (extensionStart <= 0) {
+                continue;
+            }
+
+            final String baseName = name.substring(0, extensionStart);
+            final String extension = name.substring(extensionStart + 1);
+
+            for (int rank = 0; rank < coverRank; rank++) {
+                if (COVER_FILE_NAMES[rank].equals(baseName) && isCoverExtension(extension)) {
+                    coverFile = file;
+                    coverRank = rank;
+                    break;
+                }
+            }
+        }
+
+        return coverFile == null ? null : new File(directory, coverFile).getPath();
+    }
+
+    private static boolean isCoverExtension(final String extension) {
+        for (String coverExtension : COVER_FILE_EXTENSIONS) {
+            if (coverExtension.equals(extension)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static byte[] readCoverFile(final String coverPath) {
+        final File coverFile = new File(coverPath);
+        final long length = coverFile.length();
+        if (length <= 0 || length > MAXIMUM_COVER_FILE_SIZE) {
+            return null;
+        }
+
+        final byte[] image = new byte[(int) length];
+        try {
+            final FileInputStream inputStream = new FileInputStream(coverFile);
+            try {
+                int offset = 0;
+                while (offset < image.length) {
+                    final int read = inputStream.read(image, offset, image.length - offset);
+                    if (read < 0) {
+                        return null;
+                    }
+                    offset += read;
+                }
+            } finally {
+                inputStream.close();
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Could not read cover file: " + coverPath);
+            return null;
+        }
+
+        return image;
+    }
+
+    private static byte[] readEmbeddedPicture(final String trackPath) {
+        final MediaMetadataRetriever retriever = new MediaMetadataRetriever();
+        try {
+            retriever.setDataSource(trackPath);
+            return retriever.getEmbeddedPicture();
+        } catch (RuntimeException e) {
+            // The file could not be opened or has no readable metadata
+            return null;
+        } finally {
+            retriever.release();
+        }
+    }
+
+    /**
+     * Folder of an album without local artwork together with its modification time at the time of the search.
+     */
+    private static class MissedAlbum {
+        /**
+         * The folder of the tracks, null if the tracks have no local folder (e.g. streams)
+         */
+        private final File mDirectory;
+
+        private final long mLastModified;
+
+        MissedAlbum(final File directory, final long lastModified) {
+            mDirectory = directory;
+            mLastModified = lastModified;
+        }
+
+        /**
+         * @return True if files were added to or removed from the folder since the search.
+         */
+        boolean isChanged() {
+            return mDirectory != null && mDirectory.lastModified() != mLastModified;
+        }
+    }
+}
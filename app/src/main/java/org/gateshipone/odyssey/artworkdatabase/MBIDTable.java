@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2018 Team Gateship-One
+ * (Hendrik Borghorst & Frederik Luetkes)
+ *
+ * The AUTHORS.md file contains a detailed contributors list:
+ * <https://github.com/gateship-one/odyssey/blob/master/AUTHORS.md>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.gateshipone.odyssey.artworkdatabase;
+
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * Cache of the MusicBrainz ids that were resolved for album and artist names.
+ */
+public class MBIDTable {
+    public static final String TABLE_NAME = "odyssey_mbid_items";
+
+    public static final int TYPE_ALBUM = 0;
+    public static final int TYPE_ARTIST = 1;
+
+    public static final String COLUMN_TYPE = "type";
+
+    public static final String COLUMN_NAME = "name";
+    public static final String COLUMN_ARTIST_NAME = "artist_name";
+
+    /**
+     * The resolved MBID, null if nothing was found
+     */
+    public static final String COLUMN_MBID = "mbid";
+
+    /**
+     * Time in ms since the epoch after which the entry is resolved again
+     */
+    public static final String COLUMN_EXPIRES = "expires";
+
+    private static final String DATABASE_CREATE = "CREATE TABLE if not exists " +
+            TABLE_NAME +
+            " (" +
+            COLUMN_TYPE + " integer," +
+            COLUMN_NAME + " text," +
+            COLUMN_ARTIST_NAME + " text," +
+            COLUMN_MBID + " text," +
+            COLUMN_EXPIRES + " integer," +
+            "primary key (" + COLUMN_TYPE + "," + COLUMN_NAME + "," + COLUMN_ARTIST_NAME + ")" +
+            ");";
+
+    private static final String DATABASE_DROP = "DROP TABLE if exists " + TABLE_NAME;
+
+    public static void createTable(final SQLiteDatabase database) {
+        // Create table if not already existing
+        database.execSQL(DATABASE_CREATE);
+    }
+
+    public static void dropTable(final SQLiteDatabase database) {
+        // drop table if already existing
+        database.execSQL(DATABASE_DROP);
+    }
+}
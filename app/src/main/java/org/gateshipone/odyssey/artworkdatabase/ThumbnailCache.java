@@ -0,0 +1,529 @@
+/*
+ * Copyright (C) 2018 Team Gateship-One
+ * (Hendrik Borghorst & Frederik Luetkes)
+ *
+ * The AUTHORS.md file contains a detailed contributors list:
+ * <https://github.com/gateship-one/odyssey/blob/master/AUTHORS.md>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.gateshipone.odyssey.artworkdatabase;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import org.gateshipone.odyssey.utils.BitmapPool;
+import org.gateshipone.odyssey.utils.BitmapUtils;
+import org.gateshipone.odyssey.utils.FileUtils;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+
+/**
+ * Persistent store of pre-scaled artwork images between the {@link BitmapCache} and the full artwork files.
+ * <p>
+ * Thumbnails are stored per artwork and size bucket. A request is served by the smallest bucket that is at least
+ * as large as the requested size, so list and grid items do not decode the full covers.
+ * <p>
+ * The store is shared by all processes of the app (UI, playback service, bulk download). Thumbnails are
+ * saved as raw pixels and memory-mapped when they are read, so a cover is decoded only once for all processes.
+ * Thumbnails are written by one process at a time, which holds a file lock on the store while it writes.
+ * Each thumbnail records the identity of its artwork (path, size and modification time of a file or the location
+ * of an image in the {@link ArtworkStore}), so a thumbnail of a replaced artwork is never used even if its
+ * invalidation raced with the write.
+ */
+public class ThumbnailCache {
+    private static final String TAG = ThumbnailCache.class.getSimpleName();
+
+    /**
+     * The directory name for all thumbnails (inside the cache directory)
+     */
+    private static final String THUMBNAIL_DIR = "thumbnails";
+
+    /**
+     * File that is locked by the process that writes to the store
+     */
+    private static final String LOCK_FILE = "writer.lock";
+
+    /**
+     * File extension of the thumbnails
+     */
+    private static final String THUMBNAIL_EXTENSION = ".thumb";
+
+    /**
+     * Available thumbnail sizes in pixels. Larger requests are decoded from the full artwork.
+     */
+    private static final int[] SIZE_BUCKETS = {96, 160, 256, 384};
+
+    /**
+     * Maximum size of all thumbnails in bytes (128 MB). Thumbnails are raw pixels, one of the largest bucket
+     * takes 576 KB, so this holds about 220 of them or several thousand thumbnails of list items.
+     */
+    private static final long MAX_CACHE_SIZE = 128 * 1024 * 1024;
+
+    /**
+     * Part of the free space of the cache partition the thumbnails may use at most (in percent)
+     */
+    private static final int MAX_CACHE_SPACE_PERCENT = 10;
+
+    /**
+     * Thumbnails that are read are marked as used again after this time (1 hour), so the least recently used ones
+     * are removed first without changing the modification time on every read.
+     */
+    private static final long ACCESS_UPDATE_INTERVAL = 60 * 60 * 1000;
+
+    /**
+     * Identifies a thumbnail file of the current format
+     */
+    private static final int MAGIC = 0x4f445431;
+
+    /**
+     * Header: magic, width, height, hash of the artwork path or id, size and modification time of the artwork
+     */
+    private static final int HEADER_SIZE = 4 * 4 + 2 * 8;
+
+    /**
+     * Key prefix for album thumbnails
+     */
+    private static final String ALBUM_PREFIX = "album_";
+
+    /**
+     * Key prefix for artist thumbnails
+     */
+    private static final String ARTIST_PREFIX = "artist_";
+
+    private static ThumbnailCache mInstance;
+
+    private final File mDirectory;
+
+    /**
+     * Serializes the writers of this process, the file lock only excludes other processes.
+     */
+    private final Object mWriteLock = new Object();
+
+    /**
+     * Size of the thumbnails in bytes as known to this process. Other processes add thumbnails as well,
+     * so the directory is scanned again if this exceeds the maximum size.
+     */
+    private long mTotalSize;
+
+    /**
+     * Maximum size of the thumbnails in bytes, limited by the free space of the cache partition
+     */
+    private final long mMaxSize;
+
+    private ThumbnailCache(Context context) {
+        mDirectory = new File(context.getCacheDir(), THUMBNAIL_DIR);
+        mDirectory.mkdirs();
+
+        mTotalSize = getDirectorySize();
+        mMaxSize = Math.min(MAX_CACHE_SIZE, (mTotalSize + mDirectory.getUsableSpace()) * MAX_CACHE_SPACE_PERCENT / 100);
+    }
+
+    public static synchronized ThumbnailCache getInstance(Context context) {
+        if (null == mInstance) {
+            mInstance = new ThumbnailCache(context.getApplicationContext());
+        }
+        return mInstance;
+    }
+
+    /**
+     * Returns the key of the thumbnails for the given album.
+     *
+     * @param albumID   Android album id or -1 if not available
+     * @param albumName Name of the album, used if no id is available
+     */
+    public static String getAlbumKey(long albumID, String albumName) {
+        if (albumID != -1) {
+            return ALBUM_PREFIX + albumID;
+        }
+        return ALBUM_PREFIX + hashName(albumName);
+    }
+
+    /**
+     * Returns the key of the thumbnails for the given artist.
+     *
+     * @param artistID   Android artist id or -1 if not available
+     * @param artistName Name of the artist, used if no id is available
+     */
+    public static String getArtistKey(long artistID, String artistName) {
+        if (artistID != -1) {
+            return ARTIST_PREFIX + artistID;
+        }
+        return ARTIST_PREFIX + hashName(artistName);
+    }
+
+    /**
+     * Returns a bitmap for the requested size from the thumbnail of the artwork. If no valid thumbnail
+     * exists it is created from the full artwork file.
+     *
+     * @param key        Key of the artwork (see {@link #getAlbumKey(long, String)} and {@link #getArtistKey(long, String)})
+     * @param sourcePath Path of the full artwork file
+     * @param width      Requested width of the image
+     * @param height     Requested height of the image
+     * @return The bitmap or null if the requested size is not cached, the caller should decode the full artwork then.
+     */
+    public Bitmap getThumbnail(String key, String sourcePath, int width, int height) {
+        final int bucket = getSizeBucket(width, height);
+        if (bucket == -1) {
+            return null;
+        }
+
+        final File thumbnailFile = new File(mDirectory, key + '_' + bucket + THUMBNAIL_EXTENSION);
+        final File sourceFile = new File(sourcePath);
+
+        // Read the identity of the artwork before decoding, a later change invalidates the thumbnail
+        final long sourceLength = sourceFile.length();
+        final long sourceModified = sourceFile.lastModified();
+
+        Bitmap bitmap = readThumbnail(thumbnailFile, sourcePath, sourceLength, sourceModified);
+        if (bitmap != null) {
+            return bitmap;
+        }
+
+        return createThumbnail(thumbnailFile, BitmapUtils.decodeSampledBitmapFromFile(sourcePath, bucket, bucket), bucket,
+                sourcePath, sourceLength, sourceModified);
+    }
+
+    /**
+     * Returns a bitmap for the requested size from the thumbnail of the artwork. If no valid thumbnail
+     * exists it is created from the encoded artwork.
+     *
+     * @param key      Key of the artwork (see {@link #getAlbumKey(long, String)} and {@link #getArtistKey(long, String)})
+     * @param source   The encoded artwork
+     * @param sourceId Identifies the artwork, it must change if the artwork is replaced
+     * @param width    Requested width of the image
+     * @param height   Requested height of the image
+     * @return The bitmap or null if the requested size is not cached, the caller should decode the full artwork then.
+     */
+    public Bitmap getThumbnail(String key, ByteBuffer source, String sourceId, int width, int height) {
+        final int bucket = getSizeBucket(width, height);
+        if (bucket == -1) {
+            return null;
+        }
+
+        final File thumbnailFile = new File(mDirectory, key + '_' + bucket + THUMBNAIL_EXTENSION);
+        final long sourceLength = source.remaining();
+
+        Bitmap bitmap = readThumbnail(thumbnailFile, sourceId, sourceLength, 0);
+        if (bitmap != null) {
+            return bitmap;
+        }
+
+        return createThumbnail(thumbnailFile, BitmapUtils.decodeSampledBitmapFromBuffer(source, bucket, bucket), bucket,
+                sourceId, sourceLength, 0);
+    }
+
+    /**
+     * Scales the decoded artwork down to the size bucket and saves it as thumbnail.
+     *
+     * @param source The artwork, decoded with a sample size for the bucket
+     * @return The thumbnail or the artwork itself if it is not larger than the bucket
+     */
+    private Bitmap createThumbnail(File thumbnailFile, Bitmap source, int bucket, String sourceId, long sourceLength, long sourceModified) {
+        if (source == null) {
+            return null;
+        }
+
+        final int sourceSize = Math.max(source.getWidth(), source.getHeight());
+        if (sourceSize <= bucket) {
+            // The artwork is already small enough, a thumbnail would not save anything
+            return source;
+        }
+
+        final float scale = (float) bucket / sourceSize;
+        Bitmap thumbnail = Bitmap.createScaledBitmap(source, Math.max(1, Math.round(source.getWidth() * scale)),
+                Math.max(1, Math.round(source.getHeight() * scale)), true);
+        if (thumbnail != source) {
+            // The full size image was never handed out
+            BitmapPool.getInstance().recycle(source);
+        }
+
+        saveThumbnail(thumbnailFile, thumbnail, sourceId, sourceLength, sourceModified);
+
+        return thumbnail;
+    }
+
+    /**
+     * Removes all thumbnails of the given artwork. Must be called if the artwork changes.
+     * Can be called from every process.
+     *
+     * @param key Key of the artwork
+     */
+    public void removeThumbnails(String key) {
+        for (int bucket : SIZE_BUCKETS) {
+            new File(mDirectory, key + '_' + bucket + THUMBNAIL_EXTENSION).delete();
+        }
+    }
+
+    /**
+     * Removes all album thumbnails.
+     */
+    public void clearAlbumThumbnails() {
+        clear(ALBUM_PREFIX);
+    }
+
+    /**
+     * Removes all artist thumbnails.
+     */
+    public void clearArtistThumbnails() {
+        clear(ARTIST_PREFIX);
+    }
+
+    /**
+     * @return The smallest size bucket that fits the requested size or -1 if the size is too large
+     * or does not matter
+     */
+    private static int getSizeBucket(int width, int height) {
+        final int size = Math.max(width, height);
+        if (size <= 0) {
+            return -1;
+        }
+
+        for (int bucket : SIZE_BUCKETS) {
+            if (size <= bucket) {
+                return bucket;
+            }
+        }
+        return -1;
+    }
+
+    private static String hashName(String name) {
+        try {
+            return FileUtils.createSHA256HashForString(name);
+        } catch (NoSuchAlgorithmException e) {
+            return String.valueOf(String.valueOf(name).hashCode());
+        }
+    }
+
+    /**
+     * Maps the thumbnail file and copies its pixels to a (pooled) bitmap.
+     *
+     * @return The bitmap or null if the thumbnail does not exist or does not belong to the given artwork
+     */
+    private Bitmap readThumbnail(File thumbnailFile, String sourceId, long sourceLength, long sourceModified) {
+        try (RandomAccessFile file = new RandomAccessFile(thumbnailFile, "r"); FileChannel channel = file.getChannel()) {
+            final long fileSize = channel.size();
+            if (fileSize < HEADER_SIZE) {
+                return null;
+            }
+
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+
+            final int magic = buffer.getInt();
+            final int width = buffer.getInt();
+            final int height = buffer.getInt();
+            final int sourceHash = buffer.getInt();
+            final long length = buffer.getLong();
+            final long modified = buffer.getLong();
+
+            if (magic != MAGIC || sourceHash != sourceId.hashCode() || length != sourceLength || modified != sourceModified) {
+                // Written for a previous artwork
+                thumbnailFile.delete();
+                return null;
+            }
+
+            if (width <= 0 || height <= 0 || fileSize - HEADER_SIZE < (long) width * height * 4) {
+                thumbnailFile.delete();
+                return null;
+            }
+
+            final Bitmap bitmap = obtainBitmap(width, height);
+            bitmap.copyPixelsFromBuffer(buffer);
+
+            // The modification time is the last access, the least recently used thumbnails are removed first
+            final long now = System.currentTimeMillis();
+            if (now - thumbnailFile.lastModified() > ACCESS_UPDATE_INTERVAL) {
+                thumbnailFile.setLastModified(now);
+            }
+            return bitmap;
+        } catch (FileNotFoundException e) {
+            return null;
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "Could not read thumbnail: " + thumbnailFile.getName());
+            return null;
+        }
+    }
+
+    /**
+     * Writes the thumbnail while holding the file lock of the store. If another process wrote
+     * the same thumbnail in the meantime it is kept.
+     */
+    private void saveThumbnail(File thumbnailFile, Bitmap thumbnail, String sourceId, long sourceLength, long sourceModified) {
+        if (thumbnail.getConfig() != Bitmap.Config.ARGB_8888) {
+            // The store only contains 32 bit pixels
+            return;
+        }
+
+        synchronized (mWriteLock) {
+            try (RandomAccessFile lockFile = new RandomAccessFile(new File(mDirectory, LOCK_FILE), "rw")) {
+                final FileLock lock = lockFile.getChannel().lock();
+                try {
+                    if (thumbnailFile.exists()) {
+                        return;
+                    }
+
+                    writeThumbnail(thumbnailFile, thumbnail, sourceId, sourceLength, sourceModified);
+
+                    mTotalSize += thumbnailFile.length();
+                    if (mTotalSize > mMaxSize) {
+                        trimToSize();
+                    }
+                } finally {
+                    lock.release();
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "Could not lock thumbnail store: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Writes the thumbnail to a temporary file first, so other processes never read a partial file.
+     */
+    private void writeThumbnail(File thumbnailFile, Bitmap thumbnail, String sourceId, long sourceLength, long sourceModified) {
+        final File tempFile = new File(mDirectory, thumbnailFile.getName() + ".tmp");
+        final int pixelSize = thumbnail.getWidth() * thumbnail.getHeight() * 4;
+
+        try (RandomAccessFile file = new RandomAccessFile(tempFile, "rw"); FileChannel channel = file.getChannel()) {
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + pixelSize);
+
+            buffer.putInt(MAGIC);
+            buffer.putInt(thumbnail.getWidth());
+            buffer.putInt(thumbnail.getHeight());
+            buffer.putInt(sourceId.hashCode());
+            buffer.putLong(sourceLength);
+            buffer.putLong(sourceModified);
+
+            // Copies the pixels in the format copyPixelsFromBuffer expects
+            thumbnail.copyPixelsToBuffer(buffer);
+            buffer.force();
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "Could not write thumbnail: " + thumbnailFile.getName());
+            tempFile.delete();
+            return;
+        }
+
+        if (!tempFile.renameTo(thumbnailFile)) {
+            tempFile.delete();
+        }
+    }
+
+    /**
+     * Returns a mutable bitmap of the given size, reusing a pooled one if possible.
+     */
+    private static Bitmap obtainBitmap(int width, int height) {
+        final Bitmap reusable = BitmapPool.getInstance().get(width * height * 4);
+        if (reusable != null) {
+            reusable.reconfigure(width, height, Bitmap.Config.ARGB_8888);
+            return reusable;
+        }
+        return Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+    }
+
+    private void clear(String prefix) {
+        final File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        for (File file : files) {
+            if (file.getName().startsWith(prefix)) {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * @return Size of all thumbnails in the store. Files of previous formats are removed.
+     */
+    private long getDirectorySize() {
+        final File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return 0;
+        }
+
+        long size = 0;
+        for (File file : files) {
+            final String name = file.getName();
+            if (name.endsWith(THUMBNAIL_EXTENSION)) {
+                size += file.length();
+            } else if (!name.endsWith(".tmp") && !name.equals(LOCK_FILE)) {
+                // Temporary files could belong to a writer of another process
+                file.delete();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Removes the least recently used thumbnails of all processes until the store fits its maximum size.
+     * Must be called with the file lock held.
+     */
+    private void trimToSize() {
+        final File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        // Readers of other processes update the access times without the lock, so they are read once before sorting
+        final HashMap<File, Long> accessTimes = new HashMap<>();
+        for (File file : files) {
+            accessTimes.put(file, file.lastModified());
+        }
+
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File first, File second) {
+                return Long.compare(accessTimes.get(first), accessTimes.get(second));
+            }
+        });
+
+        long totalSize = 0;
+        for (File file : files) {
+            if (file.getName().endsWith(".tmp")) {
+                // Left over from an interrupted write, no other process writes while the lock is held
+                file.delete();
+            } else if (file.getName().endsWith(THUMBNAIL_EXTENSION)) {
+                totalSize += file.length();
+            }
+        }
+
+        for (File file : files) {
+            if (totalSize <= mMaxSize) {
+                break;
+            }
+
+            if (file.getName().endsWith(THUMBNAIL_EXTENSION)) {
+                totalSize -= file.length();
+                file.delete();
+            }
+        }
+
+        mTotalSize = totalSize;
+    }
+}
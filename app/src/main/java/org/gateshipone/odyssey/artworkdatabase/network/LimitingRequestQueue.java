@@ -24,39 +24,101 @@ package org.gateshipone.odyssey.artworkdatabase.network;
 
 
 import android.content.Context;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 
 import com.android.volley.Cache;
+import com.android.volley.ExecutorDelivery;
 import com.android.volley.Network;
+import com.android.volley.NetworkResponse;
 import com.android.volley.Request;
 import com.android.volley.RequestQueue;
+import com.android.volley.Response;
+import com.android.volley.ResponseDelivery;
+import com.android.volley.VolleyError;
 import com.android.volley.toolbox.BasicNetwork;
 import com.android.volley.toolbox.DiskBasedCache;
 import com.android.volley.toolbox.HurlStack;
 
-import java.util.Queue;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.PriorityQueue;
 import java.util.Timer;
 import java.util.TimerTask;
-import java.util.concurrent.LinkedBlockingQueue;
-
 
+/**
+ * Request queue that limits the requests to each host.
+ * <p>
+ * Every host has its own token bucket with the request rate documented by the provider, so image downloads
+ * are not slowed down by the limits of the search APIs. Requests to different hosts run in parallel,
+ * bounded by the network threads and a limit of parallel requests per host. Pending requests of a host
+ * are forwarded by their priority, so requests for visible items overtake the bulk download.
+ * <p>
+ * If a host answers with HTTP 429 or 503 its rate is reduced and the request is retried later. The rate
+ * slowly recovers with every successful request.
+ */
 public class LimitingRequestQueue extends RequestQueue implements RequestQueue.RequestFinishedListener {
     private static final String TAG = LimitingRequestQueue.class.getSimpleName();
 
-    private Timer mLimiterTimer;
+    /**
+     * Number of requests that are executed in parallel over all hosts
+     */
+    private static final int NETWORK_THREAD_COUNT = 4;
+
+    /**
+     * Number of retries of a request that was rejected because of too many requests
+     */
+    private static final int MAX_THROTTLE_RETRIES = 3;
+
+    /**
+     * Maximum factor the request interval of a host is stretched by after rejected requests
+     */
+    private static final double MAX_BACKOFF_FACTOR = 16.0;
+
+    /**
+     * Recovery of the backoff factor with each successful request
+     */
+    private static final double BACKOFF_RECOVERY = 0.9;
+
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+
+    private static final int HTTP_SERVICE_UNAVAILABLE = 503;
 
     private static LimitingRequestQueue mInstance;
 
-    private final Queue<Request<?>> mLimitingRequestQueue;
+    /**
+     * Rate limits by host name, guarded by itself
+     */
+    private final HashMap<String, HostLimit> mHosts;
+
+    /**
+     * Requests that were forwarded to the network and are not finished yet
+     */
+    private final HashMap<Request<?>, PendingRequest> mRunningRequests;
+
+    private Timer mLimiterTimer;
+
+    /**
+     * Scheduled dispatch of the next requests, null if none is scheduled
+     */
+    private TimerTask mDispatchTask;
+
+    private long mDispatchTime;
 
     /**
-     * Wait 1000ms between every request
+     * Increasing number of the added requests, requests with the same priority are forwarded in order
      */
-    private static final int REQUEST_RATE = 1000;
+    private long mSequence;
 
-    private LimitingRequestQueue(Cache cache, Network network) {
-        super(cache, network, 1);
-        mLimitingRequestQueue = new LinkedBlockingQueue<>();
+    private LimitingRequestQueue(Cache cache, Network network, ThrottleDelivery delivery) {
+        super(cache, network, NETWORK_THREAD_COUNT, delivery);
+        delivery.mQueue = this;
+
+        mHosts = new HashMap<>();
+        mRunningRequests = new HashMap<>();
         mLimiterTimer = null;
         super.addRequestFinishedListener(this);
     }
@@ -67,7 +129,7 @@ public class LimitingRequestQueue extends RequestQueue implements RequestQueue.R
             // 10MB disk cache
             Cache cache = new DiskBasedCache(context.getCacheDir(), 1024 * 1024 * 10);
 
-            mInstance = new LimitingRequestQueue(cache, network);
+            mInstance = new LimitingRequestQueue(cache, network, new ThrottleDelivery(new Handler(Looper.getMainLooper())));
             mInstance.start();
         }
         return mInstance;
@@ -75,7 +137,13 @@ public class LimitingRequestQueue extends RequestQueue implements RequestQueue.R
 
     @Override
     public void onRequestFinished(Request request) {
-        Log.v(TAG, "Request finished");
+        synchronized (mHosts) {
+            final PendingRequest pendingRequest = mRunningRequests.remove(request);
+            if (pendingRequest != null) {
+                pendingRequest.mHost.mRunningRequests--;
+            }
+            dispatch();
+        }
     }
 
     @Override
@@ -83,14 +151,18 @@ public class LimitingRequestQueue extends RequestQueue implements RequestQueue.R
         if (null == request) {
             return null;
         }
-        Log.v(TAG, "RATE LIMITING REQUEST ADDED");
-        synchronized (mLimitingRequestQueue) {
-            mLimitingRequestQueue.add(request);
-            if (null == mLimiterTimer) {
-                // Timer currently not running
-                mLimiterTimer = new Timer();
-                mLimiterTimer.schedule(new LimiterTask(), 0, REQUEST_RATE);
+
+        synchronized (mHosts) {
+            final String hostName = getHostName(request);
+
+            HostLimit host = mHosts.get(hostName);
+            if (host == null) {
+                host = createHostLimit(hostName);
+                mHosts.put(hostName, host);
             }
+
+            host.mPendingRequests.add(new PendingRequest(request, host, ++mSequence));
+            dispatch();
         }
         return request;
     }
@@ -99,23 +171,129 @@ public class LimitingRequestQueue extends RequestQueue implements RequestQueue.R
         super.add(request);
     }
 
+    /**
+     * Forwards the pending requests of all hosts that have tokens left and schedules the next dispatch for
+     * the hosts that have to wait. Must be called with the lock of the hosts held.
+     */
+    private void dispatch() {
+        final long now = SystemClock.elapsedRealtime();
+        long nextDispatch = Long.MAX_VALUE;
+
+        for (HostLimit host : mHosts.values()) {
+            while (!host.mPendingRequests.isEmpty() && host.mRunningRequests < host.mMaxParallelRequests) {
+                final long waitTime = host.takeToken(now);
+                if (waitTime > 0) {
+                    nextDispatch = Math.min(nextDispatch, now + waitTime);
+                    break;
+                }
+
+                final PendingRequest pendingRequest = host.mPendingRequests.poll();
+                if (pendingRequest.mRequest.isCanceled()) {
+                    // Give the token back, the request is not sent
+                    host.mTokens = Math.min(host.mBurst, host.mTokens + 1);
+                    continue;
+                }
+
+                host.mRunningRequests++;
+                mRunningRequests.put(pendingRequest.mRequest, pendingRequest);
+                realAddRequest(pendingRequest.mRequest);
+            }
+        }
+
+        scheduleDispatch(nextDispatch);
+    }
+
+    /**
+     * Schedules the next dispatch, if no earlier dispatch is scheduled already.
+     */
+    private void scheduleDispatch(long time) {
+        if (time == Long.MAX_VALUE) {
+            if (mDispatchTask == null && mLimiterTimer != null) {
+                // Stop the timer, no requests are waiting
+                mLimiterTimer.cancel();
+                mLimiterTimer = null;
+            }
+            return;
+        }
+
+        if (mDispatchTask != null) {
+            if (mDispatchTime <= time) {
+                return;
+            }
+            mDispatchTask.cancel();
+        }
+
+        if (null == mLimiterTimer) {
+            mLimiterTimer = new Timer();
+        }
+
+        mDispatchTask = new LimiterTask();
+        mDispatchTime = time;
+        mLimiterTimer.schedule(mDispatchTask, Math.max(0, time - SystemClock.elapsedRealtime()));
+    }
+
     private class LimiterTask extends TimerTask {
         @Override
         public void run() {
-            synchronized (mLimitingRequestQueue) {
-                Request request = mLimitingRequestQueue.poll();
-                if (null != request) {
-                    realAddRequest(request);
-                    Log.v(TAG, "RATE LIMITING FORWARED");
-                } else {
-                    // Stop the timer, no requests left
-                    mLimiterTimer.cancel();
-                    mLimiterTimer.purge();
-                    mLimiterTimer = null;
-                    Log.v(TAG, "RATE LIMITING EMPTY, STOPPING");
+            synchronized (mHosts) {
+                if (mDispatchTask != this) {
+                    return;
                 }
+                mDispatchTask = null;
+                dispatch();
+            }
+        }
+    }
+
+    /**
+     * Called before a response is delivered, a successful request lets the rate of its host recover.
+     */
+    private void onResponse(Request<?> request) {
+        synchronized (mHosts) {
+            final PendingRequest pendingRequest = mRunningRequests.get(request);
+            if (pendingRequest != null) {
+                pendingRequest.mHost.onSuccess();
+            }
+        }
+    }
+
+    /**
+     * Called before an error is delivered. Requests that were rejected because of too many requests
+     * slow down their host and are queued again.
+     *
+     * @return True if the request is retried and the error must not be delivered
+     */
+    private boolean onError(Request<?> request, VolleyError error) {
+        final NetworkResponse response = error.networkResponse;
+        if (response == null || (response.statusCode != HTTP_TOO_MANY_REQUESTS && response.statusCode != HTTP_SERVICE_UNAVAILABLE)) {
+            return false;
+        }
+
+        synchronized (mHosts) {
+            final PendingRequest pendingRequest = mRunningRequests.get(request);
+            if (pendingRequest == null) {
+                return false;
+            }
+
+            final HostLimit host = pendingRequest.mHost;
+            host.onThrottled(SystemClock.elapsedRealtime(), getRetryAfter(response));
+
+            Log.v(TAG, "Host " + host.mName + " rejected request, backoff factor: " + host.mBackoffFactor);
+
+            if (pendingRequest.mRetries >= MAX_THROTTLE_RETRIES || request.isCanceled()) {
+                return false;
             }
+
+            // The request is not finished, it goes back to the pending requests with its old position
+            mRunningRequests.remove(request);
+            host.mRunningRequests--;
+            pendingRequest.mRetries++;
+            host.mPendingRequests.add(pendingRequest);
+
+            dispatch();
         }
+
+        return true;
     }
 
     /**
@@ -125,15 +303,208 @@ public class LimitingRequestQueue extends RequestQueue implements RequestQueue.R
      */
     public void cancelAll(RequestFilter filter) {
         super.cancelAll(filter);
-        synchronized (mLimitingRequestQueue) {
-            for (Request<?> request : mLimitingRequestQueue) {
-                if (filter.apply(request)) {
-                    Log.v(TAG, "Canceling request: " + request);
-                    request.cancel();
-                    mLimitingRequestQueue.remove(request);
+        synchronized (mHosts) {
+            for (HostLimit host : mHosts.values()) {
+                final Iterator<PendingRequest> iterator = host.mPendingRequests.iterator();
+                while (iterator.hasNext()) {
+                    final Request<?> request = iterator.next().mRequest;
+                    if (filter.apply(request)) {
+                        Log.v(TAG, "Canceling request: " + request);
+                        request.cancel();
+                        iterator.remove();
+                    }
                 }
             }
         }
     }
 
+    private static String getHostName(Request<?> request) {
+        final String host = Uri.parse(request.getUrl()).getHost();
+        return host == null ? "" : host;
+    }
+
+    /**
+     * @return The time in ms the server asks to wait (Retry-After header), 0 if not given
+     */
+    private static long getRetryAfter(NetworkResponse response) {
+        if (response.headers == null) {
+            return 0;
+        }
+
+        final String retryAfter = response.headers.get("Retry-After");
+        if (retryAfter == null) {
+            return 0;
+        }
+
+        try {
+            return Long.parseLong(retryAfter.trim()) * 1000;
+        } catch (NumberFormatException e) {
+            // HTTP dates are not supported, the backoff factor is used instead
+            return 0;
+        }
+    }
+
+    /**
+     * Creates the limit of a host. The known providers get the rates they document, all other hosts
+     * (e.g. image servers) get a generous default.
+     */
+    private static HostLimit createHostLimit(String hostName) {
+        if (hostName.endsWith("musicbrainz.org")) {
+            // https://musicbrainz.org/doc/XML_Web_Service/Rate_Limiting: 1 request per second
+            return new HostLimit(hostName, 1.0, 1, 1);
+        } else if (hostName.endsWith("audioscrobbler.com")) {
+            // Last.fm API terms: at most 5 requests per second
+            return new HostLimit(hostName, 5.0, 5, 2);
+        } else if (hostName.endsWith("fanart.tv") || hostName.endsWith("coverartarchive.org")) {
+            // No documented limit, keep it moderate
+            return new HostLimit(hostName, 4.0, 4, 2);
+        }
+        return new HostLimit(hostName, 10.0, 10, 4);
+    }
+
+    /**
+     * Token bucket and pending requests of one host.
+     */
+    private static class HostLimit {
+        private final String mName;
+
+        /**
+         * Requests per second without backoff
+         */
+        private final double mRate;
+
+        /**
+         * Maximum number of tokens that can be collected
+         */
+        private final int mBurst;
+
+        private final int mMaxParallelRequests;
+
+        private final PriorityQueue<PendingRequest> mPendingRequests;
+
+        private double mTokens;
+
+        private long mLastRefill;
+
+        /**
+         * The request interval is stretched by this factor after rejected requests
+         */
+        private double mBackoffFactor;
+
+        /**
+         * No requests are sent before this time
+         */
+        private long mBlockedUntil;
+
+        private int mRunningRequests;
+
+        private HostLimit(String name, double rate, int burst, int maxParallelRequests) {
+            mName = name;
+            mRate = rate;
+            mBurst = burst;
+            mMaxParallelRequests = maxParallelRequests;
+            mPendingRequests = new PriorityQueue<>();
+
+            mTokens = burst;
+            mLastRefill = SystemClock.elapsedRealtime();
+            mBackoffFactor = 1.0;
+        }
+
+        /**
+         * Takes a token for a request.
+         *
+         * @return 0 if a token was taken, otherwise the time in ms until the next token is available
+         */
+        private long takeToken(long now) {
+            if (now < mBlockedUntil) {
+                return mBlockedUntil - now;
+            }
+
+            final double rate = mRate / mBackoffFactor;
+
+            mTokens = Math.min(mBurst, mTokens + (now - mLastRefill) * rate / 1000.0);
+            mLastRefill = now;
+
+            if (mTokens >= 1.0) {
+                mTokens--;
+                return 0;
+            }
+
+            return (long) Math.ceil((1.0 - mTokens) * 1000.0 / rate);
+        }
+
+        private void onSuccess() {
+            mBackoffFactor = Math.max(1.0, mBackoffFactor * BACKOFF_RECOVERY);
+        }
+
+        private void onThrottled(long now, long retryAfter) {
+            mBackoffFactor = Math.min(MAX_BACKOFF_FACTOR, mBackoffFactor * 2);
+            mTokens = 0;
+            mBlockedUntil = Math.max(mBlockedUntil, now + Math.max(retryAfter, (long) (1000.0 * mBackoffFactor / mRate)));
+        }
+    }
+
+    /**
+     * A request waiting for a token of its host.
+     */
+    private static class PendingRequest implements Comparable<PendingRequest> {
+        private final Request<?> mRequest;
+
+        private final HostLimit mHost;
+
+        private final long mSequence;
+
+        private int mRetries;
+
+        private PendingRequest(Request<?> request, HostLimit host, long sequence) {
+            mRequest = request;
+            mHost = host;
+            mSequence = sequence;
+        }
+
+        /**
+         * Higher priorities first, older requests first within the same priority.
+         */
+        @Override
+        public int compareTo(PendingRequest other) {
+            final int priority = other.mRequest.getPriority().compareTo(mRequest.getPriority());
+            if (priority != 0) {
+                return priority;
+            }
+            return Long.compare(mSequence, other.mSequence);
+        }
+    }
+
+    /**
+     * Delivers the responses on the main thread. Errors of requests that are retried are not delivered.
+     */
+    private static class ThrottleDelivery implements ResponseDelivery {
+        private final ResponseDelivery mDelivery;
+
+        private LimitingRequestQueue mQueue;
+
+        private ThrottleDelivery(Handler handler) {
+            mDelivery = new ExecutorDelivery(handler);
+        }
+
+        @Override
+        public void postResponse(Request<?> request, Response<?> response) {
+            mQueue.onResponse(request);
+            mDelivery.postResponse(request, response);
+        }
+
+        @Override
+        public void postResponse(Request<?> request, Response<?> response, Runnable runnable) {
+            mQueue.onResponse(request);
+            mDelivery.postResponse(request, response, runnable);
+        }
+
+        @Override
+        public void postError(Request<?> request, VolleyError error) {
+            if (mQueue.onError(request, error)) {
+                return;
+            }
+            mDelivery.postError(request, error);
+        }
+    }
 }
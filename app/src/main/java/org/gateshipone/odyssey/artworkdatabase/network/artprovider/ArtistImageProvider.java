@@ -25,6 +25,7 @@ package org.gateshipone.odyssey.artworkdatabase.network.artprovider;
 
 import android.content.Context;
 
+import com.android.volley.Request;
 import com.android.volley.Response;
 
 import org.gateshipone.odyssey.artworkdatabase.network.responses.ArtistFetchError;
@@ -33,6 +34,6 @@ import org.gateshipone.odyssey.models.ArtistModel;
 
 public interface ArtistImageProvider {
 
-    void fetchArtistImage(final ArtistModel artist, final Context context, final Response.Listener<ArtistImageResponse> listener, final ArtistFetchError errorListener);
+    void fetchArtistImage(final ArtistModel artist, final Context context, final Response.Listener<ArtistImageResponse> listener, final ArtistFetchError errorListener, final Request.Priority priority);
     void cancelAll();
 }
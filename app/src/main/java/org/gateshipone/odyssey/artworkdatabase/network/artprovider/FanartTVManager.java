@@ -24,12 +24,15 @@ package org.gateshipone.odyssey.artworkdatabase.network.artprovider;
 
 import android.content.Context;
 import android.net.Uri;
+import android.os.AsyncTask;
 import android.util.Log;
 
 import com.android.volley.Request;
 import com.android.volley.RequestQueue;
 import com.android.volley.Response;
 
+import org.gateshipone.odyssey.artworkdatabase.ArtworkDatabaseManager;
+import org.gateshipone.odyssey.artworkdatabase.MBIDNotFoundException;
 import org.gateshipone.odyssey.artworkdatabase.network.responses.ArtistFetchError;
 import org.gateshipone.odyssey.artworkdatabase.network.requests.OdysseyJsonObjectRequest;
 import org.gateshipone.odyssey.artworkdatabase.network.LimitingRequestQueue;
@@ -106,7 +109,20 @@ public class FanartTVManager implements ArtistImageProvider {
      * @param listener ResponseListener that reacts on successful retrieval of an image.
      * @param errorListener Error listener that is called when an error occurs.
      */
-    public void fetchArtistImage(final ArtistModel artist, final Context context, final Response.Listener<ArtistImageResponse> listener, final ArtistFetchError errorListener) {
+    public void fetchArtistImage(final ArtistModel artist, final Context context, final Response.Listener<ArtistImageResponse> listener, final ArtistFetchError errorListener, final Request.Priority priority) {
+
+        // Skip the artist search if the artist was resolved before
+        try {
+            final String artistMBID = ArtworkDatabaseManager.getInstance(context).getArtistMBID(artist);
+            if (artistMBID != null) {
+                fetchArtistImageForMBID(artist, artistMBID, context, listener, errorListener, priority);
+            } else {
+                errorListener.fetchVolleyError(artist, context, null);
+            }
+            return;
+        } catch (MBIDNotFoundException e) {
+            // Search the artist
+        }
 
         String artistURLName = Uri.encode(artist.getArtistName().replaceAll("/", " "));
 
@@ -119,24 +135,49 @@ public class FanartTVManager implements ArtistImageProvider {
                     JSONObject artistObj = artists.getJSONObject(0);
                     final String artistMBID = artistObj.getString("id");
 
-                    getArtistImageURL(artistMBID, response1 -> {
-                        JSONArray thumbImages;
-                        try {
-                            thumbImages = response1.getJSONArray("artistthumb");
+                    saveArtistMBID(context, artist, artistMBID);
+                    fetchArtistImageForMBID(artist, artistMBID, context, listener, errorListener, priority);
+                } else {
+                    saveArtistMBID(context, artist, null);
+                    errorListener.fetchVolleyError(artist, context, null);
+                }
+            } catch (JSONException e) {
+                errorListener.fetchJSONException(artist, context, e);
+            }
+        }, error -> errorListener.fetchVolleyError(artist, context, error), priority);
+    }
 
-                            JSONObject firstThumbImage = thumbImages.getJSONObject(0);
-                            artist.setMBID(artistMBID);
-                            getArtistImage(firstThumbImage.getString("url"), artist, listener, error -> errorListener.fetchVolleyError(artist, context, error));
+    /**
+     * Fetches the image of an artist whose MBID is known.
+     * @param artist Artist to try to get an image for.
+     * @param artistMBID MBID of the artist
+     * @param listener ResponseListener that reacts on successful retrieval of an image.
+     * @param errorListener Error listener that is called when an error occurs.
+     */
+    private void fetchArtistImageForMBID(final ArtistModel artist, final String artistMBID, final Context context, final Response.Listener<ArtistImageResponse> listener, final ArtistFetchError errorListener, final Request.Priority priority) {
+        getArtistImageURL(artistMBID, response -> {
+            JSONArray thumbImages;
+            try {
+                thumbImages = response.getJSONArray("artistthumb");
+
+                JSONObject firstThumbImage = thumbImages.getJSONObject(0);
+                artist.setMBID(artistMBID);
+                getArtistImage(firstThumbImage.getString("url"), artist, listener, error -> errorListener.fetchVolleyError(artist, context, error), priority);
 
-                        } catch (JSONException e) {
-                            errorListener.fetchJSONException(artist, context, e);
-                        }
-                    }, error -> errorListener.fetchVolleyError(artist, context, error));
-                }
             } catch (JSONException e) {
                 errorListener.fetchJSONException(artist, context, e);
             }
-        }, error -> errorListener.fetchVolleyError(artist, context, error));
+        }, error -> errorListener.fetchVolleyError(artist, context, error), priority);
+    }
+
+    /**
+     * Saves the resolved MBID of the artist. Responses are delivered on the main thread, so the database
+     * is written in the background.
+     * @param artist Artist that was resolved
+     * @param artistMBID MBID of the artist or null if the artist was not found
+     */
+    private void saveArtistMBID(final Context context, final ArtistModel artist, final String artistMBID) {
+        AsyncTask.execute(() -> ArtworkDatabaseManager.getInstance(context).insertArtistMBID(artist, artistMBID));
     }
 
     /**
@@ -145,7 +186,7 @@ public class FanartTVManager implements ArtistImageProvider {
      * @param listener Response listener to handle the artist list
      * @param errorListener Error listener
      */
-    private void getArtists(String artistName, Response.Listener<JSONObject> listener, Response.ErrorListener errorListener) {
+    private void getArtists(String artistName, Response.Listener<JSONObject> listener, Response.ErrorListener errorListener, Request.Priority priority) {
 
         Log.v(FanartTVManager.class.getSimpleName(), artistName);
 
@@ -155,6 +196,7 @@ public class FanartTVManager implements ArtistImageProvider {
 
         OdysseyJsonObjectRequest jsonObjectRequest = new OdysseyJsonObjectRequest(Request.Method.GET, url, null, listener, errorListener);
 
+        jsonObjectRequest.setPriority(priority);
         mRequestQueue.add(jsonObjectRequest);
     }
 
@@ -164,7 +206,7 @@ public class FanartTVManager implements ArtistImageProvider {
      * @param listener Response listener to handle the artists information from fanart.tv
      * @param errorListener Error listener
      */
-    private void getArtistImageURL(String artistMBID, Response.Listener<JSONObject> listener, Response.ErrorListener errorListener) {
+    private void getArtistImageURL(String artistMBID, Response.Listener<JSONObject> listener, Response.ErrorListener errorListener, Request.Priority priority) {
 
         Log.v(FanartTVManager.class.getSimpleName(), artistMBID);
 
@@ -172,6 +214,7 @@ public class FanartTVManager implements ArtistImageProvider {
 
         OdysseyJsonObjectRequest jsonObjectRequest = new OdysseyJsonObjectRequest(Request.Method.GET, url, null, listener, errorListener);
 
+        jsonObjectRequest.setPriority(priority);
         mRequestQueue.add(jsonObjectRequest);
     }
 
@@ -182,11 +225,12 @@ public class FanartTVManager implements ArtistImageProvider {
      * @param listener Response listener to receive the image as a byte array
      * @param errorListener Error listener
      */
-    private void getArtistImage(String url, ArtistModel artist, Response.Listener<ArtistImageResponse> listener, Response.ErrorListener errorListener) {
+    private void getArtistImage(String url, ArtistModel artist, Response.Listener<ArtistImageResponse> listener, Response.ErrorListener errorListener, Request.Priority priority) {
         Log.v(FanartTVManager.class.getSimpleName(), url);
 
-        Request<ArtistImageResponse> byteResponse = new ArtistImageByteRequest(url, artist, listener, errorListener);
+        ArtistImageByteRequest byteResponse = new ArtistImageByteRequest(url, artist, listener, errorListener);
 
+        byteResponse.setPriority(priority);
         mRequestQueue.add(byteResponse);
     }
 
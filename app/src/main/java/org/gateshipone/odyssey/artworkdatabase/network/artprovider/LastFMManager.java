@@ -94,7 +94,7 @@ public class LastFMManager implements ArtistImageProvider, AlbumImageProvider {
      * @param listener ResponseListener that reacts on successful retrieval of an image.
      * @param errorListener Error listener that is called when an error occurs.
      */
-    public void fetchArtistImage(final ArtistModel artist, final Context context, final Response.Listener<ArtistImageResponse> listener, final ArtistFetchError errorListener) {
+    public void fetchArtistImage(final ArtistModel artist, final Context context, final Response.Listener<ArtistImageResponse> listener, final ArtistFetchError errorListener, final Request.Priority priority) {
         String artistURLName = Uri.encode(artist.getArtistName().replaceAll("/", " "));
 
         getArtistImageURL(artistURLName, response -> {
@@ -108,7 +108,7 @@ public class LastFMManager implements ArtistImageProvider, AlbumImageProvider {
                     if (image.getString("size").equals(LAST_FM_REQUESTED_IMAGE_SIZE)) {
                         String url = image.getString("#text");
                         if (!url.isEmpty()) {
-                            getArtistImage(image.getString("#text"), artist, listener, error -> errorListener.fetchVolleyError(artist, context, error));
+                            getArtistImage(image.getString("#text"), artist, listener, error -> errorListener.fetchVolleyError(artist, context, error), priority);
                         } else {
                             errorListener.fetchVolleyError(artist, context, null);
                         }
@@ -117,7 +117,7 @@ public class LastFMManager implements ArtistImageProvider, AlbumImageProvider {
             } catch (JSONException e) {
                 errorListener.fetchJSONException(artist, context, e);
             }
-        }, error -> errorListener.fetchVolleyError(artist, context, error));
+        }, error -> errorListener.fetchVolleyError(artist, context, error), priority);
 
     }
 
@@ -133,7 +133,7 @@ public class LastFMManager implements ArtistImageProvider, AlbumImageProvider {
      * @param listener Callback listener to handle the response
      * @param errorListener Callback to handle a fetch error
      */
-    private void getArtistImageURL(String artistName, Response.Listener<JSONObject> listener, Response.ErrorListener errorListener) {
+    private void getArtistImageURL(String artistName, Response.Listener<JSONObject> listener, Response.ErrorListener errorListener, Request.Priority priority) {
 
 
         String url = LAST_FM_API_URL + "artist.getinfo&artist=" + artistName + "&api_key=" + API_KEY + LAST_FM_FORMAT_JSON;
@@ -141,6 +141,7 @@ public class LastFMManager implements ArtistImageProvider, AlbumImageProvider {
 
         OdysseyJsonObjectRequest jsonObjectRequest = new OdysseyJsonObjectRequest(Request.Method.GET, url, null, listener, errorListener);
 
+        jsonObjectRequest.setPriority(priority);
         mRequestQueue.add(jsonObjectRequest);
     }
 
@@ -151,11 +152,12 @@ public class LastFMManager implements ArtistImageProvider, AlbumImageProvider {
      * @param listener Response listener to receive the image as a byte array
      * @param errorListener Error listener
      */
-    private void getArtistImage(String url, ArtistModel artist, Response.Listener<ArtistImageResponse> listener, Response.ErrorListener errorListener) {
+    private void getArtistImage(String url, ArtistModel artist, Response.Listener<ArtistImageResponse> listener, Response.ErrorListener errorListener, Request.Priority priority) {
         Log.v(LastFMManager.class.getSimpleName(), url);
 
-        Request<ArtistImageResponse> byteResponse = new ArtistImageByteRequest(url, artist, listener, errorListener);
+        ArtistImageByteRequest byteResponse = new ArtistImageByteRequest(url, artist, listener, errorListener);
 
+        byteResponse.setPriority(priority);
         mRequestQueue.add(byteResponse);
     }
 
@@ -166,7 +168,7 @@ public class LastFMManager implements ArtistImageProvider, AlbumImageProvider {
      * @param errorListener Callback to handle errors
      */
     @Override
-    public void fetchAlbumImage(final AlbumModel album, final Context context, final Response.Listener<AlbumImageResponse> listener, final AlbumFetchError errorListener) {
+    public void fetchAlbumImage(final AlbumModel album, final Context context, final Response.Listener<AlbumImageResponse> listener, final AlbumFetchError errorListener, final Request.Priority priority) {
         getAlbumImageURL(album, response -> {
             try {
                 JSONObject albumObj = response.getJSONObject("album");
@@ -178,7 +180,7 @@ public class LastFMManager implements ArtistImageProvider, AlbumImageProvider {
                     if (image.getString("size").equals(LAST_FM_REQUESTED_IMAGE_SIZE)) {
                         String url = image.getString("#text");
                         if (!url.isEmpty()) {
-                            getAlbumImage(image.getString("#text"), album, listener, error -> errorListener.fetchVolleyError(album, context, error));
+                            getAlbumImage(image.getString("#text"), album, listener, error -> errorListener.fetchVolleyError(album, context, error), priority);
                         } else {
                             errorListener.fetchVolleyError(album, context, null);
                         }
@@ -187,7 +189,7 @@ public class LastFMManager implements ArtistImageProvider, AlbumImageProvider {
             } catch (JSONException e) {
                 errorListener.fetchJSONException(album, context, e);
             }
-        }, error -> errorListener.fetchVolleyError(album, context, error));
+        }, error -> errorListener.fetchVolleyError(album, context, error), priority);
     }
 
     /**
@@ -196,7 +198,7 @@ public class LastFMManager implements ArtistImageProvider, AlbumImageProvider {
      * @param listener Callback listener to handle the response
      * @param errorListener Callback to handle a fetch error
      */
-    private void getAlbumImageURL(AlbumModel album, Response.Listener<JSONObject> listener, Response.ErrorListener errorListener) {
+    private void getAlbumImageURL(AlbumModel album, Response.Listener<JSONObject> listener, Response.ErrorListener errorListener, Request.Priority priority) {
         String albumName = Uri.encode(album.getAlbumName());
         String artistName = Uri.encode(album.getArtistName());
 
@@ -205,6 +207,7 @@ public class LastFMManager implements ArtistImageProvider, AlbumImageProvider {
 
         OdysseyJsonObjectRequest jsonObjectRequest = new OdysseyJsonObjectRequest(Request.Method.GET, url, null, listener, errorListener);
 
+        jsonObjectRequest.setPriority(priority);
         mRequestQueue.add(jsonObjectRequest);
     }
 
@@ -215,11 +218,12 @@ public class LastFMManager implements ArtistImageProvider, AlbumImageProvider {
      * @param listener Response listener to receive the image as a byte array
      * @param errorListener Error listener
      */
-    private void getAlbumImage(String url, AlbumModel album, Response.Listener<AlbumImageResponse> listener, Response.ErrorListener errorListener) {
+    private void getAlbumImage(String url, AlbumModel album, Response.Listener<AlbumImageResponse> listener, Response.ErrorListener errorListener, Request.Priority priority) {
         Log.v(LastFMManager.class.getSimpleName(), url);
 
-        Request<AlbumImageResponse> byteResponse = new AlbumImageByteRequest(url, album, listener, errorListener);
+        AlbumImageByteRequest byteResponse = new AlbumImageByteRequest(url, album, listener, errorListener);
 
+        byteResponse.setPriority(priority);
         mRequestQueue.add(byteResponse);
     }
 }
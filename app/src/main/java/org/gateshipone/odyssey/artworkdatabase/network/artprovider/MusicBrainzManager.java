@@ -24,12 +24,16 @@ package org.gateshipone.odyssey.artworkdatabase.network.artprovider;
 
 import android.content.Context;
 import android.net.Uri;
+import android.os.AsyncTask;
 import android.util.Log;
 
 import com.android.volley.Request;
 import com.android.volley.RequestQueue;
 import com.android.volley.Response;
+import com.android.volley.VolleyError;
 
+import org.gateshipone.odyssey.artworkdatabase.ArtworkDatabaseManager;
+import org.gateshipone.odyssey.artworkdatabase.MBIDNotFoundException;
 import org.gateshipone.odyssey.artworkdatabase.network.responses.AlbumFetchError;
 import org.gateshipone.odyssey.artworkdatabase.network.responses.ArtistFetchError;
 import org.gateshipone.odyssey.artworkdatabase.network.requests.OdysseyJsonObjectRequest;
@@ -81,7 +85,7 @@ public class MusicBrainzManager implements AlbumImageProvider {
      * @param listener ResponseListener that reacts on successful retrieval of an image.
      * @param errorListener Error listener that is called when an error occurs.
      */
-    public void fetchArtistImage(final ArtistModel artist, final Context context, final Response.Listener<ArtistImageResponse> listener, final ArtistFetchError errorListener) {
+    public void fetchArtistImage(final ArtistModel artist, final Context context, final Response.Listener<ArtistImageResponse> listener, final ArtistFetchError errorListener, final Request.Priority priority) {
 
         String artistURLName = Uri.encode(artist.getArtistName());
 
@@ -104,18 +108,18 @@ public class MusicBrainzManager implements AlbumImageProvider {
                                 if (obj.getString("type").equals("image")) {
                                     JSONObject url = obj.getJSONObject("url");
 
-                                    getArtistImage(url.getString("resource"), listener, error -> errorListener.fetchVolleyError(artist, context, error));
+                                    getArtistImage(url.getString("resource"), listener, error -> errorListener.fetchVolleyError(artist, context, error), priority);
                                 }
                             }
                         } catch (JSONException e) {
                             errorListener.fetchJSONException(artist, context, e);
                         }
-                    }, error -> errorListener.fetchVolleyError(artist, context, error));
+                    }, error -> errorListener.fetchVolleyError(artist, context, error), priority);
                 }
             } catch (JSONException e) {
                 errorListener.fetchJSONException(artist, context, e);
             }
-        }, error -> errorListener.fetchVolleyError(artist, context, error));
+        }, error -> errorListener.fetchVolleyError(artist, context, error), priority);
     }
 
     /**
@@ -124,7 +128,7 @@ public class MusicBrainzManager implements AlbumImageProvider {
      * @param listener Callback to handle the response
      * @param errorListener Callback to handle errors
      */
-    private void getArtists(String artistName, Response.Listener<JSONObject> listener, Response.ErrorListener errorListener) {
+    private void getArtists(String artistName, Response.Listener<JSONObject> listener, Response.ErrorListener errorListener, Request.Priority priority) {
 
         Log.v(MusicBrainzManager.class.getSimpleName(), artistName);
 
@@ -132,6 +136,7 @@ public class MusicBrainzManager implements AlbumImageProvider {
 
         OdysseyJsonObjectRequest jsonObjectRequest = new OdysseyJsonObjectRequest(Request.Method.GET, url, null, listener, errorListener);
 
+        jsonObjectRequest.setPriority(priority);
         mRequestQueue.add(jsonObjectRequest);
     }
 
@@ -141,7 +146,7 @@ public class MusicBrainzManager implements AlbumImageProvider {
      * @param listener Callback listener to handle the response
      * @param errorListener Callback to handle a fetch error
      */
-    private void getArtistImageURL(String artistMBID, Response.Listener<JSONObject> listener, Response.ErrorListener errorListener) {
+    private void getArtistImageURL(String artistMBID, Response.Listener<JSONObject> listener, Response.ErrorListener errorListener, Request.Priority priority) {
 
         Log.v(MusicBrainzManager.class.getSimpleName(), artistMBID);
 
@@ -149,6 +154,7 @@ public class MusicBrainzManager implements AlbumImageProvider {
 
         OdysseyJsonObjectRequest jsonObjectRequest = new OdysseyJsonObjectRequest(Request.Method.GET, url, null, listener, errorListener);
 
+        jsonObjectRequest.setPriority(priority);
         mRequestQueue.add(jsonObjectRequest);
     }
 
@@ -158,7 +164,7 @@ public class MusicBrainzManager implements AlbumImageProvider {
      * @param listener Response listener to receive the image as a byte array
      * @param errorListener Error listener
      */
-    private void getArtistImage(String url, Response.Listener<ArtistImageResponse> listener, Response.ErrorListener errorListener) {
+    private void getArtistImage(String url, Response.Listener<ArtistImageResponse> listener, Response.ErrorListener errorListener, Request.Priority priority) {
         Log.v(MusicBrainzManager.class.getSimpleName(), url);
 
         // FIXME not implemented yet
@@ -175,9 +181,41 @@ public class MusicBrainzManager implements AlbumImageProvider {
      * @param errorListener Callback to handle errors
      */
     @Override
-    public void fetchAlbumImage(final AlbumModel album, final Context context, final Response.Listener<AlbumImageResponse> listener, final AlbumFetchError errorListener) {
+    public void fetchAlbumImage(final AlbumModel album, final Context context, final Response.Listener<AlbumImageResponse> listener, final AlbumFetchError errorListener, final Request.Priority priority) {
 
-        getAlbumMBID(album, response -> parseMusicBrainzReleaseJSON(album, 0, response, context, listener, errorListener), error -> errorListener.fetchVolleyError(album, context, error));
+        // Skip the release search if the release with a cover is known
+        try {
+            final String mbid = ArtworkDatabaseManager.getInstance(context).getAlbumMBID(album);
+            if (mbid == null) {
+                errorListener.fetchVolleyError(album, context, null);
+                return;
+            }
+
+            album.setMBID(mbid);
+            getAlbumImage(getCoverURL(mbid), album, listener, error -> {
+                if (isNotFound(error)) {
+                    // The cover of the release was removed, search the release again
+                    searchAlbumImage(album, context, listener, errorListener, priority);
+                } else {
+                    errorListener.fetchVolleyError(album, context, error);
+                }
+            }, priority);
+            return;
+        } catch (MBIDNotFoundException e) {
+            // Search the release
+        }
+
+        searchAlbumImage(album, context, listener, errorListener, priority);
+    }
+
+    /**
+     * Searches the releases of the album and checks them for a cover.
+     * @param album Album to check for an image
+     * @param listener Callback to handle the fetched image
+     * @param errorListener Callback to handle errors
+     */
+    private void searchAlbumImage(final AlbumModel album, final Context context, final Response.Listener<AlbumImageResponse> listener, final AlbumFetchError errorListener, final Request.Priority priority) {
+        getAlbumMBID(album, response -> parseMusicBrainzReleaseJSON(album, 0, response, context, listener, errorListener, priority), error -> errorListener.fetchVolleyError(album, context, error), priority);
     }
 
     /**
@@ -189,7 +227,7 @@ public class MusicBrainzManager implements AlbumImageProvider {
      * @param listener Callback to handle the response
      * @param errorListener Callback to handle errors
      */
-    private void parseMusicBrainzReleaseJSON(final AlbumModel album, final int releaseIndex, final JSONObject response, final Context context, final Response.Listener<AlbumImageResponse> listener, final AlbumFetchError errorListener) {
+    private void parseMusicBrainzReleaseJSON(final AlbumModel album, final int releaseIndex, final JSONObject response, final Context context, final Response.Listener<AlbumImageResponse> listener, final AlbumFetchError errorListener, final Request.Priority priority) {
         if (releaseIndex >= MUSICBRAINZ_LIMIT_RESULT_COUNT) {
             return;
         }
@@ -200,17 +238,23 @@ public class MusicBrainzManager implements AlbumImageProvider {
                 String mbid = releases.getJSONObject(releaseIndex).getString("id");
                 album.setMBID(mbid);
 
-                String url = COVERART_ARCHIVE_API_URL + "/" + "release/" + mbid + "/front-500";
-
-                getAlbumImage(url, album, listener, error -> {
+                getAlbumImage(getCoverURL(mbid), album, imageResponse -> {
+                    // Remember the release that has a cover
+                    saveAlbumMBID(context, album, mbid);
+                    listener.onResponse(imageResponse);
+                }, error -> {
                     Log.v(TAG, "No image found for: " + album.getAlbumName() + " with release index: " + releaseIndex);
                     if (releaseIndex + 1 < releases.length()) {
-                        parseMusicBrainzReleaseJSON(album, releaseIndex + 1, response, context, listener, errorListener);
+                        parseMusicBrainzReleaseJSON(album, releaseIndex + 1, response, context, listener, errorListener, priority);
                     } else {
+                        if (isNotFound(error)) {
+                            saveAlbumMBID(context, album, null);
+                        }
                         errorListener.fetchVolleyError(album, context, error);
                     }
-                });
+                }, priority);
             } else {
+                saveAlbumMBID(context, album, null);
                 errorListener.fetchVolleyError(album, context, null);
             }
         } catch (JSONException e) {
@@ -218,13 +262,38 @@ public class MusicBrainzManager implements AlbumImageProvider {
         }
     }
 
+    /**
+     * @param mbid MBID of a release
+     * @return URL of the front cover of the release
+     */
+    private static String getCoverURL(String mbid) {
+        return COVERART_ARCHIVE_API_URL + "/" + "release/" + mbid + "/front-500";
+    }
+
+    /**
+     * @return True if the server reported that the requested image does not exist
+     */
+    private static boolean isNotFound(VolleyError error) {
+        return error != null && error.networkResponse != null && error.networkResponse.statusCode == 404;
+    }
+
+    /**
+     * Saves the release of the album that has a cover. Responses are delivered on the main thread, so the
+     * database is written in the background.
+     * @param album Album that was resolved
+     * @param mbid MBID of the release with a cover or null if no release has a cover
+     */
+    private void saveAlbumMBID(final Context context, final AlbumModel album, final String mbid) {
+        AsyncTask.execute(() -> ArtworkDatabaseManager.getInstance(context).insertAlbumMBID(album, mbid));
+    }
+
     /**
      * Wrapper to get an MBID out of an {@link AlbumModel}.
      * @param album Album to get the MBID for
      * @param listener Response listener
      * @param errorListener Error listener
      */
-    private void getAlbumMBID(AlbumModel album, Response.Listener<JSONObject> listener, Response.ErrorListener errorListener) {
+    private void getAlbumMBID(AlbumModel album, Response.Listener<JSONObject> listener, Response.ErrorListener errorListener, Request.Priority priority) {
         String albumName = Uri.encode(album.getAlbumName());
         albumName = FormatHelper.escapeSpecialCharsLucene(albumName);
         String artistName = Uri.encode(album.getArtistName());
@@ -240,6 +309,7 @@ public class MusicBrainzManager implements AlbumImageProvider {
 
         OdysseyJsonObjectRequest jsonObjectRequest = new OdysseyJsonObjectRequest(Request.Method.GET, url, null, listener, errorListener);
 
+        jsonObjectRequest.setPriority(priority);
         mRequestQueue.add(jsonObjectRequest);
     }
 
@@ -250,9 +320,10 @@ public class MusicBrainzManager implements AlbumImageProvider {
      * @param listener Response listener to receive the image as a byte array
      * @param errorListener Error listener
      */
-    private void getAlbumImage(String url, AlbumModel album, Response.Listener<AlbumImageResponse> listener, Response.ErrorListener errorListener) {
-        Request<AlbumImageResponse> byteResponse = new AlbumImageByteRequest(url, album, listener, errorListener);
+    private void getAlbumImage(String url, AlbumModel album, Response.Listener<AlbumImageResponse> listener, Response.ErrorListener errorListener, Request.Priority priority) {
+        AlbumImageByteRequest byteResponse = new AlbumImageByteRequest(url, album, listener, errorListener);
         Log.v(TAG, "Get image: " + url);
+        byteResponse.setPriority(priority);
         mRequestQueue.add(byteResponse);
     }
 
@@ -32,10 +32,24 @@ import java.util.HashMap;
 import java.util.Map;
 
 public class OdysseyJsonObjectRequest extends JsonObjectRequest{
+    private Priority mPriority = Priority.NORMAL;
+
     public OdysseyJsonObjectRequest(int method, String url, JSONObject jsonRequest, Response.Listener<JSONObject> listener, Response.ErrorListener errorListener) {
         super(method, url, jsonRequest, listener, errorListener);
     }
 
+    /**
+     * Sets the priority of the request, requests with a higher priority are sent first.
+     */
+    public void setPriority(Priority priority) {
+        mPriority = priority;
+    }
+
+    @Override
+    public Priority getPriority() {
+        return mPriority;
+    }
+
     @Override
     public Map<String, String> getHeaders(){
         Map<String, String> headers = new HashMap<>();
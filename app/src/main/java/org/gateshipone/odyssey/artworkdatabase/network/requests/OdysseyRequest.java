@@ -31,10 +31,24 @@ import java.util.HashMap;
 import java.util.Map;
 
 public abstract class OdysseyRequest<T> extends Request<T>{
+    private Priority mPriority = Priority.NORMAL;
+
     public OdysseyRequest(int method, String url, Response.ErrorListener listener) {
         super(method, url, listener);
     }
 
+    /**
+     * Sets the priority of the request, requests with a higher priority are sent first.
+     */
+    public void setPriority(Priority priority) {
+        mPriority = priority;
+    }
+
+    @Override
+    public Priority getPriority() {
+        return mPriority;
+    }
+
     @Override
     public Map<String, String> getHeaders(){
         Map<String, String> headers = new HashMap<>();
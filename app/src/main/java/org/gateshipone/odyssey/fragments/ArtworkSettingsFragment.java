@@ -34,6 +34,7 @@ import android.support.v7.preference.PreferenceFragmentCompat;
 import org.gateshipone.odyssey.R;
 import org.gateshipone.odyssey.artworkdatabase.ArtworkDatabaseManager;
 import org.gateshipone.odyssey.artworkdatabase.ArtworkManager;
+import org.gateshipone.odyssey.artworkdatabase.ArtworkRetryService;
 import org.gateshipone.odyssey.artworkdatabase.BulkDownloadService;
 import org.gateshipone.odyssey.dialogs.BulkDownloaderDialog;
 import org.gateshipone.odyssey.listener.ToolbarAndFABCallback;
@@ -180,13 +181,30 @@ public class ArtworkSettingsFragment extends PreferenceFragmentCompat implements
 
             artworkManager.cancelAllRequests(getContext());
 
+            final Context context = getContext().getApplicationContext();
+
             if (key.equals(albumProviderKey)) {
-                artworkManager.setAlbumProvider(sharedPreferences.getString(albumProviderKey, getString(R.string.pref_artwork_provider_album_default)));
+                String albumProvider = sharedPreferences.getString(albumProviderKey, getString(R.string.pref_artwork_provider_album_default));
+                artworkManager.setAlbumProvider(albumProvider);
+
+                if (!albumProvider.equals(getString(R.string.pref_artwork_provider_none_key))) {
+                    // Images that were not found by the previous provider are searched again by the new one
+                    ArtworkDatabaseManager.getInstance(context).expireBlockedAlbumImages(albumProvider);
+                }
             } else if (key.equals(artistProviderKey)) {
-                artworkManager.setArtistProvider(sharedPreferences.getString(artistProviderKey, getString(R.string.pref_artwork_provider_artist_default)));
+                String artistProvider = sharedPreferences.getString(artistProviderKey, getString(R.string.pref_artwork_provider_artist_default));
+                artworkManager.setArtistProvider(artistProvider);
+
+                if (!artistProvider.equals(getString(R.string.pref_artwork_provider_none_key))) {
+                    // Images that were not found by the previous provider are searched again by the new one
+                    ArtworkDatabaseManager.getInstance(context).expireBlockedArtistImages(artistProvider);
+                }
             } else if (key.equals(downloadWifiOnlyKey)) {
                 artworkManager.setWifiOnly(sharedPreferences.getBoolean(downloadWifiOnlyKey, getResources().getBoolean(R.bool.pref_download_wifi_default)));
             }
+
+            // The retry runs use the new settings
+            ArtworkRetryService.scheduleRetries(context, true);
         } else if (key.equals(getString(R.string.pref_hide_artwork_key))) {
             boolean hideArtwork = sharedPreferences.getBoolean(key, getResources().getBoolean(R.bool.pref_hide_artwork_default));
             try {
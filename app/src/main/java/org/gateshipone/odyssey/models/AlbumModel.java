@@ -189,6 +189,13 @@ public class AlbumModel implements GenericModel, Parcelable {
         }
     }
 
+    @Override
+    public int hashCode() {
+        int result = (int) (mAlbumID ^ (mAlbumID >>> 32));
+        result = 31 * result + mAlbumName.hashCode();
+        return 31 * result + mArtistName.hashCode();
+    }
+
     /**
      * Return the section title for the AlbumModel
      * <p/>
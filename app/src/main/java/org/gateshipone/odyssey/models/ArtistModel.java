@@ -151,4 +151,9 @@ public class ArtistModel implements GenericModel, Parcelable {
             return false;
         }
     }
+
+    @Override
+    public int hashCode() {
+        return 31 * (int) (mArtistID ^ (mArtistID >>> 32)) + mArtistName.hashCode();
+    }
 }
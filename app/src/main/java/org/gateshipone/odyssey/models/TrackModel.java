@@ -268,6 +268,14 @@ public class TrackModel implements GenericModel, Parcelable {
         return (this.mTrackId == track.mTrackId);
     }
 
+    /**
+     * Hash code for the TrackModel, consistent with {@link #equals(Object)}
+     */
+    @Override
+    public int hashCode() {
+        return (int) (mTrackId ^ (mTrackId >>> 32));
+    }
+
     /**
      * Describe the kinds of special objects contained in this Parcelable's
      * marshalled representation.
@@ -24,6 +24,8 @@ package org.gateshipone.odyssey.playbackservice;
 
 import org.gateshipone.odyssey.models.TrackModel;
 
+import java.util.List;
+
 /**
  * Message object which get passed between PlaybackServiceInterface ->
  * PlaybackServiceHandler
@@ -34,7 +36,7 @@ public class ControlObject {
 
     public enum PLAYBACK_ACTION {
         ODYSSEY_PLAY, ODYSSEY_TOGGLEPAUSE, ODYSSEY_NEXT, ODYSSEY_PREVIOUS, ODYSSEY_SEEKTO, ODYSSEY_JUMPTO, ODYSSEY_REPEAT, ODYSSEY_RANDOM,
-        ODYSSEY_ENQUEUETRACK, ODYSSEY_PLAYTRACK, ODYSSEY_DEQUEUETRACK, ODYSSEY_DEQUEUETRACKS,
+        ODYSSEY_ENQUEUETRACK, ODYSSEY_ENQUEUETRACKLIST, ODYSSEY_PLAYTRACK, ODYSSEY_DEQUEUETRACK, ODYSSEY_DEQUEUETRACKS,
         ODYSSEY_PLAYALLTRACKS,
         ODYSSEY_RESUMEBOOKMARK, ODYSSEY_DELETEBOOKMARK, ODYSSEY_CREATEBOOKMARK,
         ODYSSEY_SAVEPLAYLIST, ODYSSEY_CLEARPLAYLIST, ODYSSEY_SHUFFLEPLAYLIST,
@@ -53,6 +55,7 @@ public class ControlObject {
     private String mStringparam;
     private String mSecondStringParam;
     private TrackModel mTrack;
+    private List<TrackModel> mTracks;
     private long mLongParam;
 
     public ControlObject(PLAYBACK_ACTION action) {
@@ -87,6 +90,11 @@ public class ControlObject {
         mBoolparam = boolParam;
     }
 
+    public ControlObject(PLAYBACK_ACTION action, List<TrackModel> tracks) {
+        mAction = action;
+        mTracks = tracks;
+    }
+
     public ControlObject(PLAYBACK_ACTION action, long param) {
         mAction = action;
         mLongParam = param;
@@ -130,6 +138,13 @@ public class ControlObject {
         return mBoolparam;
     }
 
+    /**
+     * Changes the int parameter of a waiting command, e.g. if the playlist position it refers to moved.
+     */
+    public void setIntParam(int param) {
+        mIntparam = param;
+    }
+
     public long getLongParam() {
         return mLongParam;
     }
@@ -137,4 +152,8 @@ public class ControlObject {
     public TrackModel getTrack() {
         return mTrack;
     }
+
+    public List<TrackModel> getTracks() {
+        return mTracks;
+    }
 }
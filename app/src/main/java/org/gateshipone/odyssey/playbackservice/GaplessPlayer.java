@@ -24,6 +24,10 @@ package org.gateshipone.odyssey.playbackservice;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.concurrent.Semaphore;
@@ -53,6 +57,16 @@ public class GaplessPlayer {
      */
     private final static int RELEASE_PLAYER_TIMEOUT = 30 * 1000;
 
+    /**
+     * Maximum number of idle {@link MediaPlayer} objects kept for reuse
+     */
+    private final static int PLAYER_POOL_SIZE = 2;
+
+    /**
+     * Timeout after which an idle {@link MediaPlayer} of the pool is released (ms)
+     */
+    private final static int PLAYER_POOL_IDLE_TIMEOUT = 5 * 60 * 1000;
+
     public enum REASON {
         IOError, SecurityError, StateError, ArgumentError
     }
@@ -128,12 +142,32 @@ public class GaplessPlayer {
      */
     private ReleaseGaplessPlayerTask mReleasePlayerTask;
 
+    /**
+     * Pool of reusable {@link MediaPlayer} objects
+     */
+    private final MediaPlayerPool mPlayerPool;
+
+    /**
+     * Players that are prepared ahead for tracks the user will probably skip to, mapped by their URL.
+     */
+    private final Map<String, StandbyPlayer> mStandbyPlayers = new LinkedHashMap<>();
+
     /**
      * Public constructor.
      *
      * @param service PlaybackService to use as context and for callbacks.
      */
     GaplessPlayer(PlaybackService service) {
+        this(service, PLAYER_POOL_SIZE);
+    }
+
+    /**
+     * Constructor with a configurable pool size.
+     *
+     * @param service  PlaybackService to use as context and for callbacks.
+     * @param poolSize Maximum number of idle {@link MediaPlayer} objects kept for reuse, 0 to disable reuse.
+     */
+    GaplessPlayer(PlaybackService service, int poolSize) {
         this.mTrackFinishedListeners = new ArrayList<>();
         this.mTrackStartListeners = new ArrayList<>();
         mPlaybackService = service;
@@ -141,6 +175,8 @@ public class GaplessPlayer {
         Log.v(TAG, "MyPid: " + android.os.Process.myPid() + " MyTid: " + android.os.Process.myTid());
 
         mReleasePlayerTimer = new Timer();
+
+        mPlayerPool = new MediaPlayerPool(poolSize, PLAYER_POOL_IDLE_TIMEOUT);
     }
 
     /**
@@ -162,15 +198,34 @@ public class GaplessPlayer {
      */
     public synchronized void play(String uri, int jumpTime) throws PlaybackException {
         stopReleaseTask();
-        // Another player currently exists, remove it.
-        if (mCurrentMediaPlayer != null) {
-            mCurrentMediaPlayer.reset();
-            mCurrentMediaPlayer.release();
-            mCurrentMediaPlayer = null;
+
+        // Check if a player for this uri is already prepared (or preparing)
+        StandbyPlayer standbyPlayer = takePreparedPlayer(uri);
+
+        // Another player currently exists, stop it and return it to the pool. The standby players are kept.
+        stopCurrentPlayer();
+
+        if (standbyPlayer != null) {
+            // Skip the preparation and use the waiting player
+            mCurrentMediaPlayer = standbyPlayer.mPlayer;
+            mCurrentPrepared = false;
+            mPrimarySource = uri;
+            mPrepareTime = jumpTime;
+
+            mCurrentMediaPlayer.setOnCompletionListener(new TrackCompletionListener());
+            mCurrentMediaPlayer.setOnPreparedListener(mPrimaryPreparedListener);
+
+            if (standbyPlayer.mPrepared) {
+                // Start the playback directly
+                mPrimaryPreparedListener.onPrepared(mCurrentMediaPlayer);
+            } else if (!standbyPlayer.mPreparing) {
+                mCurrentMediaPlayer.prepareAsync();
+            }
+            return;
         }
 
-        // Create new MediaPlayer object.
-        mCurrentMediaPlayer = new MediaPlayer();
+        // Get a MediaPlayer object from the pool.
+        mCurrentMediaPlayer = mPlayerPool.acquire();
         mCurrentPrepared = false;
 
         // Set the type of the stream to music.
@@ -233,14 +288,25 @@ public class GaplessPlayer {
      */
     synchronized void stop() {
         stopReleaseTask();
+
+        // Prepared players are useless without playback, free their decoders
+        clearStandbyPlayers();
+
+        stopCurrentPlayer();
+    }
+
+    /**
+     * Stops the current and the next player and returns them to the pool.
+     */
+    private void stopCurrentPlayer() {
         // Check if a player exists otherwise there is nothing to do.
         if (mCurrentMediaPlayer != null) {
             // Check if the player for the next song exists already
             if (mNextMediaPlayer != null) {
                 // Remove the next player from the currently playing one.
                 mCurrentMediaPlayer.setNextMediaPlayer(null);
-                // Release the MediaPlayer, not usable after this command
-                mNextMediaPlayer.release();
+                // Return the MediaPlayer to the pool
+                mPlayerPool.recycle(mNextMediaPlayer);
 
                 // Reset variables to clean internal state
                 mNextMediaPlayer = null;
@@ -259,8 +325,8 @@ public class GaplessPlayer {
                 mPlaybackService.sendBroadcast(audioEffectIntent);
                 Log.v(TAG, "Closing effect for session: " + mCurrentMediaPlayer.getAudioSessionId());
             }
-            // Release the current player
-            mCurrentMediaPlayer.release();
+            // Return the current player to the pool
+            mPlayerPool.recycle(mCurrentMediaPlayer);
 
             // Reset variables to clean internal state
             mCurrentMediaPlayer = null;
@@ -268,6 +334,15 @@ public class GaplessPlayer {
         }
     }
 
+    /**
+     * Stops media playback and releases all pooled {@link MediaPlayer} objects.
+     * Called when the service using this player is destroyed.
+     */
+    synchronized void release() {
+        stop();
+        mPlayerPool.clear();
+    }
+
     /**
      * Seeks the currently playing track to the requested position. Bounds/state check are done.
      *
@@ -370,8 +445,8 @@ public class GaplessPlayer {
         if (mNextMediaPlayer != null) {
             // Remove this player from the currently active one as a next one
             mCurrentMediaPlayer.setNextMediaPlayer(null);
-            // Release the player that is not needed any longer
-            mNextMediaPlayer.release();
+            // Return the player that is not needed any longer to the pool
+            mPlayerPool.recycle(mNextMediaPlayer);
 
             // Reset internal state variables
             mNextMediaPlayer = null;
@@ -379,10 +454,31 @@ public class GaplessPlayer {
             mSecondPreparing = false;
         }
 
+        // Check if a standby player already prepares this uri and use it as the next player
+        StandbyPlayer standbyPlayer = uri != null ? mStandbyPlayers.remove(uri) : null;
+        if (standbyPlayer != null) {
+            if (mCurrentPrepared) {
+                mNextMediaPlayer = standbyPlayer.mPlayer;
+                mSecondarySource = uri;
+                mNextMediaPlayer.setOnPreparedListener(mSecondaryPreparedListener);
+
+                if (standbyPlayer.mPrepared) {
+                    mSecondPrepared = true;
+                    mCurrentMediaPlayer.setNextMediaPlayer(mNextMediaPlayer);
+                } else {
+                    mSecondPreparing = true;
+                }
+                return;
+            }
+
+            // The gapless transition requires a prepared current player, prepare the next one as usual
+            mPlayerPool.recycle(standbyPlayer.mPlayer);
+        }
+
         // Check if the uri contains something
         if (uri != null && !uri.isEmpty()) {
-            // Create a new MediaPlayer to prepare as next song playback
-            mNextMediaPlayer = new MediaPlayer();
+            // Get a MediaPlayer from the pool to prepare as next song playback
+            mNextMediaPlayer = mPlayerPool.acquire();
 
             // Set the old audio session ID to reuse the opened audio effect session
             mNextMediaPlayer.setAudioSessionId(mCurrentMediaPlayer.getAudioSessionId());
@@ -426,6 +522,94 @@ public class GaplessPlayer {
         }
     }
 
+    /**
+     * Prepares players for the given tracks in the background, so that a skip to one of them can start
+     * without the delay of the preparation. Players for tracks that are no longer in the list are recycled.
+     * Errors are ignored because this is only an optimization, they will be reported if the track is played.
+     *
+     * @param uris URIs of the tracks to prepare ahead, in order of their priority
+     */
+    synchronized void setStandbyTracks(List<String> uris) {
+        // Remove players that are no longer needed
+        Iterator<Map.Entry<String, StandbyPlayer>> iterator = mStandbyPlayers.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, StandbyPlayer> entry = iterator.next();
+
+            if (!uris.contains(entry.getKey())) {
+                mPlayerPool.recycle(entry.getValue().mPlayer);
+                iterator.remove();
+            }
+        }
+
+        // Standby players are only useful while a track is playing
+        if (mCurrentMediaPlayer == null || !mCurrentPrepared) {
+            return;
+        }
+
+        for (String uri : uris) {
+            if (uri == null || uri.isEmpty() || mStandbyPlayers.containsKey(uri) || uri.equals(mPrimarySource) || uri.equals(mSecondarySource)) {
+                continue;
+            }
+
+            MediaPlayer player = mPlayerPool.acquire();
+
+            try {
+                // Use the current audio session to keep the opened audio effect session
+                player.setAudioSessionId(mCurrentMediaPlayer.getAudioSessionId());
+                player.setAudioStreamType(AudioManager.STREAM_MUSIC);
+                player.setDataSource(mPlaybackService.getApplicationContext(), FormatHelper.encodeURI(uri));
+                player.setOnPreparedListener(mStandbyPreparedListener);
+                player.prepareAsync();
+            } catch (IllegalArgumentException | SecurityException | IllegalStateException | IOException e) {
+                Log.w(TAG, "Could not prepare standby player for: " + uri);
+                mPlayerPool.recycle(player);
+                continue;
+            }
+
+            StandbyPlayer standbyPlayer = new StandbyPlayer(player);
+            standbyPlayer.mPreparing = true;
+            mStandbyPlayers.put(uri, standbyPlayer);
+        }
+    }
+
+    /**
+     * Removes a player for the given uri from the standby players or the next player.
+     *
+     * @param uri URI of the track to play
+     * @return The player that is prepared (or preparing) the track or null if none exists.
+     */
+    private StandbyPlayer takePreparedPlayer(String uri) {
+        StandbyPlayer standbyPlayer = mStandbyPlayers.remove(uri);
+
+        if (standbyPlayer == null && mNextMediaPlayer != null && uri.equals(mSecondarySource)) {
+            // The next player of the gapless transition is requested, detach it from the current one
+            if (mCurrentMediaPlayer != null) {
+                mCurrentMediaPlayer.setNextMediaPlayer(null);
+            }
+
+            standbyPlayer = new StandbyPlayer(mNextMediaPlayer);
+            standbyPlayer.mPrepared = mSecondPrepared;
+            standbyPlayer.mPreparing = mSecondPreparing;
+
+            mNextMediaPlayer = null;
+            mSecondarySource = null;
+            mSecondPrepared = false;
+            mSecondPreparing = false;
+        }
+
+        return standbyPlayer;
+    }
+
+    /**
+     * Recycles all standby players.
+     */
+    private void clearStandbyPlayers() {
+        for (StandbyPlayer standbyPlayer : mStandbyPlayers.values()) {
+            mPlayerPool.recycle(standbyPlayer.mPlayer);
+        }
+        mStandbyPlayers.clear();
+    }
+
     private OnPreparedListener mPrimaryPreparedListener = new MediaPlayer.OnPreparedListener() {
 
         @Override
@@ -540,6 +724,48 @@ public class GaplessPlayer {
         }
     };
 
+    private OnPreparedListener mStandbyPreparedListener = new MediaPlayer.OnPreparedListener() {
+
+        @Override
+        public void onPrepared(MediaPlayer mp) {
+            // Sequentially execute all critical operations on the MP objects
+            synchronized (GaplessPlayer.this) {
+                if (mp == mCurrentMediaPlayer && !mCurrentPrepared) {
+                    // The player was requested for playback before its preparation finished
+                    mPrimaryPreparedListener.onPrepared(mp);
+                    return;
+                } else if (mp == mNextMediaPlayer) {
+                    // The player was requested as the next player before its preparation finished
+                    mSecondaryPreparedListener.onPrepared(mp);
+                    return;
+                }
+
+                for (StandbyPlayer standbyPlayer : mStandbyPlayers.values()) {
+                    if (standbyPlayer.mPlayer == mp) {
+                        standbyPlayer.mPreparing = false;
+                        standbyPlayer.mPrepared = true;
+                        return;
+                    }
+                }
+            }
+        }
+    };
+
+    /**
+     * A player that is prepared ahead for a track.
+     */
+    private static class StandbyPlayer {
+        final MediaPlayer mPlayer;
+
+        boolean mPreparing;
+
+        boolean mPrepared;
+
+        StandbyPlayer(MediaPlayer player) {
+            mPlayer = player;
+        }
+    }
+
     // Notification for Services using GaplessPlayer
     public interface OnTrackFinishedListener {
         void onTrackFinished();
@@ -617,8 +843,8 @@ public class GaplessPlayer {
 
                 int audioSessionID = mp.getAudioSessionId();
 
-                // Release old MediaPlayer
-                mp.release();
+                // Return the old MediaPlayer to the pool
+                mPlayerPool.recycle(mp);
 
 
                 // Set current MP to next MP if one is ready
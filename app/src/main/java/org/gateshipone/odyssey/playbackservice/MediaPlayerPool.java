@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2018 Team Gateship-One
+ * (Hendrik Borghorst & Frederik Luetkes)
+ *
+ * The AUTHORS.md file contains a detailed contributors list:
+ * <https://github.com/gateship-one/odyssey/blob/master/AUTHORS.md>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.gateshipone.odyssey.playbackservice;
+
+import android.media.MediaPlayer;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Timer;
+import java.util.TimerTask;
+
+/**
+ * Pool of idle {@link MediaPlayer} objects for the {@link GaplessPlayer}.
+ * <p>
+ * Players that are no longer needed are reset instead of released, so the next track can reuse the
+ * native player instead of creating a new one. Players that stay unused for longer than the idle
+ * timeout are released.
+ */
+class MediaPlayerPool {
+    private static final String TAG = "OdysseyMediaPlayerPool";
+
+    /**
+     * Maximum number of idle players
+     */
+    private final int mMaxSize;
+
+    /**
+     * Time after which an idle player is released (ms)
+     */
+    private final long mIdleTimeout;
+
+    /**
+     * Idle players, the most recently recycled one first
+     */
+    private final ArrayDeque<PooledPlayer> mIdlePlayers;
+
+    /**
+     * Timer to schedule the release of idle players, created on demand
+     */
+    private Timer mEvictionTimer;
+
+    /**
+     * Task to release idle players
+     */
+    private EvictionTask mEvictionTask;
+
+    /**
+     * @param maxSize     Maximum number of idle players to keep
+     * @param idleTimeout Time after which an idle player is released (ms)
+     */
+    MediaPlayerPool(int maxSize, long idleTimeout) {
+        mMaxSize = maxSize;
+        mIdleTimeout = idleTimeout;
+        mIdlePlayers = new ArrayDeque<>(maxSize);
+    }
+
+    /**
+     * Returns an idle player in its idle state or a new one if the pool is empty.
+     */
+    synchronized MediaPlayer acquire() {
+        PooledPlayer pooledPlayer = mIdlePlayers.pollFirst();
+
+        if (pooledPlayer != null) {
+            return pooledPlayer.mPlayer;
+        }
+
+        return new MediaPlayer();
+    }
+
+    /**
+     * Resets the given player and keeps it for reuse. If the pool is full the player is released instead.
+     *
+     * @param player Player that is not used any longer
+     */
+    synchronized void recycle(MediaPlayer player) {
+        try {
+            player.reset();
+
+            // Remove all references to the previous user and restore the defaults of a new player
+            player.setOnPreparedListener(null);
+            player.setOnCompletionListener(null);
+            player.setVolume(1.0f, 1.0f);
+        } catch (IllegalStateException e) {
+            Log.e(TAG, "Could not reset player, release it");
+            player.release();
+            return;
+        }
+
+        if (mIdlePlayers.size() >= mMaxSize) {
+            player.release();
+            return;
+        }
+
+        mIdlePlayers.addFirst(new PooledPlayer(player));
+
+        scheduleEviction();
+    }
+
+    /**
+     * Releases all idle players and stops the eviction timer.
+     */
+    synchronized void clear() {
+        cancelEviction();
+
+        if (mEvictionTimer != null) {
+            mEvictionTimer.cancel();
+            mEvictionTimer = null;
+        }
+
+        for (PooledPlayer pooledPlayer : mIdlePlayers) {
+            pooledPlayer.mPlayer.release();
+        }
+        mIdlePlayers.clear();
+    }
+
+    /**
+     * Releases all players that are idle for longer than the idle timeout.
+     */
+    private synchronized void evictIdlePlayers() {
+        mEvictionTask = null;
+
+        final long now = SystemClock.elapsedRealtime();
+
+        Iterator<PooledPlayer> iterator = mIdlePlayers.iterator();
+        while (iterator.hasNext()) {
+            PooledPlayer pooledPlayer = iterator.next();
+
+            if (now - pooledPlayer.mIdleSince >= mIdleTimeout) {
+                Log.v(TAG, "Release idle player");
+                pooledPlayer.mPlayer.release();
+                iterator.remove();
+            }
+        }
+
+        if (!mIdlePlayers.isEmpty()) {
+            scheduleEviction();
+        }
+    }
+
+    /**
+     * Schedules the release of the oldest idle player if not already scheduled.
+     */
+    private void scheduleEviction() {
+        if (mEvictionTask != null) {
+            return;
+        }
+
+        final long oldestIdleTime = SystemClock.elapsedRealtime() - mIdlePlayers.peekLast().mIdleSince;
+
+        if (mEvictionTimer == null) {
+            mEvictionTimer = new Timer();
+        }
+
+        mEvictionTask = new EvictionTask();
+        mEvictionTimer.schedule(mEvictionTask, Math.max(mIdleTimeout - oldestIdleTime, 0));
+    }
+
+    private void cancelEviction() {
+        if (mEvictionTask != null) {
+            mEvictionTask.cancel();
+            mEvictionTask = null;
+        }
+    }
+
+    private static class PooledPlayer {
+        final MediaPlayer mPlayer;
+
+        final long mIdleSince;
+
+        PooledPlayer(MediaPlayer player) {
+            mPlayer = player;
+            mIdleSince = SystemClock.elapsedRealtime();
+        }
+    }
+
+    /**
+     * Timer task to release idle players
+     */
+    private class EvictionTask extends TimerTask {
+        @Override
+        public void run() {
+            evictIdlePlayers();
+        }
+    }
+}
@@ -22,12 +22,12 @@
 
 package org.gateshipone.odyssey.playbackservice;
 
-import android.os.Message;
 import android.os.RemoteException;
 
 import org.gateshipone.odyssey.models.TrackModel;
 
 import java.lang.ref.WeakReference;
+import java.util.List;
 
 public class OdysseyPlaybackServiceInterface extends IOdysseyPlaybackService.Stub {
     // Holds the actual playback service for handling reasons
@@ -46,43 +46,33 @@ public class OdysseyPlaybackServiceInterface extends IOdysseyPlaybackService.Stu
     public void playURI(String uri) throws RemoteException {
         // Create play control object
         ControlObject obj = new ControlObject(ControlObject.PLAYBACK_ACTION.ODYSSEY_PLAY, uri);
-        Message msg = mService.get().getHandler().obtainMessage();
-        msg.obj = obj;
-        mService.get().getHandler().sendMessage(msg);
+        mService.get().getHandler().sendCommand(obj);
     }
 
     @Override
     public void enqueueTrack(TrackModel track, boolean asNext) throws RemoteException {
         // Create enqueuetrack control object
         ControlObject obj = new ControlObject(ControlObject.PLAYBACK_ACTION.ODYSSEY_ENQUEUETRACK, track, asNext);
-        Message msg = mService.get().getHandler().obtainMessage();
-        msg.obj = obj;
-        mService.get().getHandler().sendMessage(msg);
+        mService.get().getHandler().sendCommand(obj);
     }
 
     public void playTrack(TrackModel track, boolean clearPlaylist) throws RemoteException {
         ControlObject obj = new ControlObject(ControlObject.PLAYBACK_ACTION.ODYSSEY_PLAYTRACK, track, clearPlaylist);
-        Message msg = mService.get().getHandler().obtainMessage();
-        msg.obj = obj;
-        mService.get().getHandler().sendMessage(msg);
+        mService.get().getHandler().sendCommand(obj);
     }
 
     @Override
     public void toggleRandom() throws RemoteException {
         // Create random control object
         ControlObject obj = new ControlObject(ControlObject.PLAYBACK_ACTION.ODYSSEY_RANDOM);
-        Message msg = mService.get().getHandler().obtainMessage();
-        msg.obj = obj;
-        mService.get().getHandler().sendMessage(msg);
+        mService.get().getHandler().sendCommand(obj);
     }
 
     @Override
     public void toggleRepeat() throws RemoteException {
         // Create repeat control object
         ControlObject obj = new ControlObject(ControlObject.PLAYBACK_ACTION.ODYSSEY_REPEAT);
-        Message msg = mService.get().getHandler().obtainMessage();
-        msg.obj = obj;
-        mService.get().getHandler().sendMessage(msg);
+        mService.get().getHandler().sendCommand(obj);
     }
 
     @Override
@@ -95,6 +85,16 @@ public class OdysseyPlaybackServiceInterface extends IOdysseyPlaybackService.Stu
         mService.get().hideArtwork(enabled);
     }
 
+    @Override
+    public void registerPlaybackListener(IOdysseyPlaybackListener listener, int tickInterval) throws RemoteException {
+        mService.get().registerPlaybackListener(listener, tickInterval);
+    }
+
+    @Override
+    public void unregisterPlaybackListener(IOdysseyPlaybackListener listener) throws RemoteException {
+        mService.get().unregisterPlaybackListener(listener);
+    }
+
     @Override
     public boolean isBusy() throws RemoteException {
         return mService.get().isBusy();
@@ -103,49 +103,37 @@ public class OdysseyPlaybackServiceInterface extends IOdysseyPlaybackService.Stu
     @Override
     public void seekTo(int position) throws RemoteException {
         ControlObject obj = new ControlObject(ControlObject.PLAYBACK_ACTION.ODYSSEY_SEEKTO, position);
-        Message msg = mService.get().getHandler().obtainMessage();
-        msg.obj = obj;
-        mService.get().getHandler().sendMessage(msg);
+        mService.get().getHandler().sendCommand(obj);
     }
 
     @Override
     public void jumpTo(int position) throws RemoteException {
         ControlObject obj = new ControlObject(ControlObject.PLAYBACK_ACTION.ODYSSEY_JUMPTO, position);
-        Message msg = mService.get().getHandler().obtainMessage();
-        msg.obj = obj;
-        mService.get().getHandler().sendMessage(msg);
+        mService.get().getHandler().sendCommand(obj);
     }
 
     @Override
     public void clearPlaylist() throws RemoteException {
         ControlObject obj = new ControlObject(ControlObject.PLAYBACK_ACTION.ODYSSEY_CLEARPLAYLIST);
-        Message msg = mService.get().getHandler().obtainMessage();
-        msg.obj = obj;
-        mService.get().getHandler().sendMessage(msg);
+        mService.get().getHandler().sendCommand(obj);
     }
 
     @Override
     public void next() throws RemoteException {
         ControlObject obj = new ControlObject(ControlObject.PLAYBACK_ACTION.ODYSSEY_NEXT);
-        Message msg = mService.get().getHandler().obtainMessage();
-        msg.obj = obj;
-        mService.get().getHandler().sendMessage(msg);
+        mService.get().getHandler().sendCommand(obj);
     }
 
     @Override
     public void previous() throws RemoteException {
         ControlObject obj = new ControlObject(ControlObject.PLAYBACK_ACTION.ODYSSEY_PREVIOUS);
-        Message msg = mService.get().getHandler().obtainMessage();
-        msg.obj = obj;
-        mService.get().getHandler().sendMessage(msg);
+        mService.get().getHandler().sendCommand(obj);
     }
 
     @Override
     public void togglePause() throws RemoteException {
         ControlObject obj = new ControlObject(ControlObject.PLAYBACK_ACTION.ODYSSEY_TOGGLEPAUSE);
-        Message msg = mService.get().getHandler().obtainMessage();
-        msg.obj = obj;
-        mService.get().getHandler().sendMessage(msg);
+        mService.get().getHandler().sendCommand(obj);
     }
 
     @Override
@@ -165,17 +153,13 @@ public class OdysseyPlaybackServiceInterface extends IOdysseyPlaybackService.Stu
     @Override
     public void dequeueTrack(int index) throws RemoteException {
         ControlObject obj = new ControlObject(ControlObject.PLAYBACK_ACTION.ODYSSEY_DEQUEUETRACK, index);
-        Message msg = mService.get().getHandler().obtainMessage();
-        msg.obj = obj;
-        mService.get().getHandler().sendMessage(msg);
+        mService.get().getHandler().sendCommand(obj);
     }
 
     @Override
     public void dequeueTracks(int index) throws RemoteException {
         ControlObject obj = new ControlObject(ControlObject.PLAYBACK_ACTION.ODYSSEY_DEQUEUETRACKS, index);
-        Message msg = mService.get().getHandler().obtainMessage();
-        msg.obj = obj;
-        mService.get().getHandler().sendMessage(msg);
+        mService.get().getHandler().sendCommand(obj);
     }
 
     @Override
@@ -183,6 +167,11 @@ public class OdysseyPlaybackServiceInterface extends IOdysseyPlaybackService.Stu
         return mService.get().getPlaylistTrack(index);
     }
 
+    @Override
+    public List<TrackModel> getPlaylistSongs(int start, int count) throws RemoteException {
+        return mService.get().getPlaylistTracks(start, count);
+    }
+
     @Override
     public int getPlaylistSize() throws RemoteException {
         return mService.get().getPlaylistSize();
@@ -191,17 +180,13 @@ public class OdysseyPlaybackServiceInterface extends IOdysseyPlaybackService.Stu
     @Override
     public void shufflePlaylist() throws RemoteException {
         ControlObject obj = new ControlObject(ControlObject.PLAYBACK_ACTION.ODYSSEY_SHUFFLEPLAYLIST);
-        Message msg = mService.get().getHandler().obtainMessage();
-        msg.obj = obj;
-        mService.get().getHandler().sendMessage(msg);
+        mService.get().getHandler().sendCommand(obj);
     }
 
     @Override
     public void playAllTracks(String filterString) throws RemoteException {
         ControlObject obj = new ControlObject(ControlObject.PLAYBACK_ACTION.ODYSSEY_PLAYALLTRACKS, filterString);
-        Message msg = mService.get().getHandler().obtainMessage();
-        msg.obj = obj;
-        mService.get().getHandler().sendMessage(msg);
+        mService.get().getHandler().sendCommand(obj);
     }
 
     @Override
@@ -212,155 +197,117 @@ public class OdysseyPlaybackServiceInterface extends IOdysseyPlaybackService.Stu
     @Override
     public void savePlaylist(String name) throws RemoteException {
         ControlObject obj = new ControlObject(ControlObject.PLAYBACK_ACTION.ODYSSEY_SAVEPLAYLIST, name);
-        Message msg = mService.get().getHandler().obtainMessage();
-        msg.obj = obj;
-        mService.get().getHandler().sendMessage(msg);
+        mService.get().getHandler().sendCommand(obj);
     }
 
     @Override
     public void enqueuePlaylist(long playlistId) throws RemoteException {
         ControlObject obj = new ControlObject(ControlObject.PLAYBACK_ACTION.ODYSSEY_ENQUEUEPLAYLIST, playlistId);
-        Message msg = mService.get().getHandler().obtainMessage();
-        msg.obj = obj;
-        mService.get().getHandler().sendMessage(msg);
+        mService.get().getHandler().sendCommand(obj);
     }
 
     @Override
     public void playPlaylist(long playlistId, int position) throws RemoteException {
         ControlObject obj = new ControlObject(ControlObject.PLAYBACK_ACTION.ODYSSEY_PLAYPLAYLIST, playlistId, position);
-        Message msg = mService.get().getHandler().obtainMessage();
-        msg.obj = obj;
-        mService.get().getHandler().sendMessage(msg);
+        mService.get().getHandler().sendCommand(obj);
     }
 
     @Override
     public void enqueuePlaylistFile(String path) throws RemoteException {
         ControlObject obj = new ControlObject(ControlObject.PLAYBACK_ACTION.ODYSSEY_ENQUEUEPLAYLISTFILE, path);
-        Message msg = mService.get().getHandler().obtainMessage();
-        msg.obj = obj;
-        mService.get().getHandler().sendMessage(msg);
+        mService.get().getHandler().sendCommand(obj);
     }
 
     @Override
     public void playPlaylistFile(String path, int position) throws RemoteException {
         ControlObject obj = new ControlObject(ControlObject.PLAYBACK_ACTION.ODYSSEY_PLAYPLAYLISTFILE, path, position);
-        Message msg = mService.get().getHandler().obtainMessage();
-        msg.obj = obj;
-        mService.get().getHandler().sendMessage(msg);
+        mService.get().getHandler().sendCommand(obj);
     }
 
     @Override
     public void enqueueAlbum(String albumKey) throws RemoteException {
         ControlObject obj = new ControlObject(ControlObject.PLAYBACK_ACTION.ODYSSEY_ENQUEUEALBUM, albumKey);
-        Message msg = mService.get().getHandler().obtainMessage();
-        msg.obj = obj;
-        mService.get().getHandler().sendMessage(msg);
+        mService.get().getHandler().sendCommand(obj);
     }
 
     @Override
     public void playAlbum(String albumKey, int position) throws RemoteException {
         ControlObject obj = new ControlObject(ControlObject.PLAYBACK_ACTION.ODYSSEY_PLAYALBUM, albumKey, position);
-        Message msg = mService.get().getHandler().obtainMessage();
-        msg.obj = obj;
-        mService.get().getHandler().sendMessage(msg);
+        mService.get().getHandler().sendCommand(obj);
     }
 
     @Override
     public void enqueueRecentAlbums() throws RemoteException {
         ControlObject obj = new ControlObject(ControlObject.PLAYBACK_ACTION.ODYSSEY_ENQUEUERECENTALBUMS);
-        Message msg = mService.get().getHandler().obtainMessage();
-        msg.obj = obj;
-        mService.get().getHandler().sendMessage(msg);
+        mService.get().getHandler().sendCommand(obj);
     }
 
     @Override
     public void playRecentAlbums() throws RemoteException {
         ControlObject obj = new ControlObject(ControlObject.PLAYBACK_ACTION.ODYSSEY_PLAYRECENTALBUMS);
-        Message msg = mService.get().getHandler().obtainMessage();
-        msg.obj = obj;
-        mService.get().getHandler().sendMessage(msg);
+        mService.get().getHandler().sendCommand(obj);
     }
 
     @Override
     public void enqueueArtist(long artistId, String orderKey) throws RemoteException {
         ControlObject obj = new ControlObject(ControlObject.PLAYBACK_ACTION.ODYSSEY_ENQUEUEARTIST, artistId, orderKey);
-        Message msg = mService.get().getHandler().obtainMessage();
-        msg.obj = obj;
-        mService.get().getHandler().sendMessage(msg);
+        mService.get().getHandler().sendCommand(obj);
     }
 
     @Override
     public void playArtist(long artistId, String orderKey) throws RemoteException {
         ControlObject obj = new ControlObject(ControlObject.PLAYBACK_ACTION.ODYSSEY_PLAYARTIST, artistId, orderKey);
-        Message msg = mService.get().getHandler().obtainMessage();
-        msg.obj = obj;
-        mService.get().getHandler().sendMessage(msg);
+        mService.get().getHandler().sendCommand(obj);
     }
 
     @Override
     public void resumeBookmark(long timestamp) throws RemoteException {
         // create resume bookmark control object
         ControlObject obj = new ControlObject(ControlObject.PLAYBACK_ACTION.ODYSSEY_RESUMEBOOKMARK, timestamp);
-        Message msg = mService.get().getHandler().obtainMessage();
-        msg.obj = obj;
-        mService.get().getHandler().sendMessage(msg);
+        mService.get().getHandler().sendCommand(obj);
     }
 
     @Override
     public void deleteBookmark(long timestamp) throws RemoteException {
         // create delete bookmark control object
         ControlObject obj = new ControlObject(ControlObject.PLAYBACK_ACTION.ODYSSEY_DELETEBOOKMARK, timestamp);
-        Message msg = mService.get().getHandler().obtainMessage();
-        msg.obj = obj;
-        mService.get().getHandler().sendMessage(msg);
+        mService.get().getHandler().sendCommand(obj);
     }
 
     @Override
     public void createBookmark(String bookmarkTitle) throws RemoteException {
         // create create bookmark control object
         ControlObject obj = new ControlObject(ControlObject.PLAYBACK_ACTION.ODYSSEY_CREATEBOOKMARK, bookmarkTitle);
-        Message msg = mService.get().getHandler().obtainMessage();
-        msg.obj = obj;
-        mService.get().getHandler().sendMessage(msg);
+        mService.get().getHandler().sendCommand(obj);
     }
 
     @Override
     public void enqueueFile(String filePath, boolean asNext) throws RemoteException {
         ControlObject obj = new ControlObject(ControlObject.PLAYBACK_ACTION.ODYSSEY_ENQUEUEFILE, filePath, asNext);
-        Message msg = mService.get().getHandler().obtainMessage();
-        msg.obj = obj;
-        mService.get().getHandler().sendMessage(msg);
+        mService.get().getHandler().sendCommand(obj);
     }
 
     @Override
     public void playFile(String filePath, boolean clearPlaylist) throws RemoteException {
         ControlObject obj = new ControlObject(ControlObject.PLAYBACK_ACTION.ODYSSEY_PLAYFILE, filePath, clearPlaylist);
-        Message msg = mService.get().getHandler().obtainMessage();
-        msg.obj = obj;
-        mService.get().getHandler().sendMessage(msg);
+        mService.get().getHandler().sendCommand(obj);
     }
 
     @Override
     public void playDirectory(String directoryPath, int position) throws RemoteException {
         ControlObject obj = new ControlObject(ControlObject.PLAYBACK_ACTION.ODYSSEY_PLAYDIRECTORY, directoryPath, position);
-        Message msg = mService.get().getHandler().obtainMessage();
-        msg.obj = obj;
-        mService.get().getHandler().sendMessage(msg);
+        mService.get().getHandler().sendCommand(obj);
     }
 
     @Override
     public void enqueueDirectoryAndSubDirectories(String directoryPath, String filterString) throws RemoteException {
         ControlObject obj = new ControlObject(ControlObject.PLAYBACK_ACTION.ODYSSEY_ENQUEUEDIRECTORYANDSUBDIRECTORIES, directoryPath, filterString);
-        Message msg = mService.get().getHandler().obtainMessage();
-        msg.obj = obj;
-        mService.get().getHandler().sendMessage(msg);
+        mService.get().getHandler().sendCommand(obj);
     }
 
     @Override
     public void playDirectoryAndSubDirectories(String directoryPath, String filterString) throws RemoteException {
         ControlObject obj = new ControlObject(ControlObject.PLAYBACK_ACTION.ODYSSEY_PLAYDIRECTORYANDSUBDIRECTORIES, directoryPath, filterString);
-        Message msg = mService.get().getHandler().obtainMessage();
-        msg.obj = obj;
-        mService.get().getHandler().sendMessage(msg);
+        mService.get().getHandler().sendCommand(obj);
     }
 }
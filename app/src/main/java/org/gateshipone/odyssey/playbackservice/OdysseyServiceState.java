@@ -28,11 +28,15 @@ public class OdysseyServiceState {
     public int mTrackPosition;
     public PlaybackService.RANDOMSTATE mRandomState;
     public PlaybackService.REPEATSTATE mRepeatState;
+    public long mRandomSeed;
+    public int mRandomCursor;
 
     public OdysseyServiceState() {
         mTrackNumber = -1;
         mTrackPosition = -1;
         mRandomState = PlaybackService.RANDOMSTATE.RANDOM_OFF;
         mRepeatState = PlaybackService.REPEATSTATE.REPEAT_OFF;
+        mRandomSeed = 0;
+        mRandomCursor = -1;
     }
 }
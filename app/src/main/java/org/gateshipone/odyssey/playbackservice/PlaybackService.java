@@ -25,7 +25,6 @@ package org.gateshipone.odyssey.playbackservice;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.ListIterator;
 import java.util.Map;
 import java.util.Random;
 
@@ -42,9 +41,11 @@ import android.media.AudioManager;
 import android.os.Build;
 import android.os.HandlerThread;
 import android.os.IBinder;
+import android.os.Looper;
 import android.os.PowerManager;
 import android.os.PowerManager.WakeLock;
 import android.os.Process;
+import android.os.SystemClock;
 import android.util.Log;
 import android.widget.Toast;
 
@@ -53,6 +54,7 @@ import org.gateshipone.odyssey.models.FileModel;
 import org.gateshipone.odyssey.models.TrackModel;
 import org.gateshipone.odyssey.playbackservice.managers.PlaybackServiceStatusHelper;
 import org.gateshipone.odyssey.playbackservice.statemanager.OdysseyDatabaseManager;
+import org.gateshipone.odyssey.playbackservice.statemanager.QueueJournal;
 import org.gateshipone.odyssey.utils.FileExplorerHelper;
 import org.gateshipone.odyssey.utils.MetaDataLoader;
 import org.gateshipone.odyssey.utils.MusicLibraryHelper;
@@ -137,10 +139,24 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
     private final static int SERVICE_CANCEL_TIME = 5 * 60 * 1000;
 
     /**
-     * Defines how often the random generator should retry to get a random number if it always
-     * hits the currently running track
+     * Number of tracks around the current track that are restored before the service is ready
      */
-    private final static int RANDOM_RETRIES = 20;
+    private final static int RESTORE_WINDOW_SIZE = 64;
+
+    /**
+     * Number of tracks that are restored at once in the background
+     */
+    private final static int RESTORE_PAGE_SIZE = 500;
+
+    /**
+     * Time without further skips after which a burst of next/previous requests jumps to its final track (ms)
+     */
+    private final static int SKIP_QUIET_PERIOD = 250;
+
+    /**
+     * Number of tracks beyond the next track that are prepared in advance for fast skipping
+     */
+    private final static int LOOKAHEAD_TRACKS = 1;
 
     /**
      * Handler that executes action requested by a message
@@ -162,7 +178,12 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
     /**
      * Currently active playlist.
      */
-    private List<TrackModel> mCurrentList;
+    private TrackQueue mCurrentList;
+
+    /**
+     * Changes of the playlist since the last autosave.
+     */
+    private QueueJournal mQueueJournal;
 
     /**
      * Index of the currently active track.
@@ -176,9 +197,27 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
     private int mNextPlayingIndex;
 
     /**
-     * Saves the index of the track that was played before the current one.
+     * Index of the track a burst of skips will jump to after the quiet period, -1 if no skip is pending.
+     */
+    private int mPendingSkipIndex = -1;
+
+    /**
+     * Time (elapsed realtime) of the last jump caused by a skip.
+     */
+    private long mLastSkipTime;
+
+    /**
+     * Jumps to the pending skip target after the quiet period.
      */
-    private int mLastPlayingIndex;
+    private final Runnable mSkipCommitRunnable = new Runnable() {
+        @Override
+        public void run() {
+            int index = takePendingSkip();
+            if (index != -1) {
+                jumpToIndex(index);
+            }
+        }
+    };
 
     /**
      * Saves if the volume is temporarily reduced because of a notification (for example)
@@ -191,10 +230,15 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
     private int mLastPosition = 0;
 
     /**
-     * Random generator used to find a random position when random playback is active.
+     * Random generator used to shuffle the playlist and to seed the random playback order.
      */
     private Random mRandomGenerator;
 
+    /**
+     * Playback order of the playlist when random playback is active.
+     */
+    private ShuffleBag mShuffleBag;
+
     /**
      * Saves if random playback is active
      */
@@ -229,6 +273,11 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
 
     private boolean mBusy = false;
 
+    /**
+     * True while the saved playlist is still loaded in the background.
+     */
+    private volatile boolean mRestoring = false;
+
     private MetaDataLoader mMetaDataLoader;
 
     private OdysseyComponentCallback mComponentCallback;
@@ -279,23 +328,11 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
         // set up the OdysseyDatabaseManager
         mDatabaseManager = new OdysseyDatabaseManager(getApplicationContext());
 
-        // read a possible saved playlist from the database
-        mCurrentList = mDatabaseManager.readPlaylist();
-
-        // read a possible saved state from database
-        OdysseyServiceState state = mDatabaseManager.getState();
-
-        // Resume the loaded state to internal variables
-        mCurrentPlayingIndex = state.mTrackNumber;
-        mLastPosition = state.mTrackPosition;
-        mRandom = state.mRandomState;
-        mRepeat = state.mRepeatState;
+        // the saved state is read on the handler thread (s. PlaylistRestoreTask)
+        mCurrentPlayingIndex = -1;
+        mCurrentList = new TrackQueue();
 
-        // Check if saved state is within bounds of resumed playlist
-        int playlistSize = mCurrentList.size();
-        if (mCurrentPlayingIndex > playlistSize || mCurrentPlayingIndex < 0) {
-            mCurrentPlayingIndex = playlistSize == 0 ? -1 : 0;
-        }
+        mQueueJournal = new QueueJournal();
 
         if (null == mComponentCallback) {
             mComponentCallback = new OdysseyComponentCallback();
@@ -304,7 +341,6 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
         registerComponentCallbacks(mComponentCallback);
 
         // Internal state initialization
-        mLastPlayingIndex = -1;
         mNextPlayingIndex = -1;
 
         // Create a new BroadcastControlReceiver that handles all control broadcasts sent to the PlaybackService
@@ -338,11 +374,17 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
         // set up random generator used for random playback
         mRandomGenerator = new Random();
 
+        // the random playback order is restored after the complete playlist is loaded
+        mShuffleBag = new ShuffleBag();
 
         // Initialize the mediacontrol manager for lockscreen pictures and remote control
         mPlaybackServiceStatusHelper = new PlaybackServiceStatusHelper(this);
 
         mMetaDataLoader = new MetaDataLoader(this);
+
+        // restore the saved playlist on the handler thread, the handler delays all commands that change the playlist
+        mRestoring = true;
+        mHandler.post(new PlaylistRestoreTask());
     }
 
     /**
@@ -357,29 +399,35 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
     public int onStartCommand(Intent intent, int flags, int startId) {
         super.onStartCommand(intent, flags, startId);
         if (null != intent && intent.getExtras() != null) {
-            String action = intent.getExtras().getString("action");
+            final String action = intent.getExtras().getString("action");
 
             if (action != null) {
-                switch (action) {
-                    case ACTION_TOGGLEPAUSE:
-                        togglePause();
-                        break;
-                    case ACTION_NEXT:
-                        setNextTrack();
-                        break;
-                    case ACTION_PREVIOUS:
-                        setPreviousTrack();
-                        break;
-                    case ACTION_STOP:
-                        stop();
-                        break;
-                    case ACTION_PLAY:
-                        resume();
-                        break;
-                    case ACTION_QUIT:
-                        stopSelf();
-                        break;
-                }
+                // The playback state and the playlist are only changed on the handler thread
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        switch (action) {
+                            case ACTION_TOGGLEPAUSE:
+                                togglePause();
+                                break;
+                            case ACTION_NEXT:
+                                setNextTrack();
+                                break;
+                            case ACTION_PREVIOUS:
+                                setPreviousTrack();
+                                break;
+                            case ACTION_STOP:
+                                stop();
+                                break;
+                            case ACTION_PLAY:
+                                resume();
+                                break;
+                            case ACTION_QUIT:
+                                stopSelf();
+                                break;
+                        }
+                    }
+                });
             }
         } else {
             return START_NOT_STICKY;
@@ -395,6 +443,9 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
         // Cancel any pending quit alerts
         cancelQuitAlert();
 
+        // Drop waiting commands and stop loading tracks
+        mHandler.shutdown();
+
         // Unregister a existing broadcastreceiver
         if (mBroadcastControlReceiver != null) {
             unregisterReceiver(mBroadcastControlReceiver);
@@ -405,6 +456,12 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
 
         // Stop myself
         stopService();
+
+        // Release the pooled MediaPlayer objects
+        mPlayer.release();
+
+        // Remove all remaining playback listeners
+        mPlaybackServiceStatusHelper.releasePlaybackListeners();
     }
 
 
@@ -438,6 +495,9 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
             mPlaybackServiceStatusHelper.notifyLastFM(mCurrentList.get(mCurrentPlayingIndex), PlaybackServiceStatusHelper.SLS_STATES.SLS_COMPLETE);
         }
 
+        // A pending skip must not restart the playback afterwards
+        cancelPendingSkip();
+
         // Request the GaplessPlayer to stop its playback.
         mPlayer.stop();
 
@@ -447,7 +507,6 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
         mLastPosition = -1;
 
         mNextPlayingIndex = -1;
-        mLastPlayingIndex = -1;
 
 
         // Broadcast the new status
@@ -553,45 +612,20 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
         }
     }
 
-    /**
-     * Add all tracks to the playlist and start playing them
-     *
-     * @param filterString A filter that is used to exclude tracks that didn't contain this String.
-     */
-    public void playAllTracks(String filterString) {
-        // Notify the user about the possible long running operation
-        mPlaybackServiceStatusHelper.broadcastPlaybackServiceState(PLAYBACKSERVICESTATE.WORKING);
-        mBusy = true;
-
-        // clear the playlist before adding all tracks
-        clearPlaylist();
-
-
-        // Get a list of all available tracks from the MusicLibraryHelper
-        List<TrackModel> allTracks = MusicLibraryHelper.getAllTracks(filterString, getApplicationContext());
-
-        mCurrentList.addAll(allTracks);
-
-        // Start playing the first item in the list
-        jumpToIndex(0);
-
-        // Notify the user that the operation is now finished
-        mPlaybackServiceStatusHelper.broadcastPlaybackServiceState(PLAYBACKSERVICESTATE.IDLE);
-        mBusy = false;
-    }
-
     /**
      * Shuffles the current playlist
      */
     public void shufflePlaylist() {
         if (mCurrentList.size() > 0 && mCurrentPlayingIndex >= 0 && (mCurrentPlayingIndex < mCurrentList.size())) {
-            // get the current TrackModel and remove it from playlist
-            TrackModel currentItem = mCurrentList.get(mCurrentPlayingIndex);
-            mCurrentList.remove(mCurrentPlayingIndex);
+            // move the current track to the beginning of the playlist
+            mCurrentList.swap(0, mCurrentPlayingIndex);
+
+            // shuffle the remaining playlist
+            mCurrentList.shuffle(1, mRandomGenerator);
 
-            // shuffle playlist and set currentitem as first element
-            Collections.shuffle(mCurrentList);
-            mCurrentList.add(0, currentItem);
+            // the old random order is meaningless for the shuffled playlist
+            mShuffleBag.reset(mCurrentList.size(), mRandomGenerator.nextLong());
+            mShuffleBag.moveTo(0);
 
             // reset index
             mCurrentPlayingIndex = 0;
@@ -601,7 +635,7 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
             // set next track for the GaplessPlayer which has now changed
             try {
                 if (mCurrentPlayingIndex + 1 < mCurrentList.size()) {
-                    mPlayer.setNextTrack(mCurrentList.get(mCurrentPlayingIndex + 1).getTrackURL());
+                    mPlayer.setNextTrack(mCurrentList.getTrackURL(mCurrentPlayingIndex + 1));
                 } else {
                     mPlayer.setNextTrack(null);
                 }
@@ -610,7 +644,8 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
             }
         } else if (mCurrentList.size() > 0 && mCurrentPlayingIndex < 0) {
             // service stopped just shuffle playlist
-            Collections.shuffle(mCurrentList);
+            mCurrentList.shuffle(0, mRandomGenerator);
+            mShuffleBag.reset(mCurrentList.size(), mRandomGenerator.nextLong());
 
             // sent broadcast
             mPlaybackServiceStatusHelper.updateStatus();
@@ -618,68 +653,197 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
     }
 
     /**
-     * Jumps to the next song that is set in mNextPlayingIndex
+     * Jumps to the next song that is set in mNextPlayingIndex.
+     * Repeated calls within a short time are coalesced and only the final track is started.
      */
     public void setNextTrack() {
+        if (Looper.myLooper() != mHandler.getLooper()) {
+            // The pending skip and the random order are only changed on the handler thread
+            mHandler.sendCommand(new ControlObject(ControlObject.PLAYBACK_ACTION.ODYSSEY_NEXT));
+            return;
+        }
+
         // Keep device at least for 5 seconds turned on
         mSongTransitionWakelock.acquire(5000);
 
-        // Save the last playing index, to allow the user to jump back
-        mLastPlayingIndex = mCurrentPlayingIndex;
+        if (!isSkipInProgress()) {
+            // Jump to the mNextPlayingIndex
+            skipToIndex(mNextPlayingIndex);
+            return;
+        }
 
-        // Jump to the mNextPlayingIndex
-        jumpToIndex(mNextPlayingIndex);
+        // Move on from the pending target or the track that was just started by the last skip
+        int pendingIndex = getPendingSkipIndex();
+        scheduleSkip(getNextIndex(pendingIndex != -1 ? pendingIndex : mCurrentPlayingIndex));
     }
 
     /**
-     * Sets nextplayback track to preceding on in playlist
+     * Sets nextplayback track to preceding on in playlist.
+     * Repeated calls within a short time are coalesced and only the final track is started.
      */
     public void setPreviousTrack() {
+        if (Looper.myLooper() != mHandler.getLooper()) {
+            // The pending skip and the random order are only changed on the handler thread
+            mHandler.sendCommand(new ControlObject(ControlObject.PLAYBACK_ACTION.ODYSSEY_PREVIOUS));
+            return;
+        }
+
         // Keep device at least for 5 seconds turned on
         mSongTransitionWakelock.acquire(5000);
 
-        // Logic to restart the song if playback is not progressed beyond 2000ms.
-        // This enables the behavior of CD players which a user is used to.
-        if (getTrackPosition() > 2000) {
-            // Check if current song should be restarted
-            jumpToIndex(mCurrentPlayingIndex);
-        } else if (mRandom == RANDOMSTATE.RANDOM_ON) {
-            // handle random mode
-            if (mLastPlayingIndex == -1) {
-                // if no mLastPlayingIndex reuse mCurrentPlayingIndex and restart the song
-                jumpToIndex(mCurrentPlayingIndex);
-            } else if (mLastPlayingIndex >= 0 && mLastPlayingIndex < mCurrentList.size()) {
-                // If a song was played before this one, jump back to it
-                jumpToIndex(mLastPlayingIndex);
-            }
-        } else {
-            // Check if the repeat track mode is activated which means that the user is stuck to the current song
-            if (mRepeat == REPEATSTATE.REPEAT_TRACK) {
-                // repeat the current track again
-                jumpToIndex(mCurrentPlayingIndex);
+        if (!isSkipInProgress()) {
+            // Logic to restart the song if playback is not progressed beyond 2000ms.
+            // This enables the behavior of CD players which a user is used to.
+            if (getTrackPosition() > 2000) {
+                // Check if current song should be restarted
+                skipToIndex(mCurrentPlayingIndex);
             } else {
-                // Check if the first playlist element is reached
-                if ((mCurrentPlayingIndex - 1 >= 0) && mCurrentPlayingIndex < mCurrentList.size() && mCurrentPlayingIndex >= 0) {
-                    // Jump to the previous song (sequential back jump)
-                    jumpToIndex(mCurrentPlayingIndex - 1);
-                } else if (mRepeat == REPEATSTATE.REPEAT_ALL) {
-                    // In repeat mode next track is last track of playlist
-                    jumpToIndex(mCurrentList.size() - 1);
-                } else {
-                    // If repeat all is not activated just stop playback if we try to move to position -1
-                    stop();
-                }
+                skipToIndex(getPreviousIndex(mCurrentPlayingIndex));
             }
+            return;
+        }
+
+        // Move back from the pending target or the track that was just started by the last skip
+        int pendingIndex = getPendingSkipIndex();
+        scheduleSkip(getPreviousIndex(pendingIndex != -1 ? pendingIndex : mCurrentPlayingIndex));
+    }
+
+    /**
+     * Returns the index of the track that follows the given one, depending on the random and repeat state.
+     * The random order is not changed, it is moved when the track starts.
+     *
+     * @param index Index of the track in the playlist
+     * @return The index of the following track or -1 if no track follows
+     */
+    private int getNextIndex(int index) {
+        if (index < 0 || index >= mCurrentList.size()) {
+            return -1;
+        }
+
+        if (mRandom == RANDOMSTATE.RANDOM_ON) {
+            return getRandomNextIndex(index);
+        }
+
+        switch (mRepeat) {
+            case REPEAT_OFF:
+                // Repeat off so next track is the next track in the playlist if available
+                return index + 1 < mCurrentList.size() ? index + 1 : -1;
+            case REPEAT_ALL:
+                // Repeat playlist so set to first PL song if last song is reached
+                return index + 1 < mCurrentList.size() ? index + 1 : 0;
+            case REPEAT_TRACK:
+                // Repeat track so next track is the current track
+                return index;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Returns the index of the track that precedes the given one, depending on the random and repeat state.
+     * The random order is not changed, it is moved when the track starts.
+     *
+     * @param index Index of the track in the playlist
+     * @return The index of the preceding track or -1 if playback should stop
+     */
+    private int getPreviousIndex(int index) {
+        if (index < 0 || index >= mCurrentList.size()) {
+            return -1;
+        }
+
+        if (mRandom == RANDOMSTATE.RANDOM_ON) {
+            // handle random mode, move backwards in the history of the random order
+            int previousIndex = mShuffleBag.getPrevious(index);
+
+            // if no track was played before restart the given track
+            return previousIndex == -1 ? index : previousIndex;
+        }
+
+        // Check if the repeat track mode is activated which means that the user is stuck to the current song
+        if (mRepeat == REPEATSTATE.REPEAT_TRACK) {
+            return index;
+        }
+
+        if (index - 1 >= 0) {
+            // Jump to the previous song (sequential back jump)
+            return index - 1;
+        } else if (mRepeat == REPEATSTATE.REPEAT_ALL) {
+            // In repeat mode previous track is last track of playlist
+            return mCurrentList.size() - 1;
+        }
+
+        // If repeat all is not activated just stop playback if we try to move to position -1
+        return -1;
+    }
+
+    /**
+     * Jumps immediately to the given track and starts the quiet period for following skips.
+     *
+     * @param index Index of the track in the playlist, -1 stops the playback
+     */
+    private void skipToIndex(int index) {
+        synchronized (this) {
+            mLastSkipTime = SystemClock.elapsedRealtime();
+        }
+
+        // jumpToIndex stops the playback for invalid indices
+        jumpToIndex(index);
+    }
+
+    /**
+     * Remembers the given track as the target of the current skip burst and (re)starts the quiet period.
+     *
+     * @param index Index of the track in the playlist, -1 stops the playback immediately
+     */
+    private void scheduleSkip(int index) {
+        if (index == -1) {
+            cancelPendingSkip();
+            stop();
+            return;
         }
+
+        synchronized (this) {
+            mPendingSkipIndex = index;
+            mLastSkipTime = SystemClock.elapsedRealtime();
+        }
+
+        mHandler.removeCallbacks(mSkipCommitRunnable);
+        mHandler.postDelayed(mSkipCommitRunnable, SKIP_QUIET_PERIOD);
+    }
+
+    /**
+     * @return True if a skip is pending or the last skip happened within the quiet period
+     */
+    private synchronized boolean isSkipInProgress() {
+        return mPendingSkipIndex != -1 || SystemClock.elapsedRealtime() - mLastSkipTime < SKIP_QUIET_PERIOD;
+    }
+
+    private synchronized int getPendingSkipIndex() {
+        return mPendingSkipIndex;
+    }
+
+    /**
+     * @return The pending skip target or -1. The pending skip is removed.
+     */
+    private synchronized int takePendingSkip() {
+        int index = mPendingSkipIndex;
+        mPendingSkipIndex = -1;
+        return index;
     }
 
+    private void cancelPendingSkip() {
+        if (takePendingSkip() != -1) {
+            mHandler.removeCallbacks(mSkipCommitRunnable);
+        }
+    }
 
     /**
-     * Getter for the handler used by the service interface
+     * Getter for the handler used by the service interface. The playback state and the playlist are only
+     * changed on its thread.
      *
      * @return The handler of this service
      */
-    protected PlaybackServiceHandler getHandler() {
+    public PlaybackServiceHandler getHandler() {
         return mHandler;
     }
 
@@ -703,12 +867,33 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
         return new TrackModel();
     }
 
+    /**
+     * Getter to retrieve a range of TrackModel items from the playlist
+     *
+     * @param start Position of the first track to return
+     * @param count Maximum number of tracks to return
+     * @return List of the tracks within the bounds of the playlist, might be empty
+     */
+    public List<TrackModel> getPlaylistTracks(int start, int count) {
+        // The queue locks itself, so the handler thread can not change it between the size check and the copy
+        synchronized (mCurrentList) {
+            final int begin = Math.max(start, 0);
+            final int end = Math.min(start + count, mCurrentList.size());
+
+            if (begin >= end) {
+                return new ArrayList<>();
+            }
+            return new ArrayList<>(mCurrentList.subList(begin, end));
+        }
+    }
+
     /**
      * Clears the current playlist and stops playback afterwards. Also resets repeat, random state
      */
     public void clearPlaylist() {
         // Clear the list
         mCurrentList.clear();
+        mShuffleBag.reset(0, mRandomGenerator.nextLong());
         // reset random and repeat state
         mRandom = RANDOMSTATE.RANDOM_OFF;
         mRepeat = REPEATSTATE.REPEAT_OFF;
@@ -741,8 +926,8 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
         // Cancel possible alerts registered within the AlarmManager
         cancelQuitAlert();
 
-        // Stop playback before starting a new song. This ensures state safety
-        mPlayer.stop();
+        // An explicit jump replaces a pending skip
+        cancelPendingSkip();
 
         // Set mCurrentPlayingIndex to new song after checking the bounds
         if (index < mCurrentList.size() && index >= 0) {
@@ -760,35 +945,42 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
                 startService(serviceStartIntent);
             }
 
-            // Get the item that is requested to be played.
-            TrackModel item = mCurrentList.get(mCurrentPlayingIndex);
+            // Get the url of the item that is requested to be played.
+            String url = mCurrentList.getTrackURL(mCurrentPlayingIndex);
 
             // Request audio focus before doing anything
             AudioManager audioManager = (AudioManager) getSystemService(Context.AUDIO_SERVICE);
             int result = audioManager.requestAudioFocus(this, AudioManager.STREAM_MUSIC, AudioManager.AUDIOFOCUS_GAIN);
             if (result != AudioManager.AUDIOFOCUS_REQUEST_GRANTED) {
                 // Abort command if audio focus was not granted
+                mPlayer.stop();
                 return;
             }
 
             // Notify the PlaybackServiceStatusHelper that a new media session is started
             mPlaybackServiceStatusHelper.startMediaSession();
 
+            // Sets the mNextPlayingIndex to the index just started, because the PlaybackStartListener will
+            // set the mCurrentPlayingIndex to the mNextPlayingIndex. This ensures that no additional code
+            // is necessary to handle playback start. It has to be set before the play command, because
+            // an already prepared player starts the playback immediately.
+            mNextPlayingIndex = index;
+
             // Try to start playback of the track url.
             try {
-                mPlayer.play(item.getTrackURL(), jumpTime);
+                mPlayer.play(url, jumpTime);
             } catch (GaplessPlayer.PlaybackException e) {
                 // Handle an error of the play command
                 handlePlaybackException(e);
             }
+        } else {
+            // No new song can be started, stop the current playback
+            mPlayer.stop();
 
-            // Sets the mNextPlayingIndex to the index just started, because the PlaybackStartListener will
-            // set the mCurrentPlayingIndex to the mNextPlayingIndex. This ensures that no additional code
-            // is necessary to handle playback start
-            mNextPlayingIndex = index;
-        } else if (index < 0 || index > mCurrentList.size()) {
-            // Invalid index
-            stop();
+            if (index < 0 || index > mCurrentList.size()) {
+                // Invalid index
+                stop();
+            }
         }
 
     }
@@ -847,6 +1039,7 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
         int oldSize = mCurrentList.size();
 
         // Add the tracks to the actual list
+        mShuffleBag.insert(oldSize, tracklist.size());
         mCurrentList.addAll(tracklist);
 
         // If track is the first to be added, set playing index to 0
@@ -869,101 +1062,37 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
     }
 
     /**
-     * Enqueue all tracks of an album identified by the albumKey.
+     * Enqueue tracks that were loaded by the {@link PlaybackServiceHandler}.
      *
-     * @param albumKey The key of the album
+     * @param tracks     The tracks to add to the playlist
+     * @param fileTracks The tracks that were created from files and need a meta data extraction
      */
-    public void enqueueAlbum(String albumKey) {
-        mPlaybackServiceStatusHelper.broadcastPlaybackServiceState(PLAYBACKSERVICESTATE.WORKING);
-        mBusy = true;
-
-        // get all tracks for the current albumkey from mediastore
-        List<TrackModel> tracks = MusicLibraryHelper.getTracksForAlbum(albumKey, getApplicationContext());
-
+    void enqueueLoadedTracks(List<TrackModel> tracks, List<TrackModel> fileTracks) {
         // add tracks to current playlist
         enqueueTracks(tracks);
 
-        mPlaybackServiceStatusHelper.broadcastPlaybackServiceState(PLAYBACKSERVICESTATE.IDLE);
-        mBusy = false;
+        if (!fileTracks.isEmpty()) {
+            // start meta data extraction for new tracks
+            mMetaDataLoader.getTrackListMetaData(getApplicationContext(), fileTracks);
+        }
     }
 
     /**
-     * Play all tracks of an album identified by the albumkey.
+     * Play tracks that were loaded by the {@link PlaybackServiceHandler}.
      * A previous playlist will be cleared.
      *
-     * @param albumKey The key of the album
-     * @param position The position to start playback
+     * @param tracks    The tracks of the new playlist
+     * @param fromFiles Flag if the tracks were created from files and need a meta data extraction
+     * @param position  The position to start the playback
      */
-    public void playAlbum(String albumKey, int position) {
+    void playLoadedTracks(List<TrackModel> tracks, boolean fromFiles, int position) {
         clearPlaylist();
 
-        enqueueAlbum(albumKey);
+        enqueueLoadedTracks(tracks, fromFiles ? tracks : Collections.<TrackModel>emptyList());
 
         jumpToIndex(position);
     }
 
-    /**
-     * Enqueue all recent albums from the mediastore.
-     */
-    public void enqueueRecentAlbums() {
-        mPlaybackServiceStatusHelper.broadcastPlaybackServiceState(PLAYBACKSERVICESTATE.WORKING);
-        mBusy = true;
-
-        List<TrackModel> tracks = MusicLibraryHelper.getRecentTracks(getApplicationContext());
-
-        enqueueTracks(tracks);
-
-        mPlaybackServiceStatusHelper.broadcastPlaybackServiceState(PLAYBACKSERVICESTATE.IDLE);
-        mBusy = false;
-    }
-
-    /**
-     * Play all recent albums from the mediastore.
-     * A previous playlist will be cleared.
-     */
-    public void playRecentAlbums() {
-        clearPlaylist();
-
-        enqueueRecentAlbums();
-
-        jumpToIndex(0);
-    }
-
-    /**
-     * Enqueue all tracks of an artist identified by the artistId.
-     *
-     * @param artistId The id of the artist
-     * @param orderKey String to specify the order of the tracks
-     */
-    public void enqueueArtist(long artistId, String orderKey) {
-        mPlaybackServiceStatusHelper.broadcastPlaybackServiceState(PLAYBACKSERVICESTATE.WORKING);
-        mBusy = true;
-
-        // get all tracks for the current artistId from mediastore
-        List<TrackModel> tracks = MusicLibraryHelper.getTracksForArtist(artistId, orderKey, getApplicationContext());
-
-        // add tracks to current playlist
-        enqueueTracks(tracks);
-
-        mPlaybackServiceStatusHelper.broadcastPlaybackServiceState(PLAYBACKSERVICESTATE.IDLE);
-        mBusy = false;
-    }
-
-    /**
-     * Play all tracks of an artist identified by the artistId.
-     * A previous playlist will be cleared.
-     *
-     * @param artistId The id of the artist
-     * @param orderKey String to specify the order of the tracks
-     */
-    public void playArtist(long artistId, String orderKey) {
-        clearPlaylist();
-
-        enqueueArtist(artistId, orderKey);
-
-        jumpToIndex(0);
-    }
-
     /**
      * Enqueue the given track.
      *
@@ -1004,6 +1133,7 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
         int oldSize = mCurrentList.size();
 
         mCurrentList.add(track);
+        mShuffleBag.insert(oldSize, 1);
 
         // If track is the first to be added, set playing index to 0
         if (mCurrentPlayingIndex == INDEX_NO_TRACKS_AVAILABLE) {
@@ -1034,12 +1164,14 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
         if (mCurrentPlayingIndex >= 0) {
             // Enqueue in list structure
             mCurrentList.add(mCurrentPlayingIndex + 1, track);
+            mShuffleBag.insert(mCurrentPlayingIndex + 1, 1);
             mNextPlayingIndex = mCurrentPlayingIndex + 1;
             // Set next track to new one
             setNextTrackForMP();
         } else {
             // If not playing just add it to the beginning of the playlist
             mCurrentList.add(0, track);
+            mShuffleBag.insert(0, 1);
             // Start playback which is probably intended
             jumpToIndex(0);
         }
@@ -1059,6 +1191,7 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
         if (mCurrentPlayingIndex == index) {
             // Delete song at index
             mCurrentList.remove(index);
+            mShuffleBag.remove(index, index + 1);
 
             // Check if a next track exists and jump to it if player was playing before
             if (state == PLAYSTATE.PLAYING && index < mCurrentList.size()) {
@@ -1070,9 +1203,11 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
             // Deletion of next song which requires extra handling
             // because of gapless playback, set next song to next one
             mCurrentList.remove(index);
+            mShuffleBag.remove(index, index + 1);
             setNextTrackForMP();
         } else if (index >= 0 && index < mCurrentList.size()) {
             mCurrentList.remove(index);
+            mShuffleBag.remove(index, index + 1);
             // mCurrentIndex and mNextPlayingIndex is now moved one position up so update variables
             if (index < mCurrentPlayingIndex) {
                 mCurrentPlayingIndex--;
@@ -1104,11 +1239,11 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
 
         int endIndex = index + 1;
 
-        String albumKey = mCurrentList.get(index).getTrackAlbumKey();
+        String albumKey = mCurrentList.getTrackAlbumKey(index);
 
         // get endindex for section
         while (endIndex < mCurrentList.size()) {
-            if (albumKey.equals(mCurrentList.get(endIndex).getTrackAlbumKey())) {
+            if (albumKey.equals(mCurrentList.getTrackAlbumKey(endIndex))) {
                 endIndex++;
             } else {
                 break;
@@ -1116,22 +1251,13 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
         }
 
         if (mCurrentPlayingIndex >= index && mCurrentPlayingIndex < endIndex) {
-            // remove section and update endindex accordingly
-            ListIterator<TrackModel> iterator = mCurrentList.listIterator(index);
-
-            while (iterator.hasNext()) {
-                TrackModel track = iterator.next();
+            // remove section, the first track after the section moves to index
+            mCurrentList.subList(index, endIndex).clear();
+            mShuffleBag.remove(index, endIndex);
 
-                if (albumKey.equals(track.getTrackAlbumKey())) {
-                    iterator.remove();
-                    endIndex--;
-                } else {
-                    break;
-                }
-            }
             // Check if a next track exists and jump to it if player was playing before
-            if (state == PLAYSTATE.PLAYING && endIndex < mCurrentList.size()) {
-                jumpToIndex(endIndex);
+            if (state == PLAYSTATE.PLAYING && index < mCurrentList.size()) {
+                jumpToIndex(index);
             } else {
                 stop();
             }
@@ -1140,38 +1266,21 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
             // because of gapless playback, set next song to next one
 
             // remove section
-            ListIterator<TrackModel> iterator = mCurrentList.listIterator(index);
-
-            while (iterator.hasNext()) {
-                TrackModel track = iterator.next();
-
-                if (albumKey.equals(track.getTrackAlbumKey())) {
-                    iterator.remove();
-                } else {
-                    break;
-                }
-            }
+            mCurrentList.subList(index, endIndex).clear();
+            mShuffleBag.remove(index, endIndex);
 
             setNextTrackForMP();
         } else if (index >= 0 && index < mCurrentList.size()) {
             // check if section is before current song
             boolean beforeCurrentTrack = endIndex <= mCurrentPlayingIndex;
 
-            ListIterator<TrackModel> iterator = mCurrentList.listIterator(index);
-
-            while (iterator.hasNext()) {
-                TrackModel track = iterator.next();
+            mCurrentList.subList(index, endIndex).clear();
+            mShuffleBag.remove(index, endIndex);
 
-                if (albumKey.equals(track.getTrackAlbumKey())) {
-                    iterator.remove();
-                    if (beforeCurrentTrack) {
-                        // if section is before current song update mCurrentPlayingIndex and mNextPlayingIndex
-                        mCurrentPlayingIndex--;
-                        mNextPlayingIndex--;
-                    }
-                } else {
-                    break;
-                }
+            if (beforeCurrentTrack) {
+                // if section is before current song update mCurrentPlayingIndex and mNextPlayingIndex
+                mCurrentPlayingIndex -= endIndex - index;
+                mNextPlayingIndex -= endIndex - index;
             }
         }
 
@@ -1213,7 +1322,15 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
         serviceState.mTrackPosition = mLastPosition;
         serviceState.mRandomState = mRandom;
         serviceState.mRepeatState = mRepeat;
-        mDatabaseManager.saveState(mCurrentList, serviceState, "auto", true);
+        serviceState.mRandomSeed = mShuffleBag.getSeed();
+        serviceState.mRandomCursor = mShuffleBag.getCursor();
+
+        if (mRestoring) {
+            // the playlist is incomplete, the database still holds the complete previous state
+            Log.w(TAG, "Skip autosave because the playlist is still restored");
+        } else {
+            mDatabaseManager.saveAutoState(mCurrentList, mQueueJournal, serviceState);
+        }
 
         // Final status update
         mPlaybackServiceStatusHelper.updateStatus();
@@ -1279,6 +1396,10 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
         // update the status
         mPlaybackServiceStatusHelper.updateStatus();
         if (mRandom == RANDOMSTATE.RANDOM_ON) {
+            // start a new random order beginning with the current track
+            mShuffleBag.reset(mCurrentList.size(), mRandomGenerator.nextLong());
+            moveRandomOrderTo(mCurrentPlayingIndex);
+
             randomizeNextTrack();
         } else {
             // Set nextTrack to next in list
@@ -1336,81 +1457,6 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
         mBusy = false;
     }
 
-    /**
-     * enqueue a selected playlist from mediastore
-     *
-     * @param playlistId the id of the selected playlist
-     */
-    public void enqueuePlaylist(long playlistId) {
-        mPlaybackServiceStatusHelper.broadcastPlaybackServiceState(PLAYBACKSERVICESTATE.WORKING);
-        mBusy = true;
-
-        // get playlist from mediastore
-        List<TrackModel> playlistTracks = MusicLibraryHelper.getTracksForPlaylist(playlistId, getApplicationContext());
-
-        // add tracks to current playlist
-        enqueueTracks(playlistTracks);
-
-        mPlaybackServiceStatusHelper.broadcastPlaybackServiceState(PLAYBACKSERVICESTATE.IDLE);
-        mBusy = false;
-    }
-
-    /**
-     * Play a selected playlist from mediastore.
-     * A previous playlist will be cleared.
-     *
-     * @param playlistId the id of the selected playlist
-     * @param position   the position to start the playback
-     */
-    public void playPlaylist(long playlistId, int position) {
-        clearPlaylist();
-
-        enqueuePlaylist(playlistId);
-
-        jumpToIndex(position);
-    }
-
-    /**
-     * enqueue a selected playlist from the selected file path
-     *
-     * @param path the path to a playlistfile
-     */
-    public void enqueuePlaylistFile(String path) {
-        mPlaybackServiceStatusHelper.broadcastPlaybackServiceState(PLAYBACKSERVICESTATE.WORKING);
-        mBusy = true;
-
-        // Parse the playlist file with a parser
-        PlaylistParser parser = PlaylistParserFactory.getParser(new FileModel(path));
-        if (parser == null) {
-            return;
-        }
-        ArrayList<TrackModel> playlistTracks = parser.parseList(this);
-
-        // add tracks to current playlist
-        enqueueTracks(playlistTracks);
-
-        // start meta data extraction for new tracks
-        mMetaDataLoader.getTrackListMetaData(getApplicationContext(), playlistTracks);
-
-        mPlaybackServiceStatusHelper.broadcastPlaybackServiceState(PLAYBACKSERVICESTATE.IDLE);
-        mBusy = false;
-    }
-
-    /**
-     * Play a selected playlist from the selected file path.
-     * A previous playlist will be cleared.
-     *
-     * @param path     the path to a playlistfile
-     * @param position the position to start the playback
-     */
-    public void playPlaylistFile(String path, int position) {
-        clearPlaylist();
-
-        enqueuePlaylistFile(path);
-
-        jumpToIndex(position);
-    }
-
     /**
      * Resume the bookmark with the given timestamp
      */
@@ -1422,7 +1468,7 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
         clearPlaylist();
 
         // get playlist from database
-        mCurrentList = mDatabaseManager.readPlaylist(timestamp);
+        mCurrentList.addAll(mDatabaseManager.readPlaylist(timestamp));
 
         // get state from database
         OdysseyServiceState state = mDatabaseManager.getState(timestamp);
@@ -1438,7 +1484,8 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
             mCurrentPlayingIndex = -1;
         }
 
-        mLastPlayingIndex = -1;
+        mShuffleBag.restore(mCurrentList.size(), state.mRandomSeed, state.mRandomCursor, mCurrentPlayingIndex);
+
         mNextPlayingIndex = -1;
 
         // call resume and start playback
@@ -1478,6 +1525,8 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
         serviceState.mTrackPosition = getTrackPosition();
         serviceState.mRandomState = mRandom;
         serviceState.mRepeatState = mRepeat;
+        serviceState.mRandomSeed = mShuffleBag.getSeed();
+        serviceState.mRandomCursor = mShuffleBag.getCursor();
 
         mDatabaseManager.saveState(mCurrentList, serviceState, bookmarkTitle, false);
 
@@ -1563,74 +1612,6 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
         }
     }
 
-    /**
-     * Creates trackmodels for a given directorypath and plays the tracks.
-     * A previous playlist will be cleared.
-     *
-     * @param directoryPath the path to the selected directory
-     * @param position      the position to start the playback
-     */
-    public void playDirectory(String directoryPath, int position) {
-        clearPlaylist();
-
-        mPlaybackServiceStatusHelper.broadcastPlaybackServiceState(PLAYBACKSERVICESTATE.WORKING);
-        mBusy = true;
-
-        final FileModel currentDirectory = new FileModel(directoryPath);
-
-        List<TrackModel> tracks = FileExplorerHelper.getInstance().getTrackModelsForFolder(getApplicationContext(), currentDirectory);
-
-        // add tracks to current playlist
-        enqueueTracks(tracks);
-
-        // start meta data extraction for new tracks
-        mMetaDataLoader.getTrackListMetaData(getApplicationContext(), tracks);
-
-        jumpToIndex(position);
-
-        mPlaybackServiceStatusHelper.broadcastPlaybackServiceState(PLAYBACKSERVICESTATE.IDLE);
-        mBusy = false;
-    }
-
-    /**
-     * creates trackmodels for a given directorypath (inclusive all subdirectories) and adds the tracks to the playlist
-     *
-     * @param directoryPath the path to the selected directory
-     * @param filterString  A filter that is used to exclude folders/files that didn't contain this String.
-     */
-    public void enqueueDirectoryAndSubDirectories(String directoryPath, String filterString) {
-        mPlaybackServiceStatusHelper.broadcastPlaybackServiceState(PLAYBACKSERVICESTATE.WORKING);
-        mBusy = true;
-
-        final FileModel currentDirectory = new FileModel(directoryPath);
-
-        List<TrackModel> tracks = FileExplorerHelper.getInstance().getTrackModelsForFolderAndSubFolders(getApplicationContext(), currentDirectory, filterString);
-
-        // add tracks to current playlist
-        enqueueTracks(tracks);
-
-        // start meta data extraction for new tracks
-        mMetaDataLoader.getTrackListMetaData(getApplicationContext(), tracks);
-
-        mPlaybackServiceStatusHelper.broadcastPlaybackServiceState(PLAYBACKSERVICESTATE.IDLE);
-        mBusy = false;
-    }
-
-    /**
-     * Creates trackmodels for a given directorypath (inclusive all subdirectories) and plays the tracks.
-     * A previous playlist will be cleared.
-     *
-     * @param directoryPath the path to the selected directory
-     * @param filterString  A filter that is used to exclude folder/files that didn't contain this String.
-     */
-    public void playDirectoryAndSubDirectories(String directoryPath, String filterString) {
-        clearPlaylist();
-
-        enqueueDirectoryAndSubDirectories(directoryPath, filterString);
-
-        jumpToIndex(0);
-    }
-
     /**
      * Returns the playback state of the service
      */
@@ -1654,6 +1635,16 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
         }
     }
 
+    /**
+     * Sets the working state of the service and notifies the user about a possible long running operation.
+     *
+     * @param busy true if the service starts an operation, false if it finished
+     */
+    void setBusy(boolean busy) {
+        mBusy = busy;
+        mPlaybackServiceStatusHelper.broadcastPlaybackServiceState(busy ? PLAYBACKSERVICESTATE.WORKING : PLAYBACKSERVICESTATE.IDLE);
+    }
+
     /**
      * Returns the working state of the service
      *
@@ -1667,6 +1658,25 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
         mPlaybackServiceStatusHelper.hideArtwork(enable);
     }
 
+    /**
+     * Registers a listener that is notified about state changes and position ticks.
+     *
+     * @param listener     The listener that should be notified
+     * @param tickInterval The interval of position ticks in milliseconds, 0 to disable the ticks
+     */
+    public void registerPlaybackListener(IOdysseyPlaybackListener listener, int tickInterval) {
+        mPlaybackServiceStatusHelper.registerPlaybackListener(listener, tickInterval);
+    }
+
+    /**
+     * Unregisters a previously registered listener.
+     *
+     * @param listener The listener that should not be notified anymore
+     */
+    public void unregisterPlaybackListener(IOdysseyPlaybackListener listener) {
+        mPlaybackServiceStatusHelper.unregisterPlaybackListener(listener);
+    }
+
     /**
      * Handles all the exceptions from the GaplessPlayer. For now it justs stops
      * itself and outs an Toast message to the user. Thats the best we could
@@ -1680,20 +1690,103 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
     }
 
     /**
-     * Sets the index, of the track to play next,to a random generated one.
+     * Sets the index, of the track to play next, to the next one in the random order.
      */
     private void randomizeNextTrack() {
-        // Set next index to random one
         if (mCurrentList.size() > 0) {
-            mNextPlayingIndex = mRandomGenerator.nextInt(mCurrentList.size());
-
-            // if next index equal to current index create a new random
-            // index but just trying RANDOM_RETRIES times
-            int counter = 0;
-            while (mNextPlayingIndex == mCurrentPlayingIndex && counter < RANDOM_RETRIES) {
-                mNextPlayingIndex = mRandomGenerator.nextInt(mCurrentList.size());
-                counter++;
-            }
+            mNextPlayingIndex = getRandomNextIndex(mCurrentPlayingIndex);
+        }
+    }
+
+    /**
+     * Returns the track after the given one in the random order without moving the random order.
+     *
+     * @param index Index of the track in the playlist
+     * @return The index of the next track in the random order
+     */
+    private int getRandomNextIndex(int index) {
+        int nextIndex = mShuffleBag.getNext(index);
+
+        // a single track is just repeated, at the end of the bag a new one is started when the track starts
+        return nextIndex == -1 ? index : nextIndex;
+    }
+
+    /**
+     * Moves the random order to the started track. If every track was played once a new random order is started.
+     *
+     * @param index Index of the started track in the playlist
+     */
+    private void moveRandomOrderTo(int index) {
+        mShuffleBag.moveTo(index);
+
+        if (mShuffleBag.peekNext() == -1) {
+            // bag exhausted, start a new one beginning with the given track
+            mShuffleBag.reset(mCurrentList.size(), mRandomGenerator.nextLong());
+            mShuffleBag.moveTo(index);
+        }
+    }
+
+    /**
+     * Called when the saved playlist is completely loaded. Restores the random playback order and starts
+     * recording the changes of the playlist for the autosave.
+     *
+     * @param state           The saved state of the playlist
+     * @param savedIndex      The saved index of the current track in the complete playlist
+     * @param prependedTracks Number of tracks that were inserted in front of the part of the playlist
+     *                        that was shown while the restore was running
+     */
+    private void finishPlaylistRestore(OdysseyServiceState state, int savedIndex, int prependedTracks) {
+        // only restore the random order if the user did not move on in the meantime
+        if (savedIndex == mCurrentPlayingIndex) {
+            mShuffleBag.restore(mCurrentList.size(), state.mRandomSeed, state.mRandomCursor, mCurrentPlayingIndex);
+        }
+
+        // record all following changes of the playlist for the incremental autosave
+        mCurrentList.setJournal(mQueueJournal);
+
+        mRestoring = false;
+
+        // the waiting commands refer to the positions of the partial playlist, continue with them
+        mHandler.movePlaylistPositions(prependedTracks);
+        mHandler.resumeCommands();
+    }
+
+    /**
+     * @return True while the saved playlist is still loaded
+     */
+    boolean isRestoring() {
+        return mRestoring;
+    }
+
+    /**
+     * Inserts restored tracks before the restored part of the playlist and moves all indices accordingly.
+     */
+    private void prependRestoredTracks(List<TrackModel> tracks) {
+        mCurrentList.addAll(0, tracks);
+        mShuffleBag.insert(0, tracks.size());
+
+        if (mCurrentPlayingIndex >= 0) {
+            mCurrentPlayingIndex += tracks.size();
+        }
+        if (mNextPlayingIndex >= 0) {
+            mNextPlayingIndex += tracks.size();
+        }
+    }
+
+    /**
+     * Appends restored tracks to the restored part of the playlist.
+     * Prepares the next track for playback if needed.
+     */
+    private void appendRestoredTracks(List<TrackModel> tracks) {
+        int oldSize = mCurrentList.size();
+
+        mShuffleBag.insert(oldSize, tracks.size());
+        mCurrentList.addAll(tracks);
+
+        if (mCurrentPlayingIndex == (oldSize - 1) && (mCurrentPlayingIndex >= 0) && mRandom == RANDOMSTATE.RANDOM_OFF && mRepeat != REPEATSTATE.REPEAT_TRACK) {
+            // Next song for MP has to be set for gapless mediaplayback
+            mNextPlayingIndex = mCurrentPlayingIndex + 1;
+            setNextTrackForMP();
         }
     }
 
@@ -1707,7 +1800,7 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
             // Sets the next track for gapless playing
             if (mNextPlayingIndex >= 0 && mNextPlayingIndex < mCurrentList.size()) {
                 try {
-                    mPlayer.setNextTrack(mCurrentList.get(mNextPlayingIndex).getTrackURL());
+                    mPlayer.setNextTrack(mCurrentList.getTrackURL(mNextPlayingIndex));
                 } catch (GaplessPlayer.PlaybackException e) {
                     handlePlaybackException(e);
                 }
@@ -1722,7 +1815,41 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
                     handlePlaybackException(e);
                 }
             }
+
+            prepareLookaheadTracks();
+        }
+    }
+
+    /**
+     * Lets the GaplessPlayer prepare the tracks a skip would most likely jump to next:
+     * the tracks after the next track and the previous track.
+     */
+    private void prepareLookaheadTracks() {
+        List<Integer> indices = new ArrayList<>();
+
+        if (mRandom == RANDOMSTATE.RANDOM_ON) {
+            // the next track is at distance 1 of the random order
+            for (int i = 2; i <= LOOKAHEAD_TRACKS + 1; i++) {
+                indices.add(mShuffleBag.peekAhead(i));
+            }
+            indices.add(mShuffleBag.peekPrevious());
+        } else if (mRepeat != REPEATSTATE.REPEAT_TRACK) {
+            int index = mNextPlayingIndex;
+            for (int i = 0; i < LOOKAHEAD_TRACKS && index != -1; i++) {
+                index = getNextIndex(index);
+                indices.add(index);
+            }
+            indices.add(getPreviousIndex(mCurrentPlayingIndex));
         }
+
+        List<String> urls = new ArrayList<>();
+        for (int index : indices) {
+            if (index >= 0 && index < mCurrentList.size() && index != mCurrentPlayingIndex && index != mNextPlayingIndex) {
+                urls.add(mCurrentList.getTrackURL(index));
+            }
+        }
+
+        mPlayer.setStandbyTracks(urls);
     }
 
     public int getAudioSessionID() {
@@ -1749,38 +1876,15 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
             }
             // Notify all the things
             mPlaybackServiceStatusHelper.updateStatus();
-            if (mRandom == RANDOMSTATE.RANDOM_OFF) {
-                // Check the repeat state
-
-                switch (mRepeat) {
-                    case REPEAT_OFF:
-                        // Repeat off so next track is the next track in the playlist if available
-                        if (mCurrentPlayingIndex + 1 < mCurrentList.size()) {
-                            mNextPlayingIndex = mCurrentPlayingIndex + 1;
-                        } else {
-                            mNextPlayingIndex = -1;
-                        }
-                        break;
-                    case REPEAT_ALL:
-                        // Repeat playlist so set to first PL song if last song is
-                        // reached
-                        if (mCurrentList.size() > 0 && mCurrentPlayingIndex + 1 == mCurrentList.size()) {
-                            mNextPlayingIndex = 0;
-                        } else if (mCurrentList.size() > 0 && mCurrentPlayingIndex + 1 < mCurrentList.size()) {
-                            // If the end of the playlist was not reached move to the next track
-                            mNextPlayingIndex = mCurrentPlayingIndex + 1;
-                        }
-                        break;
-                    case REPEAT_TRACK:
-                        // Repeat track so next track is the current track
-                        mNextPlayingIndex = mCurrentPlayingIndex;
-                        break;
-                }
-            } else {
-                // Random on
-                randomizeNextTrack();
+
+            // The random order only moves for tracks that are actually played
+            if (mRandom == RANDOMSTATE.RANDOM_ON) {
+                moveRandomOrderTo(mCurrentPlayingIndex);
             }
 
+            // Check the random and repeat state for the following track.
+            mNextPlayingIndex = getNextIndex(mCurrentPlayingIndex);
+
             // Sets the next track for gapless playing
             setNextTrackForMP();
 
@@ -1803,8 +1907,6 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
 
         @Override
         public void onTrackFinished() {
-            // Remember the last track index for moving backwards in the queue.
-            mLastPlayingIndex = mCurrentPlayingIndex;
             if (mCurrentList.size() > 0 && mCurrentPlayingIndex >= 0 && (mCurrentPlayingIndex < mCurrentList.size())) {
                 // Broadcast simple.last.fm.scrobble broadcast about the track finish
                 TrackModel item = mCurrentList.get(mCurrentPlayingIndex);
@@ -1871,16 +1973,14 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
      */
     @Override
     public void metaDataLoaderFinished(Map<String, TrackModel> parsedTracks) {
-        ListIterator<TrackModel> iterator = mCurrentList.listIterator();
-
         boolean updatedNeeded = false;
 
-        while (iterator.hasNext()) {
-            final TrackModel track = iterator.next();
+        for (int i = 0; i < mCurrentList.size(); i++) {
+            final String url = mCurrentList.getTrackURL(i);
 
-            if (parsedTracks.containsKey(track.getTrackURL())) {
+            if (parsedTracks.containsKey(url)) {
                 // if the track is in the map replace it in the playlist
-                iterator.set(parsedTracks.get(track.getTrackURL()));
+                mCurrentList.set(i, parsedTracks.get(url));
                 updatedNeeded = true;
             }
         }
@@ -1899,7 +1999,17 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
     private class BroadcastControlReceiver extends BroadcastReceiver {
 
         @Override
-        public void onReceive(Context context, Intent intent) {
+        public void onReceive(Context context, final Intent intent) {
+            // The playback state and the playlist are only changed on the handler thread
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    handleControlIntent(intent);
+                }
+            });
+        }
+
+        private void handleControlIntent(Intent intent) {
             if (intent.getAction().equals(android.media.AudioManager.ACTION_AUDIO_BECOMING_NOISY)) {
                 /* Check if audio focus is currently lost. For example an incoming call gets picked up
                 and now the user disconnects the headphone. The music should not resume when the call
@@ -1933,6 +2043,109 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
 
     }
 
+    /**
+     * Restores the saved playlist on the handler thread, one step per message so that transport commands
+     * (pause, next, ...) are handled in between. The first step reads the saved state and the tracks around the
+     * current track, so that playback can be resumed at once. Afterwards the tracks after the restored part are
+     * loaded page by page, then the tracks in front of it. Commands of the handler that would change the playlist
+     * are processed after the restore finished.
+     */
+    private class PlaylistRestoreTask implements Runnable {
+
+        private long[] mLayout;
+
+        private int mStart;
+
+        /**
+         * Start of the tracks that were restored first, the number of tracks that are prepended afterwards
+         */
+        private int mWindowStart;
+
+        private int mEnd;
+
+        private OdysseyServiceState mState;
+
+        private int mSavedIndex;
+
+        @Override
+        public void run() {
+            if (mLayout == null) {
+                restoreWindow();
+            } else if (mEnd < mLayout.length) {
+                int pageEnd = Math.min(mEnd + RESTORE_PAGE_SIZE, mLayout.length);
+
+                appendRestoredTracks(mDatabaseManager.readPlaylistTracks(mLayout, mEnd, pageEnd));
+
+                mEnd = pageEnd;
+            } else {
+                int pageStart = Math.max(mStart - RESTORE_PAGE_SIZE, 0);
+
+                prependRestoredTracks(mDatabaseManager.readPlaylistTracks(mLayout, pageStart, mStart));
+
+                mStart = pageStart;
+            }
+
+            if (mStart > 0 || mEnd < mLayout.length) {
+                // load the next page with the next message
+                mHandler.post(this);
+                return;
+            }
+
+            finishPlaylistRestore(mState, mSavedIndex, mWindowStart);
+
+            mPlaybackServiceStatusHelper.updateStatus();
+
+            if (mBusy) {
+                mPlaybackServiceStatusHelper.broadcastPlaybackServiceState(PLAYBACKSERVICESTATE.IDLE);
+                mBusy = false;
+            }
+        }
+
+        /**
+         * Reads the saved state and the tracks around the current track.
+         */
+        private void restoreWindow() {
+            // read a possible saved state from database
+            mState = mDatabaseManager.getState();
+
+            // read the layout of a possible saved playlist from the database, the tracks themselves are loaded later
+            mLayout = mDatabaseManager.readPlaylistLayout();
+
+            // Resume the loaded state to internal variables
+            mCurrentPlayingIndex = mState.mTrackNumber;
+            mLastPosition = mState.mTrackPosition;
+            mRandom = mState.mRandomState;
+            mRepeat = mState.mRepeatState;
+
+            // Check if saved state is within bounds of resumed playlist
+            int playlistSize = mLayout.length;
+            if (mCurrentPlayingIndex >= playlistSize || mCurrentPlayingIndex < 0) {
+                mCurrentPlayingIndex = playlistSize == 0 ? -1 : 0;
+            }
+
+            // read only the current track and its neighbors now, so that playback can be resumed at once
+            mStart = Math.max(0, mCurrentPlayingIndex - RESTORE_WINDOW_SIZE / 2);
+            mEnd = Math.min(playlistSize, mStart + RESTORE_WINDOW_SIZE);
+            mWindowStart = mStart;
+
+            mCurrentList.addAll(mDatabaseManager.readPlaylistTracks(mLayout, mStart, mEnd));
+            mShuffleBag.reset(mCurrentList.size(), mState.mRandomSeed);
+
+            mSavedIndex = mCurrentPlayingIndex;
+            if (mCurrentPlayingIndex >= 0) {
+                mCurrentPlayingIndex -= mStart;
+            }
+
+            if (mStart > 0 || mEnd < playlistSize) {
+                // the remaining playlist is loaded with the following messages
+                mPlaybackServiceStatusHelper.updateStatus();
+
+                mPlaybackServiceStatusHelper.broadcastPlaybackServiceState(PLAYBACKSERVICESTATE.WORKING);
+                mBusy = true;
+            }
+        }
+    }
+
     /**
      * Private callback class used to monitor the memory situation of the system.
      * If memory reaches a certain point, we will relinquish our data.
@@ -23,138 +23,584 @@
 package org.gateshipone.odyssey.playbackservice;
 
 import java.lang.ref.WeakReference;
-import java.util.concurrent.Semaphore;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
+import android.content.Context;
 import android.os.Handler;
 import android.os.Looper;
 import android.os.Message;
+import android.os.Process;
+import android.util.Log;
 
+import org.gateshipone.odyssey.models.FileModel;
+import org.gateshipone.odyssey.models.TrackModel;
+import org.gateshipone.odyssey.utils.FileExplorerHelper;
+import org.gateshipone.odyssey.utils.MusicLibraryHelper;
+import org.gateshipone.odyssey.utils.PlaylistParser;
+import org.gateshipone.odyssey.utils.PlaylistParserFactory;
+
+/**
+ * Executes the commands of the {@link OdysseyPlaybackServiceInterface} in order on the handler thread.
+ * <p>
+ * Commands are never dropped. Consecutive commands are coalesced where the result is the same:
+ * seeks and jumps keep only the latest value, two pause toggles cancel each other and enqueued tracks
+ * are added to the playlist with a single change. Commands that have to load their tracks from the
+ * MediaStore or the file system load them on a worker thread. While a load is running or the saved playlist
+ * is restored only transport commands (pause, next, seek, ...) are executed, all other commands wait to keep
+ * their order.
+ */
 public class PlaybackServiceHandler extends Handler {
+    private static final String TAG = "OdysseyPBSHandler";
+
+    private static final int MSG_PROCESS_COMMANDS = 1;
+
     private final WeakReference<PlaybackService> mService;
 
-    private Semaphore mLock;
+    /**
+     * Commands that are not executed yet. Also guards {@link #mLoadTask}.
+     */
+    private final ArrayDeque<ControlObject> mCommands;
+
+    /**
+     * Worker thread to load the tracks of heavy commands.
+     */
+    private final ExecutorService mLoadExecutor;
+
+    /**
+     * The currently running load, null if none is running.
+     */
+    private LoadTask mLoadTask;
 
     public PlaybackServiceHandler(Looper looper, PlaybackService service) {
         super(looper);
         mService = new WeakReference<>(service);
-        mLock = new Semaphore(1);
+        mCommands = new ArrayDeque<>();
+        mLoadExecutor = Executors.newSingleThreadExecutor();
+    }
+
+    /**
+     * Queues a command for the handler thread and coalesces it with the previous command if possible.
+     *
+     * @param command The command to execute
+     */
+    public void sendCommand(ControlObject command) {
+        synchronized (mCommands) {
+            if (mLoadTask != null && mCommands.isEmpty() && replacesPlaylist(command)) {
+                // The loaded tracks would be removed by this command anyway
+                mLoadTask.mCancelled = true;
+                mLoadTask = null;
+            }
+
+            ControlObject lastCommand = mCommands.peekLast();
+            if (lastCommand == null || !coalesce(lastCommand, command)) {
+                mCommands.addLast(command);
+            }
+        }
+
+        if (!hasMessages(MSG_PROCESS_COMMANDS)) {
+            sendEmptyMessage(MSG_PROCESS_COMMANDS);
+        }
+    }
+
+    /**
+     * Continues with the waiting commands, e.g. after the saved playlist was restored.
+     */
+    public void resumeCommands() {
+        if (!hasMessages(MSG_PROCESS_COMMANDS)) {
+            sendEmptyMessage(MSG_PROCESS_COMMANDS);
+        }
+    }
+
+    /**
+     * Moves the playlist positions of the waiting commands, e.g. after tracks were inserted in front of the
+     * part of the playlist the commands refer to.
+     *
+     * @param offset Number of tracks that were inserted before the positions
+     */
+    public void movePlaylistPositions(int offset) {
+        if (offset == 0) {
+            return;
+        }
+
+        synchronized (mCommands) {
+            for (ControlObject command : mCommands) {
+                switch (command.getAction()) {
+                    case ODYSSEY_JUMPTO:
+                    case ODYSSEY_DEQUEUETRACK:
+                    case ODYSSEY_DEQUEUETRACKS:
+                        command.setIntParam(command.getIntParam() + offset);
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops all waiting commands and messages and stops the worker thread. Called when the service is destroyed.
+     */
+    public void shutdown() {
+        removeCallbacksAndMessages(null);
+
+        synchronized (mCommands) {
+            mCommands.clear();
+
+            if (mLoadTask != null) {
+                mLoadTask.mCancelled = true;
+                mLoadTask = null;
+            }
+        }
+
+        mLoadExecutor.shutdown();
     }
 
     @Override
     public void handleMessage(Message msg) {
         super.handleMessage(msg);
 
-        ControlObject msgObj = (ControlObject) msg.obj;
+        if (msg.what == MSG_PROCESS_COMMANDS) {
+            processCommands();
+        }
+    }
 
-        // Check if object is received
-        if (msgObj != null && mLock.tryAcquire()) {
-            // Parse message
-            switch (msgObj.getAction()) {
-                case ODYSSEY_PLAY:
-                    mService.get().playURI(msgObj.getStringParam());
-                    break;
-                case ODYSSEY_TOGGLEPAUSE:
-                    mService.get().togglePause();
-                    break;
-                case ODYSSEY_NEXT:
-                    mService.get().setNextTrack();
-                    break;
-                case ODYSSEY_PREVIOUS:
-                    mService.get().setPreviousTrack();
-                    break;
-                case ODYSSEY_SEEKTO:
-                    mService.get().seekTo(msgObj.getIntParam());
-                    break;
-                case ODYSSEY_JUMPTO:
-                    mService.get().jumpToIndex(msgObj.getIntParam());
-                    break;
-                case ODYSSEY_REPEAT:
-                    mService.get().toggleRepeat();
-                    break;
-                case ODYSSEY_RANDOM:
-                    mService.get().toggleRandom();
-                    break;
-                case ODYSSEY_ENQUEUETRACK:
-                    mService.get().enqueueTrack(msgObj.getTrack(), msgObj.getBoolParam());
-                    break;
-                case ODYSSEY_PLAYTRACK:
-                    mService.get().playTrack(msgObj.getTrack(), msgObj.getBoolParam());
-                    break;
-                case ODYSSEY_DEQUEUETRACK:
-                    mService.get().dequeueTrack(msgObj.getIntParam());
-                    break;
-                case ODYSSEY_DEQUEUETRACKS:
-                    mService.get().dequeueTracks(msgObj.getIntParam());
-                    break;
-                case ODYSSEY_CLEARPLAYLIST:
-                    mService.get().clearPlaylist();
-                    break;
-                case ODYSSEY_SHUFFLEPLAYLIST:
-                    mService.get().shufflePlaylist();
-                    break;
-                case ODYSSEY_PLAYALLTRACKS:
-                    mService.get().playAllTracks(msgObj.getStringParam());
-                    break;
-                case ODYSSEY_SAVEPLAYLIST:
-                    mService.get().savePlaylist(msgObj.getStringParam());
-                    break;
-                case ODYSSEY_ENQUEUEPLAYLIST:
-                    mService.get().enqueuePlaylist(msgObj.getLongParam());
-                    break;
-                case ODYSSEY_PLAYPLAYLIST:
-                    mService.get().playPlaylist(msgObj.getLongParam(), msgObj.getIntParam());
-                    break;
-                case ODYSSEY_ENQUEUEPLAYLISTFILE:
-                    mService.get().enqueuePlaylistFile(msgObj.getStringParam());
-                    break;
-                case ODYSSEY_PLAYPLAYLISTFILE:
-                    mService.get().playPlaylistFile(msgObj.getStringParam(), msgObj.getIntParam());
-                    break;
-                case ODYSSEY_RESUMEBOOKMARK:
-                    mService.get().resumeBookmark(msgObj.getLongParam());
-                    break;
-                case ODYSSEY_DELETEBOOKMARK:
-                    mService.get().deleteBookmark(msgObj.getLongParam());
-                    break;
-                case ODYSSEY_CREATEBOOKMARK:
-                    mService.get().createBookmark(msgObj.getStringParam());
-                    break;
-                case ODYSSEY_ENQUEUEFILE:
-                    mService.get().enqueueFile(msgObj.getStringParam(), msgObj.getBoolParam());
-                    break;
-                case ODYSSEY_PLAYFILE:
-                    mService.get().playFile(msgObj.getStringParam(), msgObj.getBoolParam());
-                    break;
-                case ODYSSEY_PLAYDIRECTORY:
-                    mService.get().playDirectory(msgObj.getStringParam(), msgObj.getIntParam());
-                    break;
-                case ODYSSEY_ENQUEUEDIRECTORYANDSUBDIRECTORIES:
-                    mService.get().enqueueDirectoryAndSubDirectories(msgObj.getStringParam(), msgObj.getSecondStringParam());
-                    break;
-                case ODYSSEY_PLAYDIRECTORYANDSUBDIRECTORIES:
-                    mService.get().playDirectoryAndSubDirectories(msgObj.getStringParam(), msgObj.getSecondStringParam());
-                    break;
-                case ODYSSEY_ENQUEUEALBUM:
-                    mService.get().enqueueAlbum(msgObj.getStringParam());
-                    break;
-                case ODYSSEY_PLAYALBUM:
-                    mService.get().playAlbum(msgObj.getStringParam(), msgObj.getIntParam());
-                    break;
-                case ODYSSEY_ENQUEUEARTIST:
-                    mService.get().enqueueArtist(msgObj.getLongParam(), msgObj.getStringParam());
-                    break;
-                case ODYSSEY_PLAYARTIST:
-                    mService.get().playArtist(msgObj.getLongParam(), msgObj.getStringParam());
-                    break;
-                case ODYSSEY_ENQUEUERECENTALBUMS:
-                    mService.get().enqueueRecentAlbums();
-                    break;
-                case ODYSSEY_PLAYRECENTALBUMS:
-                    mService.get().playRecentAlbums();
+    /**
+     * Merges the new command into the last waiting command if both can be combined.
+     *
+     * @param lastCommand The last command in the queue
+     * @param command     The new command
+     * @return True if the new command needs no separate execution
+     */
+    private boolean coalesce(ControlObject lastCommand, ControlObject command) {
+        final ControlObject.PLAYBACK_ACTION action = command.getAction();
+        final ControlObject.PLAYBACK_ACTION lastAction = lastCommand.getAction();
+
+        switch (action) {
+            case ODYSSEY_SEEKTO:
+            case ODYSSEY_JUMPTO:
+                if (lastAction == action) {
+                    // Only the latest position is relevant
+                    mCommands.pollLast();
+                    mCommands.addLast(command);
+                    return true;
+                }
+                break;
+            case ODYSSEY_TOGGLEPAUSE:
+                if (lastAction == action) {
+                    // Two toggles restore the current state
+                    mCommands.pollLast();
+                    return true;
+                }
+                break;
+            case ODYSSEY_ENQUEUETRACK:
+                if (command.getBoolParam()) {
+                    // Tracks enqueued as next are inserted in reverse order, keep them separate
+                    break;
+                }
+
+                if (lastAction == ControlObject.PLAYBACK_ACTION.ODYSSEY_ENQUEUETRACKLIST) {
+                    lastCommand.getTracks().add(command.getTrack());
+                    return true;
+                } else if (lastAction == action && !lastCommand.getBoolParam()) {
+                    List<TrackModel> tracks = new ArrayList<>();
+                    tracks.add(lastCommand.getTrack());
+                    tracks.add(command.getTrack());
+
+                    mCommands.pollLast();
+                    mCommands.addLast(new ControlObject(ControlObject.PLAYBACK_ACTION.ODYSSEY_ENQUEUETRACKLIST, tracks));
+                    return true;
+                }
+                break;
+        }
+
+        return false;
+    }
+
+    /**
+     * Executes the waiting commands until the queue is empty or a load blocks the next command.
+     */
+    private void processCommands() {
+        final PlaybackService service = mService.get();
+        if (service == null) {
+            return;
+        }
+
+        while (true) {
+            ControlObject command;
+            LoadTask loadTask = null;
+
+            synchronized (mCommands) {
+                command = mCommands.peekFirst();
+
+                if (command == null || ((mLoadTask != null || service.isRestoring()) && !isTransportCommand(command))
+                        || (service.isRestoring() && command.getAction() == ControlObject.PLAYBACK_ACTION.ODYSSEY_RANDOM)) {
+                    // Nothing to do or wait for the loaded or restored tracks to keep the order of the commands.
+                    // The random order is restored with the playlist, a toggle is applied afterwards.
+                    return;
+                }
+
+                mCommands.pollFirst();
+
+                if (isHeavyCommand(command)) {
+                    List<ControlObject> commands = new ArrayList<>();
+                    commands.add(command);
+
+                    if (isEnqueueCommand(command)) {
+                        // Load all directly following enqueue commands at once so they are added with a single change
+                        while (!mCommands.isEmpty() && isEnqueueCommand(mCommands.peekFirst())) {
+                            commands.add(mCommands.pollFirst());
+                        }
+                    }
+
+                    loadTask = new LoadTask(commands, service.getApplicationContext());
+                    mLoadTask = loadTask;
+                }
+            }
+
+            if (loadTask != null) {
+                // Notify the user about the possible long running operation
+                service.setBusy(true);
+                mLoadExecutor.execute(loadTask);
+            } else {
+                executeCommand(service, command);
+            }
+        }
+    }
+
+    /**
+     * Applies the result of a load on the handler thread and continues with the waiting commands.
+     *
+     * @param loadTask The finished load
+     */
+    private void finishLoad(LoadTask loadTask) {
+        final PlaybackService service = mService.get();
+
+        boolean loadRunning;
+        synchronized (mCommands) {
+            if (mLoadTask == loadTask) {
+                mLoadTask = null;
+            }
+            loadRunning = mLoadTask != null;
+        }
+
+        if (service == null) {
+            return;
+        }
+
+        if (!loadTask.mCancelled) {
+            applyLoadedTracks(service, loadTask);
+        }
+
+        if (!loadRunning) {
+            service.setBusy(false);
+        }
+
+        processCommands();
+    }
+
+    /**
+     * Adds the loaded tracks to the playlist. Multiple enqueue commands are applied as one change.
+     */
+    private void applyLoadedTracks(PlaybackService service, LoadTask loadTask) {
+        final List<ControlObject> commands = loadTask.mLoadCommands;
+
+        if (commands.size() == 1 && !isEnqueueCommand(commands.get(0))) {
+            ControlObject command = commands.get(0);
+            service.playLoadedTracks(loadTask.mResults.get(0), isFileCommand(command), command.getIntParam());
+            return;
+        }
+
+        List<TrackModel> tracks = new ArrayList<>();
+        List<TrackModel> fileTracks = new ArrayList<>();
+
+        for (int i = 0; i < commands.size(); i++) {
+            List<TrackModel> result = loadTask.mResults.get(i);
+
+            tracks.addAll(result);
+            if (isFileCommand(commands.get(i))) {
+                fileTracks.addAll(result);
+            }
+        }
+
+        service.enqueueLoadedTracks(tracks, fileTracks);
+    }
+
+    private void executeCommand(PlaybackService service, ControlObject msgObj) {
+        // Parse message
+        switch (msgObj.getAction()) {
+            case ODYSSEY_PLAY:
+                service.playURI(msgObj.getStringParam());
+                break;
+            case ODYSSEY_TOGGLEPAUSE:
+                service.togglePause();
+                break;
+            case ODYSSEY_NEXT:
+                service.setNextTrack();
+                break;
+            case ODYSSEY_PREVIOUS:
+                service.setPreviousTrack();
+                break;
+            case ODYSSEY_SEEKTO:
+                service.seekTo(msgObj.getIntParam());
+                break;
+            case ODYSSEY_JUMPTO:
+                service.jumpToIndex(msgObj.getIntParam());
+                break;
+            case ODYSSEY_REPEAT:
+                service.toggleRepeat();
+                break;
+            case ODYSSEY_RANDOM:
+                service.toggleRandom();
+                break;
+            case ODYSSEY_ENQUEUETRACK:
+                service.enqueueTrack(msgObj.getTrack(), msgObj.getBoolParam());
+                break;
+            case ODYSSEY_ENQUEUETRACKLIST:
+                service.enqueueTracks(msgObj.getTracks());
+                break;
+            case ODYSSEY_PLAYTRACK:
+                service.playTrack(msgObj.getTrack(), msgObj.getBoolParam());
+                break;
+            case ODYSSEY_DEQUEUETRACK:
+                service.dequeueTrack(msgObj.getIntParam());
+                break;
+            case ODYSSEY_DEQUEUETRACKS:
+                service.dequeueTracks(msgObj.getIntParam());
+                break;
+            case ODYSSEY_CLEARPLAYLIST:
+                service.clearPlaylist();
+                break;
+            case ODYSSEY_SHUFFLEPLAYLIST:
+                service.shufflePlaylist();
+                break;
+            case ODYSSEY_SAVEPLAYLIST:
+                service.savePlaylist(msgObj.getStringParam());
+                break;
+            case ODYSSEY_RESUMEBOOKMARK:
+                service.resumeBookmark(msgObj.getLongParam());
+                break;
+            case ODYSSEY_DELETEBOOKMARK:
+                service.deleteBookmark(msgObj.getLongParam());
+                break;
+            case ODYSSEY_CREATEBOOKMARK:
+                service.createBookmark(msgObj.getStringParam());
+                break;
+            case ODYSSEY_ENQUEUEFILE:
+                service.enqueueFile(msgObj.getStringParam(), msgObj.getBoolParam());
+                break;
+            case ODYSSEY_PLAYFILE:
+                service.playFile(msgObj.getStringParam(), msgObj.getBoolParam());
+                break;
+        }
+    }
+
+    /**
+     * Loads the tracks of a heavy command. Called on the worker thread.
+     *
+     * @param context Context for the MediaStore and file access
+     * @param command The command to load the tracks for
+     * @return The tracks of the command, an empty list if nothing was found
+     */
+    private static List<TrackModel> loadTracks(Context context, ControlObject command) {
+        List<TrackModel> tracks = null;
+
+        switch (command.getAction()) {
+            case ODYSSEY_ENQUEUETRACK:
+                tracks = Collections.singletonList(command.getTrack());
+                break;
+            case ODYSSEY_ENQUEUETRACKLIST:
+                tracks = command.getTracks();
+                break;
+            case ODYSSEY_PLAYALLTRACKS:
+                tracks = MusicLibraryHelper.getAllTracks(command.getStringParam(), context);
+                break;
+            case ODYSSEY_ENQUEUEALBUM:
+            case ODYSSEY_PLAYALBUM:
+                tracks = MusicLibraryHelper.getTracksForAlbum(command.getStringParam(), context);
+                break;
+            case ODYSSEY_ENQUEUEARTIST:
+            case ODYSSEY_PLAYARTIST:
+                tracks = MusicLibraryHelper.getTracksForArtist(command.getLongParam(), command.getStringParam(), context);
+                break;
+            case ODYSSEY_ENQUEUERECENTALBUMS:
+            case ODYSSEY_PLAYRECENTALBUMS:
+                tracks = MusicLibraryHelper.getRecentTracks(context);
+                break;
+            case ODYSSEY_ENQUEUEPLAYLIST:
+            case ODYSSEY_PLAYPLAYLIST:
+                tracks = MusicLibraryHelper.getTracksForPlaylist(command.getLongParam(), context);
+                break;
+            case ODYSSEY_ENQUEUEPLAYLISTFILE:
+            case ODYSSEY_PLAYPLAYLISTFILE:
+                // Parse the playlist file with a parser
+                PlaylistParser parser = PlaylistParserFactory.getParser(new FileModel(command.getStringParam()));
+                if (parser != null) {
+                    tracks = parser.parseList(context);
+                }
+                break;
+            case ODYSSEY_PLAYDIRECTORY:
+                tracks = FileExplorerHelper.getInstance().getTrackModelsForFolder(context, new FileModel(command.getStringParam()));
+                break;
+            case ODYSSEY_ENQUEUEDIRECTORYANDSUBDIRECTORIES:
+            case ODYSSEY_PLAYDIRECTORYANDSUBDIRECTORIES:
+                tracks = FileExplorerHelper.getInstance().getTrackModelsForFolderAndSubFolders(context, new FileModel(command.getStringParam()), command.getSecondStringParam());
+                break;
+        }
+
+        return tracks != null ? tracks : Collections.<TrackModel>emptyList();
+    }
+
+    /**
+     * @return True if the tracks of the command have to be loaded on the worker thread
+     */
+    private static boolean isHeavyCommand(ControlObject command) {
+        switch (command.getAction()) {
+            case ODYSSEY_PLAYALLTRACKS:
+            case ODYSSEY_ENQUEUEALBUM:
+            case ODYSSEY_PLAYALBUM:
+            case ODYSSEY_ENQUEUEARTIST:
+            case ODYSSEY_PLAYARTIST:
+            case ODYSSEY_ENQUEUERECENTALBUMS:
+            case ODYSSEY_PLAYRECENTALBUMS:
+            case ODYSSEY_ENQUEUEPLAYLIST:
+            case ODYSSEY_PLAYPLAYLIST:
+            case ODYSSEY_ENQUEUEPLAYLISTFILE:
+            case ODYSSEY_PLAYPLAYLISTFILE:
+            case ODYSSEY_PLAYDIRECTORY:
+            case ODYSSEY_ENQUEUEDIRECTORYANDSUBDIRECTORIES:
+            case ODYSSEY_PLAYDIRECTORYANDSUBDIRECTORIES:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @return True if the command appends tracks at the end of the playlist
+     */
+    private static boolean isEnqueueCommand(ControlObject command) {
+        switch (command.getAction()) {
+            case ODYSSEY_ENQUEUETRACK:
+                return !command.getBoolParam();
+            case ODYSSEY_ENQUEUETRACKLIST:
+            case ODYSSEY_ENQUEUEALBUM:
+            case ODYSSEY_ENQUEUEARTIST:
+            case ODYSSEY_ENQUEUERECENTALBUMS:
+            case ODYSSEY_ENQUEUEPLAYLIST:
+            case ODYSSEY_ENQUEUEPLAYLISTFILE:
+            case ODYSSEY_ENQUEUEDIRECTORYANDSUBDIRECTORIES:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @return True if the tracks of the command are created from files and need a meta data extraction
+     */
+    private static boolean isFileCommand(ControlObject command) {
+        switch (command.getAction()) {
+            case ODYSSEY_ENQUEUEPLAYLISTFILE:
+            case ODYSSEY_PLAYPLAYLISTFILE:
+            case ODYSSEY_PLAYDIRECTORY:
+            case ODYSSEY_ENQUEUEDIRECTORYANDSUBDIRECTORIES:
+            case ODYSSEY_PLAYDIRECTORYANDSUBDIRECTORIES:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @return True if the command only controls the playback and does not depend on the playlist content
+     */
+    private static boolean isTransportCommand(ControlObject command) {
+        switch (command.getAction()) {
+            case ODYSSEY_TOGGLEPAUSE:
+            case ODYSSEY_NEXT:
+            case ODYSSEY_PREVIOUS:
+            case ODYSSEY_SEEKTO:
+            case ODYSSEY_REPEAT:
+            case ODYSSEY_RANDOM:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @return True if the command removes the complete current playlist
+     */
+    private static boolean replacesPlaylist(ControlObject command) {
+        switch (command.getAction()) {
+            case ODYSSEY_PLAY:
+            case ODYSSEY_CLEARPLAYLIST:
+            case ODYSSEY_RESUMEBOOKMARK:
+            case ODYSSEY_PLAYALLTRACKS:
+            case ODYSSEY_PLAYALBUM:
+            case ODYSSEY_PLAYARTIST:
+            case ODYSSEY_PLAYRECENTALBUMS:
+            case ODYSSEY_PLAYPLAYLIST:
+            case ODYSSEY_PLAYPLAYLISTFILE:
+            case ODYSSEY_PLAYDIRECTORY:
+            case ODYSSEY_PLAYDIRECTORYANDSUBDIRECTORIES:
+                return true;
+            case ODYSSEY_PLAYTRACK:
+            case ODYSSEY_PLAYFILE:
+                return command.getBoolParam();
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Loads the tracks of one or more commands on the worker thread.
+     * A cancelled load finishes in the background but its result is dropped.
+     */
+    private class LoadTask implements Runnable {
+        private final List<ControlObject> mLoadCommands;
+
+        private final List<List<TrackModel>> mResults;
+
+        private final Context mContext;
+
+        private volatile boolean mCancelled;
+
+        LoadTask(List<ControlObject> commands, Context context) {
+            mLoadCommands = commands;
+            mResults = new ArrayList<>(commands.size());
+            mContext = context;
+        }
+
+        @Override
+        public void run() {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+
+            for (ControlObject command : mLoadCommands) {
+                if (mCancelled) {
                     break;
+                }
+
+                try {
+                    mResults.add(loadTracks(mContext, command));
+                } catch (RuntimeException e) {
+                    // Skip the failed command, the tracks of the other commands are still added
+                    Log.e(TAG, "Could not load tracks for: " + command.getAction(), e);
+                    mResults.add(Collections.<TrackModel>emptyList());
+                }
             }
 
-            mLock.release();
+            post(new Runnable() {
+                @Override
+                public void run() {
+                    finishLoad(LoadTask.this);
+                }
+            });
         }
     }
 }
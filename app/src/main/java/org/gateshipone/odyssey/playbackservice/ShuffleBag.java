@@ -0,0 +1,368 @@
+/*
+ * Copyright (C) 2018 Team Gateship-One
+ * (Hendrik Borghorst & Frederik Luetkes)
+ *
+ * The AUTHORS.md file contains a detailed contributors list:
+ * <https://github.com/gateship-one/odyssey/blob/master/AUTHORS.md>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.gateshipone.odyssey.playbackservice;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Random playback order for the playlist of the PlaybackService.
+ * <p>
+ * The order is a permutation of the playlist indices that is generated lazily with an incremental
+ * Fisher-Yates shuffle: only the positions up to the next track are drawn, the rest of the bag stays
+ * untouched until it is needed. Every track is played once before the bag is exhausted and the
+ * already played part of the permutation serves as history for moving backwards.
+ * <p>
+ * The permutation is derived from a seed, so it can be restored from the seed and the cursor
+ * after a restart of the service. If the playlist was edited while random playback was active,
+ * the restored history may differ but the current track is kept at the cursor position.
+ */
+public class ShuffleBag {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * Playlist indices in playback order
+     */
+    private int[] mOrder;
+
+    /**
+     * Inverse of {@link #mOrder}: the position of each playlist index in the playback order
+     */
+    private int[] mPositions;
+
+    /**
+     * Number of playlist indices in the bag
+     */
+    private int mSize;
+
+    /**
+     * Number of positions of {@link #mOrder} that are already drawn
+     */
+    private int mGenerated;
+
+    /**
+     * Position of the currently playing track in {@link #mOrder}, -1 if nothing was played yet
+     */
+    private int mCursor;
+
+    private long mSeed;
+
+    private Random mRandom;
+
+    public ShuffleBag() {
+        mOrder = new int[INITIAL_CAPACITY];
+        mPositions = new int[INITIAL_CAPACITY];
+        reset(0, 0);
+    }
+
+    /**
+     * Starts a new bag for the given number of tracks. The history is dropped.
+     *
+     * @param size Size of the playlist
+     * @param seed Seed for the permutation
+     */
+    public void reset(int size, long seed) {
+        ensureCapacity(size);
+
+        for (int i = 0; i < size; i++) {
+            mOrder[i] = i;
+            mPositions[i] = i;
+        }
+
+        mSize = size;
+        mGenerated = 0;
+        mCursor = -1;
+        mSeed = seed;
+        mRandom = new Random(seed);
+    }
+
+    /**
+     * Restores a bag from a saved seed and cursor. The permutation is redrawn up to the cursor
+     * and the given track is moved to the cursor position if the redrawn order does not match.
+     *
+     * @param size         Size of the playlist
+     * @param seed         Saved seed of the permutation
+     * @param cursor       Saved cursor of the permutation
+     * @param currentIndex Index of the current track in the playlist or -1
+     */
+    public void restore(int size, long seed, int cursor, int currentIndex) {
+        reset(size, seed);
+
+        if (cursor < 0 || cursor >= size || currentIndex < 0 || currentIndex >= size) {
+            return;
+        }
+
+        while (mGenerated <= cursor) {
+            draw();
+        }
+
+        int position = mPositions[currentIndex];
+        if (position >= mGenerated) {
+            swapPositions(position, mGenerated);
+            position = mGenerated++;
+        }
+        swapPositions(position, cursor);
+
+        mCursor = cursor;
+    }
+
+    /**
+     * Marks the given playlist index as the currently playing track.
+     * <p>
+     * If the track is part of the history, the cursor moves back to it. If the track was already drawn after the
+     * cursor (e.g. the target of several skips), the cursor moves forward to it and the skipped tracks become part
+     * of the history. Otherwise the track is placed directly after the cursor.
+     *
+     * @param index Index of the track in the playlist
+     */
+    public void moveTo(int index) {
+        if (index < 0 || index >= mSize) {
+            return;
+        }
+
+        int position = mPositions[index];
+
+        if (position < mGenerated) {
+            mCursor = position;
+            return;
+        }
+
+        swapPositions(position, mGenerated);
+        position = mGenerated++;
+
+        swapPositions(position, ++mCursor);
+    }
+
+    /**
+     * Returns the playlist index of the track after the current one. Draws it if necessary.
+     *
+     * @return The next index or -1 if every track of the bag was played
+     */
+    public int peekNext() {
+        return peekAhead(1);
+    }
+
+    /**
+     * Returns the playlist index of the track at the given distance after the current one. Draws it if necessary.
+     *
+     * @param distance Number of tracks after the current one, 1 for the next track
+     * @return The index or -1 if the bag does not contain that many remaining tracks
+     */
+    public int peekAhead(int distance) {
+        final int position = mCursor + distance;
+
+        if (position >= mSize || position <= mCursor) {
+            return -1;
+        }
+
+        while (mGenerated <= position) {
+            draw();
+        }
+
+        return mOrder[position];
+    }
+
+    /**
+     * @return The playlist index of the track played before the current one or -1 if no history exists
+     */
+    public int peekPrevious() {
+        if (mCursor <= 0) {
+            return -1;
+        }
+
+        return mOrder[mCursor - 1];
+    }
+
+    /**
+     * Returns the playlist index of the track after the given one in the playback order without moving the cursor.
+     * Played tracks and drawn tracks after the cursor are followed in order, any other track would be played
+     * directly after the current one (s. {@link #moveTo(int)}).
+     *
+     * @param index Index of a track in the playlist
+     * @return The next index or -1 if the given track is the last one of the bag
+     */
+    public int getNext(int index) {
+        if (index < 0 || index >= mSize) {
+            return -1;
+        }
+
+        final int position = mPositions[index];
+
+        if (position >= mGenerated) {
+            // Not drawn yet, it would be moved directly after the cursor and followed by the next track
+            final int next = peekAhead(1);
+            return next == index ? peekAhead(2) : next;
+        }
+
+        if (position + 1 >= mSize) {
+            return -1;
+        }
+
+        while (mGenerated <= position + 1) {
+            draw();
+        }
+
+        return mOrder[position + 1];
+    }
+
+    /**
+     * Returns the playlist index of the track before the given one in the playback order without moving the cursor.
+     *
+     * @param index Index of a track in the playlist
+     * @return The previous index or -1 if no track precedes the given one
+     */
+    public int getPrevious(int index) {
+        if (index < 0 || index >= mSize) {
+            return -1;
+        }
+
+        final int position = mPositions[index];
+
+        if (position >= mGenerated) {
+            // Not drawn yet, it would be moved directly after the cursor
+            return mCursor >= 0 ? mOrder[mCursor] : -1;
+        }
+
+        return position > 0 ? mOrder[position - 1] : -1;
+    }
+
+    /**
+     * Adds new playlist indices to the bag. Indices at or after the insert position are moved accordingly.
+     * The new tracks are not drawn yet so they become part of the remaining bag.
+     *
+     * @param index Position in the playlist where the tracks were inserted
+     * @param count Number of inserted tracks
+     */
+    public void insert(int index, int count) {
+        if (count <= 0 || index < 0 || index > mSize) {
+            return;
+        }
+
+        ensureCapacity(mSize + count);
+
+        // Only shift the existing indices if the tracks were not appended
+        if (index < mSize) {
+            for (int i = 0; i < mSize; i++) {
+                if (mOrder[i] >= index) {
+                    mOrder[i] += count;
+                }
+            }
+        }
+
+        for (int i = 0; i < count; i++) {
+            mOrder[mSize + i] = index + i;
+        }
+
+        mSize += count;
+
+        if (index < mSize - count) {
+            rebuildPositions();
+        } else {
+            for (int i = mSize - count; i < mSize; i++) {
+                mPositions[mOrder[i]] = i;
+            }
+        }
+    }
+
+    /**
+     * Removes a range of playlist indices from the bag. The order of the remaining tracks is kept.
+     *
+     * @param fromIndex First removed index of the playlist (inclusive)
+     * @param toIndex   Last removed index of the playlist (exclusive)
+     */
+    public void remove(int fromIndex, int toIndex) {
+        if (fromIndex < 0 || toIndex > mSize || fromIndex >= toIndex) {
+            return;
+        }
+
+        final int count = toIndex - fromIndex;
+
+        int target = 0;
+        int cursor = mCursor;
+        int generated = mGenerated;
+
+        for (int i = 0; i < mSize; i++) {
+            final int value = mOrder[i];
+
+            if (value >= fromIndex && value < toIndex) {
+                if (i <= mCursor) {
+                    cursor--;
+                }
+                if (i < mGenerated) {
+                    generated--;
+                }
+            } else {
+                mOrder[target++] = value >= toIndex ? value - count : value;
+            }
+        }
+
+        mSize -= count;
+        mCursor = cursor;
+        mGenerated = generated;
+
+        rebuildPositions();
+    }
+
+    public long getSeed() {
+        return mSeed;
+    }
+
+    public int getCursor() {
+        return mCursor;
+    }
+
+    /**
+     * Draws the next position of the permutation (one step of the Fisher-Yates shuffle).
+     */
+    private void draw() {
+        swapPositions(mGenerated, mGenerated + mRandom.nextInt(mSize - mGenerated));
+        mGenerated++;
+    }
+
+    private void swapPositions(int first, int second) {
+        final int firstIndex = mOrder[first];
+        final int secondIndex = mOrder[second];
+
+        mOrder[first] = secondIndex;
+        mOrder[second] = firstIndex;
+
+        mPositions[secondIndex] = first;
+        mPositions[firstIndex] = second;
+    }
+
+    private void rebuildPositions() {
+        for (int i = 0; i < mSize; i++) {
+            mPositions[mOrder[i]] = i;
+        }
+    }
+
+    private void ensureCapacity(int minCapacity) {
+        if (minCapacity > mOrder.length) {
+            final int capacity = Math.max(minCapacity, mOrder.length + (mOrder.length >> 1));
+
+            mOrder = Arrays.copyOf(mOrder, capacity);
+            mPositions = Arrays.copyOf(mPositions, capacity);
+        }
+    }
+}
@@ -0,0 +1,506 @@
+/*
+ * Copyright (C) 2018 Team Gateship-One
+ * (Hendrik Borghorst & Frederik Luetkes)
+ *
+ * The AUTHORS.md file contains a detailed contributors list:
+ * <https://github.com/gateship-one/odyssey/blob/master/AUTHORS.md>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.gateshipone.odyssey.playbackservice;
+
+import org.gateshipone.odyssey.models.TrackModel;
+import org.gateshipone.odyssey.playbackservice.statemanager.QueueJournal;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.RandomAccess;
+
+/**
+ * Compact storage for the playlist of the PlaybackService.
+ * <p>
+ * Instead of keeping one {@link TrackModel} (with five separate strings) per entry, all numeric
+ * values are stored in primitive arrays. Artist, album, album key and the directory part of the
+ * url are deduplicated in a string table. The track name and the file name are stored as UTF-8
+ * in one shared byte pool. {@link TrackModel} objects are only created on demand by {@link #get(int)}.
+ * <p>
+ * All methods are synchronized because the list is read by the binder threads while it is
+ * modified by the handler thread of the PlaybackService.
+ */
+public class TrackQueue extends AbstractList<TrackModel> implements RandomAccess {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private static final int INITIAL_TEXT_CAPACITY = 1024;
+
+    /**
+     * Minimum amount of unused bytes in the text pool before a compaction is considered.
+     */
+    private static final int TEXT_COMPACTION_THRESHOLD = 64 * 1024;
+
+    private static final Charset TEXT_CHARSET = StandardCharsets.UTF_8;
+
+    /**
+     * Number of tracks in the queue
+     */
+    private int mSize;
+
+    /**
+     * Ids of the deduplicated strings in {@link #mStrings}
+     */
+    private int[] mArtistIds;
+    private int[] mAlbumIds;
+    private int[] mAlbumKeyIds;
+    private int[] mDirectoryIds;
+
+    private int[] mTrackNumbers;
+    private int[] mDatesAdded;
+    private long[] mDurations;
+    private long[] mTrackIds;
+
+    /**
+     * Offset of the track text in {@link #mText}. The track name is directly followed by the file name.
+     */
+    private int[] mTextOffsets;
+    private int[] mNameLengths;
+    private int[] mFileNameLengths;
+
+    /**
+     * Pool for the UTF-8 encoded track names and file names
+     */
+    private byte[] mText;
+
+    /**
+     * Used bytes of {@link #mText}
+     */
+    private int mTextSize;
+
+    /**
+     * Bytes of {@link #mText} that belong to removed or replaced tracks
+     */
+    private int mTextGarbage;
+
+    private final StringTable mStrings = new StringTable();
+
+    /**
+     * Optional journal that records all changes for the incremental autosave
+     */
+    private QueueJournal mJournal;
+
+    public TrackQueue() {
+        allocate(INITIAL_CAPACITY);
+        mText = new byte[INITIAL_TEXT_CAPACITY];
+    }
+
+    /**
+     * Sets the journal that should record all following changes of the queue.
+     */
+    public synchronized void setJournal(QueueJournal journal) {
+        mJournal = journal;
+    }
+
+    @Override
+    public synchronized int size() {
+        return mSize;
+    }
+
+    /**
+     * Creates a new {@link TrackModel} for the entry at the given position.
+     */
+    @Override
+    public synchronized TrackModel get(int index) {
+        checkIndex(index);
+
+        final String name = readText(mTextOffsets[index], mNameLengths[index]);
+        final String url = getTrackURL(index);
+
+        return new TrackModel(name, mStrings.get(mArtistIds[index]), mStrings.get(mAlbumIds[index]), mStrings.get(mAlbumKeyIds[index]),
+                mDurations[index], mTrackNumbers[index], url, mTrackIds[index], mDatesAdded[index]);
+    }
+
+    /**
+     * Returns the url of the track at the given position without creating a {@link TrackModel}.
+     */
+    public synchronized String getTrackURL(int index) {
+        checkIndex(index);
+
+        return mStrings.get(mDirectoryIds[index]) + readText(mTextOffsets[index] + mNameLengths[index], mFileNameLengths[index]);
+    }
+
+    /**
+     * Returns the album key of the track at the given position without creating a {@link TrackModel}.
+     */
+    public synchronized String getTrackAlbumKey(int index) {
+        checkIndex(index);
+
+        return mStrings.get(mAlbumKeyIds[index]);
+    }
+
+    @Override
+    public synchronized TrackModel set(int index, TrackModel track) {
+        final TrackModel oldTrack = get(index);
+
+        mTextGarbage += mNameLengths[index] + mFileNameLengths[index];
+        writeTrack(index, track);
+        compactTextIfNeeded();
+
+        if (mJournal != null) {
+            mJournal.recordRemove(index, index + 1, mSize - 1);
+            mJournal.recordInsert(index, Collections.singletonList(track), mSize);
+        }
+
+        return oldTrack;
+    }
+
+    @Override
+    public synchronized void add(int index, TrackModel track) {
+        if (index < 0 || index > mSize) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + mSize);
+        }
+
+        ensureCapacity(mSize + 1);
+        moveEntries(index, index + 1, mSize - index);
+        mSize++;
+        modCount++;
+
+        writeTrack(index, track);
+
+        if (mJournal != null) {
+            mJournal.recordInsert(index, Collections.singletonList(track), mSize);
+        }
+    }
+
+    @Override
+    public synchronized boolean addAll(Collection<? extends TrackModel> tracks) {
+        final int oldSize = mSize;
+
+        ensureCapacity(mSize + tracks.size());
+
+        for (TrackModel track : tracks) {
+            writeTrack(mSize++, track);
+        }
+        modCount++;
+
+        if (mJournal != null) {
+            mJournal.recordInsert(oldSize, new ArrayList<>(tracks), mSize);
+        }
+
+        return !tracks.isEmpty();
+    }
+
+    /**
+     * Inserts all tracks at the given position with a single shift of the arrays.
+     */
+    @Override
+    public synchronized boolean addAll(int index, Collection<? extends TrackModel> tracks) {
+        if (index < 0 || index > mSize) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + mSize);
+        }
+
+        final int count = tracks.size();
+
+        ensureCapacity(mSize + count);
+        moveEntries(index, index + count, mSize - index);
+        mSize += count;
+        modCount++;
+
+        int position = index;
+        for (TrackModel track : tracks) {
+            writeTrack(position++, track);
+        }
+
+        if (mJournal != null) {
+            mJournal.recordInsert(index, new ArrayList<>(tracks), mSize);
+        }
+
+        return count != 0;
+    }
+
+    @Override
+    public synchronized TrackModel remove(int index) {
+        final TrackModel oldTrack = get(index);
+
+        removeRange(index, index + 1);
+
+        return oldTrack;
+    }
+
+    /**
+     * Removes all tracks between fromIndex (inclusive) and toIndex (exclusive) with a single shift of the arrays.
+     * Used by {@link List#subList(int, int)} and {@link #clear()}.
+     */
+    @Override
+    protected synchronized void removeRange(int fromIndex, int toIndex) {
+        if (fromIndex < 0 || toIndex > mSize || fromIndex > toIndex) {
+            throw new IndexOutOfBoundsException("From: " + fromIndex + ", To: " + toIndex + ", Size: " + mSize);
+        }
+
+        for (int i = fromIndex; i < toIndex; i++) {
+            mTextGarbage += mNameLengths[i] + mFileNameLengths[i];
+        }
+
+        moveEntries(toIndex, fromIndex, mSize - toIndex);
+        mSize -= toIndex - fromIndex;
+        modCount++;
+
+        if (mJournal != null) {
+            mJournal.recordRemove(fromIndex, toIndex, mSize);
+        }
+
+        if (mSize == 0) {
+            clear();
+        } else {
+            compactTextIfNeeded();
+        }
+    }
+
+    /**
+     * Removes all tracks and releases the memory of the string table and the text pool.
+     */
+    @Override
+    public synchronized void clear() {
+        mSize = 0;
+        modCount++;
+
+        allocate(INITIAL_CAPACITY);
+        mText = new byte[INITIAL_TEXT_CAPACITY];
+        mTextSize = 0;
+        mTextGarbage = 0;
+        mStrings.clear();
+
+        if (mJournal != null) {
+            mJournal.recordClear();
+        }
+    }
+
+    /**
+     * Swaps the tracks at the given positions.
+     */
+    public synchronized void swap(int first, int second) {
+        checkIndex(first);
+        checkIndex(second);
+
+        swapEntries(first, second);
+
+        if (mJournal != null) {
+            mJournal.requireSnapshot();
+        }
+    }
+
+    /**
+     * Shuffles all tracks beginning at the given position. Tracks before this position keep their place.
+     *
+     * @param fromIndex Position of the first track that should be shuffled
+     * @param random    Random generator used for the permutation
+     */
+    public synchronized void shuffle(int fromIndex, Random random) {
+        for (int i = mSize - 1; i > fromIndex; i--) {
+            swapEntries(i, fromIndex + random.nextInt(i - fromIndex + 1));
+        }
+
+        if (mJournal != null) {
+            mJournal.requireSnapshot();
+        }
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= mSize) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + mSize);
+        }
+    }
+
+    /**
+     * Stores the values of the given track at the given position.
+     */
+    private void writeTrack(int index, TrackModel track) {
+        final String url = track.getTrackURL();
+        final int separator = url.lastIndexOf('/') + 1;
+
+        mArtistIds[index] = mStrings.getId(track.getTrackArtistName());
+        mAlbumIds[index] = mStrings.getId(track.getTrackAlbumName());
+        mAlbumKeyIds[index] = mStrings.getId(track.getTrackAlbumKey());
+        mDirectoryIds[index] = mStrings.getId(url.substring(0, separator));
+
+        mTrackNumbers[index] = track.getTrackNumber();
+        mDatesAdded[index] = track.getDateAdded();
+        mDurations[index] = track.getTrackDuration();
+        mTrackIds[index] = track.getTrackId();
+
+        final byte[] name = track.getTrackName().getBytes(TEXT_CHARSET);
+        final byte[] fileName = url.substring(separator).getBytes(TEXT_CHARSET);
+
+        ensureTextCapacity(mTextSize + name.length + fileName.length);
+
+        mTextOffsets[index] = mTextSize;
+        mNameLengths[index] = name.length;
+        mFileNameLengths[index] = fileName.length;
+
+        System.arraycopy(name, 0, mText, mTextSize, name.length);
+        mTextSize += name.length;
+        System.arraycopy(fileName, 0, mText, mTextSize, fileName.length);
+        mTextSize += fileName.length;
+    }
+
+    private String readText(int offset, int length) {
+        return new String(mText, offset, length, TEXT_CHARSET);
+    }
+
+    private void allocate(int capacity) {
+        mArtistIds = new int[capacity];
+        mAlbumIds = new int[capacity];
+        mAlbumKeyIds = new int[capacity];
+        mDirectoryIds = new int[capacity];
+        mTrackNumbers = new int[capacity];
+        mDatesAdded = new int[capacity];
+        mDurations = new long[capacity];
+        mTrackIds = new long[capacity];
+        mTextOffsets = new int[capacity];
+        mNameLengths = new int[capacity];
+        mFileNameLengths = new int[capacity];
+    }
+
+    private void ensureCapacity(int minCapacity) {
+        if (minCapacity <= mTrackIds.length) {
+            return;
+        }
+
+        final int capacity = Math.max(minCapacity, mTrackIds.length + (mTrackIds.length >> 1));
+
+        mArtistIds = Arrays.copyOf(mArtistIds, capacity);
+        mAlbumIds = Arrays.copyOf(mAlbumIds, capacity);
+        mAlbumKeyIds = Arrays.copyOf(mAlbumKeyIds, capacity);
+        mDirectoryIds = Arrays.copyOf(mDirectoryIds, capacity);
+        mTrackNumbers = Arrays.copyOf(mTrackNumbers, capacity);
+        mDatesAdded = Arrays.copyOf(mDatesAdded, capacity);
+        mDurations = Arrays.copyOf(mDurations, capacity);
+        mTrackIds = Arrays.copyOf(mTrackIds, capacity);
+        mTextOffsets = Arrays.copyOf(mTextOffsets, capacity);
+        mNameLengths = Arrays.copyOf(mNameLengths, capacity);
+        mFileNameLengths = Arrays.copyOf(mFileNameLengths, capacity);
+    }
+
+    private void ensureTextCapacity(int minCapacity) {
+        if (minCapacity > mText.length) {
+            mText = Arrays.copyOf(mText, Math.max(minCapacity, mText.length + (mText.length >> 1)));
+        }
+    }
+
+    /**
+     * Moves count entries from the position src to the position dst in all arrays.
+     */
+    private void moveEntries(int src, int dst, int count) {
+        if (count <= 0 || src == dst) {
+            return;
+        }
+
+        System.arraycopy(mArtistIds, src, mArtistIds, dst, count);
+        System.arraycopy(mAlbumIds, src, mAlbumIds, dst, count);
+        System.arraycopy(mAlbumKeyIds, src, mAlbumKeyIds, dst, count);
+        System.arraycopy(mDirectoryIds, src, mDirectoryIds, dst, count);
+        System.arraycopy(mTrackNumbers, src, mTrackNumbers, dst, count);
+        System.arraycopy(mDatesAdded, src, mDatesAdded, dst, count);
+        System.arraycopy(mDurations, src, mDurations, dst, count);
+        System.arraycopy(mTrackIds, src, mTrackIds, dst, count);
+        System.arraycopy(mTextOffsets, src, mTextOffsets, dst, count);
+        System.arraycopy(mNameLengths, src, mNameLengths, dst, count);
+        System.arraycopy(mFileNameLengths, src, mFileNameLengths, dst, count);
+    }
+
+    private void swapEntries(int first, int second) {
+        swap(mArtistIds, first, second);
+        swap(mAlbumIds, first, second);
+        swap(mAlbumKeyIds, first, second);
+        swap(mDirectoryIds, first, second);
+        swap(mTrackNumbers, first, second);
+        swap(mDatesAdded, first, second);
+        swap(mDurations, first, second);
+        swap(mTrackIds, first, second);
+        swap(mTextOffsets, first, second);
+        swap(mNameLengths, first, second);
+        swap(mFileNameLengths, first, second);
+    }
+
+    private static void swap(int[] array, int first, int second) {
+        final int tmp = array[first];
+        array[first] = array[second];
+        array[second] = tmp;
+    }
+
+    private static void swap(long[] array, int first, int second) {
+        final long tmp = array[first];
+        array[first] = array[second];
+        array[second] = tmp;
+    }
+
+    /**
+     * Rewrites the text pool without the text of removed tracks if enough space is wasted.
+     */
+    private void compactTextIfNeeded() {
+        if (mTextGarbage < TEXT_COMPACTION_THRESHOLD || mTextGarbage < mTextSize / 2) {
+            return;
+        }
+
+        final byte[] text = new byte[Math.max(INITIAL_TEXT_CAPACITY, mTextSize - mTextGarbage)];
+        int textSize = 0;
+
+        for (int i = 0; i < mSize; i++) {
+            final int length = mNameLengths[i] + mFileNameLengths[i];
+            System.arraycopy(mText, mTextOffsets[i], text, textSize, length);
+            mTextOffsets[i] = textSize;
+            textSize += length;
+        }
+
+        mText = text;
+        mTextSize = textSize;
+        mTextGarbage = 0;
+    }
+
+    /**
+     * Simple table that stores each distinct string once and identifies it by an int id.
+     */
+    private static class StringTable {
+        private final List<String> mValues = new ArrayList<>();
+
+        private final HashMap<String, Integer> mIds = new HashMap<>();
+
+        int getId(String value) {
+            Integer id = mIds.get(value);
+            if (id == null) {
+                id = mValues.size();
+                mValues.add(value);
+                mIds.put(value, id);
+            }
+            return id;
+        }
+
+        String get(int id) {
+            return mValues.get(id);
+        }
+
+        void clear() {
+            mValues.clear();
+            mIds.clear();
+        }
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright (C) 2018 Team Gateship-One
+ * (Hendrik Borghorst & Frederik Luetkes)
+ *
+ * The AUTHORS.md file contains a detailed contributors list:
+ * <https://github.com/gateship-one/odyssey/blob/master/AUTHORS.md>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.gateshipone.odyssey.playbackservice.managers;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.RemoteCallbackList;
+import android.os.RemoteException;
+import android.os.SystemClock;
+
+import org.gateshipone.odyssey.playbackservice.IOdysseyPlaybackListener;
+import org.gateshipone.odyssey.playbackservice.NowPlayingInformation;
+import org.gateshipone.odyssey.playbackservice.PlaybackService;
+
+/**
+ * Manages the {@link IOdysseyPlaybackListener} registered by clients of the PlaybackService.
+ * <p>
+ * State changes are pushed to all listeners. Position ticks are only generated while the
+ * PlaybackService is playing and only for listeners that requested a tick interval.
+ * All callbacks are dispatched from the main thread of the service process because
+ * {@link RemoteCallbackList} only allows one broadcast at a time.
+ */
+public class PlaybackListenerManager {
+
+    /**
+     * Lower bound for requested tick intervals in milliseconds.
+     */
+    private static final int MIN_TICK_INTERVAL = 100;
+
+    private final PlaybackService mPlaybackService;
+
+    private final RemoteCallbackList<IOdysseyPlaybackListener> mListeners;
+
+    private final Handler mHandler;
+
+    private final Runnable mTickRunnable = this::dispatchPositionTick;
+
+    /**
+     * Smallest tick interval of all registered listeners, 0 if no listener requested ticks.
+     */
+    private int mTickInterval = 0;
+
+    /**
+     * Saves if the PlaybackService is currently playing. Position ticks are suppressed otherwise.
+     */
+    private boolean mPlaying = false;
+
+    public PlaybackListenerManager(PlaybackService playbackService) {
+        mPlaybackService = playbackService;
+        mListeners = new RemoteCallbackList<>();
+        mHandler = new Handler(Looper.getMainLooper());
+    }
+
+    /**
+     * Registers the listener or updates the tick interval if the listener is already registered.
+     *
+     * @param listener     The listener that should be notified.
+     * @param tickInterval The interval of position ticks in milliseconds, 0 to disable the ticks.
+     */
+    public void registerListener(final IOdysseyPlaybackListener listener, final int tickInterval) {
+        if (listener == null) {
+            return;
+        }
+
+        final ListenerCookie cookie = new ListenerCookie(tickInterval > 0 ? Math.max(tickInterval, MIN_TICK_INTERVAL) : 0);
+
+        mHandler.post(() -> {
+            mListeners.unregister(listener);
+            mListeners.register(listener, cookie);
+
+            updateTickInterval();
+        });
+    }
+
+    /**
+     * Unregisters the given listener.
+     *
+     * @param listener The listener that should not be notified anymore.
+     */
+    public void unregisterListener(final IOdysseyPlaybackListener listener) {
+        if (listener == null) {
+            return;
+        }
+
+        mHandler.post(() -> {
+            mListeners.unregister(listener);
+
+            updateTickInterval();
+        });
+    }
+
+    /**
+     * Pushes the new state to all listeners and starts or stops the position ticks accordingly.
+     *
+     * @param info The current NowPlayingInformation
+     */
+    public void updateState(final NowPlayingInformation info) {
+        mHandler.post(() -> {
+            mPlaying = info.getPlayState() == PlaybackService.PLAYSTATE.PLAYING;
+
+            final int count = mListeners.beginBroadcast();
+            for (int i = 0; i < count; i++) {
+                try {
+                    mListeners.getBroadcastItem(i).onStateChanged(info);
+                } catch (RemoteException e) {
+                    // dead listeners are removed by the RemoteCallbackList
+                }
+            }
+            mListeners.finishBroadcast();
+
+            scheduleTicks();
+        });
+    }
+
+    /**
+     * Removes all listeners and stops the position ticks.
+     * The manager can't be used afterwards.
+     */
+    public void shutdown() {
+        mHandler.post(() -> {
+            mHandler.removeCallbacks(mTickRunnable);
+            mListeners.kill();
+        });
+    }
+
+    /**
+     * Recalculates the tick interval as the smallest interval requested by a listener.
+     */
+    private void updateTickInterval() {
+        int tickInterval = 0;
+
+        final int count = mListeners.beginBroadcast();
+        for (int i = 0; i < count; i++) {
+            final ListenerCookie cookie = (ListenerCookie) mListeners.getBroadcastCookie(i);
+
+            if (cookie.mTickInterval > 0 && (tickInterval == 0 || cookie.mTickInterval < tickInterval)) {
+                tickInterval = cookie.mTickInterval;
+            }
+        }
+        mListeners.finishBroadcast();
+
+        mTickInterval = tickInterval;
+
+        scheduleTicks();
+    }
+
+    /**
+     * Restarts the position ticks if the service is playing and at least one listener requested ticks.
+     */
+    private void scheduleTicks() {
+        mHandler.removeCallbacks(mTickRunnable);
+
+        if (mPlaying && mTickInterval > 0) {
+            mHandler.post(mTickRunnable);
+        }
+    }
+
+    /**
+     * Sends the current position to every listener whose interval has elapsed and schedules the next tick.
+     */
+    private void dispatchPositionTick() {
+        if (!mPlaying || mTickInterval <= 0) {
+            return;
+        }
+
+        final int position = mPlaybackService.getTrackPosition();
+        final long now = SystemClock.elapsedRealtime();
+
+        // listeners with a larger interval are served by the nearest tick of the base interval
+        final long tolerance = mTickInterval / 2;
+
+        final int count = mListeners.beginBroadcast();
+        for (int i = 0; i < count; i++) {
+            final ListenerCookie cookie = (ListenerCookie) mListeners.getBroadcastCookie(i);
+
+            if (cookie.mTickInterval > 0 && now - cookie.mLastTick + tolerance >= cookie.mTickInterval) {
+                cookie.mLastTick = now;
+                try {
+                    mListeners.getBroadcastItem(i).onPositionChanged(position);
+                } catch (RemoteException e) {
+                    // dead listeners are removed by the RemoteCallbackList
+                }
+            }
+        }
+        mListeners.finishBroadcast();
+
+        mHandler.postDelayed(mTickRunnable, mTickInterval);
+    }
+
+    /**
+     * Per listener information stored as the cookie of the {@link RemoteCallbackList}.
+     */
+    private static class ListenerCookie {
+        private final int mTickInterval;
+
+        private long mLastTick;
+
+        ListenerCookie(int tickInterval) {
+            mTickInterval = tickInterval;
+            mLastTick = 0;
+        }
+    }
+}
@@ -33,6 +33,7 @@ import android.support.v4.media.session.PlaybackStateCompat;
 
 import org.gateshipone.odyssey.R;
 import org.gateshipone.odyssey.models.TrackModel;
+import org.gateshipone.odyssey.playbackservice.IOdysseyPlaybackListener;
 import org.gateshipone.odyssey.playbackservice.NowPlayingInformation;
 import org.gateshipone.odyssey.playbackservice.PlaybackService;
 import org.gateshipone.odyssey.playbackservice.RemoteControlReceiver;
@@ -72,14 +73,17 @@ public class PlaybackServiceStatusHelper {
     // Notification manager
     private OdysseyNotificationManager mNotificationManager;
 
+    // Manager for listeners registered via the service interface
+    private PlaybackListenerManager mPlaybackListenerManager;
+
     public PlaybackServiceStatusHelper(PlaybackService playbackService) {
         mPlaybackService = playbackService;
 
         // Get MediaSession objects
         mMediaSession = new MediaSessionCompat(mPlaybackService, "OdysseyPBS");
 
-        // Register the callback for the MediaSession
-        mMediaSession.setCallback(new OdysseyMediaSessionCallback());
+        // Register the callback for the MediaSession, the commands are executed on the thread of the service handler
+        mMediaSession.setCallback(new OdysseyMediaSessionCallback(), mPlaybackService.getHandler());
 
         mCoverLoader = new CoverBitmapLoader(mPlaybackService, new BitmapCoverReceiver());
 
@@ -91,6 +95,9 @@ public class PlaybackServiceStatusHelper {
         // Initialize the notification manager
         mNotificationManager = new OdysseyNotificationManager(mPlaybackService);
 
+        // Initialize the manager for playback listeners
+        mPlaybackListenerManager = new PlaybackListenerManager(mPlaybackService);
+
         SharedPreferences sharedPref = PreferenceManager.getDefaultSharedPreferences(playbackService);
 
         mHideArtwork = sharedPref.getBoolean(playbackService.getString(R.string.pref_hide_artwork_key), playbackService.getResources().getBoolean(R.bool.pref_hide_artwork_default));
@@ -180,6 +187,34 @@ public class PlaybackServiceStatusHelper {
                 break;
         }
 
+        // Push the new state to all registered listeners
+        mPlaybackListenerManager.updateState(info);
+    }
+
+    /**
+     * Registers a listener for state changes and position ticks.
+     *
+     * @param listener     The listener that should be notified.
+     * @param tickInterval The interval of position ticks in milliseconds, 0 to disable the ticks.
+     */
+    public void registerPlaybackListener(IOdysseyPlaybackListener listener, int tickInterval) {
+        mPlaybackListenerManager.registerListener(listener, tickInterval);
+    }
+
+    /**
+     * Unregisters a previously registered listener.
+     *
+     * @param listener The listener that should not be notified anymore.
+     */
+    public void unregisterPlaybackListener(IOdysseyPlaybackListener listener) {
+        mPlaybackListenerManager.unregisterListener(listener);
+    }
+
+    /**
+     * Releases all registered playback listeners. Should be called when the service is destroyed.
+     */
+    public void releasePlaybackListeners() {
+        mPlaybackListenerManager.shutdown();
     }
 
     /**
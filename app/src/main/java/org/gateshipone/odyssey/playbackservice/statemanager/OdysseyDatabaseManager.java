@@ -25,8 +25,10 @@ package org.gateshipone.odyssey.playbackservice.statemanager;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 import android.util.Log;
 
 import org.gateshipone.odyssey.models.BookmarkModel;
@@ -35,7 +37,9 @@ import org.gateshipone.odyssey.playbackservice.OdysseyServiceState;
 import org.gateshipone.odyssey.playbackservice.PlaybackService;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class OdysseyDatabaseManager extends SQLiteOpenHelper {
     public static final String TAG = "OdysseyStateManager";
@@ -48,7 +52,7 @@ public class OdysseyDatabaseManager extends SQLiteOpenHelper {
     /**
      * The version of the database
      */
-    private static final int DATABASE_VERSION = 21;
+    private static final int DATABASE_VERSION = 23;
 
     /**
      * Array of returned columns from the StateTracks table
@@ -59,7 +63,25 @@ public class OdysseyDatabaseManager extends SQLiteOpenHelper {
     /**
      * Array of returned columns from the State table
      */
-    private String[] projectionState = {StateTable.COLUMN_BOOKMARK_TIMESTAMP, StateTable.COLUMN_TRACKNUMBER, StateTable.COLUMN_TRACKPOSITION, StateTable.COLUMN_RANDOM_STATE, StateTable.COLUMN_REPEAT_STATE};
+    private String[] projectionState = {StateTable.COLUMN_BOOKMARK_TIMESTAMP, StateTable.COLUMN_TRACKNUMBER, StateTable.COLUMN_TRACKPOSITION, StateTable.COLUMN_RANDOM_STATE, StateTable.COLUMN_REPEAT_STATE,
+            StateTable.COLUMN_RANDOM_SEED, StateTable.COLUMN_RANDOM_CURSOR};
+
+    /**
+     * Array of returned columns from the StateJournal table
+     */
+    private String[] projectionJournal = {StateJournalTable.COLUMN_OPERATION, StateJournalTable.COLUMN_POSITION, StateJournalTable.COLUMN_COUNT,
+            StateTracksTable.COLUMN_TRACKNUMBER, StateTracksTable.COLUMN_TRACKTITLE, StateTracksTable.COLUMN_TRACKALBUM, StateTracksTable.COLUMN_TRACKALBUMKEY,
+            StateTracksTable.COLUMN_TRACKDURATION, StateTracksTable.COLUMN_TRACKARTIST, StateTracksTable.COLUMN_TRACKURL, StateTracksTable.COLUMN_TRACKID};
+
+    /**
+     * Minimum number of journal entries before the autosaved playlist is written as a new snapshot
+     */
+    private static final int JOURNAL_COMPACTION_SIZE = 256;
+
+    /**
+     * Maximum number of ids in a single IN clause, SQLite limits the number of arguments of a query
+     */
+    private static final int ID_QUERY_CHUNK_SIZE = 500;
 
     public OdysseyDatabaseManager(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
@@ -67,21 +89,32 @@ public class OdysseyDatabaseManager extends SQLiteOpenHelper {
 
     /**
      * Called when the database is created for the first time.
-     * This method creates the StateTracks and the State table
+     * This method creates the StateTracks, the State and the StateJournal table
      */
     @Override
     public void onCreate(SQLiteDatabase db) {
         StateTracksTable.onCreate(db);
         StateTable.onCreate(db);
+        StateJournalTable.onCreate(db);
     }
 
     /**
      * Called when the database needs to be upgraded.
-     * This method is currently not implemented.
+     * Applies the schema changes of each version step by step.
      */
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        // FIXME if database schema change provide update path here
+        if (oldVersion < 22) {
+            // version 22 saves the random playback order
+            StateTable.addRandomOrderColumns(db);
+        }
+
+        if (oldVersion < 23) {
+            // version 23 adds the indices and the journal of the autosaved playlist
+            StateTracksTable.createIndex(db);
+            StateTable.createIndex(db);
+            StateJournalTable.onCreate(db);
+        }
     }
 
     /**
@@ -97,57 +130,172 @@ public class OdysseyDatabaseManager extends SQLiteOpenHelper {
         Log.v(TAG, "save state");
 
         if (autosave) {
-            // delete previous auto saved states if this save is an auto generated save
-            clearAutoSaveState();
-        } else {
-            // delete the state with the same name from the database if exists
-            clearDuplicateState(title);
+            // an autosave without a journal always writes a new snapshot
+            saveAutoState(playList, null, state);
+            return;
         }
 
+        // delete the state with the same name from the database if exists
+        clearDuplicateState(title);
+
         long timeStamp = System.currentTimeMillis();
 
-        savePlaylist(playList, timeStamp);
+        SQLiteDatabase odysseyStateDB = getWritableDatabase();
+
+        odysseyStateDB.beginTransaction();
+
+        savePlaylist(odysseyStateDB, playList, timeStamp);
+
+        saveCurrentPlayState(odysseyStateDB, state, timeStamp, false, title, playList.size());
 
-        saveCurrentPlayState(state, timeStamp, autosave, title, playList.size());
+        odysseyStateDB.setTransactionSuccessful();
+        odysseyStateDB.endTransaction();
+
+        odysseyStateDB.close();
     }
 
     /**
-     * Save the playlist in the database.
+     * Save the auto generated state in the database.
+     * <p>
+     * The changes of the playlist recorded in the journal are appended to the StateJournal table and
+     * the existing state is updated. A new snapshot of the complete playlist is only written if no
+     * autosave exists yet, the journal requests it or the stored journal grew larger than the playlist.
      *
-     * @param playList  The list of tracks
-     * @param timeStamp The timestamp as an additional identifier
+     * @param playList The list of tracks for the current state
+     * @param journal  The changes since the last autosave, null to force a snapshot
+     * @param state    The current state
      */
-    private void savePlaylist(List<TrackModel> playList, long timeStamp) {
+    public void saveAutoState(List<TrackModel> playList, QueueJournal journal, OdysseyServiceState state) {
+        Log.v(TAG, "save auto state");
+
+        boolean snapshot = true;
+        List<QueueJournal.Entry> entries = new ArrayList<>();
+
+        if (journal != null) {
+            // take the pending changes at once, new changes are recorded for the next autosave
+            synchronized (journal) {
+                snapshot = journal.isSnapshotRequired();
+                entries = journal.getEntries();
+                journal.reset();
+            }
+        }
 
-        SQLiteDatabase odysseyStateDB = getWritableDatabase();
+        boolean saved = false;
 
-        ContentValues values = new ContentValues();
+        SQLiteDatabase odysseyStateDB = getWritableDatabase();
 
         odysseyStateDB.beginTransaction();
 
+        try {
+            long timeStamp = getAutoSaveTimestamp(odysseyStateDB);
+
+            if (!snapshot) {
+                long journalSize = DatabaseUtils.queryNumEntries(odysseyStateDB, StateJournalTable.TABLE_NAME) + entries.size();
+
+                snapshot = timeStamp == -1 || journalSize > Math.max(JOURNAL_COMPACTION_SIZE, playList.size());
+            }
+
+            if (snapshot) {
+                // replace the previous autosave and its journal with the current playlist
+                clearAutoSaveState(odysseyStateDB);
+
+                timeStamp = System.currentTimeMillis();
+
+                savePlaylist(odysseyStateDB, playList, timeStamp);
+
+                saveCurrentPlayState(odysseyStateDB, state, timeStamp, true, "auto", playList.size());
+            } else {
+                saveJournal(odysseyStateDB, entries);
+
+                updateCurrentPlayState(odysseyStateDB, state, timeStamp, playList.size());
+            }
+
+            odysseyStateDB.setTransactionSuccessful();
+            saved = true;
+        } finally {
+            odysseyStateDB.endTransaction();
+
+            odysseyStateDB.close();
+
+            if (!saved && journal != null) {
+                // the stored journal no longer matches, rewrite everything with the next autosave
+                journal.requireSnapshot();
+            }
+        }
+    }
+
+    /**
+     * Save the playlist in the database.
+     *
+     * @param odysseyStateDB The database with an active transaction
+     * @param playList       The list of tracks
+     * @param timeStamp      The timestamp as an additional identifier
+     */
+    private void savePlaylist(SQLiteDatabase odysseyStateDB, List<TrackModel> playList, long timeStamp) {
+        SQLiteStatement statement = odysseyStateDB.compileStatement("insert into " + StateTracksTable.TABLE_NAME + "(" + StateTracksTable.COLUMN_TRACKTITLE + ","
+                + StateTracksTable.COLUMN_TRACKDURATION + "," + StateTracksTable.COLUMN_TRACKNUMBER + "," + StateTracksTable.COLUMN_TRACKARTIST + ","
+                + StateTracksTable.COLUMN_TRACKALBUM + "," + StateTracksTable.COLUMN_TRACKURL + "," + StateTracksTable.COLUMN_TRACKALBUMKEY + ","
+                + StateTracksTable.COLUMN_TRACKID + "," + StateTracksTable.COLUMN_BOOKMARK_TIMESTAMP + ") values (?,?,?,?,?,?,?,?,?)");
+
         for (TrackModel item : playList) {
+            bindTrack(statement, item);
+            statement.bindLong(9, timeStamp);
 
-            values.clear();
+            statement.executeInsert();
+        }
 
-            // set TrackModel parameters
-            values.put(StateTracksTable.COLUMN_TRACKTITLE, item.getTrackName());
-            values.put(StateTracksTable.COLUMN_TRACKDURATION, item.getTrackDuration());
-            values.put(StateTracksTable.COLUMN_TRACKNUMBER, item.getTrackNumber());
-            values.put(StateTracksTable.COLUMN_TRACKARTIST, item.getTrackArtistName());
-            values.put(StateTracksTable.COLUMN_TRACKALBUM, item.getTrackAlbumName());
-            values.put(StateTracksTable.COLUMN_TRACKURL, item.getTrackURL());
-            values.put(StateTracksTable.COLUMN_TRACKALBUMKEY, item.getTrackAlbumKey());
-            values.put(StateTracksTable.COLUMN_TRACKID, item.getTrackId());
-            values.put(StateTracksTable.COLUMN_BOOKMARK_TIMESTAMP, timeStamp);
+        statement.close();
+    }
 
-            odysseyStateDB.insert(StateTracksTable.TABLE_NAME, null, values);
+    /**
+     * Append the given journal entries to the StateJournal table.
+     *
+     * @param odysseyStateDB The database with an active transaction
+     * @param entries        The changes of the playlist in chronological order
+     */
+    private void saveJournal(SQLiteDatabase odysseyStateDB, List<QueueJournal.Entry> entries) {
+        SQLiteStatement insertStatement = odysseyStateDB.compileStatement("insert into " + StateJournalTable.TABLE_NAME + "(" + StateTracksTable.COLUMN_TRACKTITLE + ","
+                + StateTracksTable.COLUMN_TRACKDURATION + "," + StateTracksTable.COLUMN_TRACKNUMBER + "," + StateTracksTable.COLUMN_TRACKARTIST + ","
+                + StateTracksTable.COLUMN_TRACKALBUM + "," + StateTracksTable.COLUMN_TRACKURL + "," + StateTracksTable.COLUMN_TRACKALBUMKEY + ","
+                + StateTracksTable.COLUMN_TRACKID + "," + StateJournalTable.COLUMN_OPERATION + "," + StateJournalTable.COLUMN_POSITION + ","
+                + StateJournalTable.COLUMN_COUNT + ") values (?,?,?,?,?,?,?,?,?,?,?)");
+
+        SQLiteStatement operationStatement = odysseyStateDB.compileStatement("insert into " + StateJournalTable.TABLE_NAME + "(" + StateJournalTable.COLUMN_OPERATION + ","
+                + StateJournalTable.COLUMN_POSITION + "," + StateJournalTable.COLUMN_COUNT + ") values (?,?,?)");
+
+        for (QueueJournal.Entry entry : entries) {
+            if (entry.mOperation == QueueJournal.OPERATION_INSERT) {
+                bindTrack(insertStatement, entry.mTrack);
+                insertStatement.bindLong(9, entry.mOperation);
+                insertStatement.bindLong(10, entry.mPosition);
+                insertStatement.bindLong(11, entry.mCount);
+
+                insertStatement.executeInsert();
+            } else {
+                operationStatement.bindLong(1, entry.mOperation);
+                operationStatement.bindLong(2, entry.mPosition);
+                operationStatement.bindLong(3, entry.mCount);
+
+                operationStatement.executeInsert();
+            }
         }
 
-        odysseyStateDB.setTransactionSuccessful();
-        odysseyStateDB.endTransaction();
+        insertStatement.close();
+        operationStatement.close();
+    }
 
-        // close the connection
-        odysseyStateDB.close();
+    /**
+     * Binds the track parameters to the first eight arguments of the given insert statement.
+     */
+    private static void bindTrack(SQLiteStatement statement, TrackModel item) {
+        statement.bindString(1, item.getTrackName());
+        statement.bindLong(2, item.getTrackDuration());
+        statement.bindLong(3, item.getTrackNumber());
+        statement.bindString(4, item.getTrackArtistName());
+        statement.bindString(5, item.getTrackAlbumName());
+        statement.bindString(6, item.getTrackURL());
+        statement.bindString(7, item.getTrackAlbumKey());
+        statement.bindLong(8, item.getTrackId());
     }
 
     /**
@@ -157,30 +305,29 @@ public class OdysseyDatabaseManager extends SQLiteOpenHelper {
 
         SQLiteDatabase odysseyStateDB = getReadableDatabase();
 
-        List<TrackModel> playList = new ArrayList<>();
+        List<TrackModel> playList = readPlaylist(odysseyStateDB, timeStamp);
 
-        Cursor cursor = odysseyStateDB.query(StateTracksTable.TABLE_NAME, projectionTrackModels, StateTracksTable.COLUMN_BOOKMARK_TIMESTAMP + "=?", new String[]{Long.toString(timeStamp)},
-                "", "", StateTracksTable.COLUMN_ID);
+        odysseyStateDB.close();
 
-        if (cursor.moveToFirst()) {
-            do {
-                String trackName = cursor.getString(cursor.getColumnIndex(StateTracksTable.COLUMN_TRACKTITLE));
-                long duration = cursor.getLong(cursor.getColumnIndex(StateTracksTable.COLUMN_TRACKDURATION));
-                int number = cursor.getInt(cursor.getColumnIndex(StateTracksTable.COLUMN_TRACKNUMBER));
-                String artistName = cursor.getString(cursor.getColumnIndex(StateTracksTable.COLUMN_TRACKARTIST));
-                String albumName = cursor.getString(cursor.getColumnIndex(StateTracksTable.COLUMN_TRACKALBUM));
-                String url = cursor.getString(cursor.getColumnIndex(StateTracksTable.COLUMN_TRACKURL));
-                String albumKey = cursor.getString(cursor.getColumnIndex(StateTracksTable.COLUMN_TRACKALBUMKEY));
-                long id = cursor.getLong(cursor.getColumnIndex(StateTracksTable.COLUMN_TRACKID));
+        return playList;
+    }
 
-                TrackModel item = new TrackModel(trackName, artistName, albumName, albumKey, duration, number, url, id);
+    /**
+     * Returns the playlist of the autosaved state or the most recent state if no autosave exists
+     */
+    public List<TrackModel> readPlaylist() {
 
-                playList.add(item);
+        SQLiteDatabase odysseyStateDB = getReadableDatabase();
 
-            } while (cursor.moveToNext());
-        }
+        List<TrackModel> playList;
 
-        cursor.close();
+        long timeStamp = getRecentTimestamp(odysseyStateDB);
+
+        if (timeStamp != -1) {
+            playList = readPlaylist(odysseyStateDB, timeStamp);
+        } else {
+            playList = new ArrayList<>();
+        }
 
         odysseyStateDB.close();
 
@@ -188,94 +335,305 @@ public class OdysseyDatabaseManager extends SQLiteOpenHelper {
     }
 
     /**
-     * Returns the playlist for the most recent timestamp
+     * Returns the layout of the playlist of the autosaved state or the most recent state if no autosave exists.
+     * <p>
+     * Only the row ids are read, so this is much cheaper than reading the playlist itself. Each entry references
+     * the track at its position in the playlist: positive values are ids of the StateTracks table, negative values
+     * are negated ids of the StateJournal table. Use {@link #readPlaylistTracks(long[], int, int)} to read the tracks.
      */
-    public List<TrackModel> readPlaylist() {
+    public long[] readPlaylistLayout() {
 
         SQLiteDatabase odysseyStateDB = getReadableDatabase();
 
-        List<TrackModel> playList = new ArrayList<>();
-
-        // query the most recent timestamp
-        Cursor stateCursor = odysseyStateDB.query(StateTable.TABLE_NAME, new String[]{StateTable.COLUMN_BOOKMARK_TIMESTAMP}, "", null, "", "", StateTable.COLUMN_BOOKMARK_TIMESTAMP + " DESC", "1");
+        List<Long> layout = new ArrayList<>();
 
-        if (stateCursor.moveToFirst()) {
-            long timeStamp = stateCursor.getLong(stateCursor.getColumnIndex(StateTable.COLUMN_BOOKMARK_TIMESTAMP));
+        long timeStamp = getRecentTimestamp(odysseyStateDB);
 
-            // get the playlist tracks for the queried timestamp
-            Cursor cursor = odysseyStateDB.query(StateTracksTable.TABLE_NAME, projectionTrackModels, StateTracksTable.COLUMN_BOOKMARK_TIMESTAMP + "=?", new String[]{Long.toString(timeStamp)},
-                    "", "", StateTracksTable.COLUMN_ID);
+        if (timeStamp != -1) {
+            Cursor cursor = odysseyStateDB.query(StateTracksTable.TABLE_NAME, new String[]{StateTracksTable.COLUMN_ID}, StateTracksTable.COLUMN_BOOKMARK_TIMESTAMP + "=?",
+                    new String[]{Long.toString(timeStamp)}, "", "", StateTracksTable.COLUMN_ID);
 
             if (cursor.moveToFirst()) {
                 do {
-                    String trackName = cursor.getString(cursor.getColumnIndex(StateTracksTable.COLUMN_TRACKTITLE));
-                    long duration = cursor.getLong(cursor.getColumnIndex(StateTracksTable.COLUMN_TRACKDURATION));
-                    int number = cursor.getInt(cursor.getColumnIndex(StateTracksTable.COLUMN_TRACKNUMBER));
-                    String artistName = cursor.getString(cursor.getColumnIndex(StateTracksTable.COLUMN_TRACKARTIST));
-                    String albumName = cursor.getString(cursor.getColumnIndex(StateTracksTable.COLUMN_TRACKALBUM));
-                    String url = cursor.getString(cursor.getColumnIndex(StateTracksTable.COLUMN_TRACKURL));
-                    String albumKey = cursor.getString(cursor.getColumnIndex(StateTracksTable.COLUMN_TRACKALBUMKEY));
-                    long id = cursor.getLong(cursor.getColumnIndex(StateTracksTable.COLUMN_TRACKID));
+                    layout.add(cursor.getLong(0));
+                } while (cursor.moveToNext());
+            }
+
+            cursor.close();
+
+            if (timeStamp == getAutoSaveTimestamp(odysseyStateDB)) {
+                applyJournalLayout(odysseyStateDB, layout);
+            }
+        }
+
+        odysseyStateDB.close();
+
+        long[] result = new long[layout.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = layout.get(i);
+        }
+
+        return result;
+    }
+
+    /**
+     * Reads a part of the playlist described by a layout of {@link #readPlaylistLayout()}.
+     *
+     * @param layout The layout of the playlist
+     * @param start  Position of the first track to read (inclusive)
+     * @param end    Position of the last track to read (exclusive)
+     * @return The tracks in the order of the playlist
+     */
+    public List<TrackModel> readPlaylistTracks(long[] layout, int start, int end) {
+
+        SQLiteDatabase odysseyStateDB = getReadableDatabase();
+
+        List<Long> trackIds = new ArrayList<>();
+        List<Long> journalIds = new ArrayList<>();
+
+        for (int i = start; i < end; i++) {
+            if (layout[i] > 0) {
+                trackIds.add(layout[i]);
+            } else {
+                journalIds.add(-layout[i]);
+            }
+        }
+
+        Map<Long, TrackModel> tracks = new HashMap<>();
+        readTracksById(odysseyStateDB, StateTracksTable.TABLE_NAME, StateTracksTable.COLUMN_ID, trackIds, 1, tracks);
+        readTracksById(odysseyStateDB, StateJournalTable.TABLE_NAME, StateJournalTable.COLUMN_ID, journalIds, -1, tracks);
 
-                    TrackModel item = new TrackModel(trackName, artistName, albumName, albumKey, duration, number, url, id);
+        odysseyStateDB.close();
+
+        List<TrackModel> playList = new ArrayList<>(end - start);
+
+        for (int i = start; i < end; i++) {
+            TrackModel track = tracks.get(layout[i]);
+
+            // a missing row can only happen if the database changed after the layout was read
+            playList.add(track != null ? track : new TrackModel());
+        }
+
+        return playList;
+    }
 
-                    playList.add(item);
+    /**
+     * Reads the tracks with the given ids in chunks and stores them with their signed layout id in the given map.
+     */
+    private void readTracksById(SQLiteDatabase odysseyStateDB, String table, String idColumn, List<Long> ids, int sign, Map<Long, TrackModel> tracks) {
+        String[] projection = new String[projectionTrackModels.length + 1];
+        System.arraycopy(projectionTrackModels, 0, projection, 0, projectionTrackModels.length);
+        projection[projectionTrackModels.length] = idColumn;
+
+        for (int chunkStart = 0; chunkStart < ids.size(); chunkStart += ID_QUERY_CHUNK_SIZE) {
+            int chunkEnd = Math.min(chunkStart + ID_QUERY_CHUNK_SIZE, ids.size());
+
+            StringBuilder where = new StringBuilder(idColumn).append(" IN (");
+            String[] whereVal = new String[chunkEnd - chunkStart];
 
+            for (int i = chunkStart; i < chunkEnd; i++) {
+                where.append(i == chunkStart ? "?" : ",?");
+                whereVal[i - chunkStart] = Long.toString(ids.get(i));
+            }
+            where.append(')');
+
+            Cursor cursor = odysseyStateDB.query(table, projection, where.toString(), whereVal, "", "", "");
+
+            if (cursor.moveToFirst()) {
+                final int idIndex = cursor.getColumnIndex(idColumn);
+
+                do {
+                    tracks.put(sign * cursor.getLong(idIndex), readTrack(cursor));
                 } while (cursor.moveToNext());
             }
 
             cursor.close();
         }
+    }
 
-        stateCursor.close();
+    /**
+     * Replays the StateJournal table on the layout of the autosaved playlist.
+     */
+    private void applyJournalLayout(SQLiteDatabase odysseyStateDB, List<Long> layout) {
+        Cursor cursor = odysseyStateDB.query(StateJournalTable.TABLE_NAME, new String[]{StateJournalTable.COLUMN_ID, StateJournalTable.COLUMN_OPERATION,
+                StateJournalTable.COLUMN_POSITION, StateJournalTable.COLUMN_COUNT}, "", null, "", "", StateJournalTable.COLUMN_ID);
 
-        odysseyStateDB.close();
+        if (cursor.moveToFirst()) {
+            do {
+                // keep the positions within the bounds, the journal should always match its snapshot
+                final int position = Math.max(0, Math.min(cursor.getInt(2), layout.size()));
+
+                switch (cursor.getInt(1)) {
+                    case QueueJournal.OPERATION_INSERT:
+                        layout.add(position, -cursor.getLong(0));
+                        break;
+                    case QueueJournal.OPERATION_REMOVE:
+                        layout.subList(position, Math.min(position + cursor.getInt(3), layout.size())).clear();
+                        break;
+                    case QueueJournal.OPERATION_CLEAR:
+                        layout.clear();
+                        break;
+                }
+            } while (cursor.moveToNext());
+        }
+
+        cursor.close();
+    }
+
+    /**
+     * Reads the playlist for the given timestamp. The journal is applied if the timestamp belongs to the autosave.
+     */
+    private List<TrackModel> readPlaylist(SQLiteDatabase odysseyStateDB, long timeStamp) {
+
+        List<TrackModel> playList = new ArrayList<>();
+
+        Cursor cursor = odysseyStateDB.query(StateTracksTable.TABLE_NAME, projectionTrackModels, StateTracksTable.COLUMN_BOOKMARK_TIMESTAMP + "=?", new String[]{Long.toString(timeStamp)},
+                "", "", StateTracksTable.COLUMN_ID);
+
+        if (cursor.moveToFirst()) {
+            do {
+                playList.add(readTrack(cursor));
+            } while (cursor.moveToNext());
+        }
+
+        cursor.close();
+
+        if (timeStamp == getAutoSaveTimestamp(odysseyStateDB)) {
+            applyJournal(odysseyStateDB, playList);
+        }
 
         return playList;
     }
 
+    /**
+     * Replays the StateJournal table on the snapshot of the autosaved playlist.
+     */
+    private void applyJournal(SQLiteDatabase odysseyStateDB, List<TrackModel> playList) {
+        Cursor cursor = odysseyStateDB.query(StateJournalTable.TABLE_NAME, projectionJournal, "", null, "", "", StateJournalTable.COLUMN_ID);
+
+        if (cursor.moveToFirst()) {
+            final int operationIndex = cursor.getColumnIndex(StateJournalTable.COLUMN_OPERATION);
+            final int positionIndex = cursor.getColumnIndex(StateJournalTable.COLUMN_POSITION);
+            final int countIndex = cursor.getColumnIndex(StateJournalTable.COLUMN_COUNT);
+
+            do {
+                // keep the positions within the bounds, the journal should always match its snapshot
+                final int position = Math.max(0, Math.min(cursor.getInt(positionIndex), playList.size()));
+
+                switch (cursor.getInt(operationIndex)) {
+                    case QueueJournal.OPERATION_INSERT:
+                        playList.add(position, readTrack(cursor));
+                        break;
+                    case QueueJournal.OPERATION_REMOVE:
+                        playList.subList(position, Math.min(position + cursor.getInt(countIndex), playList.size())).clear();
+                        break;
+                    case QueueJournal.OPERATION_CLEAR:
+                        playList.clear();
+                        break;
+                }
+            } while (cursor.moveToNext());
+        }
+
+        cursor.close();
+    }
+
+    /**
+     * Creates a track from the current row of a cursor over the StateTracks or the StateJournal table.
+     */
+    private static TrackModel readTrack(Cursor cursor) {
+        String trackName = cursor.getString(cursor.getColumnIndex(StateTracksTable.COLUMN_TRACKTITLE));
+        long duration = cursor.getLong(cursor.getColumnIndex(StateTracksTable.COLUMN_TRACKDURATION));
+        int number = cursor.getInt(cursor.getColumnIndex(StateTracksTable.COLUMN_TRACKNUMBER));
+        String artistName = cursor.getString(cursor.getColumnIndex(StateTracksTable.COLUMN_TRACKARTIST));
+        String albumName = cursor.getString(cursor.getColumnIndex(StateTracksTable.COLUMN_TRACKALBUM));
+        String url = cursor.getString(cursor.getColumnIndex(StateTracksTable.COLUMN_TRACKURL));
+        String albumKey = cursor.getString(cursor.getColumnIndex(StateTracksTable.COLUMN_TRACKALBUMKEY));
+        long id = cursor.getLong(cursor.getColumnIndex(StateTracksTable.COLUMN_TRACKID));
+
+        return new TrackModel(trackName, artistName, albumName, albumKey, duration, number, url, id);
+    }
+
     /**
      * Save the current state in the database.
      *
+     * @param odysseyStateDB The database with an active transaction
      * @param state          The state object
      * @param timeStamp      The given timestamp
      * @param autosave       True if it's an auto generated state
      * @param title          The title of the state
      * @param numberOfTracks The number of tracks related to this state
      */
-    private void saveCurrentPlayState(OdysseyServiceState state, long timeStamp, boolean autosave, String title, int numberOfTracks) {
+    private void saveCurrentPlayState(SQLiteDatabase odysseyStateDB, OdysseyServiceState state, long timeStamp, boolean autosave, String title, int numberOfTracks) {
 
-        SQLiteDatabase odysseyStateDB = getWritableDatabase();
+        ContentValues values = getStateValues(state, numberOfTracks);
 
-        ContentValues values = new ContentValues();
+        values.put(StateTable.COLUMN_BOOKMARK_TIMESTAMP, timeStamp);
+        values.put(StateTable.COLUMN_AUTOSAVE, autosave);
+        values.put(StateTable.COLUMN_TITLE, title);
 
-        odysseyStateDB.beginTransaction();
+        odysseyStateDB.insert(StateTable.TABLE_NAME, null, values);
+    }
+
+    /**
+     * Update an existing state in the database.
+     *
+     * @param odysseyStateDB The database with an active transaction
+     * @param state          The state object
+     * @param timeStamp      The timestamp of the existing state
+     * @param numberOfTracks The number of tracks related to this state
+     */
+    private void updateCurrentPlayState(SQLiteDatabase odysseyStateDB, OdysseyServiceState state, long timeStamp, int numberOfTracks) {
+
+        ContentValues values = getStateValues(state, numberOfTracks);
+
+        odysseyStateDB.update(StateTable.TABLE_NAME, values, StateTable.COLUMN_BOOKMARK_TIMESTAMP + "=?", new String[]{Long.toString(timeStamp)});
+    }
+
+    private static ContentValues getStateValues(OdysseyServiceState state, int numberOfTracks) {
+        ContentValues values = new ContentValues();
 
         // set state parameters
-        values.put(StateTable.COLUMN_BOOKMARK_TIMESTAMP, timeStamp);
         values.put(StateTable.COLUMN_TRACKNUMBER, state.mTrackNumber);
         values.put(StateTable.COLUMN_TRACKPOSITION, state.mTrackPosition);
         values.put(StateTable.COLUMN_RANDOM_STATE, state.mRandomState.ordinal());
         values.put(StateTable.COLUMN_REPEAT_STATE, state.mRepeatState.ordinal());
-        values.put(StateTable.COLUMN_AUTOSAVE, autosave);
-        values.put(StateTable.COLUMN_TITLE, title);
+        values.put(StateTable.COLUMN_RANDOM_SEED, state.mRandomSeed);
+        values.put(StateTable.COLUMN_RANDOM_CURSOR, state.mRandomCursor);
         values.put(StateTable.COLUMN_TRACKS, numberOfTracks);
 
-        odysseyStateDB.insert(StateTable.TABLE_NAME, null, values);
+        return values;
+    }
 
-        odysseyStateDB.setTransactionSuccessful();
-        odysseyStateDB.endTransaction();
+    /**
+     * Return a state object for the given timestamp
+     */
+    public OdysseyServiceState getState(long timeStamp) {
+
+        SQLiteDatabase odysseyStateDB = getReadableDatabase();
+
+        OdysseyServiceState state = getState(odysseyStateDB, timeStamp);
 
         odysseyStateDB.close();
+
+        return state;
     }
 
     /**
-     * Return a state object for the given timestamp
+     * Return the autosaved state object or the most recent one if no autosave exists
      */
-    public OdysseyServiceState getState(long timeStamp) {
+    public OdysseyServiceState getState() {
 
         SQLiteDatabase odysseyStateDB = getReadableDatabase();
 
+        OdysseyServiceState state = getState(odysseyStateDB, getRecentTimestamp(odysseyStateDB));
+
+        odysseyStateDB.close();
+
+        return state;
+    }
+
+    private OdysseyServiceState getState(SQLiteDatabase odysseyStateDB, long timeStamp) {
+
         OdysseyServiceState state = new OdysseyServiceState();
 
         Cursor cursor = odysseyStateDB.query(StateTable.TABLE_NAME, projectionState, StateTable.COLUMN_BOOKMARK_TIMESTAMP + "=?", new String[]{Long.toString(timeStamp)}, "", "", "");
@@ -286,39 +644,50 @@ public class OdysseyDatabaseManager extends SQLiteOpenHelper {
             state.mTrackPosition = cursor.getInt(cursor.getColumnIndex(StateTable.COLUMN_TRACKPOSITION));
             state.mRandomState = PlaybackService.RANDOMSTATE.values()[cursor.getInt(cursor.getColumnIndex(StateTable.COLUMN_RANDOM_STATE))];
             state.mRepeatState = PlaybackService.REPEATSTATE.values()[cursor.getInt(cursor.getColumnIndex(StateTable.COLUMN_REPEAT_STATE))];
+            state.mRandomSeed = cursor.getLong(cursor.getColumnIndex(StateTable.COLUMN_RANDOM_SEED));
+            state.mRandomCursor = cursor.getInt(cursor.getColumnIndex(StateTable.COLUMN_RANDOM_CURSOR));
         }
 
         cursor.close();
 
-        odysseyStateDB.close();
-
         return state;
     }
 
     /**
-     * Return the most recent state object
+     * Return the timestamp of the autosaved state or -1 if no autosave exists
      */
-    public OdysseyServiceState getState() {
+    private long getAutoSaveTimestamp(SQLiteDatabase odysseyStateDB) {
+        long timeStamp = -1;
 
-        SQLiteDatabase odysseyStateDB = getReadableDatabase();
-
-        OdysseyServiceState state = new OdysseyServiceState();
-
-        Cursor cursor = odysseyStateDB.query(StateTable.TABLE_NAME, projectionState, "", null, "", "", StateTable.COLUMN_BOOKMARK_TIMESTAMP + " DESC", "1");
+        Cursor cursor = odysseyStateDB.query(StateTable.TABLE_NAME, new String[]{StateTable.COLUMN_BOOKMARK_TIMESTAMP}, StateTable.COLUMN_AUTOSAVE + "=?", new String[]{"1"},
+                "", "", StateTable.COLUMN_BOOKMARK_TIMESTAMP + " DESC", "1");
 
         if (cursor.moveToFirst()) {
-
-            state.mTrackNumber = cursor.getInt(cursor.getColumnIndex(StateTable.COLUMN_TRACKNUMBER));
-            state.mTrackPosition = cursor.getInt(cursor.getColumnIndex(StateTable.COLUMN_TRACKPOSITION));
-            state.mRandomState = PlaybackService.RANDOMSTATE.values()[cursor.getInt(cursor.getColumnIndex(StateTable.COLUMN_RANDOM_STATE))];
-            state.mRepeatState = PlaybackService.REPEATSTATE.values()[cursor.getInt(cursor.getColumnIndex(StateTable.COLUMN_REPEAT_STATE))];
+            timeStamp = cursor.getLong(cursor.getColumnIndex(StateTable.COLUMN_BOOKMARK_TIMESTAMP));
         }
 
         cursor.close();
 
-        odysseyStateDB.close();
+        return timeStamp;
+    }
 
-        return state;
+    /**
+     * Return the timestamp of the autosaved state, the most recent timestamp if no autosave exists or -1 if no state exists
+     */
+    private long getRecentTimestamp(SQLiteDatabase odysseyStateDB) {
+        long timeStamp = getAutoSaveTimestamp(odysseyStateDB);
+
+        if (timeStamp == -1) {
+            Cursor cursor = odysseyStateDB.query(StateTable.TABLE_NAME, new String[]{StateTable.COLUMN_BOOKMARK_TIMESTAMP}, "", null, "", "", StateTable.COLUMN_BOOKMARK_TIMESTAMP + " DESC", "1");
+
+            if (cursor.moveToFirst()) {
+                timeStamp = cursor.getLong(cursor.getColumnIndex(StateTable.COLUMN_BOOKMARK_TIMESTAMP));
+            }
+
+            cursor.close();
+        }
+
+        return timeStamp;
     }
 
     /**
@@ -375,30 +744,19 @@ public class OdysseyDatabaseManager extends SQLiteOpenHelper {
     }
 
     /**
-     * Remove all states marked as auto generated, including their related tracks
+     * Remove all states marked as auto generated, including their related tracks and the journal
      */
-    private void clearAutoSaveState() {
+    private void clearAutoSaveState(SQLiteDatabase odysseyStateDB) {
 
-        SQLiteDatabase odysseyStateDB = getWritableDatabase();
+        // delete playlists
+        odysseyStateDB.delete(StateTracksTable.TABLE_NAME, StateTracksTable.COLUMN_BOOKMARK_TIMESTAMP + " in (select " + StateTable.COLUMN_BOOKMARK_TIMESTAMP + " from "
+                + StateTable.TABLE_NAME + " where " + StateTable.COLUMN_AUTOSAVE + "=?)", new String[]{"1"});
 
-        Cursor stateCursor = odysseyStateDB.query(StateTable.TABLE_NAME, new String[]{StateTable.COLUMN_BOOKMARK_TIMESTAMP, StateTable.COLUMN_AUTOSAVE}, StateTable.COLUMN_AUTOSAVE + "=?", new String[]{"1"},
-                "", "", StateTable.COLUMN_BOOKMARK_TIMESTAMP + " DESC");
+        // delete states
+        odysseyStateDB.delete(StateTable.TABLE_NAME, StateTable.COLUMN_AUTOSAVE + "=?", new String[]{"1"});
 
-        if (stateCursor.moveToFirst()) {
-            do {
-                long timeStamp = stateCursor.getLong(stateCursor.getColumnIndex(StateTable.COLUMN_BOOKMARK_TIMESTAMP));
-
-                // delete playlist
-                odysseyStateDB.delete(StateTracksTable.TABLE_NAME, StateTracksTable.COLUMN_BOOKMARK_TIMESTAMP + "=?", new String[]{Long.toString(timeStamp)});
-
-                // delete state
-                odysseyStateDB.delete(StateTable.TABLE_NAME, StateTable.COLUMN_BOOKMARK_TIMESTAMP + "=?", new String[]{Long.toString(timeStamp)});
-            } while (stateCursor.moveToNext());
-        }
-
-        stateCursor.close();
-
-        odysseyStateDB.close();
+        // delete journal
+        odysseyStateDB.delete(StateJournalTable.TABLE_NAME, null, null);
     }
 
     /**
@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2018 Team Gateship-One
+ * (Hendrik Borghorst & Frederik Luetkes)
+ *
+ * The AUTHORS.md file contains a detailed contributors list:
+ * <https://github.com/gateship-one/odyssey/blob/master/AUTHORS.md>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.gateshipone.odyssey.playbackservice.statemanager;
+
+import org.gateshipone.odyssey.models.TrackModel;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects the changes of the current playlist since the last autosave.
+ * <p>
+ * The {@link OdysseyDatabaseManager} appends these changes to the {@link StateJournalTable} instead of
+ * rewriting the complete playlist. If the changes are more expensive than a complete rewrite
+ * (e.g. after the playlist was cleared or shuffled) the journal only remembers that a snapshot is required.
+ */
+public class QueueJournal {
+
+    /**
+     * Operations that can be stored in the journal.
+     */
+    static final int OPERATION_INSERT = 0;
+    static final int OPERATION_REMOVE = 1;
+    static final int OPERATION_CLEAR = 2;
+
+    /**
+     * Maximum number of tracks kept by the journal. Larger changes are written as a snapshot, so the
+     * journal never holds the tracks of large inserts (e.g. a complete library) in memory.
+     */
+    private static final int MAXIMUM_TRACKS = 500;
+
+    /**
+     * A single change of the playlist. Inserts store one entry per track.
+     */
+    static class Entry {
+        final int mOperation;
+        final int mPosition;
+        final int mCount;
+        final TrackModel mTrack;
+
+        Entry(int operation, int position, int count, TrackModel track) {
+            mOperation = operation;
+            mPosition = position;
+            mCount = count;
+            mTrack = track;
+        }
+    }
+
+    private final List<Entry> mEntries = new ArrayList<>();
+
+    private boolean mSnapshotRequired;
+
+    /**
+     * Number of tracks of the insert entries
+     */
+    private int mTrackCount;
+
+    /**
+     * Records tracks that were inserted in the playlist.
+     *
+     * @param position  Position of the first inserted track
+     * @param tracks    The inserted tracks
+     * @param queueSize Size of the playlist after the insert
+     */
+    public synchronized void recordInsert(int position, List<? extends TrackModel> tracks, int queueSize) {
+        if (mSnapshotRequired) {
+            return;
+        }
+
+        if (mTrackCount + tracks.size() > Math.min(MAXIMUM_TRACKS, queueSize)) {
+            // A snapshot is cheaper, the tracks are not copied into the journal at all
+            requireSnapshot();
+            return;
+        }
+
+        mTrackCount += tracks.size();
+        for (int i = 0; i < tracks.size(); i++) {
+            mEntries.add(new Entry(OPERATION_INSERT, position + i, 1, tracks.get(i)));
+        }
+
+        checkSize(queueSize);
+    }
+
+    /**
+     * Records a range of tracks that was removed from the playlist.
+     *
+     * @param fromIndex First removed position (inclusive)
+     * @param toIndex   Last removed position (exclusive)
+     * @param queueSize Size of the playlist after the removal
+     */
+    public synchronized void recordRemove(int fromIndex, int toIndex, int queueSize) {
+        if (mSnapshotRequired) {
+            return;
+        }
+
+        mEntries.add(new Entry(OPERATION_REMOVE, fromIndex, toIndex - fromIndex, null));
+
+        checkSize(queueSize);
+    }
+
+    /**
+     * Records that the playlist was cleared.
+     * Writing the new content as a snapshot is never more expensive than journaling it so no entries are kept.
+     */
+    public synchronized void recordClear() {
+        requireSnapshot();
+    }
+
+    /**
+     * Records a change that can't be expressed by the journal (e.g. a reordering of the playlist).
+     */
+    public synchronized void requireSnapshot() {
+        mEntries.clear();
+        mTrackCount = 0;
+        mSnapshotRequired = true;
+    }
+
+    synchronized boolean isSnapshotRequired() {
+        return mSnapshotRequired;
+    }
+
+    synchronized List<Entry> getEntries() {
+        return new ArrayList<>(mEntries);
+    }
+
+    /**
+     * Called after the changes were written to the database.
+     */
+    synchronized void reset() {
+        mEntries.clear();
+        mTrackCount = 0;
+        mSnapshotRequired = false;
+    }
+
+    /**
+     * Switches to a snapshot if the journal grew larger than the playlist itself.
+     * Removals are small entries without tracks, the tracks of inserts are limited by {@link #recordInsert}.
+     */
+    private void checkSize(int queueSize) {
+        if (mEntries.size() > queueSize) {
+            requireSnapshot();
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2018 Team Gateship-One
+ * (Hendrik Borghorst & Frederik Luetkes)
+ *
+ * The AUTHORS.md file contains a detailed contributors list:
+ * <https://github.com/gateship-one/odyssey/blob/master/AUTHORS.md>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.gateshipone.odyssey.playbackservice.statemanager;
+
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * Journal of the changes to the autosaved playlist since its last snapshot.
+ * The track columns share their names with the {@link StateTracksTable}.
+ */
+public class StateJournalTable {
+
+    /**
+     * The name of the table.
+     */
+    public static final String TABLE_NAME = "odyssey_state_journal";
+
+    /**
+     * Name of the column that holds a unique id for each entry, defines the order of the journal
+     */
+    public static final String COLUMN_ID = "_id";
+
+    /**
+     * Name of the column that holds the operation of the entry
+     */
+    public static final String COLUMN_OPERATION = "operation";
+
+    /**
+     * Name of the column that holds the position in the playlist of the entry
+     */
+    public static final String COLUMN_POSITION = "position";
+
+    /**
+     * Name of the column that holds the number of tracks affected by the entry
+     */
+    public static final String COLUMN_COUNT = "count";
+
+    /**
+     * Database creation SQL statement
+     */
+    private static final String DATABASE_CREATE = "create table if not exists " + TABLE_NAME + "(" + COLUMN_ID
+            + " integer primary key autoincrement," + COLUMN_OPERATION + " integer," + COLUMN_POSITION + " integer," + COLUMN_COUNT + " integer,"
+            + StateTracksTable.COLUMN_TRACKNUMBER + " integer," + StateTracksTable.COLUMN_TRACKTITLE + " text," + StateTracksTable.COLUMN_TRACKALBUM + " text,"
+            + StateTracksTable.COLUMN_TRACKALBUMKEY + " text," + StateTracksTable.COLUMN_TRACKDURATION + " integer," + StateTracksTable.COLUMN_TRACKARTIST + " text,"
+            + StateTracksTable.COLUMN_TRACKURL + " text," + StateTracksTable.COLUMN_TRACKID + " integer" + ");";
+
+    public static void onCreate(SQLiteDatabase database) {
+        // create new table
+        database.execSQL(DATABASE_CREATE);
+    }
+}
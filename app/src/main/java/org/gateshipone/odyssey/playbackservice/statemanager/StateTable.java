@@ -56,6 +56,16 @@ public class StateTable {
      */
     public static final String COLUMN_REPEAT_STATE = "repeatstate";
 
+    /**
+     * Name of the column that holds the seed of the random playback order
+     */
+    public static final String COLUMN_RANDOM_SEED = "randomseed";
+
+    /**
+     * Name of the column that holds the position in the random playback order
+     */
+    public static final String COLUMN_RANDOM_CURSOR = "randomcursor";
+
     /**
      * Name of the column that holds the autosave value
      */
@@ -76,10 +86,39 @@ public class StateTable {
      */
     private static final String DATABASE_CREATE = "create table if not exists " + TABLE_NAME + "(" + COLUMN_BOOKMARK_TIMESTAMP
             + " integer primary key," + COLUMN_TRACKNUMBER + " integer," + COLUMN_TRACKPOSITION + " integer," + COLUMN_RANDOM_STATE + " integer, "
-            + COLUMN_REPEAT_STATE + " integer," + COLUMN_AUTOSAVE + " integer," + COLUMN_TITLE + " text," + COLUMN_TRACKS + " integer" +");";
+            + COLUMN_REPEAT_STATE + " integer," + COLUMN_AUTOSAVE + " integer," + COLUMN_TITLE + " text," + COLUMN_TRACKS + " integer,"
+            + COLUMN_RANDOM_SEED + " integer default 0," + COLUMN_RANDOM_CURSOR + " integer default -1" + ");";
+
+    /**
+     * SQL statements to add the random order columns to a table of database version 21 and below
+     */
+    private static final String[] DATABASE_ADD_RANDOM_ORDER = {
+            "alter table " + TABLE_NAME + " add column " + COLUMN_RANDOM_SEED + " integer default 0;",
+            "alter table " + TABLE_NAME + " add column " + COLUMN_RANDOM_CURSOR + " integer default -1;"
+    };
+
+    /**
+     * Index creation SQL statement for the lookup of the autosaved state
+     */
+    private static final String INDEX_CREATE = "create index if not exists " + TABLE_NAME + "_" + COLUMN_AUTOSAVE + "_index on "
+            + TABLE_NAME + "(" + COLUMN_AUTOSAVE + ");";
 
     public static void onCreate(SQLiteDatabase database) {
         // create new table
         database.execSQL(DATABASE_CREATE);
+        createIndex(database);
+    }
+
+    public static void createIndex(SQLiteDatabase database) {
+        database.execSQL(INDEX_CREATE);
+    }
+
+    /**
+     * Adds the columns for the random playback order to an existing table.
+     */
+    public static void addRandomOrderColumns(SQLiteDatabase database) {
+        for (String statement : DATABASE_ADD_RANDOM_ORDER) {
+            database.execSQL(statement);
+        }
     }
 }
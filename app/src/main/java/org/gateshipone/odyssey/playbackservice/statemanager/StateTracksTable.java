@@ -89,8 +89,19 @@ public class StateTracksTable {
             + COLUMN_TRACKALBUMKEY + " text," + COLUMN_TRACKDURATION + " integer," + COLUMN_TRACKARTIST + " text," + COLUMN_TRACKURL + " text,"
             + COLUMN_TRACKID + " integer," + COLUMN_BOOKMARK_TIMESTAMP + " integer " + ");";
 
+    /**
+     * Index creation SQL statement, all queries select the tracks of a single state
+     */
+    private static final String INDEX_CREATE = "create index if not exists " + TABLE_NAME + "_" + COLUMN_BOOKMARK_TIMESTAMP + "_index on "
+            + TABLE_NAME + "(" + COLUMN_BOOKMARK_TIMESTAMP + ");";
+
     public static void onCreate(SQLiteDatabase database) {
         // create new table
         database.execSQL(DATABASE_CREATE);
+        createIndex(database);
+    }
+
+    public static void createIndex(SQLiteDatabase database) {
+        database.execSQL(INDEX_CREATE);
     }
 }
@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2018 Team Gateship-One
+ * (Hendrik Borghorst & Frederik Luetkes)
+ *
+ * The AUTHORS.md file contains a detailed contributors list:
+ * <https://github.com/gateship-one/odyssey/blob/master/AUTHORS.md>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.gateshipone.odyssey.utils;
+
+import android.graphics.Bitmap;
+import android.util.Pair;
+import android.widget.AbsListView;
+
+import org.gateshipone.odyssey.adapter.ScrollSpeedAdapter;
+import org.gateshipone.odyssey.models.GenericModel;
+import org.gateshipone.odyssey.viewitems.GenericImageViewItem;
+
+import java.util.ArrayDeque;
+
+/**
+ * Loads the artwork of the items that will become visible next into the caches.
+ * <p>
+ * The items are predicted from the scroll direction and speed: the faster the list scrolls the further
+ * the prefetch reaches, limited by a memory budget. Pending prefetches are cancelled if the scroll
+ * direction changes. Prefetches run with a lower priority than the images of visible items, a visible
+ * item that requests a pending prefetch takes it over.
+ */
+public class ArtworkPrefetcher {
+
+    /**
+     * Maximum memory of all prefetched images in bytes
+     */
+    private static final long MAX_PREFETCH_MEMORY = Runtime.getRuntime().maxMemory() / 32;
+
+    /**
+     * Maximum number of prefetched items
+     */
+    private static final int MAX_PREFETCH_ITEMS = 64;
+
+    /**
+     * Time in ms the prediction looks ahead, in addition to the average image load time
+     */
+    private static final int PREDICTION_TIME = 500;
+
+    /**
+     * Assumed size of an image if the items do not know their image size yet
+     */
+    private static final int DEFAULT_IMAGE_SIZE = 512;
+
+    private final ScrollSpeedAdapter mAdapter;
+
+    private final AbsListView mListView;
+
+    /**
+     * Pending prefetches, the oldest first
+     */
+    private final ArrayDeque<ImageLoadScheduler.Request> mRequests;
+
+    /**
+     * Receiver of all prefetches, the images only need to be in the caches
+     */
+    private final ImageLoadScheduler.ImageReceiver mReceiver;
+
+    /**
+     * Direction of the last prefetch: 1 for down, -1 for up, 0 if nothing was prefetched
+     */
+    private int mDirection;
+
+    /**
+     * Next position in the current direction that was not prefetched yet
+     */
+    private int mNextPosition;
+
+    public ArtworkPrefetcher(ScrollSpeedAdapter adapter, AbsListView listView) {
+        mAdapter = adapter;
+        mListView = listView;
+        mRequests = new ArrayDeque<>();
+
+        mReceiver = new ImageLoadScheduler.ImageReceiver() {
+            @Override
+            public void receiveImage(Bitmap image) {
+                BitmapPool.getInstance().release(image);
+            }
+        };
+    }
+
+    /**
+     * Prefetches the items that are expected to become visible next.
+     *
+     * @param firstVisibleItem Position of the first visible item
+     * @param visibleItemCount Number of visible items
+     * @param totalItemCount   Number of items in the adapter
+     * @param direction        Scroll direction: 1 for down, -1 for up
+     * @param scrollSpeed      Scroll speed in items per second
+     */
+    public void prefetch(int firstVisibleItem, int visibleItemCount, int totalItemCount, int direction, int scrollSpeed) {
+        if (visibleItemCount == 0 || direction == 0) {
+            return;
+        }
+
+        // A visible item is used to create the requests with the same size as its own requests
+        final GenericImageViewItem template = findTemplateItem();
+        if (template == null) {
+            return;
+        }
+
+        if (direction != mDirection) {
+            // The prefetched items will not become visible soon
+            cancel();
+            mDirection = direction;
+            mNextPosition = direction > 0 ? firstVisibleItem + visibleItemCount : firstVisibleItem - 1;
+        }
+
+        final int maxItems = getMaxItems(template);
+
+        // Items that will pass by during the prediction time, at least the next screen
+        final long predictionTime = PREDICTION_TIME + mAdapter.getAverageImageLoadTime();
+        final int count = (int) Math.min(maxItems, visibleItemCount + scrollSpeed * predictionTime / 1000);
+
+        final int start = direction > 0 ? firstVisibleItem + visibleItemCount : firstVisibleItem - 1;
+        final int end = direction > 0 ? Math.min(totalItemCount, start + count) : Math.max(-1, start - count);
+
+        // Skip the items that are already prefetched
+        int position = direction > 0 ? Math.max(start, mNextPosition) : Math.min(start, mNextPosition);
+
+        while (direction > 0 ? position < end : position > end) {
+            final GenericModel model = mAdapter.getArtworkModel(position);
+            if (model != null) {
+                final ImageLoadScheduler.Request request = template.prefetchImage(model, mReceiver);
+                if (request != null) {
+                    mRequests.addLast(request);
+                }
+            }
+            position += direction;
+        }
+        mNextPosition = position;
+
+        // Drop the oldest prefetches if the budget is exceeded
+        while (mRequests.size() > maxItems) {
+            mRequests.pollFirst().cancel();
+        }
+    }
+
+    /**
+     * Cancels all pending prefetches.
+     */
+    public void cancel() {
+        for (ImageLoadScheduler.Request request : mRequests) {
+            request.cancel();
+        }
+        mRequests.clear();
+        mDirection = 0;
+    }
+
+    private GenericImageViewItem findTemplateItem() {
+        for (int i = 0; i < mListView.getChildCount(); i++) {
+            final GenericImageViewItem item = (GenericImageViewItem) mListView.getChildAt(i);
+            if (item.canLoadImages()) {
+                return item;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return Number of items that fit into the memory budget
+     */
+    private static int getMaxItems(GenericImageViewItem template) {
+        final Pair<Integer, Integer> dimension = template.getImageDimension();
+        final long width = dimension.first > 0 ? dimension.first : DEFAULT_IMAGE_SIZE;
+        final long height = dimension.second > 0 ? dimension.second : DEFAULT_IMAGE_SIZE;
+
+        return (int) Math.max(1, Math.min(MAX_PREFETCH_ITEMS, MAX_PREFETCH_MEMORY / (width * height * 4)));
+    }
+}
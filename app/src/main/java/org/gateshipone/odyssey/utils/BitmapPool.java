@@ -0,0 +1,245 @@
+/*
+ * Copyright (C) 2018 Team Gateship-One
+ * (Hendrik Borghorst & Frederik Luetkes)
+ *
+ * The AUTHORS.md file contains a detailed contributors list:
+ * <https://github.com/gateship-one/odyssey/blob/master/AUTHORS.md>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.gateshipone.odyssey.utils;
+
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.WeakHashMap;
+
+/**
+ * Pool of unused bitmaps that can be reused as decoding target ({@link android.graphics.BitmapFactory.Options#inBitmap}).
+ * <p>
+ * Bitmaps are reference counted: the {@link org.gateshipone.odyssey.artworkdatabase.BitmapCache} holds one reference
+ * for each cached bitmap and every user of a bitmap (e.g. a list item) holds another one. A bitmap returns to the pool
+ * when its last reference is released. Bitmaps whose references are never released (e.g. images handed over to
+ * other components) are never reused.
+ * <p>
+ * The pooled bitmaps are grouped in size classes of powers of two of their allocation size.
+ */
+public class BitmapPool {
+    private static final String TAG = BitmapPool.class.getSimpleName();
+
+    /**
+     * Maximum size of all pooled bitmaps in bytes
+     */
+    private static final long MAX_POOL_SIZE = Runtime.getRuntime().maxMemory() / 16;
+
+    /**
+     * Number of size classes, one for each bit of the allocation size
+     */
+    private static final int SIZE_CLASS_COUNT = 32;
+
+    private static BitmapPool mInstance;
+
+    /**
+     * Pooled bitmaps by their size class, the most recently added bitmap first
+     */
+    private final ArrayDeque<Bitmap>[] mSizeClasses;
+
+    /**
+     * Number of references of each bitmap in use. Bitmaps that are no longer referenced by anyone are dropped
+     * by the garbage collector.
+     */
+    private final WeakHashMap<Bitmap, Integer> mReferences;
+
+    /**
+     * Size of all pooled bitmaps in bytes
+     */
+    private long mPoolSize;
+
+    private long mHitCount;
+
+    private long mMissCount;
+
+    @SuppressWarnings("unchecked")
+    private BitmapPool() {
+        mSizeClasses = new ArrayDeque[SIZE_CLASS_COUNT];
+        for (int i = 0; i < SIZE_CLASS_COUNT; i++) {
+            mSizeClasses[i] = new ArrayDeque<>();
+        }
+
+        mReferences = new WeakHashMap<>();
+    }
+
+    public static synchronized BitmapPool getInstance() {
+        if (mInstance == null) {
+            mInstance = new BitmapPool();
+        }
+        return mInstance;
+    }
+
+    /**
+     * Adds a reference to the given bitmap. The bitmap will not be reused before the reference is released.
+     *
+     * @param bitmap Bitmap that is used by the caller
+     */
+    public synchronized void acquire(Bitmap bitmap) {
+        if (bitmap == null) {
+            return;
+        }
+
+        final Integer references = mReferences.get(bitmap);
+        mReferences.put(bitmap, references == null ? 1 : references + 1);
+    }
+
+    /**
+     * Releases a reference to the given bitmap. The bitmap is added to the pool if this was the last reference.
+     *
+     * @param bitmap Bitmap that is no longer used by the caller
+     */
+    public synchronized void release(Bitmap bitmap) {
+        if (bitmap == null) {
+            return;
+        }
+
+        final Integer references = mReferences.get(bitmap);
+        if (references == null) {
+            // Never acquired, the bitmap could still be used somewhere else
+            return;
+        }
+
+        if (references > 1) {
+            mReferences.put(bitmap, references - 1);
+        } else {
+            mReferences.remove(bitmap);
+            recycle(bitmap);
+        }
+    }
+
+    /**
+     * Adds a bitmap to the pool that was never handed out (e.g. the source of a scaled bitmap).
+     *
+     * @param bitmap Bitmap that is not used by anyone
+     */
+    public synchronized void recycle(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable() || bitmap.getConfig() != Bitmap.Config.ARGB_8888) {
+            return;
+        }
+
+        if (mReferences.containsKey(bitmap)) {
+            return;
+        }
+
+        final int size = bitmap.getAllocationByteCount();
+        if (size > MAX_POOL_SIZE) {
+            return;
+        }
+
+        mSizeClasses[getSizeClass(size)].addFirst(bitmap);
+        mPoolSize += size;
+
+        trimToSize();
+    }
+
+    /**
+     * Removes a bitmap from the pool that can hold at least the given number of bytes.
+     *
+     * @param byteCount Required allocation size of the bitmap
+     * @return A pooled bitmap or null if no compatible bitmap is available
+     */
+    public synchronized Bitmap get(int byteCount) {
+        if (byteCount <= 0) {
+            return null;
+        }
+
+        final int sizeClass = getSizeClass(byteCount);
+
+        // The own size class may contain smaller bitmaps, all bitmaps of the next class fit.
+        // Larger classes would waste too much memory.
+        Bitmap bitmap = null;
+        Iterator<Bitmap> iterator = mSizeClasses[sizeClass].iterator();
+        while (iterator.hasNext()) {
+            Bitmap candidate = iterator.next();
+            if (candidate.getAllocationByteCount() >= byteCount) {
+                iterator.remove();
+                bitmap = candidate;
+                break;
+            }
+        }
+
+        if (bitmap == null && sizeClass + 1 < SIZE_CLASS_COUNT) {
+            bitmap = mSizeClasses[sizeClass + 1].pollFirst();
+        }
+
+        if (bitmap == null) {
+            mMissCount++;
+            return null;
+        }
+
+        mHitCount++;
+        mPoolSize -= bitmap.getAllocationByteCount();
+        return bitmap;
+    }
+
+    /**
+     * Drops all pooled bitmaps.
+     */
+    public synchronized void clear() {
+        for (ArrayDeque<Bitmap> sizeClass : mSizeClasses) {
+            sizeClass.clear();
+        }
+        mPoolSize = 0;
+    }
+
+    /**
+     * @return Number of decodes that reused a pooled bitmap
+     */
+    public synchronized long getHitCount() {
+        return mHitCount;
+    }
+
+    /**
+     * @return Number of decodes that had to allocate a new bitmap
+     */
+    public synchronized long getMissCount() {
+        return mMissCount;
+    }
+
+    /**
+     * Debug method to provide performance evaluation metrics
+     */
+    public synchronized void printUsage() {
+        Log.v(TAG, "Pool hit count: " + mHitCount + " miss count: " + mMissCount + " pool size: " + (mPoolSize / 1024) + " kB");
+    }
+
+    /**
+     * Drops the oldest bitmaps of the largest size classes until the pool fits its maximum size.
+     */
+    private void trimToSize() {
+        for (int i = SIZE_CLASS_COUNT - 1; i >= 0 && mPoolSize > MAX_POOL_SIZE; i--) {
+            while (mPoolSize > MAX_POOL_SIZE && !mSizeClasses[i].isEmpty()) {
+                mPoolSize -= mSizeClasses[i].pollLast().getAllocationByteCount();
+            }
+        }
+    }
+
+    /**
+     * @return The size class of the allocation size (the position of its highest bit)
+     */
+    private static int getSizeClass(int byteCount) {
+        return Math.min(SIZE_CLASS_COUNT - 1, 31 - Integer.numberOfLeadingZeros(byteCount));
+    }
+}
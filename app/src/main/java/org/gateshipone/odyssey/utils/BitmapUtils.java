@@ -26,6 +26,9 @@ package org.gateshipone.odyssey.utils;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
 public class BitmapUtils {
 
     /**
@@ -48,7 +51,14 @@ public class BitmapUtils {
 
         // Decode bitmap with inSampleSize set
         options.inJustDecodeBounds = false;
-        return BitmapFactory.decodeFile(pathName, options);
+        final Bitmap reusable = prepareReuse(options);
+        try {
+            return checkReuse(BitmapFactory.decodeFile(pathName, options), reusable);
+        } catch (IllegalArgumentException e) {
+            // The pooled bitmap could not be used, decode into a new one
+            options.inBitmap = null;
+            return BitmapFactory.decodeFile(pathName, options);
+        }
     }
 
     /**
@@ -71,7 +81,78 @@ public class BitmapUtils {
 
         // Decode bitmap with inSampleSize set
         options.inJustDecodeBounds = false;
-        return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        final Bitmap reusable = prepareReuse(options);
+        try {
+            return checkReuse(BitmapFactory.decodeByteArray(data, 0, data.length, options), reusable);
+        } catch (IllegalArgumentException e) {
+            // The pooled bitmap could not be used, decode into a new one
+            options.inBitmap = null;
+            return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        }
+    }
+
+    /**
+     * Resize retrieved bitmap if necessary. The image is decoded straight from the buffer (e.g. a memory-mapped file)
+     * without copying it to the heap.
+     */
+    public static Bitmap decodeSampledBitmapFromBuffer(ByteBuffer data, int reqWidth, int reqHeight) {
+
+        // First decode with inJustDecodeBounds=true to check dimensions
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeStream(new ByteBufferInputStream(data), null, options);
+
+        // Calculate inSampleSize
+        if (reqWidth <= 0 && reqHeight <= 0) {
+            // check if the layout of the view already set
+            options.inSampleSize = 1;
+        } else {
+            options.inSampleSize = calculateInSampleSize(options, reqWidth, reqHeight);
+        }
+
+        // Decode bitmap with inSampleSize set
+        options.inJustDecodeBounds = false;
+        final Bitmap reusable = prepareReuse(options);
+        try {
+            return checkReuse(BitmapFactory.decodeStream(new ByteBufferInputStream(data), null, options), reusable);
+        } catch (IllegalArgumentException e) {
+            // The pooled bitmap could not be used, decode into a new one
+            options.inBitmap = null;
+            return BitmapFactory.decodeStream(new ByteBufferInputStream(data), null, options);
+        }
+    }
+
+    /**
+     * Sets a pooled bitmap as target for the decode if one with a sufficient size is available.
+     * The decoded bitmap is mutable so it can be reused itself later.
+     *
+     * @param options Options with the bounds and the sample size of the image
+     * @return The pooled bitmap or null if a new bitmap will be allocated
+     */
+    private static Bitmap prepareReuse(BitmapFactory.Options options) {
+        options.inMutable = true;
+
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+
+        // Size of the decoded image, the decoder rounds up
+        final int width = (options.outWidth + options.inSampleSize - 1) / options.inSampleSize;
+        final int height = (options.outHeight + options.inSampleSize - 1) / options.inSampleSize;
+
+        final Bitmap reusable = BitmapPool.getInstance().get(width * height * 4);
+        options.inBitmap = reusable;
+        return reusable;
+    }
+
+    /**
+     * Returns the pooled bitmap to the pool if the decode failed without using it.
+     */
+    private static Bitmap checkReuse(Bitmap result, Bitmap reusable) {
+        if (result == null && reusable != null) {
+            BitmapPool.getInstance().recycle(reusable);
+        }
+        return result;
     }
 
     /**
@@ -97,4 +178,44 @@ public class BitmapUtils {
 
         return inSampleSize;
     }
+
+    /**
+     * Reads the remaining bytes of a buffer without changing its position.
+     */
+    private static class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer mBuffer;
+
+        private ByteBufferInputStream(ByteBuffer buffer) {
+            mBuffer = buffer.duplicate();
+        }
+
+        @Override
+        public int read() {
+            return mBuffer.hasRemaining() ? mBuffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (!mBuffer.hasRemaining()) {
+                return -1;
+            }
+
+            final int count = Math.min(length, mBuffer.remaining());
+            mBuffer.get(bytes, offset, count);
+            return count;
+        }
+
+        @Override
+        public long skip(long count) {
+            final int skipped = (int) Math.max(0, Math.min(count, mBuffer.remaining()));
+            mBuffer.position(mBuffer.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return mBuffer.remaining();
+        }
+    }
 }
@@ -38,6 +38,16 @@ public class CoverBitmapLoader {
 
     private final Context mContext;
 
+    /**
+     * Pending request for an album image, replaced by the next request
+     */
+    private ImageLoadScheduler.Request mAlbumRequest;
+
+    /**
+     * Pending request for an artist image, replaced by the next request
+     */
+    private ImageLoadScheduler.Request mArtistRequest;
+
     public CoverBitmapLoader(Context context, CoverBitmapReceiver listener) {
         mContext = context;
         mListener = listener;
@@ -47,10 +57,10 @@ public class CoverBitmapLoader {
      * Load the image for the given track from the mediastore.
      */
     public void getImage(final TrackModel track, final int width, final int height) {
-        if (track != null && !track.getTrackAlbumKey().isEmpty()) {
-            // start the loader thread to load the image async
-            final Thread loaderThread = new Thread(new TrackAlbumImageRunner(track, width, height));
-            loaderThread.start();
+        if (track != null) {
+            // load the image async
+            loadAlbumImage(new ImageLoadScheduler.Key(TrackAlbumImageRunner.class, track, width, height),
+                    new TrackAlbumImageRunner(track, width, height));
         }
     }
 
@@ -59,9 +69,9 @@ public class CoverBitmapLoader {
             return;
         }
 
-        // start the loader thread to load the image async
-        final Thread loaderThread = new Thread(new ArtistImageRunner(artist, width, height));
-        loaderThread.start();
+        // load the image async
+        loadArtistImage(new ImageLoadScheduler.Key(ArtistImageRunner.class, artist, width, height),
+                new ArtistImageRunner(artist, width, height));
     }
 
     public void getAlbumImage(final AlbumModel album, final int width, final int height) {
@@ -69,9 +79,9 @@ public class CoverBitmapLoader {
             return;
         }
 
-        // start the loader thread to load the image async
-        final Thread loaderThread = new Thread(new AlbumImageRunner(album, width, height));
-        loaderThread.start();
+        // load the image async
+        loadAlbumImage(new ImageLoadScheduler.Key(AlbumImageRunner.class, album, width, height),
+                new AlbumImageRunner(album, width, height));
     }
 
     public void getArtistImage(final TrackModel track, final int width, final int height) {
@@ -79,12 +89,46 @@ public class CoverBitmapLoader {
             return;
         }
 
-        // start the loader thread to load the image async
-        final Thread loaderThread = new Thread(new TrackArtistImageRunner(track, width, height));
-        loaderThread.start();
+        // load the image async
+        loadArtistImage(new ImageLoadScheduler.Key(TrackArtistImageRunner.class, track, width, height),
+                new TrackArtistImageRunner(track, width, height));
     }
 
-    private class TrackAlbumImageRunner implements Runnable {
+    /**
+     * Schedules the album image load, a pending load of a previous album image is cancelled.
+     */
+    private synchronized void loadAlbumImage(final ImageLoadScheduler.Key key, final ImageLoadScheduler.ImageLoader loader) {
+        if (mAlbumRequest != null) {
+            mAlbumRequest.cancel();
+        }
+
+        mAlbumRequest = ImageLoadScheduler.getInstance().load(key, ImageLoadScheduler.PRIORITY_PLAYING, loader,
+                new ImageLoadScheduler.ImageReceiver() {
+                    @Override
+                    public void receiveImage(Bitmap image) {
+                        mListener.receiveAlbumBitmap(image);
+                    }
+                }, false);
+    }
+
+    /**
+     * Schedules the artist image load, a pending load of a previous artist image is cancelled.
+     */
+    private synchronized void loadArtistImage(final ImageLoadScheduler.Key key, final ImageLoadScheduler.ImageLoader loader) {
+        if (mArtistRequest != null) {
+            mArtistRequest.cancel();
+        }
+
+        mArtistRequest = ImageLoadScheduler.getInstance().load(key, ImageLoadScheduler.PRIORITY_PLAYING, loader,
+                new ImageLoadScheduler.ImageReceiver() {
+                    @Override
+                    public void receiveImage(Bitmap image) {
+                        mListener.receiveArtistBitmap(image);
+                    }
+                }, false);
+    }
+
+    private class TrackAlbumImageRunner implements ImageLoadScheduler.ImageLoader {
 
         private final int mWidth;
 
@@ -102,35 +146,37 @@ public class CoverBitmapLoader {
          * Load the image for the given track from the mediastore.
          */
         @Override
-        public void run() {
-            // At first get image independent of resolution (can be replaced later with higher resolution)
-            final AlbumModel album = MusicLibraryHelper.createAlbumModelFromKey(mTrack.getTrackAlbumKey(), mContext);
+        public Bitmap loadImage(ImageLoadScheduler.PreviewReceiver previews) {
+            final AlbumModel album = MusicLibraryHelper.createAlbumModelForTrack(mTrack, mContext);
             if (album == null) {
                 // No album found for track, abort
-                return;
+                return null;
             }
 
-            Bitmap image = BitmapCache.getInstance().requestAlbumBitmap(album);
+            // Check if the image is cached in the requested resolution
+            Bitmap image = BitmapCache.getInstance().requestAlbumBitmap(album, mWidth, mHeight);
             if (image != null) {
-                mListener.receiveAlbumBitmap(image);
+                return image;
+            }
+
+            // Show a smaller resolution until the image is decoded
+            image = BitmapCache.getInstance().requestAlbumBitmap(album);
+            if (image != null) {
+                previews.receivePreview(image);
             }
 
             try {
-                // If image was to small get it in the right resolution
-                if (image == null || !(mWidth <= image.getWidth() && mHeight <= image.getHeight())) {
-                    image = ArtworkManager.getInstance(mContext.getApplicationContext()).getAlbumImage(mContext, album, mWidth, mHeight, true);
-                    mListener.receiveAlbumBitmap(image);
-                    // Replace image with higher resolution one
-                    BitmapCache.getInstance().putAlbumBitmap(album, image);
-                }
+                // Get the image in the right resolution, it is added to the cache
+                return ArtworkManager.getInstance(mContext.getApplicationContext()).getAlbumImage(mContext, album, mTrack.getTrackURL(), mWidth, mHeight, true);
             } catch (ImageNotFoundException e) {
                 // Try to fetch the image here
                 ArtworkManager.getInstance(mContext.getApplicationContext()).fetchAlbumImage(mTrack, mContext);
             }
+            return null;
         }
     }
 
-    private class ArtistImageRunner implements Runnable {
+    private class ArtistImageRunner implements ImageLoadScheduler.ImageLoader {
 
         private final int mWidth;
 
@@ -148,36 +194,21 @@ public class CoverBitmapLoader {
          * Load the image for the given artist from the mediastore.
          */
         @Override
-        public void run() {
-            // At first get image independent of resolution (can be replaced later with higher resolution)
-            Bitmap image = BitmapCache.getInstance().requestArtistImage(mArtist);
-            mListener.receiveArtistBitmap(image);
-
-            // If image was to small get it in the right resolution
-            if (image == null || !(mWidth <= image.getWidth() && mHeight <= image.getHeight())) {
-                try {
-                    image = ArtworkManager.getInstance(mContext.getApplicationContext()).getArtistImage(mContext, mArtist, mWidth, mHeight, true);
-                    mListener.receiveArtistBitmap(image);
-                    // Replace image with higher resolution one
-                    BitmapCache.getInstance().putArtistImage(mArtist, image);
-                } catch (ImageNotFoundException e) {
-                    ArtworkManager.getInstance(mContext.getApplicationContext()).fetchArtistImage(mArtist, mContext);
-                }
-            }
+        public Bitmap loadImage(ImageLoadScheduler.PreviewReceiver previews) {
+            return loadArtistImage(mArtist, mWidth, mHeight, previews);
         }
     }
 
-    private class TrackArtistImageRunner implements Runnable {
+    private class TrackArtistImageRunner implements ImageLoadScheduler.ImageLoader {
 
         private final int mWidth;
 
         private final int mHeight;
 
-        private final ArtistModel mArtist;
+        private final TrackModel mTrack;
 
         private TrackArtistImageRunner(final TrackModel trackModel, final int width, final int height) {
-            long artistID = MusicLibraryHelper.getArtistIDFromName(trackModel.getTrackArtistName(), mContext);
-            mArtist = new ArtistModel(trackModel.getTrackArtistName(), artistID);
+            mTrack = trackModel;
             mWidth = width;
             mHeight = height;
         }
@@ -186,26 +217,14 @@ public class CoverBitmapLoader {
          * Load the image for the given artist from the mediastore.
          */
         @Override
-        public void run() {
-            // At first get image independent of resolution (can be replaced later with higher resolution)
-            Bitmap image = BitmapCache.getInstance().requestArtistImage(mArtist);
-            mListener.receiveArtistBitmap(image);
-
-            // If image was to small get it in the right resolution
-            if (image == null || !(mWidth <= image.getWidth() && mHeight <= image.getHeight())) {
-                try {
-                    image = ArtworkManager.getInstance(mContext.getApplicationContext()).getArtistImage(mContext, mArtist, mWidth, mHeight, true);
-                    mListener.receiveArtistBitmap(image);
-                    // Replace image with higher resolution one
-                    BitmapCache.getInstance().putArtistImage(mArtist, image);
-                } catch (ImageNotFoundException e) {
-                    ArtworkManager.getInstance(mContext.getApplicationContext()).fetchArtistImage(mArtist, mContext);
-                }
-            }
+        public Bitmap loadImage(ImageLoadScheduler.PreviewReceiver previews) {
+            // Resolve the artist on the loader thread, this queries the mediastore
+            long artistID = MusicLibraryHelper.getArtistIDFromName(mTrack.getTrackArtistName(), mContext);
+            return loadArtistImage(new ArtistModel(mTrack.getTrackArtistName(), artistID), mWidth, mHeight, previews);
         }
     }
 
-    private class AlbumImageRunner implements Runnable {
+    private class AlbumImageRunner implements ImageLoadScheduler.ImageLoader {
 
         private final int mWidth;
 
@@ -223,26 +242,56 @@ public class CoverBitmapLoader {
          * Load the image for the given album from the mediastore.
          */
         @Override
-        public void run() {
-            // At first get image independent of resolution (can be replaced later with higher resolution)
-            Bitmap image = BitmapCache.getInstance().requestAlbumBitmap(mAlbum);
+        public Bitmap loadImage(ImageLoadScheduler.PreviewReceiver previews) {
+            // Check if the image is cached in the requested resolution
+            Bitmap image = BitmapCache.getInstance().requestAlbumBitmap(mAlbum, mWidth, mHeight);
+            if (image != null) {
+                return image;
+            }
+
+            // Show a smaller resolution until the image is decoded
+            image = BitmapCache.getInstance().requestAlbumBitmap(mAlbum);
             if (image != null) {
-                mListener.receiveAlbumBitmap(image);
+                previews.receivePreview(image);
             }
 
             try {
-                // If image was to small get it in the right resolution
-                if (image == null || !(mWidth <= image.getWidth() && mHeight <= image.getHeight())) {
-                    image = ArtworkManager.getInstance(mContext.getApplicationContext()).getAlbumImage(mContext, mAlbum, mWidth, mHeight, true);
-                    mListener.receiveAlbumBitmap(image);
-                    // Replace image with higher resolution one
-                    BitmapCache.getInstance().putAlbumBitmap(mAlbum, image);
-                }
+                // Get the image in the right resolution, it is added to the cache
+                return ArtworkManager.getInstance(mContext.getApplicationContext()).getAlbumImage(mContext, mAlbum, mWidth, mHeight, true);
             } catch (ImageNotFoundException e) {
                 // Try to fetch the image here
                 ArtworkManager.getInstance(mContext.getApplicationContext()).fetchAlbumImage(mAlbum, mContext);
             }
+            return null;
+        }
+    }
+
+    /**
+     * Loads the image for the given artist, called on the loader thread.
+     *
+     * @param previews Receives the image in a smaller resolution until the image is decoded
+     */
+    private Bitmap loadArtistImage(final ArtistModel artist, final int width, final int height,
+                                   final ImageLoadScheduler.PreviewReceiver previews) {
+        // Check if the image is cached in the requested resolution
+        Bitmap image = BitmapCache.getInstance().requestArtistImage(artist, width, height);
+        if (image != null) {
+            return image;
+        }
+
+        // Show a smaller resolution until the image is decoded
+        image = BitmapCache.getInstance().requestArtistImage(artist);
+        if (image != null) {
+            previews.receivePreview(image);
+        }
+
+        try {
+            // Get the image in the right resolution, it is added to the cache
+            return ArtworkManager.getInstance(mContext.getApplicationContext()).getArtistImage(mContext, artist, width, height, true);
+        } catch (ImageNotFoundException e) {
+            ArtworkManager.getInstance(mContext.getApplicationContext()).fetchArtistImage(artist, mContext);
         }
+        return null;
     }
 
     /**
@@ -252,4 +301,4 @@ public class CoverBitmapLoader {
         void receiveAlbumBitmap(Bitmap bm);
         void receiveArtistBitmap(Bitmap bm);
     }
-}
\ No newline at end of file
+}
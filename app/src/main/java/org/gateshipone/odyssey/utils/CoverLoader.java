@@ -24,7 +24,6 @@ package org.gateshipone.odyssey.utils;
 
 import android.content.Context;
 import android.graphics.Bitmap;
-import android.os.AsyncTask;
 import android.util.Pair;
 
 import org.gateshipone.odyssey.adapter.ScrollSpeedAdapter;
@@ -37,18 +36,22 @@ import org.gateshipone.odyssey.models.TrackModel;
 import org.gateshipone.odyssey.viewitems.CoverLoadable;
 
 /**
- * Loader class for covers
+ * Loader class for covers, runs on the threads of the {@link ImageLoadScheduler}
  */
-public class AsyncLoader extends AsyncTask<AsyncLoader.CoverViewHolder, Void, Bitmap> {
-    private static final String TAG = AsyncLoader.class.getSimpleName();
-    private CoverViewHolder mCover;
+public class CoverLoader implements ImageLoadScheduler.ImageLoader {
+    private static final String TAG = CoverLoader.class.getSimpleName();
+    private final CoverViewHolder mCover;
 
     private final Context mContext;
 
-    private long mStartTime;
-
-    public AsyncLoader(Context context) {
+    /**
+     * @param context Context used for the artwork lookup
+     * @param cover   Holder with the model item and the size of the cover. Read on the loader thread,
+     *                so it must not be changed afterwards.
+     */
+    public CoverLoader(Context context, CoverViewHolder cover) {
         mContext = context;
+        mCover = cover;
     }
 
     /**
@@ -63,11 +66,10 @@ public class AsyncLoader extends AsyncTask<AsyncLoader.CoverViewHolder, Void, Bi
     }
 
     @Override
-    protected Bitmap doInBackground(CoverViewHolder... params) {
+    public Bitmap loadImage(ImageLoadScheduler.PreviewReceiver previews) {
         // Save the time when loading started for later duration calculation
-        mStartTime = System.currentTimeMillis();
+        final long startTime = System.currentTimeMillis();
 
-        mCover = params[0];
         Bitmap image = null;
         // Check if model item is artist or album
         if (mCover.modelItem instanceof ArtistModel) {
@@ -112,22 +114,9 @@ public class AsyncLoader extends AsyncTask<AsyncLoader.CoverViewHolder, Void, Bi
                 mCover.artworkManager.fetchAlbumImage(track, mContext);
             }
         }
-        return image;
-    }
-
-
-
-    @Override
-    protected void onPostExecute(Bitmap result) {
-
-        super.onPostExecute(result);
-
-        // set mCover if exists
-        if (result != null) {
-            if (mCover.mAdapter != null) {
-                mCover.mAdapter.addImageLoadTime(System.currentTimeMillis() - mStartTime);
-            }
-            mCover.coverLoadable.setImage(result);
+        if (image != null && mCover.mAdapter != null) {
+            mCover.mAdapter.addImageLoadTime(System.currentTimeMillis() - startTime);
         }
+        return image;
     }
-}
\ No newline at end of file
+}
@@ -25,8 +25,6 @@ package org.gateshipone.odyssey.utils;
 import android.content.Context;
 
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.IOException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
@@ -71,46 +69,14 @@ public class FileUtils {
     }
 
     /**
-     * Saves an image byte array in a file in the given directory.
+     * Returns the directory with the given name for artwork images.
      *
-     * @param context  The application context to get the files directory of the app.
-     * @param fileName The name that will be used to save the file.
-     * @param dirName  The directory name in which the file is saved.
-     * @param image    The image byte array that will be saved in a file.
-     * @throws IOException If the file couldn't be written.
-     */
-    public static void saveArtworkFile(final Context context, final String fileName, final String dirName, final byte[] image) throws IOException {
-        final File artworkDir = new File(context.getFilesDir() + "/" + ARTWORK_DIR + "/" + dirName + "/");
-        artworkDir.mkdirs();
-
-        final File imageFile = new File(artworkDir, fileName);
-
-        final FileOutputStream outputStream = new FileOutputStream(imageFile);
-        outputStream.write(image);
-        outputStream.close();
-    }
-
-    /**
-     * Generates the full absolute file path for an artwork image
-     * @param context Context used for directory resolving
-     * @param fileName Filename used as a basis
-     * @param dirName Directory suffix
-     * @return Full absolute file path
-     */
-    public static String getFullArtworkFilePath(final Context context, final String fileName, final String dirName) {
-        return context.getFilesDir() + "/" + ARTWORK_DIR + "/" + dirName + "/" + fileName;
-    }
-
-    /**
-     * Removes a file from the given directory.
-     *
-     * @param context  The application context to get the files directory of the app.
-     * @param fileName The name of the file.
-     * @param dirName  The name of the parent directory of the file.
+     * @param context The application context to get the files directory of the app.
+     * @param dirName The name of the directory.
+     * @return The directory, it is not created if it does not exist.
      */
-    public static void removeArtworkFile(final Context context, final String fileName, final String dirName) {
-        final File artworkFile = new File(context.getFilesDir() + "/" + ARTWORK_DIR + "/" + dirName + "/" + fileName);
-        artworkFile.delete();
+    public static File getArtworkDirectory(final Context context, final String dirName) {
+        return new File(context.getFilesDir() + "/" + ARTWORK_DIR + "/" + dirName + "/");
     }
 
     /**
@@ -120,7 +86,7 @@ public class FileUtils {
      * @param dirName The name of the directory that should be removed.
      */
     public static void removeArtworkDirectory(final Context context, final String dirName) {
-        final File artworkDir = new File(context.getFilesDir() + "/" + ARTWORK_DIR + "/" + dirName + "/");
+        final File artworkDir = getArtworkDirectory(context, dirName);
 
         if (artworkDir.listFiles() != null) {
             for (File child : artworkDir.listFiles()) {
@@ -0,0 +1,396 @@
+/*
+ * Copyright (C) 2018 Team Gateship-One
+ * (Hendrik Borghorst & Frederik Luetkes)
+ *
+ * The AUTHORS.md file contains a detailed contributors list:
+ * <https://github.com/gateship-one/odyssey/blob/master/AUTHORS.md>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.gateshipone.odyssey.utils;
+
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+import org.gateshipone.odyssey.models.TrackModel;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Scheduler for all image loads of a process.
+ * <p>
+ * Images are loaded by a small pool of background threads. Requests with a higher priority run first,
+ * within the same priority the most recent request runs first, so the images of the currently visible
+ * items are loaded before older requests of items that were scrolled away.
+ * Requests for the same image are merged into one load and requests can be cancelled as long as their
+ * image is not delivered yet.
+ */
+public class ImageLoadScheduler {
+    private static final String TAG = ImageLoadScheduler.class.getSimpleName();
+
+    /**
+     * Priority of images that are loaded ahead of time
+     */
+    public static final int PRIORITY_PREFETCH = 0;
+
+    /**
+     * Priority of images of visible list items
+     */
+    public static final int PRIORITY_VISIBLE = 1;
+
+    /**
+     * Priority of the image of the currently playing track
+     */
+    public static final int PRIORITY_PLAYING = 2;
+
+    /**
+     * Number of threads decoding images
+     */
+    private static final int THREAD_COUNT = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+
+    private static ImageLoadScheduler mInstance;
+
+    private final ThreadPoolExecutor mExecutor;
+
+    private final Handler mMainHandler;
+
+    /**
+     * Jobs that are queued or running, by their key
+     */
+    private final HashMap<Key, Job> mJobs;
+
+    /**
+     * Increasing number of the requests, newer requests run first
+     */
+    private long mSequence;
+
+    private ImageLoadScheduler() {
+        mExecutor = new ThreadPoolExecutor(THREAD_COUNT, THREAD_COUNT, 0, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<Runnable>(), new LoaderThreadFactory());
+        mMainHandler = new Handler(Looper.getMainLooper());
+        mJobs = new HashMap<>();
+    }
+
+    public static synchronized ImageLoadScheduler getInstance() {
+        if (mInstance == null) {
+            mInstance = new ImageLoadScheduler();
+        }
+        return mInstance;
+    }
+
+    /**
+     * Loads an image in the background. If the same image is already requested, the request is attached to it.
+     *
+     * @param key             Identifies the image, equal keys are loaded once
+     * @param priority        Priority of the request (e.g. {@link #PRIORITY_VISIBLE})
+     * @param loader          Loads the image on a background thread
+     * @param receiver        Receives the image
+     * @param deliverOnMainThread True if the receiver should be called on the main thread, otherwise it is called
+     *                        on the loader thread
+     * @return The request that can be used to cancel the load
+     */
+    public Request load(Key key, int priority, ImageLoader loader, ImageReceiver receiver, boolean deliverOnMainThread) {
+        final Request request = new Request(receiver, deliverOnMainThread);
+
+        synchronized (mJobs) {
+            Job job = mJobs.get(key);
+
+            if (job != null && !job.mStarted) {
+                // Requeue the job with the new priority and order
+                mExecutor.remove(job);
+            } else if (job == null) {
+                job = new Job(key, loader);
+                mJobs.put(key, job);
+            }
+
+            request.mJob = job;
+            job.mRequests.add(request);
+
+            if (!job.mStarted) {
+                job.mPriority = Math.max(job.mPriority, priority);
+                job.mSequence = ++mSequence;
+                mExecutor.execute(job);
+            }
+        }
+
+        return request;
+    }
+
+    /**
+     * Called by {@link Request#cancel()}. A job without requests is removed from the queue.
+     */
+    private void cancel(Request request) {
+        synchronized (mJobs) {
+            if (request.mCancelled) {
+                return;
+            }
+            request.mCancelled = true;
+
+            final Job job = request.mJob;
+            job.mRequests.remove(request);
+
+            if (job.mRequests.isEmpty() && !job.mStarted) {
+                mExecutor.remove(job);
+                mJobs.remove(job.mKey);
+            }
+        }
+    }
+
+    /**
+     * Hands the image to all requests of the job that are not cancelled. Each receiver gets its own reference
+     * to the image.
+     *
+     * @param finished False if the image is a preview, the requests stay attached to the job then.
+     */
+    private void deliver(Job job, final Bitmap image, final boolean finished) {
+        final List<Request> requests;
+
+        synchronized (mJobs) {
+            if (finished && mJobs.get(job.mKey) == job) {
+                mJobs.remove(job.mKey);
+            }
+            requests = new ArrayList<>(job.mRequests);
+            if (finished) {
+                job.mRequests.clear();
+            }
+
+            // The loader returned one reference, the receivers need one each
+            for (int i = 1; i < requests.size(); i++) {
+                BitmapPool.getInstance().acquire(image);
+            }
+            if (requests.isEmpty()) {
+                BitmapPool.getInstance().release(image);
+            }
+        }
+
+        for (final Request request : requests) {
+            if (request.mDeliverOnMainThread) {
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        request.deliver(image);
+                    }
+                });
+            } else {
+                request.deliver(image);
+            }
+        }
+    }
+
+    /**
+     * Loads the image, called on a background thread.
+     */
+    public interface ImageLoader {
+        /**
+         * @param previews Receives a smaller version of the image that can be shown until the image is loaded.
+         * @return The image or null if no image is available. The caller gets the reference to the image.
+         */
+        Bitmap loadImage(PreviewReceiver previews);
+    }
+
+    /**
+     * Hands previews of the image to the requests of a load, called by the {@link ImageLoader}.
+     */
+    public interface PreviewReceiver {
+        /**
+         * @param preview The preview or null. The receiver gets the reference to the preview.
+         */
+        void receivePreview(Bitmap preview);
+    }
+
+    /**
+     * Receives the loaded image.
+     */
+    public interface ImageReceiver {
+        /**
+         * Called with the image and before it with the previews of the loader, if there are any.
+         *
+         * @param image The image or null if no image is available. The receiver owns a reference to the image
+         *              and must release it with {@link BitmapPool#release(Bitmap)} if it is not shown anymore.
+         */
+        void receiveImage(Bitmap image);
+    }
+
+    /**
+     * Identifies an image: the kind of image (its loader class), the model and the requested size.
+     * Tracks are equal by their id, tracks without id (e.g. files outside the MediaStore) are identified
+     * by their url instead.
+     */
+    public static final class Key {
+        private final Class<?> mKind;
+
+        private final Object mModel;
+
+        private final int mWidth;
+
+        private final int mHeight;
+
+        public Key(Class<?> kind, Object model, int width, int height) {
+            mKind = kind;
+            mModel = getIdentity(model);
+            mWidth = width;
+            mHeight = height;
+        }
+
+        private static Object getIdentity(Object model) {
+            if (model instanceof TrackModel && ((TrackModel) model).getTrackId() == -1) {
+                return ((TrackModel) model).getTrackURL();
+            }
+            return model;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof Key)) {
+                return false;
+            }
+
+            final Key key = (Key) other;
+            return mKind == key.mKind && mWidth == key.mWidth && mHeight == key.mHeight && mModel.equals(key.mModel);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = mKind.hashCode();
+            result = 31 * result + mModel.hashCode();
+            result = 31 * result + mWidth;
+            return 31 * result + mHeight;
+        }
+    }
+
+    /**
+     * A request of one receiver for an image.
+     */
+    public class Request {
+        private final ImageReceiver mReceiver;
+
+        private final boolean mDeliverOnMainThread;
+
+        private Job mJob;
+
+        /**
+         * Guarded by the job map of the scheduler, read without lock on the main thread.
+         */
+        private volatile boolean mCancelled;
+
+        private Request(ImageReceiver receiver, boolean deliverOnMainThread) {
+            mReceiver = receiver;
+            mDeliverOnMainThread = deliverOnMainThread;
+        }
+
+        /**
+         * Cancels the request. The receiver is not called afterwards if this is called on the thread
+         * the image is delivered on.
+         */
+        public void cancel() {
+            ImageLoadScheduler.this.cancel(this);
+        }
+
+        private void deliver(Bitmap image) {
+            if (mCancelled) {
+                // Nobody shows the image, the reference can be released
+                BitmapPool.getInstance().release(image);
+                return;
+            }
+            mReceiver.receiveImage(image);
+        }
+    }
+
+    /**
+     * Load of one image for all of its requests.
+     */
+    private class Job implements Runnable, Comparable<Job>, PreviewReceiver {
+        private final Key mKey;
+
+        private final ImageLoader mLoader;
+
+        private final List<Request> mRequests = new ArrayList<>(1);
+
+        private int mPriority;
+
+        private long mSequence;
+
+        private boolean mStarted;
+
+        private Job(Key key, ImageLoader loader) {
+            mKey = key;
+            mLoader = loader;
+        }
+
+        @Override
+        public void run() {
+            synchronized (mJobs) {
+                if (mStarted || mRequests.isEmpty()) {
+                    return;
+                }
+                mStarted = true;
+            }
+
+            Bitmap image = null;
+            try {
+                image = mLoader.loadImage(this);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Could not load image: " + e.getMessage());
+            }
+
+            deliver(this, image, true);
+        }
+
+        @Override
+        public void receivePreview(Bitmap preview) {
+            deliver(this, preview, false);
+        }
+
+        /**
+         * Higher priorities first, newer requests first within the same priority.
+         */
+        @Override
+        public int compareTo(Job other) {
+            if (mPriority != other.mPriority) {
+                return other.mPriority - mPriority;
+            }
+            return Long.compare(other.mSequence, mSequence);
+        }
+    }
+
+    private static class LoaderThreadFactory implements ThreadFactory {
+        private final AtomicInteger mThreadNumber = new AtomicInteger(1);
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            return new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }
+            }, "ImageLoader-" + mThreadNumber.getAndIncrement());
+        }
+    }
+}
@@ -72,6 +72,12 @@ public class MusicLibraryHelper {
      */
     private static final int chunkSize = 1000;
 
+    /**
+     * Threshold how many album keys should be used in a single "IN" selection.
+     * The threshold is needed to not exceed the maximum number of arguments of a sqlite statement.
+     */
+    private static final int albumKeyChunkSize = 500;
+
     /**
      * Workaround to insert images for albums that are not part of the system media library and
      * therefore do not have an album id. The offset needs to be bigger then the count of
@@ -142,6 +148,33 @@ public class MusicLibraryHelper {
         return albumModel;
     }
 
+    /**
+     * Return the album model of a track. Tracks that are not in the mediastore (e.g. opened from the file browser)
+     * get an album with a generated id (s. {@link #getAlbumIDFromKey(String, Context)}), tracks without album
+     * information are identified by their file.
+     *
+     * @param track   The track to get the album for.
+     * @param context The application context to access the content resolver.
+     * @return The created {@link AlbumModel} or null if the track can not be identified.
+     */
+    public static AlbumModel createAlbumModelForTrack(final TrackModel track, final Context context) {
+        String albumKey = track.getTrackAlbumKey();
+
+        if (albumKey != null && !albumKey.isEmpty()) {
+            final AlbumModel album = createAlbumModelFromKey(albumKey, context);
+            if (album != null) {
+                return album;
+            }
+        } else {
+            albumKey = track.getTrackURL();
+            if (albumKey == null) {
+                return null;
+            }
+        }
+
+        return new AlbumModel(track.getTrackAlbumName(), null, track.getTrackArtistName(), albumKey, getAlbumIDFromKey(albumKey, context));
+    }
+
     /**
      * Retrieves the album ID for the given album key
      *
@@ -217,8 +250,40 @@ public class MusicLibraryHelper {
         return albumTracks;
     }
 
+    /**
+     * Return the file path of the first track of an album.
+     *
+     * @param context  The application context to access the content resolver.
+     * @param albumKey The key to identify the album in the mediastore
+     * @return The path of the track file or null if the album has no tracks in the mediastore.
+     */
+    public static String getTrackPathForAlbum(final String albumKey, final Context context) {
+        final String whereVal[] = {albumKey};
+
+        final String where = android.provider.MediaStore.Audio.Media.ALBUM_KEY + "=?";
+
+        final String orderBy = android.provider.MediaStore.Audio.Media.TRACK;
+
+        final Cursor cursor = PermissionHelper.query(context, MediaStore.Audio.Media.EXTERNAL_CONTENT_URI, new String[]{MediaStore.Audio.Media.DATA}, where, whereVal, orderBy);
+
+        String path = null;
+
+        if (cursor != null) {
+            if (cursor.moveToFirst()) {
+                path = cursor.getString(cursor.getColumnIndex(MediaStore.Audio.Media.DATA));
+            }
+
+            cursor.close();
+        }
+
+        return path;
+    }
+
     /**
      * Return a list of all tracks of an artist
+     * <p>
+     * The albums of the artist are resolved first, afterwards the tracks of all albums are fetched
+     * with a small number of chunked queries instead of one query per album.
      *
      * @param context  The application context to access the content resolver.
      * @param artistId The id to identify the artist in the mediastore
@@ -226,7 +291,7 @@ public class MusicLibraryHelper {
      * @return The list of {@link TrackModel} of all tracks for the given artist in the specified order.
      */
     public static List<TrackModel> getTracksForArtist(final long artistId, final String orderKey, final Context context) {
-        List<TrackModel> artistTracks = new ArrayList<>();
+        final List<TrackModel> artistTracks = new ArrayList<>();
 
         String orderBy;
 
@@ -238,23 +303,109 @@ public class MusicLibraryHelper {
             orderBy = MediaStore.Audio.Albums.ALBUM;
         }
 
-        Cursor cursor = PermissionHelper.query(context, MediaStore.Audio.Artists.Albums.getContentUri("external", artistId),
+        final List<String> albumKeys = new ArrayList<>();
+
+        final Cursor cursor = PermissionHelper.query(context, MediaStore.Audio.Artists.Albums.getContentUri("external", artistId),
                 new String[]{MediaStore.Audio.Albums.ALBUM, MediaStore.Audio.Albums.ALBUM_KEY, MediaStore.Audio.Albums.FIRST_YEAR}, "", null, orderBy + " COLLATE NOCASE");
 
         if (cursor != null) {
             if (cursor.moveToFirst()) {
+                final int albumKeyColumnIndex = cursor.getColumnIndex(MediaStore.Audio.Albums.ALBUM_KEY);
+
                 do {
-                    String albumKey = cursor.getString(cursor.getColumnIndex(MediaStore.Audio.Albums.ALBUM_KEY));
-                    artistTracks.addAll(getTracksForAlbum(albumKey, context));
+                    final String albumKey = cursor.getString(albumKeyColumnIndex);
+
+                    if (albumKey != null) {
+                        albumKeys.add(albumKey);
+                    }
                 } while (cursor.moveToNext());
             }
 
             cursor.close();
         }
 
+        // get the tracks of all albums at once and restore the album order afterwards
+        final Map<String, List<TrackModel>> tracksPerAlbum = getTracksForAlbums(albumKeys, context);
+
+        for (final String albumKey : albumKeys) {
+            final List<TrackModel> albumTracks = tracksPerAlbum.get(albumKey);
+
+            if (albumTracks != null) {
+                artistTracks.addAll(albumTracks);
+            }
+        }
+
         return artistTracks;
     }
 
+    /**
+     * Return the tracks for all given albums grouped by the album key.
+     * <p>
+     * The albums are requested in chunks of {@link #albumKeyChunkSize} keys per query.
+     * The tracks of each album are ordered by their track number.
+     *
+     * @param albumKeys The keys to identify the albums in the mediastore.
+     * @param context   The application context to access the content resolver.
+     * @return A {@link Map} containing the list of {@link TrackModel} for each album key.
+     */
+    private static Map<String, List<TrackModel>> getTracksForAlbums(final List<String> albumKeys, final Context context) {
+        final Map<String, List<TrackModel>> tracksPerAlbum = new HashMap<>();
+
+        final String orderBy = android.provider.MediaStore.Audio.Media.TRACK;
+
+        for (int chunkStart = 0; chunkStart < albumKeys.size(); chunkStart += albumKeyChunkSize) {
+            final int chunkEnd = Math.min(chunkStart + albumKeyChunkSize, albumKeys.size());
+
+            final String whereVal[] = albumKeys.subList(chunkStart, chunkEnd).toArray(new String[chunkEnd - chunkStart]);
+
+            final StringBuilder where = new StringBuilder(MediaStore.Audio.Media.ALBUM_KEY).append(" IN (");
+            for (int i = 0; i < whereVal.length; i++) {
+                where.append(i == 0 ? "?" : ",?");
+            }
+            where.append(')');
+
+            final Cursor cursor = PermissionHelper.query(context, MediaStore.Audio.Media.EXTERNAL_CONTENT_URI, projectionTracks, where.toString(), whereVal, orderBy);
+
+            if (cursor != null) {
+                if (cursor.moveToFirst()) {
+                    final int trackNameColumnIndex = cursor.getColumnIndex(MediaStore.Audio.Media.TITLE);
+                    final int durationColumnIndex = cursor.getColumnIndex(MediaStore.Audio.Media.DURATION);
+                    final int numberColumnIndex = cursor.getColumnIndex(MediaStore.Audio.Media.TRACK);
+                    final int artistNameColumnIndex = cursor.getColumnIndex(MediaStore.Audio.Media.ARTIST);
+                    final int albumNameColumnIndex = cursor.getColumnIndex(MediaStore.Audio.Media.ALBUM);
+                    final int urlColumnIndex = cursor.getColumnIndex(MediaStore.Audio.Media.DATA);
+                    final int albumKeyColumnIndex = cursor.getColumnIndex(MediaStore.Audio.Media.ALBUM_KEY);
+                    final int idColumnIndex = cursor.getColumnIndex(MediaStore.Audio.Media._ID);
+
+                    do {
+                        final String trackName = cursor.getString(trackNameColumnIndex);
+                        final long duration = cursor.getLong(durationColumnIndex);
+                        final int number = cursor.getInt(numberColumnIndex);
+                        final String artistName = cursor.getString(artistNameColumnIndex);
+                        final String albumName = cursor.getString(albumNameColumnIndex);
+                        final String url = cursor.getString(urlColumnIndex);
+                        final String albumKey = cursor.getString(albumKeyColumnIndex);
+                        final long id = cursor.getLong(idColumnIndex);
+
+                        List<TrackModel> albumTracks = tracksPerAlbum.get(albumKey);
+                        if (albumTracks == null) {
+                            albumTracks = new ArrayList<>();
+                            tracksPerAlbum.put(albumKey, albumTracks);
+                        }
+
+                        // add current track
+                        albumTracks.add(new TrackModel(trackName, artistName, albumName, albumKey, duration, number, url, id));
+
+                    } while (cursor.moveToNext());
+                }
+
+                cursor.close();
+            }
+        }
+
+        return tracksPerAlbum;
+    }
+
     /**
      * Return a list of all tracks of a playlist
      *
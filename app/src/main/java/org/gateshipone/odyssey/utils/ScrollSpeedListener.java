@@ -41,10 +41,13 @@ public class ScrollSpeedListener implements AbsListView.OnScrollListener {
     private final ScrollSpeedAdapter mAdapter;
     private final AbsListView mListView;
 
+    private final ArtworkPrefetcher mPrefetcher;
+
     public ScrollSpeedListener(ScrollSpeedAdapter adapter, AbsListView listView) {
         super();
         mListView = listView;
         mAdapter = adapter;
+        mPrefetcher = new ArtworkPrefetcher(adapter, listView);
     }
 
     /**
@@ -88,6 +91,10 @@ public class ScrollSpeedListener implements AbsListView.OnScrollListener {
             // Calculate how many items per second of loading images is possible
             int possibleItems = (int)(1000/mAdapter.getAverageImageLoadTime());
 
+            // Load the items that will become visible next, based on the direction and speed
+            mPrefetcher.prefetch(firstVisibleItem, visibleItemCount, totalItemCount,
+                    firstVisibleItem > mLastFirstVisibleItem ? 1 : -1, mScrollSpeed);
+
 
             // Set the scrollspeed in the adapter
             mAdapter.setScrollSpeed(mScrollSpeed);
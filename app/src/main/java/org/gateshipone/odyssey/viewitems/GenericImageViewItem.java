@@ -36,19 +36,21 @@ import android.widget.ViewSwitcher;
 import org.gateshipone.odyssey.adapter.ScrollSpeedAdapter;
 import org.gateshipone.odyssey.artworkdatabase.ArtworkManager;
 import org.gateshipone.odyssey.models.GenericModel;
-import org.gateshipone.odyssey.utils.AsyncLoader;
+import org.gateshipone.odyssey.utils.BitmapPool;
+import org.gateshipone.odyssey.utils.CoverLoader;
+import org.gateshipone.odyssey.utils.ImageLoadScheduler;
 
-public abstract class GenericImageViewItem extends RelativeLayout implements CoverLoadable {
+public abstract class GenericImageViewItem extends RelativeLayout implements CoverLoadable, ImageLoadScheduler.ImageReceiver {
     private static final String TAG = GenericImageViewItem.class.getSimpleName();
 
     private final ImageView mImageView;
     private Bitmap mBitmap = null;
     private final ViewSwitcher mSwitcher;
 
-    private AsyncLoader mLoaderTask;
+    private ImageLoadScheduler.Request mImageRequest;
     private boolean mCoverDone = false;
 
-    private final AsyncLoader.CoverViewHolder mHolder;
+    private final CoverLoader.CoverViewHolder mHolder;
 
     /**
      * @param context     The current context.
@@ -66,7 +68,7 @@ public abstract class GenericImageViewItem extends RelativeLayout implements Cov
         mImageView = findViewById(imageviewID);
         mSwitcher = findViewById(switcherID);
 
-        mHolder = new AsyncLoader.CoverViewHolder();
+        mHolder = new CoverLoader.CoverViewHolder();
         mHolder.coverLoadable = this;
         mHolder.mAdapter = adapter;
         mHolder.imageDimension = new Pair<>(0,0);
@@ -84,12 +86,65 @@ public abstract class GenericImageViewItem extends RelativeLayout implements Cov
     }
 
     /**
-     * Starts the image retrieval task
+     * Requests the image from the {@link ImageLoadScheduler}
      */
     public void startCoverImageTask() {
-        if (mLoaderTask == null && mHolder.artworkManager != null && mHolder.modelItem != null && !mCoverDone) {
-            mLoaderTask = new AsyncLoader(getContext());
-            mLoaderTask.execute(mHolder);
+        if (mImageRequest == null && canLoadImages() && mHolder.modelItem != null && !mCoverDone) {
+            mImageRequest = requestImage(mHolder.modelItem, ImageLoadScheduler.PRIORITY_VISIBLE, this, true);
+        }
+    }
+
+    /**
+     * Loads the image of another item with the image size of this view into the caches.
+     *
+     * @param modelItem Model of an item that will be shown soon
+     * @param receiver  Receiver of the image, called on the loader thread
+     * @return The request or null if this view does not load images
+     */
+    public ImageLoadScheduler.Request prefetchImage(final GenericModel modelItem, final ImageLoadScheduler.ImageReceiver receiver) {
+        if (!canLoadImages()) {
+            return null;
+        }
+        return requestImage(modelItem, ImageLoadScheduler.PRIORITY_PREFETCH, receiver, false);
+    }
+
+    /**
+     * @return True if the view is prepared to show artwork
+     */
+    public boolean canLoadImages() {
+        return mHolder.artworkManager != null;
+    }
+
+    public Pair<Integer, Integer> getImageDimension() {
+        return mHolder.imageDimension;
+    }
+
+    private ImageLoadScheduler.Request requestImage(final GenericModel modelItem, final int priority,
+                                                    final ImageLoadScheduler.ImageReceiver receiver, final boolean deliverOnMainThread) {
+        // The loader gets its own copy, the holder changes when the view is reused
+        final CoverLoader.CoverViewHolder cover = new CoverLoader.CoverViewHolder();
+        cover.imageDimension = mHolder.imageDimension;
+        cover.coverLoadable = this;
+        cover.artworkManager = mHolder.artworkManager;
+        cover.modelItem = modelItem;
+        cover.mAdapter = mHolder.mAdapter;
+
+        // Requests of the visible item and of the prefetch share the key, so they share the load
+        final ImageLoadScheduler.Key key = new ImageLoadScheduler.Key(CoverLoader.class, modelItem,
+                cover.imageDimension.first, cover.imageDimension.second);
+        return ImageLoadScheduler.getInstance().load(key, priority, new CoverLoader(getContext(), cover), receiver, deliverOnMainThread);
+    }
+
+    /**
+     * Called on the main thread when the requested image is loaded.
+     *
+     * @param image The image or null if none is available
+     */
+    @Override
+    public void receiveImage(Bitmap image) {
+        mImageRequest = null;
+        if (image != null) {
+            setImage(image);
         }
     }
 
@@ -112,17 +167,17 @@ public abstract class GenericImageViewItem extends RelativeLayout implements Cov
     }
 
     /**
-     * If this item gets detached from the parent it makes no sense to let
-     * the task for image retrieval running. (non-Javadoc)
+     * If this item gets detached from the parent it makes no sense to keep
+     * the image request. (non-Javadoc)
      *
      * @see android.view.View#onDetachedFromWindow()
      */
     @Override
     protected void onDetachedFromWindow() {
         super.onDetachedFromWindow();
-        if (mLoaderTask != null) {
-            mLoaderTask.cancel(true);
-            mLoaderTask = null;
+        if (mImageRequest != null) {
+            mImageRequest.cancel();
+            mImageRequest = null;
         }
     }
 
@@ -131,9 +186,12 @@ public abstract class GenericImageViewItem extends RelativeLayout implements Cov
      * If null is supplied it will reset the cover placeholder image.
      *
      * @param image Image to show inside the view. null will result in the placeholder being shown.
+     *              The view takes over the reference of the caller to the image.
      */
     @Override
     public void setImage(final Bitmap image) {
+        // The view owns a reference to the shown bitmap, release the previous one for reuse
+        BitmapPool.getInstance().release(mBitmap);
         mBitmap = image;
         if (image != null) {
             mCoverDone = true;
@@ -141,11 +199,11 @@ public abstract class GenericImageViewItem extends RelativeLayout implements Cov
             mImageView.setImageBitmap(image);
             mSwitcher.setDisplayedChild(1);
         } else {
-            // Cancel old task
-            if (mLoaderTask != null) {
-                mLoaderTask.cancel(true);
+            // Cancel old request
+            if (mImageRequest != null) {
+                mImageRequest.cancel();
             }
-            mLoaderTask = null;
+            mImageRequest = null;
 
             mCoverDone = false;
             mHolder.modelItem = null;
@@ -159,7 +217,12 @@ public abstract class GenericImageViewItem extends RelativeLayout implements Cov
         }
     }
 
+    /**
+     * Returns the shown bitmap. The bitmap is excluded from reuse because the caller may show it elsewhere.
+     */
     public Bitmap getBitmap() {
+        // This reference is never released
+        BitmapPool.getInstance().acquire(mBitmap);
         return mBitmap;
     }
 }
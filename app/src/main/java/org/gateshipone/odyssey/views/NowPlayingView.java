@@ -24,10 +24,8 @@ package org.gateshipone.odyssey.views;
 
 import android.app.Activity;
 import android.content.ActivityNotFoundException;
-import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
-import android.content.IntentFilter;
 import android.content.SharedPreferences;
 import android.content.res.ColorStateList;
 import android.graphics.Bitmap;
@@ -65,21 +63,24 @@ import org.gateshipone.odyssey.dialogs.ErrorDialog;
 import org.gateshipone.odyssey.models.AlbumModel;
 import org.gateshipone.odyssey.models.ArtistModel;
 import org.gateshipone.odyssey.models.TrackModel;
+import org.gateshipone.odyssey.playbackservice.IOdysseyPlaybackListener;
 import org.gateshipone.odyssey.playbackservice.NowPlayingInformation;
 import org.gateshipone.odyssey.playbackservice.PlaybackService;
 import org.gateshipone.odyssey.playbackservice.PlaybackServiceConnection;
-import org.gateshipone.odyssey.playbackservice.managers.PlaybackServiceStatusHelper;
 import org.gateshipone.odyssey.utils.CoverBitmapLoader;
 import org.gateshipone.odyssey.utils.FormatHelper;
 import org.gateshipone.odyssey.utils.ThemeUtils;
 
 import java.util.Locale;
-import java.util.Timer;
-import java.util.TimerTask;
 
 public class NowPlayingView extends RelativeLayout implements SeekBar.OnSeekBarChangeListener, PopupMenu.OnMenuItemClickListener, ArtworkManager.onNewAlbumImageListener, ArtworkManager.onNewArtistImageListener,
         SharedPreferences.OnSharedPreferenceChangeListener {
 
+    /**
+     * Interval of the position updates requested from the PBS in milliseconds.
+     */
+    private static final int POSITION_UPDATE_INTERVAL = 500;
+
     private final ViewDragHelper mDragHelper;
 
     /**
@@ -137,10 +138,10 @@ public class NowPlayingView extends RelativeLayout implements SeekBar.OnSeekBarC
     private PlaybackServiceConnection mServiceConnection = null;
 
     /**
-     * Receiver for NowPlayingInformation items (that include information about state changes, song
-     * changes).
+     * Listener registered at the PBS for NowPlayingInformation items (that include information about state changes, song
+     * changes) and position updates.
      */
-    private NowPlayingReceiver mNowPlayingReceiver = null;
+    private PlaybackListener mPlaybackListener = null;
 
     /**
      * Asynchronous loader for coverimages for TrackItems.
@@ -148,9 +149,9 @@ public class NowPlayingView extends RelativeLayout implements SeekBar.OnSeekBarC
     private CoverBitmapLoader mCoverLoader = null;
 
     /**
-     * Timer that periodically updates the state of the view (seekbar)
+     * Saves if the PBS is requested to send periodic position updates (seekbar)
      */
-    private Timer mRefreshTimer = null;
+    private boolean mPositionUpdatesEnabled = false;
 
     /**
      * Observer for information about the state of the draggable part of this view.
@@ -546,7 +547,7 @@ public class NowPlayingView extends RelativeLayout implements SeekBar.OnSeekBarC
             if (child == mHeaderView) {
                 // start the refresh task if state is playing
                 if (mPlaybackServiceState == PlaybackService.PLAYSTATE.PLAYING) {
-                    startRefreshTask();
+                    startPositionUpdates();
                 }
                 // report the change of the view
                 if (mDragStatusReceiver != null) {
@@ -678,8 +679,8 @@ public class NowPlayingView extends RelativeLayout implements SeekBar.OnSeekBarC
                         mDragStatusReceiver.onStatusChanged(NowPlayingDragStatusReceiver.DRAG_STATUS.DRAGGED_DOWN);
                     }
 
-                    // stop refresh task
-                    stopRefreshTask();
+                    // stop position updates
+                    stopPositionUpdates();
                 }
             } else {
                 /*
@@ -995,22 +996,20 @@ public class NowPlayingView extends RelativeLayout implements SeekBar.OnSeekBarC
     }
 
     /**
-     * Stop the refresh timer when the view is not visible to the user anymore.
-     * Unregister the receiver for NowPlayingInformation intends, not needed anylonger.
+     * Stop the position updates when the view is not visible to the user anymore.
+     * Unregister the listener for NowPlayingInformation items, not needed anylonger.
      */
     public void onPause() {
-        if (mRefreshTimer != null) {
-            // Cancel the running refresh timer
-            mRefreshTimer.cancel();
-            mRefreshTimer.purge();
-            // Clean the reference
-            mRefreshTimer = null;
-        }
-        if (mNowPlayingReceiver != null) {
-            // Unregister the broadcast receiver
-            getContext().getApplicationContext().unregisterReceiver(mNowPlayingReceiver);
-            mNowPlayingReceiver = null;
+        if (mPlaybackListener != null) {
+            // Unregister the listener from the PBS
+            try {
+                mServiceConnection.getPBS().unregisterPlaybackListener(mPlaybackListener);
+            } catch (RemoteException e) {
+                e.printStackTrace();
+            }
+            mPlaybackListener = null;
         }
+        mPositionUpdatesEnabled = false;
         ArtworkManager.getInstance(getContext().getApplicationContext()).unregisterOnNewAlbumImageListener(this);
         ArtworkManager.getInstance(getContext().getApplicationContext()).unregisterOnNewArtistImageListener(this);
 
@@ -1022,17 +1021,14 @@ public class NowPlayingView extends RelativeLayout implements SeekBar.OnSeekBarC
 
     /**
      * Resumes refreshing operation because the view is visible to the user again.
-     * Also registers to the NowPlayingInformation intends again.
+     * Also registers to the NowPlayingInformation items again.
      */
     public void onResume() {
-        // Create new Receiver
-        if (mNowPlayingReceiver != null) {
-            getContext().getApplicationContext().unregisterReceiver(mNowPlayingReceiver);
-            mNowPlayingReceiver = null;
-        }
-        mNowPlayingReceiver = new NowPlayingReceiver();
-        getContext().getApplicationContext().registerReceiver(mNowPlayingReceiver, new IntentFilter(PlaybackServiceStatusHelper.MESSAGE_NEWTRACKINFORMATION));
-        // get the playbackservice, when the connection is successfully established the timer gets restarted
+        // Create new listener, it is registered when the connection is established
+        mPlaybackListener = new PlaybackListener();
+        mPositionUpdatesEnabled = false;
+
+        // get the playbackservice, when the connection is successfully established the position updates get restarted
         mServiceConnection.openConnection();
 
         // Reenable scrolling views after resuming
@@ -1154,9 +1150,9 @@ public class NowPlayingView extends RelativeLayout implements SeekBar.OnSeekBarC
                     showHint();
                 }
 
-                // start refresh task if view is visible
+                // start position updates if view is visible
                 if (mDragOffset == 0.0f) {
-                    startRefreshTask();
+                    startPositionUpdates();
                 }
 
                 break;
@@ -1166,8 +1162,8 @@ public class NowPlayingView extends RelativeLayout implements SeekBar.OnSeekBarC
                 mTopPlayPauseButton.setImageResource(R.drawable.ic_play_arrow_48dp);
                 mBottomPlayPauseButton.setImageResource(R.drawable.ic_play_circle_fill_48dp);
 
-                // stop refresh task
-                stopRefreshTask();
+                // stop position updates
+                stopPositionUpdates();
 
                 break;
         }
@@ -1211,6 +1207,15 @@ public class NowPlayingView extends RelativeLayout implements SeekBar.OnSeekBarC
             e.printStackTrace();
         }
 
+        updateTrackPosition(trackPosition);
+    }
+
+    /**
+     * Update the seekbar and the elapsed view with the given trackposition.
+     *
+     * @param trackPosition The position in the current track in milliseconds
+     */
+    private void updateTrackPosition(int trackPosition) {
         // update the seekbar
         mPositionSeekbar.setProgress(trackPosition);
         // update the elapsed view
@@ -1218,27 +1223,35 @@ public class NowPlayingView extends RelativeLayout implements SeekBar.OnSeekBarC
     }
 
     /**
-     * Stop the refresh task if one exists.
+     * Request periodic position updates from the PBS. The PBS only sends them while playing.
      */
-    private void stopRefreshTask() {
-        if (mRefreshTimer != null) {
-            mRefreshTimer.cancel();
-            mRefreshTimer.purge();
-            mRefreshTimer = null;
-        }
+    private void startPositionUpdates() {
+        requestPositionUpdates(true);
     }
 
     /**
-     * Start a periodically time to update the seekbar. If one is already existing overwrite it.
+     * Stop the periodic position updates. State changes are still received.
      */
-    private void startRefreshTask() {
-        if (mRefreshTimer != null) {
-            mRefreshTimer.cancel();
-            mRefreshTimer.purge();
-            mRefreshTimer = null;
+    private void stopPositionUpdates() {
+        requestPositionUpdates(false);
+    }
+
+    /**
+     * Registers the listener at the PBS again with the new position update interval if it changed.
+     *
+     * @param enabled True to receive position updates, false to only receive state changes.
+     */
+    private void requestPositionUpdates(boolean enabled) {
+        if (mPlaybackListener == null || enabled == mPositionUpdatesEnabled) {
+            return;
+        }
+
+        try {
+            mServiceConnection.getPBS().registerPlaybackListener(mPlaybackListener, enabled ? POSITION_UPDATE_INTERVAL : 0);
+            mPositionUpdatesEnabled = enabled;
+        } catch (RemoteException e) {
+            e.printStackTrace();
         }
-        mRefreshTimer = new Timer();
-        mRefreshTimer.scheduleAtFixedRate(new RefreshTask(), 0, 500);
     }
 
     /**
@@ -1317,6 +1330,16 @@ public class NowPlayingView extends RelativeLayout implements SeekBar.OnSeekBarC
             // Register the service connection to the PlaylistView (it needs it to start its listadapter)
             mPlaylistView.registerPBServiceConnection(mServiceConnection);
 
+            // Register the listener for state changes, position updates are requested by updateStatus if needed
+            if (mPlaybackListener != null) {
+                try {
+                    mServiceConnection.getPBS().registerPlaybackListener(mPlaybackListener, 0);
+                } catch (RemoteException e) {
+                    e.printStackTrace();
+                }
+            }
+            mPositionUpdatesEnabled = false;
+
             // Already running in main UI thread handler here. No need for runOnUIThread
             updateStatus(null);
         }
@@ -1333,31 +1356,40 @@ public class NowPlayingView extends RelativeLayout implements SeekBar.OnSeekBarC
     }
 
     /**
-     * Private BroadcastReceiver for handling PBS NowPlayingInformation broadcasts to update the shown
-     * information when a new track starts or the PBS status changes because of other reasons (repeat,random state, ...)
+     * Private listener for handling PBS NowPlayingInformation items to update the shown
+     * information when a new track starts or the PBS status changes because of other reasons (repeat,random state, ...).
+     * Also receives the periodic position updates while the PBS is playing.
      */
-    private class NowPlayingReceiver extends BroadcastReceiver {
+    private class PlaybackListener extends IOdysseyPlaybackListener.Stub {
 
         /**
-         * Called when receiving a NowPlayingInformation parcelable.
+         * Called when the PBS status changed.
          *
-         * @param context Context of the received broadcasts
-         * @param intent  Intent with the message content
+         * @param info The new NowPlayingInformation
          */
         @Override
-        public void onReceive(Context context, Intent intent) {
-            if (intent.getAction().equals(PlaybackServiceStatusHelper.MESSAGE_NEWTRACKINFORMATION)) {
-                // Extract nowplaying info
-                final NowPlayingInformation info = intent.getParcelableExtra(PlaybackServiceStatusHelper.INTENT_NOWPLAYINGNAME);
+        public void onStateChanged(final NowPlayingInformation info) {
+            Activity activity = (Activity) getContext();
+            if (activity != null) {
+                // Run the updateStatus method in the UI thread because it touches all the gui elements.
+                activity.runOnUiThread(() -> {
+                    // update views
+                    updateStatus(info);
+                });
+            }
+        }
 
-                Activity activity = (Activity) getContext();
-                if (activity != null) {
-                    // Run the updateStatus method in the UI thread because it touches all the gui elements.
-                    activity.runOnUiThread(() -> {
-                        // update views
-                        updateStatus(info);
-                    });
-                }
+        /**
+         * Called periodically while the PBS is playing.
+         *
+         * @param position The position in the current track in milliseconds
+         */
+        @Override
+        public void onPositionChanged(final int position) {
+            Activity activity = (Activity) getContext();
+            // Run on the UI thread because we are updating gui elements
+            if (activity != null) {
+                activity.runOnUiThread(() -> updateTrackPosition(position));
             }
         }
     }
@@ -1486,22 +1518,6 @@ public class NowPlayingView extends RelativeLayout implements SeekBar.OnSeekBarC
         getContext().startActivity(Intent.createChooser(shareIntent, getContext().getString(R.string.share_chooser_title)));
     }
 
-    /**
-     * Private class that handles periodically updates of the duration views (seekbar, textviews)
-     */
-    private class RefreshTask extends TimerTask {
-
-        @Override
-        public void run() {
-            Activity activity = (Activity) getContext();
-            // Run on the UI thread because we are updating gui elements
-            if (activity != null) {
-                activity.runOnUiThread(NowPlayingView.this::updateTrackPosition);
-            }
-
-        }
-    }
-
     /**
      * Public interface used by observers to be notified about a change in drag state or drag position.
      */